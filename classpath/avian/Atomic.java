@@ -7,4 +7,7 @@ public class Atomic {
 
   public static native boolean compareAndSwapObject
     (Object o, long offset, Object old, Object new_);
+
+  public static native boolean compareAndSwapInt
+    (Object o, long offset, int old, int new_);
 }
@@ -1,4 +1,4 @@
-/* Copyright (c) 2010, Avian Contributors
+/* Copyright (c) 2010-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -163,11 +163,13 @@ public class Classes {
   private static void parseAnnotationTable(ClassLoader loader,
                                            Addendum addendum)
   {
-    if (addendum != null && addendum.annotationTable instanceof byte[]) {
+    // read the table only once, since another thread may be linking
+    // the same class concurrently
+    Object table = addendum == null ? null : addendum.annotationTable;
+    if (table instanceof byte[]) {
       try {
         addendum.annotationTable = parseAnnotationTable
-          (loader, addendum.pool, new ByteArrayInputStream
-           ((byte[]) addendum.annotationTable));
+          (loader, addendum.pool, new ByteArrayInputStream((byte[]) table));
       } catch (IOException e) {
         AssertionError error = new AssertionError();
         error.initCause(e);
@@ -213,48 +215,54 @@ public class Classes {
   }
 
   public static void link(VMClass c, ClassLoader loader) {
-    acquireClassLock();
-    try {
-      if ((c.vmFlags & LinkFlag) == 0) {
-        if (c.super_ != null) {
-          link(c.super_, loader);
-        }
+    // We resolve everything without holding the class lock so that
+    // threads linking unrelated classes don't wait on each other.
+    // Two threads may occasionally link the same class at once, but
+    // the work is idempotent, so all that costs is a little time.
+    if ((c.vmFlags & LinkFlag) == 0) {
+      if (c.super_ != null) {
+        link(c.super_, loader);
+      }
 
-        parseAnnotationTable(loader, c.addendum);
+      parseAnnotationTable(loader, c.addendum);
 
-        if (c.interfaceTable != null) {
-          int stride = ((c.flags & Modifier.INTERFACE) != 0 ? 1 : 2);
-          for (int i = 0; i < c.interfaceTable.length; i += stride) {
-            link((VMClass) c.interfaceTable[i], loader);
-          }
+      if (c.interfaceTable != null) {
+        int stride = ((c.flags & Modifier.INTERFACE) != 0 ? 1 : 2);
+        for (int i = 0; i < c.interfaceTable.length; i += stride) {
+          link((VMClass) c.interfaceTable[i], loader);
         }
+      }
 
-        if (c.methodTable != null) {
-          for (int i = 0; i < c.methodTable.length; ++i) {
-            VMMethod m = c.methodTable[i];
-
-            for (int j = 1; j < m.spec.length;) {
-              j = resolveSpec(loader, m.spec, j);
-            }
+      if (c.methodTable != null) {
+        for (int i = 0; i < c.methodTable.length; ++i) {
+          VMMethod m = c.methodTable[i];
 
-            parseAnnotationTable(loader, m.addendum);
+          for (int j = 1; j < m.spec.length;) {
+            j = resolveSpec(loader, m.spec, j);
           }
+
+          parseAnnotationTable(loader, m.addendum);
         }
+      }
 
-        if (c.fieldTable != null) {
-          for (int i = 0; i < c.fieldTable.length; ++i) {
-            VMField f = c.fieldTable[i];
+      if (c.fieldTable != null) {
+        for (int i = 0; i < c.fieldTable.length; ++i) {
+          VMField f = c.fieldTable[i];
 
-            resolveSpec(loader, f.spec, 0);
+          resolveSpec(loader, f.spec, 0);
 
-            parseAnnotationTable(loader, f.addendum);
-          }
+          parseAnnotationTable(loader, f.addendum);
         }
+      }
 
+      // vmFlags is also updated by the VM, so we must hold the class
+      // lock to modify it
+      acquireClassLock();
+      try {
         c.vmFlags |= LinkFlag;
+      } finally {
+        releaseClassLock();
       }
-    } finally {
-      releaseClassLock();
     }
   }
 
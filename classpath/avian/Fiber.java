@@ -0,0 +1,381 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package avian;
+
+import java.nio.channels.SelectableChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A lightweight thread run by a {@link FiberScheduler}.  A fiber runs
+ * on one of the scheduler's carrier threads until it parks, at which
+ * point its stack is captured as a continuation (see {@link
+ * Continuations}) and the carrier moves on to another fiber.  When
+ * the fiber is unparked, any carrier may resume it.
+ *
+ * <p>Since a fiber may resume on a different carrier than the one it
+ * parked on, it must not park while holding a monitor or a
+ * java.util.concurrent lock, and it will see a different set of
+ * ThreadLocal values after resuming on another carrier.  Fibers can
+ * only park from code called from Java, so not from within static
+ * initializers or callbacks from native code.
+ *
+ * <p>Blocking on a monitor, Object.wait, or a
+ * java.util.concurrent lock blocks the carrier, not just the fiber.
+ * Blocking reads and writes on SocketChannels and
+ * ServerSocketChannels and reads from FileInputStreams, on the other
+ * hand, park the fiber until they can proceed.
+ *
+ * <p>Fibers require a VM built with continuation support.
+ */
+public class Fiber {
+  private static final long StateOffset;
+
+  static {
+    try {
+      StateOffset = Atomic.getOffset(Fiber.class.getField("state"));
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final int Running = 0;
+  private static final int Parked = 1;
+  private static final int Queued = 2;
+  private static final int Done = 3;
+  private static final int StateMask = 3;
+  // set when the fiber has been unparked while not parked
+  private static final int Permit = 4;
+
+  private final FiberScheduler scheduler;
+  private final Runnable task;
+  private final Suspender suspender = new Suspender();
+  private final ConcurrentLinkedQueue<Fiber> joiners
+    = new ConcurrentLinkedQueue<Fiber>();
+  private volatile int state = Queued;
+  private boolean started;
+  private Callback<Object> continuation;
+
+  Fiber(FiberScheduler scheduler, Runnable task) {
+    this.scheduler = scheduler;
+    this.task = task;
+  }
+
+  /**
+   * Returns the fiber running on the calling thread, or null if the
+   * calling thread is not a carrier thread.
+   */
+  public static Fiber current() {
+    Thread t = Thread.currentThread();
+    return t instanceof FiberScheduler.Carrier
+      ? ((FiberScheduler.Carrier) t).fiber : null;
+  }
+
+  private static Fiber currentOrThrow() {
+    Fiber f = current();
+    if (f == null) {
+      throw new IllegalStateException("not running on a fiber");
+    }
+    return f;
+  }
+
+  public FiberScheduler getScheduler() {
+    return scheduler;
+  }
+
+  public boolean isAlive() {
+    return (state & StateMask) != Done;
+  }
+
+  private boolean compareAndSwapState(int old, int new_) {
+    return Atomic.compareAndSwapInt(this, StateOffset, old, new_);
+  }
+
+  /**
+   * Disables the current fiber until it is unparked, unless a call to
+   * unpark has already happened since it last parked.  As with
+   * LockSupport.park, this may also return spuriously, so callers
+   * should recheck whatever condition they are waiting for.
+   */
+  public static void park() {
+    currentOrThrow().doPark();
+  }
+
+  private void doPark() {
+    while (true) {
+      int s = state;
+      if ((s & Permit) == 0) {
+        break;
+      }
+      if (compareAndSwapState(s, s & ~Permit)) {
+        return;
+      }
+    }
+
+    suspend(Parked);
+  }
+
+  /**
+   * Makes this fiber runnable if it is parked, or makes its next call
+   * to park return immediately otherwise.  May be called from any
+   * thread.
+   */
+  public void unpark() {
+    while (true) {
+      int s = state;
+      switch (s & StateMask) {
+      case Parked:
+        if (compareAndSwapState(s, Queued)) {
+          scheduler.submit(this);
+          return;
+        }
+        break;
+
+      case Done:
+        return;
+
+      default:
+        if ((s & Permit) != 0 || compareAndSwapState(s, s | Permit)) {
+          return;
+        }
+        break;
+      }
+    }
+  }
+
+  /**
+   * Lets other runnable fibers run before the current one continues.
+   */
+  public static void yield() {
+    currentOrThrow().suspend(Queued);
+  }
+
+  /**
+   * Parks the current fiber for at least the specified number of
+   * milliseconds, leaving its carrier free to run other fibers.
+   */
+  public static void sleep(long milliseconds) {
+    Fiber f = currentOrThrow();
+    if (milliseconds > 0) {
+      FiberScheduler.Waiter w = new FiberScheduler.Waiter
+        (f, null, 0, System.currentTimeMillis() + milliseconds);
+      f.scheduler.register(w);
+      while (! w.ready) {
+        f.doPark();
+      }
+    }
+  }
+
+  /**
+   * Parks the current fiber until the specified channel is ready for
+   * any of the specified operations (as defined by SelectionKey), or
+   * until the channel is closed.
+   */
+  public static void awaitReady(SelectableChannel channel, int operations) {
+    Fiber f = currentOrThrow();
+    FiberScheduler.Waiter w = new FiberScheduler.Waiter
+      (f, channel, operations, 0);
+    f.scheduler.register(w);
+    while (! w.ready) {
+      f.doPark();
+    }
+  }
+
+  /**
+   * Runs a task which may block in native code.  If the calling
+   * thread is a carrier, the task runs on a separate thread while the
+   * current fiber is parked, so that the carrier may run other fibers
+   * meanwhile.  Otherwise, the task is simply run by the calling
+   * thread.  Any exception thrown by the task is rethrown here.
+   */
+  public static void runBlocking(Runnable task) {
+    Fiber f = current();
+    if (f == null) {
+      task.run();
+      return;
+    }
+
+    BlockingTask t = new BlockingTask(f, task);
+    f.scheduler.blockingExecutor().execute(t);
+    while (! t.done) {
+      f.doPark();
+    }
+
+    Throwable e = t.exception;
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    } else if (e instanceof Error) {
+      throw (Error) e;
+    }
+  }
+
+  /**
+   * Waits for this fiber to finish.  If called from a fiber, only
+   * that fiber waits; its carrier remains free.
+   */
+  public void join() throws InterruptedException {
+    Fiber f = current();
+    if (f == this) throw new IllegalStateException();
+
+    if (f == null) {
+      synchronized (this) {
+        while (isAlive()) {
+          wait();
+        }
+      }
+    } else {
+      joiners.add(f);
+      while (isAlive()) {
+        f.doPark();
+      }
+    }
+  }
+
+  /**
+   * Runs or continues this fiber on the calling carrier.  Does not
+   * return normally; control returns to the carrier's scheduling loop
+   * when the fiber parks, yields, or finishes.
+   */
+  void resume() {
+    while (true) {
+      int s = state;
+      if (compareAndSwapState(s, Running | (s & Permit))) {
+        break;
+      }
+    }
+
+    if (started) {
+      Callback<Object> k = continuation;
+      continuation = null;
+      k.handleResult(null);
+    } else {
+      started = true;
+      run();
+    }
+  }
+
+  private void run() {
+    try {
+      task.run();
+    } catch (Throwable e) {
+      Thread.UncaughtExceptionHandler h
+        = Thread.getDefaultUncaughtExceptionHandler();
+      if (h != null) {
+        h.uncaughtException(Thread.currentThread(), e);
+      } else {
+        e.printStackTrace();
+      }
+    }
+
+    while (true) {
+      int s = state;
+      if (compareAndSwapState(s, Done)) {
+        break;
+      }
+    }
+
+    synchronized (this) {
+      notifyAll();
+    }
+
+    Fiber f;
+    while ((f = joiners.poll()) != null) {
+      f.unpark();
+    }
+
+    scheduler.fiberDone();
+
+    // the frames below this one may belong to a different carrier
+    // than the one we are running on now, so we must not return
+    FiberScheduler.Carrier.current().goHome();
+  }
+
+  private void suspend(int newState) {
+    suspender.newState = newState;
+    try {
+      Continuations.callWithCurrentContinuation(suspender);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Error e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public String toString() {
+    String s;
+    switch (state & StateMask) {
+    case Running: s = "running"; break;
+    case Parked: s = "parked"; break;
+    case Queued: s = "queued"; break;
+    default: s = "done"; break;
+    }
+    return "Fiber[" + task + ", " + s + "]";
+  }
+
+  private class Suspender implements CallbackReceiver<Object> {
+    public int newState;
+
+    public Object receive(Callback<Object> k) {
+      continuation = k;
+
+      if (newState == Parked) {
+        if (! compareAndSwapState(Running, Parked)) {
+          // we were unparked since checking for a permit, so consume
+          // it and keep running
+          continuation = null;
+          while (true) {
+            int s = state;
+            if (compareAndSwapState(s, s & ~Permit)) {
+              break;
+            }
+          }
+          return null;
+        }
+      } else {
+        while (true) {
+          int s = state;
+          if (compareAndSwapState(s, newState | (s & Permit))) {
+            break;
+          }
+        }
+        scheduler.submit(Fiber.this);
+      }
+
+      // another carrier may already have resumed this fiber, so we
+      // must not touch it after this point
+      FiberScheduler.Carrier.current().goHome();
+      throw new AssertionError();
+    }
+  }
+
+  private static class BlockingTask implements Runnable {
+    private final Fiber fiber;
+    private final Runnable task;
+    public volatile boolean done;
+    public Throwable exception;
+
+    public BlockingTask(Fiber fiber, Runnable task) {
+      this.fiber = fiber;
+      this.task = task;
+    }
+
+    public void run() {
+      try {
+        task.run();
+      } catch (Throwable e) {
+        exception = e;
+      }
+      done = true;
+      fiber.unpark();
+    }
+  }
+}
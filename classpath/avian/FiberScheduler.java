@@ -0,0 +1,374 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package avian;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link Fiber}s on a fixed number of daemon carrier threads.
+ * Runnable fibers wait in a shared queue; a carrier takes the next
+ * one and runs it until it parks, yields, or finishes.  Fibers
+ * waiting for a channel to become ready or for a sleep to elapse are
+ * tracked by a single poller thread, which is started on demand.
+ *
+ * <p>Each carrier captures a continuation when it starts, and
+ * returns to it whenever the fiber it is running gives up control.
+ * This requires a VM built with continuation support.
+ */
+public class FiberScheduler {
+  // tells a carrier to exit
+  private static final Fiber Stop = new Fiber(null, null);
+
+  private static int nextSchedulerNumber = 1;
+
+  private final LinkedBlockingQueue<Fiber> queue
+    = new LinkedBlockingQueue<Fiber>();
+  private final Object lock = new Object();
+  private final String name;
+  private int carrierCount;
+  private int liveCount;
+  private boolean shutdown;
+  private Poller poller;
+  private ExecutorService blockingExecutor;
+
+  public FiberScheduler(int carrierCount) {
+    if (carrierCount <= 0) throw new IllegalArgumentException();
+
+    synchronized (FiberScheduler.class) {
+      name = "fibers-" + (nextSchedulerNumber++);
+    }
+
+    this.carrierCount = carrierCount;
+    for (int i = 0; i < carrierCount; ++i) {
+      Carrier c = new Carrier(this, name + "-carrier-" + (i + 1));
+      c.start();
+    }
+  }
+
+  public FiberScheduler() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a fiber which will run the specified task and makes it
+   * runnable.
+   */
+  public Fiber spawn(Runnable task) {
+    if (task == null) throw new NullPointerException();
+
+    Fiber f = new Fiber(this, task);
+    synchronized (lock) {
+      if (shutdown) {
+        throw new IllegalStateException("scheduler has been shut down");
+      }
+      ++ liveCount;
+    }
+    submit(f);
+    return f;
+  }
+
+  void submit(Fiber f) {
+    queue.add(f);
+  }
+
+  void fiberDone() {
+    synchronized (lock) {
+      if (-- liveCount == 0 && shutdown) {
+        terminate();
+      }
+    }
+  }
+
+  // must be called with the lock held
+  private void terminate() {
+    for (int i = 0; i < carrierCount; ++i) {
+      queue.add(Stop);
+    }
+
+    if (poller != null) {
+      poller.stopPolling();
+    }
+
+    if (blockingExecutor != null) {
+      blockingExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Stops accepting new fibers.  The carrier threads exit once every
+   * fiber already spawned has finished.
+   */
+  public void shutdown() {
+    synchronized (lock) {
+      if (! shutdown) {
+        shutdown = true;
+        if (liveCount == 0) {
+          terminate();
+        }
+      }
+    }
+  }
+
+  public boolean isShutdown() {
+    synchronized (lock) {
+      return shutdown;
+    }
+  }
+
+  public boolean isTerminated() {
+    synchronized (lock) {
+      return carrierCount == 0;
+    }
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+    synchronized (lock) {
+      while (carrierCount != 0) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return false;
+        }
+        lock.wait(remaining);
+      }
+      return true;
+    }
+  }
+
+  private void carrierExited() {
+    synchronized (lock) {
+      if (-- carrierCount == 0) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private Fiber next() {
+    while (true) {
+      try {
+        Fiber f = queue.take();
+        return f == Stop ? null : f;
+      } catch (InterruptedException e) {
+        // carriers only exit when told to
+      }
+    }
+  }
+
+  void register(Waiter w) {
+    Poller p;
+    synchronized (lock) {
+      if (poller == null) {
+        try {
+          poller = new Poller(name + "-poller");
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        poller.start();
+      }
+      p = poller;
+    }
+    p.add(w);
+  }
+
+  ExecutorService blockingExecutor() {
+    synchronized (lock) {
+      if (blockingExecutor == null) {
+        blockingExecutor = Executors.newCachedThreadPool
+          (new ThreadFactory() {
+            private int nextThreadNumber = 1;
+
+            public Thread newThread(Runnable task) {
+              Thread t;
+              synchronized (this) {
+                t = new Thread
+                  (task, name + "-blocking-" + (nextThreadNumber++));
+              }
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      }
+      return blockingExecutor;
+    }
+  }
+
+  public String toString() {
+    synchronized (lock) {
+      return "FiberScheduler[" + name
+        + ", carriers = " + carrierCount
+        + ", fibers = " + liveCount
+        + ", queued = " + queue.size()
+        + (shutdown ? ", shut down" : "") + "]";
+    }
+  }
+
+  static class Carrier extends Thread {
+    private final FiberScheduler scheduler;
+    private Callback<Object> home;
+    Fiber fiber;
+
+    public Carrier(FiberScheduler scheduler, String name) {
+      super(name);
+      this.scheduler = scheduler;
+      setDaemon(true);
+    }
+
+    public static Carrier current() {
+      return (Carrier) Thread.currentThread();
+    }
+
+    public void run() {
+      try {
+        Continuations.callWithCurrentContinuation
+          (new CallbackReceiver<Object>() {
+            public Object receive(Callback<Object> k) {
+              home = k;
+              return null;
+            }
+          });
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+
+      // we return here every time a fiber gives up control, so
+      // nothing from a previous iteration may be kept in locals
+      fiber = null;
+
+      Fiber f = scheduler.next();
+      if (f != null) {
+        fiber = f;
+        f.resume();
+        throw new AssertionError();
+      }
+
+      scheduler.carrierExited();
+    }
+
+    void goHome() {
+      home.handleResult(null);
+    }
+  }
+
+  static class Waiter {
+    public final Fiber fiber;
+    public final SelectableChannel channel;
+    public final int operations;
+    public final long deadline;
+    public volatile boolean ready;
+
+    public Waiter(Fiber fiber, SelectableChannel channel, int operations,
+                  long deadline)
+    {
+      this.fiber = fiber;
+      this.channel = channel;
+      this.operations = operations;
+      this.deadline = deadline;
+    }
+
+    public void wake() {
+      if (! ready) {
+        ready = true;
+        fiber.unpark();
+      }
+    }
+  }
+
+  private static class Poller extends Thread {
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Waiter> pending
+      = new ConcurrentLinkedQueue<Waiter>();
+    private final PriorityQueue<Waiter> timers = new PriorityQueue<Waiter>
+      (11, new Comparator<Waiter>() {
+        public int compare(Waiter a, Waiter b) {
+          return a.deadline < b.deadline ? -1
+            : (a.deadline > b.deadline ? 1 : 0);
+        }
+      });
+    private volatile boolean stopped;
+
+    public Poller(String name) throws IOException {
+      super(name);
+      setDaemon(true);
+      selector = Selector.open();
+    }
+
+    public void add(Waiter w) {
+      pending.add(w);
+      selector.wakeup();
+    }
+
+    public void stopPolling() {
+      stopped = true;
+      selector.wakeup();
+    }
+
+    public void run() {
+      while (! stopped) {
+        Waiter w;
+        while ((w = pending.poll()) != null) {
+          if (w.channel == null) {
+            timers.add(w);
+          } else {
+            w.channel.register(selector, w.operations, w);
+          }
+        }
+
+        // the selector drops keys for closed channels without telling
+        // anyone, so wake their fibers here
+        for (SelectionKey key: selector.keys()) {
+          if (! key.channel().isOpen()) {
+            ((Waiter) key.attachment()).wake();
+          }
+        }
+
+        long now = System.currentTimeMillis();
+        while (! timers.isEmpty() && timers.peek().deadline <= now) {
+          timers.poll().wake();
+        }
+
+        try {
+          if (timers.isEmpty()) {
+            selector.select();
+          } else {
+            selector.select(timers.peek().deadline - now);
+          }
+        } catch (IOException e) {
+          // wake everyone so they can see the error for themselves
+          for (SelectionKey key: selector.keys()) {
+            key.cancel();
+            ((Waiter) key.attachment()).wake();
+          }
+          continue;
+        }
+
+        for (SelectionKey key: selector.selectedKeys()) {
+          key.cancel();
+          ((Waiter) key.attachment()).wake();
+        }
+      }
+
+      selector.close();
+    }
+  }
+}
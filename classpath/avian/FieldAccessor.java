@@ -0,0 +1,27 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package avian;
+
+/**
+ * Reads and writes a particular field, boxing and unboxing as
+ * Field.get and Field.set do.  Subclasses are generated at runtime by
+ * java.lang.reflect.Accessors.
+ */
+public abstract class FieldAccessor {
+  public abstract Object get(Object instance);
+
+  /**
+   * Sets the field, throwing a ClassCastException if the value has
+   * the wrong type, or a NullPointerException if it is null and the
+   * field is primitive.
+   */
+  public abstract void set(Object instance, Object value);
+}
@@ -14,4 +14,21 @@ public abstract class Machine {
 
   public static native void dumpHeap(String outputFile);
 
+  /**
+   * Returns the number of unreachable objects waiting to be finalized
+   * or cleaned.
+   */
+  public static native int finalizerQueueLength();
+
+  /**
+   * Returns the number of objects finalized or cleaned so far.
+   */
+  public static native long finalizedCount();
+
+  /**
+   * Returns the longest time, in milliseconds, that a finalizable
+   * object has waited for a finalizer thread to pick it up.
+   */
+  public static native long maxFinalizerLatency();
+
 }
@@ -0,0 +1,29 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package avian;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Invokes a particular method, boxing and unboxing as
+ * Method.invoke does.  Subclasses are generated at runtime by
+ * java.lang.reflect.Accessors.
+ */
+public abstract class MethodAccessor {
+  /**
+   * Invokes the method, wrapping any exception it throws in an
+   * InvocationTargetException.  Arguments of the wrong type cause a
+   * ClassCastException, and null arguments for primitive parameters a
+   * NullPointerException.
+   */
+  public abstract Object invoke(Object instance, Object[] arguments)
+    throws InvocationTargetException;
+}
@@ -13,4 +13,5 @@ package avian;
 public class MethodAddendum extends Addendum {
   public Object exceptionTable;
   public Object annotationDefault;
+  public Object bytecode;
 }
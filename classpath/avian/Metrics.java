@@ -0,0 +1,161 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package avian;
+
+import java.io.PrintStream;
+
+/**
+ * Reports what the garbage collector, allocator, monitors, and JIT
+ * compiler have been doing since the VM started.  All times are in
+ * nanoseconds and all sizes in bytes.
+ *
+ * <p>If the avian.metrics.log system property is set when the VM
+ * starts, a line describing each collection is also written to the
+ * file it names.
+ */
+public abstract class Metrics {
+  public static final int MinorCollection = 0;
+  public static final int MajorCollection = 1;
+
+  // the number of longs per collection returned by collectionData
+  private static final int CollectionFieldCount = 6;
+
+  /**
+   * Returns the number of collections of the specified type.
+   */
+  public static native long collectionCount(int type);
+
+  /**
+   * Returns the total time spent in collections of the specified
+   * type, including the time taken to process weak references.
+   */
+  public static native long collectionTime(int type);
+
+  /**
+   * Returns the total number of bytes copied from the young
+   * generation to the old one.
+   */
+  public static native long promotedBytes();
+
+  /**
+   * Returns the number of collections by pause time.  Element zero
+   * counts pauses shorter than two microseconds, and element i > 0
+   * counts those from 2^i up to 2^(i+1) microseconds, except the last
+   * element, which also counts everything longer.
+   */
+  public static native long[] pauseHistogram();
+
+  /**
+   * Returns the most recent collections, oldest first.  Only a
+   * limited number are remembered.
+   */
+  public static Collection[] recentCollections() {
+    long[] data = collectionData();
+    Collection[] array = new Collection[data.length / CollectionFieldCount];
+    for (int i = 0; i < array.length; ++i) {
+      int j = i * CollectionFieldCount;
+      array[i] = new Collection
+        ((int) data[j], data[j + 1], data[j + 2], data[j + 3], data[j + 4],
+         data[j + 5]);
+    }
+    return array;
+  }
+
+  private static native long[] collectionData();
+
+  /**
+   * Returns the number of bytes the current thread has allocated.
+   */
+  public static long allocatedBytes() {
+    return allocatedBytes(Thread.currentThread());
+  }
+
+  /**
+   * Returns the number of bytes the specified thread has allocated,
+   * or -1 if it is not running.
+   */
+  public static native long allocatedBytes(Thread thread);
+
+  /**
+   * Returns the number of unreachable objects waiting to be finalized
+   * or cleaned.
+   */
+  public static int finalizerQueueLength() {
+    return Machine.finalizerQueueLength();
+  }
+
+  /**
+   * Returns the number of monitors created for objects used with
+   * synchronized, wait, or notify.
+   */
+  public static native long monitorCount();
+
+  /**
+   * Returns the number of methods compiled by the JIT compiler, which
+   * is always zero when running in interpreted mode.
+   */
+  public static native long compiledMethodCount();
+
+  /**
+   * Returns the total time spent by the JIT compiler.
+   */
+  public static native long compileTime();
+
+  public static void dump(PrintStream out) {
+    out.println("minor collections: " + collectionCount(MinorCollection)
+                + " (" + (collectionTime(MinorCollection) / 1000000) + " ms)");
+    out.println("major collections: " + collectionCount(MajorCollection)
+                + " (" + (collectionTime(MajorCollection) / 1000000) + " ms)");
+    out.println("promoted: " + promotedBytes() + " bytes");
+
+    long[] histogram = pauseHistogram();
+    for (int i = 0; i < histogram.length; ++i) {
+      if (histogram[i] != 0) {
+        out.println("  pauses under " + (2L << i) + " us: " + histogram[i]);
+      }
+    }
+
+    out.println("allocated by this thread: " + allocatedBytes() + " bytes");
+    out.println("finalizer queue length: " + finalizerQueueLength());
+    out.println("monitors: " + monitorCount());
+    out.println("compiled methods: " + compiledMethodCount()
+                + " (" + (compileTime() / 1000000) + " ms)");
+  }
+
+  public static class Collection {
+    public final int type;
+    public final long start;
+    public final long duration;
+    public final long promotedBytes;
+    public final long survivorBytes;
+    public final long tenuredBytes;
+
+    private Collection(int type, long start, long duration,
+                       long promotedBytes, long survivorBytes,
+                       long tenuredBytes)
+    {
+      this.type = type;
+      this.start = start;
+      this.duration = duration;
+      this.promotedBytes = promotedBytes;
+      this.survivorBytes = survivorBytes;
+      this.tenuredBytes = tenuredBytes;
+    }
+
+    public String toString() {
+      return (type == MinorCollection ? "minor" : "major")
+        + " collection: " + (duration / 1000) + " us, "
+        + promotedBytes + " bytes promoted, "
+        + survivorBytes + " bytes survived, "
+        + tenuredBytes + " bytes tenured";
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package avian;
+
+import java.util.Collection;
+
+/**
+ * A bounded, wait-free queue for passing elements from exactly one
+ * producer thread to exactly one consumer thread.  Only the producer
+ * may call offer, and only the consumer may call poll, peek, or
+ * drainTo; other methods may be called from any thread.
+ *
+ * The producer's and consumer's indexes live on separate cache lines,
+ * and each side keeps a private copy of the other side's index which
+ * it refreshes only when the queue looks full (or empty), so in the
+ * steady state neither thread reads memory written by the other
+ * except for the elements themselves.
+ */
+public class RingBuffer<T> {
+  private final Object[] array;
+  private final int mask;
+
+  // fields are laid out in declaration order, so these keep the
+  // indexes below off the line holding the header and array
+  private long p00, p01, p02, p03, p04, p05, p06, p07;
+
+  // written by the consumer
+  private volatile int head;
+  private int cachedTail;
+
+  private long p10, p11, p12, p13, p14, p15, p16, p17;
+
+  // written by the producer
+  private volatile int tail;
+  private int cachedHead;
+
+  private long p20, p21, p22, p23, p24, p25, p26, p27;
+
+  /**
+   * Creates a queue which holds at least the specified number of
+   * elements.  The capacity is rounded up to a power of two.
+   */
+  public RingBuffer(int capacity) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException();
+    }
+
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+
+    array = new Object[size];
+    mask = size - 1;
+  }
+
+  public int capacity() {
+    return array.length;
+  }
+
+  /**
+   * Adds the specified element if there is room, returning false
+   * otherwise.  Must only be called by the producer.
+   */
+  public boolean offer(T element) {
+    if (element == null) throw new NullPointerException();
+
+    int t = tail;
+    // indexes are allowed to wrap around, so compare differences
+    if (t - cachedHead == array.length) {
+      cachedHead = head;
+      if (t - cachedHead == array.length) {
+        return false;
+      }
+    }
+
+    array[t & mask] = element;
+    tail = t + 1;
+    return true;
+  }
+
+  /**
+   * Removes and returns the next element, or null if the queue is
+   * empty.  Must only be called by the consumer.
+   */
+  public T poll() {
+    int h = head;
+    if (h == cachedTail) {
+      cachedTail = tail;
+      if (h == cachedTail) {
+        return null;
+      }
+    }
+
+    int index = h & mask;
+    T element = (T) array[index];
+    array[index] = null;
+    head = h + 1;
+    return element;
+  }
+
+  /**
+   * Returns the next element without removing it, or null if the
+   * queue is empty.  Must only be called by the consumer.
+   */
+  public T peek() {
+    int h = head;
+    if (h == cachedTail) {
+      cachedTail = tail;
+      if (h == cachedTail) {
+        return null;
+      }
+    }
+
+    return (T) array[h & mask];
+  }
+
+  /**
+   * Moves up to max elements to the specified collection, publishing
+   * the consumer's progress to the producer only once.  Must only be
+   * called by the consumer.
+   */
+  public int drainTo(Collection<? super T> collection, int max) {
+    int h = head;
+    int available = (cachedTail = tail) - h;
+    int n = Math.min(available, max);
+    if (n <= 0) {
+      return 0;
+    }
+
+    int i = 0;
+    try {
+      for (; i < n; ++i) {
+        int index = (h + i) & mask;
+        collection.add((T) array[index]);
+        array[index] = null;
+      }
+    } finally {
+      head = h + i;
+    }
+    return n;
+  }
+
+  /**
+   * Returns the number of elements in the queue, which may be stale
+   * by the time it is returned if either side is active.
+   */
+  public int size() {
+    int h = head;
+    int n = tail - h;
+    return n < 0 ? 0 : (n > array.length ? array.length : n);
+  }
+
+  public boolean isEmpty() {
+    return head == tail;
+  }
+}
@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -19,6 +19,12 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 
 public class SystemClassLoader extends ClassLoader {
+  static {
+    // the VM serializes loading only per loader and class name (see
+    // resolveSystemClass in machine.cpp), so we may do the same
+    registerAsParallelCapable();
+  }
+
   private native VMClass findVMClass(String name)
     throws ClassNotFoundException;
 
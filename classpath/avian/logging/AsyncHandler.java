@@ -0,0 +1,161 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package avian.logging;
+
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * A handler which queues records in a bounded ring buffer and
+ * passes them to another handler on a background thread.  Logging
+ * threads never wait for the target handler; if the buffer is full,
+ * new records are dropped and counted instead.
+ */
+public class AsyncHandler extends Handler {
+  private final Handler target;
+  private final LogRecord[] buffer;
+  private int head;
+  private int size;
+  private int inFlight;
+  private long dropped;
+  private boolean closed;
+  private final Thread writer;
+
+  public AsyncHandler(Handler target, int capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException();
+
+    this.target = target;
+    this.buffer = new LogRecord[capacity];
+
+    writer = new Thread(new Runnable() {
+        public void run() {
+          drain();
+        }
+      }, "AsyncHandler");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  public AsyncHandler(Handler target) {
+    this(target, 1024);
+  }
+
+  public void publish(LogRecord r) {
+    synchronized (this) {
+      if (closed || size == buffer.length) {
+        ++ dropped;
+        return;
+      }
+
+      buffer[(head + size) % buffer.length] = r;
+      if (size++ == 0) {
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of records dropped because the buffer was
+   * full or the handler was closed.
+   */
+  public synchronized long droppedCount() {
+    return dropped;
+  }
+
+  private void drain() {
+    LogRecord[] batch = new LogRecord[buffer.length];
+    while (true) {
+      int count;
+      synchronized (this) {
+        while (size == 0 && ! closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            // ignore
+          }
+        }
+
+        if (size == 0) {
+          notifyAll();
+          return;
+        }
+
+        // take everything queued so far in one batch
+        count = size;
+        for (int i = 0; i < count; ++i) {
+          int index = (head + i) % buffer.length;
+          batch[i] = buffer[index];
+          buffer[index] = null;
+        }
+        head = (head + count) % buffer.length;
+        size = 0;
+        inFlight = count;
+      }
+
+      for (int i = 0; i < count; ++i) {
+        try {
+          target.publish(batch[i]);
+        } catch (RuntimeException e) {
+          // a failing target must not kill the writer thread
+        }
+        batch[i] = null;
+      }
+
+      try {
+        target.flush();
+      } catch (RuntimeException e) {
+        // ignore
+      }
+
+      synchronized (this) {
+        inFlight = 0;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits until every record published so far has been passed to the
+   * target handler, then flushes the target.
+   */
+  public void flush() {
+    synchronized (this) {
+      while ((size != 0 || inFlight != 0) && writer.isAlive()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+    target.flush();
+  }
+
+  /**
+   * Delivers any queued records, stops the background thread, and
+   * closes the target handler.
+   */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    target.close();
+  }
+}
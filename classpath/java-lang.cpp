@@ -288,6 +288,14 @@ Java_java_lang_Runtime_kill(JNIEnv*, jclass, jlong pid) {
   TerminateProcess(reinterpret_cast<HANDLE>(pid), 1);
 }
 
+extern "C" JNIEXPORT jint JNICALL
+Java_java_lang_Runtime_availableProcessors(JNIEnv*, jobject)
+{
+  SYSTEM_INFO si;
+  GetSystemInfo(&si);
+  return si.dwNumberOfProcessors;
+}
+
 Locale getLocale() {
   const char* lang = "";
   const char* reg = "";
@@ -480,6 +488,13 @@ Java_java_lang_Runtime_kill(JNIEnv*, jclass, jlong pid) {
   kill((pid_t)pid, SIGTERM);
 }
 
+extern "C" JNIEXPORT jint JNICALL
+Java_java_lang_Runtime_availableProcessors(JNIEnv*, jobject)
+{
+  long count = sysconf(_SC_NPROCESSORS_ONLN);
+  return count > 0 ? count : 1;
+}
+
 Locale getLocale() {
   Locale fallback;
 
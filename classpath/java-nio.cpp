@@ -317,7 +317,7 @@ doAccept(JNIEnv* e, int s)
   int r = ::accept(s, &address, &length);
   if (r >= 0) {
     return r;
-  } else if (errno != EINTR) {
+  } else if (errno != EINTR and not eagain()) {
     throwIOException(e);
   }
   return -1;
@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2009, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -45,6 +45,12 @@ Java_java_util_zip_Inflater_dispose(JNIEnv*, jclass, jlong peer)
   free(s);
 }
 
+extern "C" JNIEXPORT void JNICALL
+Java_java_util_zip_Inflater_reset(JNIEnv*, jclass, jlong peer)
+{
+  inflateReset(reinterpret_cast<z_stream*>(peer));
+}
+
 extern "C" JNIEXPORT void JNICALL
 Java_java_util_zip_Inflater_inflate
 (JNIEnv* e, jclass, jlong peer,
@@ -54,34 +60,24 @@ Java_java_util_zip_Inflater_inflate
 {
   z_stream* s = reinterpret_cast<z_stream*>(peer);
 
-  jbyte* in = static_cast<jbyte*>(malloc(inputLength));
-  if (in == 0) {
-    throwNew(e, "java/lang/OutOfMemoryError", 0);
-    return;    
-  }
+  // zlib works directly on the array bodies rather than on copies,
+  // which is safe since it neither blocks nor calls back into Java
+  jbyte* in = static_cast<jbyte*>
+    (e->GetPrimitiveArrayCritical(input, 0));
+  jbyte* out = static_cast<jbyte*>
+    (e->GetPrimitiveArrayCritical(output, 0));
 
-  jbyte* out = static_cast<jbyte*>(malloc(outputLength));
-  if (out == 0) {
-    free(in);
-    throwNew(e, "java/lang/OutOfMemoryError", 0);
-    return;    
-  }
-
-  e->GetByteArrayRegion(input, inputOffset, inputLength, in);
-  
-  s->next_in = reinterpret_cast<Bytef*>(in);
+  s->next_in = reinterpret_cast<Bytef*>(in + inputOffset);
   s->avail_in = inputLength;
-  s->next_out = reinterpret_cast<Bytef*>(out);
+  s->next_out = reinterpret_cast<Bytef*>(out + outputOffset);
   s->avail_out = outputLength;
 
   int r = inflate(s, Z_SYNC_FLUSH);
   jint resultArray[3]
     = { r, inputLength - s->avail_in, outputLength - s->avail_out };
 
-  free(in);
-
-  e->SetByteArrayRegion(output, outputOffset, resultArray[2], out);
-  free(out);
+  e->ReleasePrimitiveArrayCritical(output, out, 0);
+  e->ReleasePrimitiveArrayCritical(input, in, JNI_ABORT);
 
   e->SetIntArrayRegion(results, 0, 3, resultArray);
 }
@@ -116,6 +112,20 @@ Java_java_util_zip_Deflater_dispose(JNIEnv*, jclass, jlong peer)
   free(s);
 }
 
+extern "C" JNIEXPORT void JNICALL
+Java_java_util_zip_Deflater_reset(JNIEnv* e, jclass, jlong peer, jint level)
+{
+  z_stream* s = reinterpret_cast<z_stream*>(peer);
+  deflateReset(s);
+
+  // no input has been seen since the reset, so this does not flush
+  // anything
+  int r = deflateParams(s, level, Z_DEFAULT_STRATEGY);
+  if (r != Z_OK) {
+    throwNew(e, "java/lang/IllegalArgumentException", zError(r));
+  }
+}
+
 extern "C" JNIEXPORT void JNICALL
 Java_java_util_zip_Deflater_deflate
 (JNIEnv* e, jclass, jlong peer, 
@@ -125,34 +135,22 @@ Java_java_util_zip_Deflater_deflate
 {
   z_stream* s = reinterpret_cast<z_stream*>(peer);
 
-  jbyte* in = static_cast<jbyte*>(malloc(inputLength));
-  if (in == 0) {
-    throwNew(e, "java/lang/OutOfMemoryError", 0);
-    return;    
-  }
-
-  jbyte* out = static_cast<jbyte*>(malloc(outputLength));
-  if (out == 0) {
-    free(in);
-    throwNew(e, "java/lang/OutOfMemoryError", 0);
-    return;    
-  }
+  jbyte* in = static_cast<jbyte*>
+    (e->GetPrimitiveArrayCritical(input, 0));
+  jbyte* out = static_cast<jbyte*>
+    (e->GetPrimitiveArrayCritical(output, 0));
 
-  e->GetByteArrayRegion(input, inputOffset, inputLength, in);
-  
-  s->next_in = reinterpret_cast<Bytef*>(in);
+  s->next_in = reinterpret_cast<Bytef*>(in + inputOffset);
   s->avail_in = inputLength;
-  s->next_out = reinterpret_cast<Bytef*>(out);
+  s->next_out = reinterpret_cast<Bytef*>(out + outputOffset);
   s->avail_out = outputLength;
 
   int r = deflate(s, finish ? Z_FINISH : Z_NO_FLUSH);
   jint resultArray[3]
     = { r, inputLength - s->avail_in, outputLength - s->avail_out };
 
-  free(in);
-
-  e->SetByteArrayRegion(output, outputOffset, resultArray[2], out);
-  free(out);
+  e->ReleasePrimitiveArrayCritical(output, out, 0);
+  e->ReleasePrimitiveArrayCritical(input, in, JNI_ABORT);
 
   e->SetIntArrayRegion(results, 0, 3, resultArray);
 }
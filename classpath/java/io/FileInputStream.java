@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -10,6 +10,8 @@
 
 package java.io;
 
+import avian.Fiber;
+
 public class FileInputStream extends InputStream {
   //   static {
   //     System.loadLibrary("natives");
@@ -39,6 +41,10 @@ public class FileInputStream extends InputStream {
   public static native void close(int fd) throws IOException;
 
   public int read() throws IOException {
+    if (Fiber.current() != null) {
+      return blockingRead(fd, null, 0, 0);
+    }
+
     return read(fd);
   }
 
@@ -51,13 +57,54 @@ public class FileInputStream extends InputStream {
       throw new ArrayIndexOutOfBoundsException();
     }
 
+    if (Fiber.current() != null) {
+      return blockingRead(fd, b, offset, length);
+    }
+
     return read(fd, b, offset, length);
   }
 
+  // reads on behalf of a fiber without blocking its carrier
+  private static int blockingRead(int fd, byte[] b, int offset, int length)
+    throws IOException
+  {
+    BlockingRead read = new BlockingRead(fd, b, offset, length);
+    Fiber.runBlocking(read);
+    if (read.exception != null) {
+      throw read.exception;
+    }
+    return read.result;
+  }
+
   public void close() throws IOException {
     if (fd != -1) {
       close(fd);
       fd = -1;
     }
   }
+
+  private static class BlockingRead implements Runnable {
+    private final int fd;
+    private final byte[] buffer;
+    private final int offset;
+    private final int length;
+    public int result;
+    public IOException exception;
+
+    public BlockingRead(int fd, byte[] buffer, int offset, int length) {
+      this.fd = fd;
+      this.buffer = buffer;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public void run() {
+      try {
+        result = buffer == null
+          ? read(fd) : read(fd, buffer, offset, length);
+      } catch (IOException e) {
+        exception = e;
+      }
+    }
+  }
 }
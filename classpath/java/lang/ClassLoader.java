@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -12,14 +12,24 @@ package java.lang;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 public abstract class ClassLoader {
+  private static final Set<Class> ParallelCapable = new HashSet<Class>();
+
   private final ClassLoader parent;
+  // created lazily, since the VM creates the system class loaders
+  // without running a constructor
+  private Map<String, Object> loadingLocks;
 
   protected ClassLoader(ClassLoader parent) {
     if (parent == null) {
@@ -37,6 +47,56 @@ public abstract class ClassLoader {
     return ClassLoader.class.getClassLoader();
   }
 
+  /**
+   * Registers the calling class as a loader which may load several
+   * classes at once, such that {@link #loadClass(String,boolean)}
+   * locks only the name it is loading rather than the whole loader.
+   * This should be called from the static initializer of the loader
+   * class.
+   */
+  protected static boolean registerAsParallelCapable() {
+    Class c = avian.SystemClassLoader.getClass(Method.getCaller().class_);
+    synchronized (ParallelCapable) {
+      ParallelCapable.add(c);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the object to lock while loading the class with the
+   * specified name: a lock for that name if this loader is parallel
+   * capable, and the loader itself otherwise.
+   */
+  protected Object getClassLoadingLock(String name) {
+    Map<String, Object> locks = loadingLocks;
+    if (locks == null) {
+      // note that getClass may trigger initialization of this
+      // loader's class, whose static initializer may call
+      // registerAsParallelCapable, so we must not hold a lock here
+      Class c = getClass();
+      synchronized (ParallelCapable) {
+        if (! ParallelCapable.contains(c)) {
+          return this;
+        }
+      }
+
+      synchronized (this) {
+        if (loadingLocks == null) {
+          loadingLocks = new HashMap<String, Object>();
+        }
+        locks = loadingLocks;
+      }
+    }
+
+    synchronized (locks) {
+      Object lock = locks.get(name);
+      if (lock == null) {
+        locks.put(name, lock = new Object());
+      }
+      return lock;
+    }
+  }
+
   protected Class defineClass(String name, byte[] b, int offset, int length) {
     if (b == null) {
       throw new NullPointerException();
@@ -69,24 +129,26 @@ public abstract class ClassLoader {
   protected Class loadClass(String name, boolean resolve)
     throws ClassNotFoundException
   {
-    Class c = findLoadedClass(name);
-    if (c == null) {
-      if (parent != null) {
-        try {
-          c = parent.loadClass(name);
-        } catch (ClassNotFoundException ok) { }
+    synchronized (getClassLoadingLock(name)) {
+      Class c = findLoadedClass(name);
+      if (c == null) {
+        if (parent != null) {
+          try {
+            c = parent.loadClass(name);
+          } catch (ClassNotFoundException ok) { }
+        }
+
+        if (c == null) {
+          c = findClass(name);
+        }
       }
 
-      if (c == null) {
-        c = findClass(name);
+      if (resolve) {
+        resolveClass(c);
       }
-    }
 
-    if (resolve) {
-      resolveClass(c);
+      return c;
     }
-
-    return c;
   }
 
   protected void resolveClass(Class c) {
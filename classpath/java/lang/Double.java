@@ -1,4 +1,4 @@
-/* Copyright (c) 2008, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -103,6 +103,20 @@ public final class Double extends Number {
 	  return doubleToRawLongBits(value);
   }
 
+  public static int compare(double a, double b) {
+    if (a < b) {
+      return -1;
+    } else if (a > b) {
+      return 1;
+    }
+
+    // NaN is greater than everything, including positive infinity,
+    // and -0.0 is less than 0.0
+    long x = isNaN(a) ? 0x7ff8000000000000L : doubleToRawLongBits(a);
+    long y = isNaN(b) ? 0x7ff8000000000000L : doubleToRawLongBits(b);
+    return x == y ? 0 : (x < y ? -1 : 1);
+  }
+
   public static native int fillBufferWithDouble(double value, byte[] buffer,
                                                 int charCount);
 
@@ -11,6 +11,12 @@
 package java.lang;
 
 public class Error extends Throwable {
+  protected Error(String message, Throwable cause,
+                  boolean enableSuppression, boolean writableStackTrace)
+  {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
+
   public Error(String message, Throwable cause) {
     super(message, cause);
   }
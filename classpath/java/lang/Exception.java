@@ -11,6 +11,12 @@
 package java.lang;
 
 public class Exception extends Throwable {
+  protected Exception(String message, Throwable cause,
+                      boolean enableSuppression, boolean writableStackTrace)
+  {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
+
   public Exception(String message, Throwable cause) {
     super(message, cause);
   }
@@ -11,6 +11,13 @@
 package java.lang;
 
 public class RuntimeException extends Exception {
+  protected RuntimeException(String message, Throwable cause,
+                             boolean enableSuppression,
+                             boolean writableStackTrace)
+  {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
+
   public RuntimeException(String message, Throwable cause) {
     super(message, cause);
   }
@@ -10,9 +10,6 @@
 
 package java.lang;
 
-import java.util.Map;
-import java.util.WeakHashMap;
-
 public class Thread implements Runnable {
   private long peer;
   private volatile boolean interrupted;
@@ -21,7 +18,12 @@ public class Thread implements Runnable {
   private byte state;
   private byte priority;
   private final Runnable task;
-  private Map<ThreadLocal, Object> locals;
+  // per-thread values of ThreadLocals, indexed by ThreadLocal.index
+  Object[] localValues;
+  int[] localVersions;
+  // see ThreadLocal.expunge
+  int localAccesses;
+  int localStamp;
   private Object sleepLock;
   private ClassLoader classLoader;
   private UncaughtExceptionHandler exceptionHandler;
@@ -42,15 +44,7 @@ public class Thread implements Runnable {
 
     Thread current = currentThread();
 
-    Map<ThreadLocal, Object> map = current.locals;
-    if (map != null) {
-      for (Map.Entry<ThreadLocal, Object> e: map.entrySet()) {
-        if (e.getKey() instanceof InheritableThreadLocal) {
-          InheritableThreadLocal itl = (InheritableThreadLocal) e.getKey();
-          locals().put(itl, itl.childValue(e.getValue()));
-        }
-      }
-    }
+    ThreadLocal.inherit(current, this);
 
     classLoader = current.classLoader;
   }
@@ -130,23 +124,21 @@ public class Thread implements Runnable {
     classLoader = v;
   }
 
-  public Map<ThreadLocal, Object> locals() {
-    if (locals == null) {
-      locals = new WeakHashMap();
-    }
-    return locals;
-  }
-
   public static native Thread currentThread();
 
   public void interrupt() {
-    interrupt(peer);
+    // the peer is cleared when the thread exits
+    long p = peer;
+    if (p != 0) {
+      interrupt(p);
+    }
   }
 
   private static native boolean interrupt(long peer);
 
   public boolean interrupted() {
-    return interrupted(peer);
+    long p = peer;
+    return p != 0 && interrupted(p);
   }
 
   private static native boolean interrupted(long peer);
@@ -10,37 +10,241 @@
 
 package java.lang;
 
-import java.util.Map;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 
+/**
+ * Each ThreadLocal is assigned a small index when constructed, and
+ * each thread stores its values in an array indexed by it, so get
+ * and set never hash.  When a ThreadLocal is collected its index is
+ * recycled under a new version number; values stored under an older
+ * version are treated as absent.  Every thread drops such values
+ * from its own table on its next get or set after the collected
+ * ThreadLocal has been released, which happens within ExpungeInterval
+ * accesses by any thread.
+ */
 public class ThreadLocal<T> {
-  private static final Object Null = new Object();
+  private static final int ExpungeInterval = 64;
+
+  private static final Object lock = new Object();
+  private static final ReferenceQueue<ThreadLocal> queue
+    = new ReferenceQueue();
+  private static Slot[] slots = new Slot[16];
+  private static int[] versions = new int[16];
+  private static int[] free = new int[16];
+  private static int freeCount;
+  private static int nextIndex;
+  private static int inheritableCount;
+  // incremented whenever a slot is released
+  private static int stamp;
+
+  private final int index;
+  private final int version;
+
+  public ThreadLocal() {
+    synchronized (lock) {
+      drain();
+
+      int i;
+      if (freeCount > 0) {
+        i = free[-- freeCount];
+      } else {
+        i = nextIndex++;
+        if (i == slots.length) {
+          slots = copy(slots, i * 2);
+          versions = copy(versions, i * 2);
+          free = copy(free, i * 2);
+        }
+      }
+
+      index = i;
+      // versions start at one so that they never match an empty slot
+      version = ++ versions[i];
+      slots[i] = new Slot(this, i, this instanceof InheritableThreadLocal);
+      if (slots[i].inheritable) {
+        ++ inheritableCount;
+      }
+    }
+  }
+
+  private static void drain() {
+    for (Slot s; (s = (Slot) queue.poll()) != null;) {
+      release(s);
+    }
+  }
+
+  private static void release(Slot s) {
+    if (slots[s.index] == s) {
+      slots[s.index] = null;
+      if (s.inheritable) {
+        -- inheritableCount;
+      }
+      free[freeCount++] = s.index;
+      ++ stamp;
+    }
+  }
+
+  /**
+   * Releases the slots of collected ThreadLocals and drops any values
+   * the specified thread still holds for released slots.
+   */
+  private static void expunge(Thread t) {
+    synchronized (lock) {
+      drain();
+
+      int[] localVersions = t.localVersions;
+      if (localVersions != null) {
+        for (int i = 0; i < localVersions.length; ++i) {
+          if (localVersions[i] != 0
+              && (localVersions[i] != versions[i] || slots[i] == null))
+          {
+            localVersions[i] = 0;
+            t.localValues[i] = null;
+          }
+        }
+      }
+
+      t.localStamp = stamp;
+    }
+  }
+
+  private static void check(Thread t) {
+    if ((++ t.localAccesses % ExpungeInterval) == 0 || t.localStamp != stamp) {
+      expunge(t);
+    }
+  }
+
+  private static Object[] copy(Object[] array, int length) {
+    Object[] a = new Object[length];
+    System.arraycopy(array, 0, a, 0, Math.min(array.length, length));
+    return a;
+  }
+
+  private static Slot[] copy(Slot[] array, int length) {
+    Slot[] a = new Slot[length];
+    System.arraycopy(array, 0, a, 0, array.length);
+    return a;
+  }
+
+  private static int[] copy(int[] array, int length) {
+    int[] a = new int[length];
+    System.arraycopy(array, 0, a, 0, Math.min(array.length, length));
+    return a;
+  }
 
   protected T initialValue() {
     return null;
   }
 
   public T get() {
-    Map<ThreadLocal, Object> map = Thread.currentThread().locals();
-    Object o = map.get(this);
-    if (o == null) {
-      o = initialValue();
-      if (o == null) {
-        o = Null;
+    Thread t = Thread.currentThread();
+    check(t);
+
+    int[] localVersions = t.localVersions;
+    if (localVersions != null && index < localVersions.length
+        && localVersions[index] == version)
+    {
+      return (T) t.localValues[index];
+    }
+
+    T value = initialValue();
+    set(t, value);
+    return value;
+  }
+
+  public void set(T value) {
+    Thread t = Thread.currentThread();
+    check(t);
+
+    set(t, value);
+  }
+
+  public void remove() {
+    Thread t = Thread.currentThread();
+    int[] localVersions = t.localVersions;
+    if (localVersions != null && index < localVersions.length) {
+      localVersions[index] = 0;
+      t.localValues[index] = null;
+    }
+  }
+
+  private void set(Thread t, Object value) {
+    if (t.localVersions == null || index >= t.localVersions.length) {
+      grow(t, index + 1);
+    }
+    t.localValues[index] = value;
+    t.localVersions[index] = version;
+  }
+
+  private static void grow(Thread t, int minimum) {
+    synchronized (lock) {
+      int length = Math.max(minimum, nextIndex);
+      if (t.localVersions == null) {
+        t.localVersions = new int[length];
+        t.localValues = new Object[length];
+      } else {
+        t.localVersions = copy(t.localVersions, length);
+        t.localValues = copy(t.localValues, length);
       }
-      map.put(this, o);
     }
-    if (o == Null) {
-      o = null;
+  }
+
+  /**
+   * Copies the values of the parent's inheritable thread locals into
+   * a newly constructed child thread.
+   */
+  static void inherit(Thread parent, Thread child) {
+    int[] parentVersions = parent.localVersions;
+    if (parentVersions == null) {
+      return;
+    }
+
+    // find the live inheritable locals under the lock, but call
+    // childValue, which may be overridden, outside it
+    InheritableThreadLocal[] locals = null;
+    synchronized (lock) {
+      if (inheritableCount == 0) {
+        return;
+      }
+
+      for (int i = 0; i < parentVersions.length; ++i) {
+        Slot s = slots[i];
+        if (s != null && s.inheritable
+            && parentVersions[i] == versions[i])
+        {
+          InheritableThreadLocal local = (InheritableThreadLocal) s.get();
+          if (local != null) {
+            if (locals == null) {
+              locals = new InheritableThreadLocal[parentVersions.length];
+            }
+            locals[i] = local;
+          }
+        }
+      }
+    }
+
+    if (locals == null) {
+      return;
+    }
+
+    child.localVersions = new int[parentVersions.length];
+    child.localValues = new Object[parentVersions.length];
+    for (int i = 0; i < locals.length; ++i) {
+      if (locals[i] != null) {
+        child.localValues[i] = locals[i].childValue(parent.localValues[i]);
+        child.localVersions[i] = ((ThreadLocal) locals[i]).version;
+      }
     }
-    return (T) o;
   }
 
-  public void set(T value) {
-    Map<ThreadLocal, Object> map = Thread.currentThread().locals();
-    Object o = value;
-    if (o == null) {
-      o = Null;
+  private static class Slot extends WeakReference<ThreadLocal> {
+    public final int index;
+    public final boolean inheritable;
+
+    public Slot(ThreadLocal local, int index, boolean inheritable) {
+      super(local, queue);
+      this.index = index;
+      this.inheritable = inheritable;
     }
-    map.put(this, o);
   }
 }
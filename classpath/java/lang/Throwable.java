@@ -16,14 +16,35 @@ import java.io.IOException;
 import java.io.Serializable;
 
 public class Throwable implements Serializable {
+  // the trace of every throwable constructed with writableStackTrace
+  // set to false
+  private static final StackTraceElement[] UnwritableTrace
+    = new StackTraceElement[0];
+
   private String message;
   private Object trace;
   private Throwable cause;
 
-  public Throwable(String message, Throwable cause) {
+  /**
+   * Creates a throwable which, if writableStackTrace is false, never
+   * captures a stack trace and ignores calls to fillInStackTrace and
+   * setStackTrace.  Suppressed exceptions are not supported, so
+   * enableSuppression is ignored.
+   */
+  protected Throwable(String message, Throwable cause,
+                      boolean enableSuppression, boolean writableStackTrace)
+  {
     this.message = message;
-    this.trace = trace(1);
     this.cause = cause;
+    if (writableStackTrace) {
+      fillInStackTrace();
+    } else {
+      trace = UnwritableTrace;
+    }
+  }
+
+  public Throwable(String message, Throwable cause) {
+    this(message, cause, false, true);
   }
 
   public Throwable(String message) {
@@ -73,7 +94,10 @@ public class Throwable implements Serializable {
   static native StackTraceElement[] resolveTrace(Object trace);
 
   private StackTraceElement[] resolveTrace() {
-    if (! (trace instanceof StackTraceElement[])) {
+    if (trace == null) {
+      // fillInStackTrace was overridden to capture nothing
+      return new StackTraceElement[0];
+    } else if (! (trace instanceof StackTraceElement[])) {
       trace = resolveTrace(trace);
     }
     return (StackTraceElement[]) trace;
@@ -84,7 +108,9 @@ public class Throwable implements Serializable {
   }
 
   public void setStackTrace(StackTraceElement[] trace) {
-    this.trace = trace;
+    if (this.trace != UnwritableTrace) {
+      this.trace = trace;
+    }
   }
 
   public void printStackTrace(PrintStream out) {
@@ -119,8 +145,16 @@ public class Throwable implements Serializable {
     }
   }
 
+  /**
+   * Records the current stack, which is only resolved into
+   * StackTraceElements if and when the trace is requested.  Classes
+   * which never need a trace may override this to do nothing.
+   */
   public Throwable fillInStackTrace() {
-    trace = trace(0);
+    if (trace != UnwritableTrace) {
+      // skip the frame for trace itself
+      trace = trace(1);
+    }
     return this;
   }
 }
@@ -0,0 +1,424 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.lang.reflect;
+
+import static avian.Stream.write1;
+import static avian.Stream.write2;
+import static avian.Stream.write4;
+import static avian.Stream.set4;
+import static avian.Assembler.*;
+
+import avian.ConstantPool;
+import avian.ConstantPool.PoolEntry;
+
+import avian.Assembler;
+import avian.Assembler.MethodData;
+
+import avian.FieldAccessor;
+import avian.MethodAccessor;
+import avian.VMClass;
+import avian.VMField;
+import avian.VMMethod;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Generates classes which perform reflective method calls and field
+ * accesses using ordinary bytecode, which, unlike the natives Method
+ * and Field otherwise use, may be compiled and inlined like any other
+ * code.  Since defining a class is expensive, Method and Field only
+ * ask for an accessor once they have been used InflationThreshold
+ * times.
+ */
+class Accessors {
+  public static final int InflationThreshold = 15;
+
+  private static int nextNumber;
+
+  private static String nextName(String prefix) {
+    int number;
+    synchronized (Accessors.class) {
+      number = nextNumber++;
+    }
+    return prefix + number;
+  }
+
+  private static String className(VMClass c) {
+    return new String(c.name, 0, c.name.length - 1, false);
+  }
+
+  // returns the index just past the field descriptor starting at i
+  private static int typeEnd(String spec, int i) {
+    while (spec.charAt(i) == '[') ++i;
+    if (spec.charAt(i) == 'L') {
+      i = spec.indexOf(';', i);
+    }
+    return i + 1;
+  }
+
+  private static String boxClass(char type) {
+    switch (type) {
+    case 'Z': return "java/lang/Boolean";
+    case 'B': return "java/lang/Byte";
+    case 'C': return "java/lang/Character";
+    case 'S': return "java/lang/Short";
+    case 'I': return "java/lang/Integer";
+    case 'F': return "java/lang/Float";
+    case 'J': return "java/lang/Long";
+    case 'D': return "java/lang/Double";
+    default: throw new IllegalArgumentException();
+    }
+  }
+
+  private static String unboxMethod(char type) {
+    switch (type) {
+    case 'Z': return "booleanValue";
+    case 'B': return "byteValue";
+    case 'C': return "charValue";
+    case 'S': return "shortValue";
+    case 'I': return "intValue";
+    case 'F': return "floatValue";
+    case 'J': return "longValue";
+    case 'D': return "doubleValue";
+    default: throw new IllegalArgumentException();
+    }
+  }
+
+  // converts the object on top of the stack to the specified type,
+  // casting references and unboxing primitives
+  private static void writeUnbox(List<PoolEntry> pool,
+                                 ByteArrayOutputStream out,
+                                 String type)
+    throws IOException
+  {
+    switch (type.charAt(0)) {
+    case 'L':
+      if (! type.equals("Ljava/lang/Object;")) {
+        write1(out, checkcast);
+        write2(out, ConstantPool.addClass
+               (pool, type.substring(1, type.length() - 1)) + 1);
+      }
+      break;
+
+    case '[':
+      write1(out, checkcast);
+      write2(out, ConstantPool.addClass(pool, type) + 1);
+      break;
+
+    default: {
+      String box = boxClass(type.charAt(0));
+      write1(out, checkcast);
+      write2(out, ConstantPool.addClass(pool, box) + 1);
+      write1(out, invokevirtual);
+      write2(out, ConstantPool.addMethodRef
+             (pool, box, unboxMethod(type.charAt(0)), "()" + type) + 1);
+    } break;
+    }
+  }
+
+  // converts the value of the specified type on top of the stack to
+  // an object
+  private static void writeBox(List<PoolEntry> pool,
+                               ByteArrayOutputStream out,
+                               String type)
+    throws IOException
+  {
+    switch (type.charAt(0)) {
+    case 'L':
+    case '[':
+      break;
+
+    default: {
+      String box = boxClass(type.charAt(0));
+      write1(out, invokestatic);
+      write2(out, ConstantPool.addMethodRef
+             (pool, box, "valueOf", "(" + type + ")L" + box + ";") + 1);
+    } break;
+    }
+  }
+
+  private static byte[] makeConstructorCode(List<PoolEntry> pool,
+                                            String superName)
+    throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write2(out, 1); // max stack
+    write2(out, 1); // max locals
+    write4(out, 5); // length
+
+    write1(out, aload_0);
+    write1(out, invokespecial);
+    write2(out, ConstantPool.addMethodRef(pool, superName, "<init>", "()V")
+           + 1);
+    write1(out, return_);
+
+    write2(out, 0); // exception handler table length
+    write2(out, 0); // attribute count
+
+    return out.toByteArray();
+  }
+
+  private static byte[] makeInvokeCode(List<PoolEntry> pool, VMMethod method)
+    throws IOException
+  {
+    String className = className(method.class_);
+    String name = Method.getName(method);
+    String spec = Method.getSpec(method);
+    boolean isStatic = (method.flags & Modifier.STATIC) != 0;
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write2(out, method.parameterFootprint + 4); // max stack
+    write2(out, 3); // max locals
+    write4(out, 0); // length (we'll set the real value later)
+
+    if (! isStatic) {
+      write1(out, aload_1);
+      writeUnbox(pool, out, "L" + className + ";");
+    }
+
+    int index = 0;
+    int i = 1;
+    while (spec.charAt(i) != ')') {
+      int end = typeEnd(spec, i);
+
+      write1(out, aload_2);
+      write1(out, ldc_w);
+      write2(out, ConstantPool.addInteger(pool, index) + 1);
+      write1(out, aaload);
+      writeUnbox(pool, out, spec.substring(i, end));
+
+      i = end;
+      ++ index;
+    }
+
+    String returnType = spec.substring(i + 1);
+
+    int reference = ConstantPool.addMethodRef(pool, className, name, spec)
+      + 1;
+
+    // only the call itself is covered by the exception handler, so
+    // that bad arguments are not reported as InvocationTargetExceptions
+    int callStart = out.size() - 8;
+    if (isStatic) {
+      write1(out, invokestatic);
+      write2(out, reference);
+    } else if (Modifier.isInterface(method.class_.flags)) {
+      write1(out, invokeinterface);
+      write2(out, reference);
+      write2(out, 0); // this will be ignored by the VM
+    } else if ((method.flags & Modifier.PRIVATE) != 0
+               || name.equals("<init>"))
+    {
+      write1(out, invokespecial);
+      write2(out, reference);
+    } else {
+      write1(out, invokevirtual);
+      write2(out, reference);
+    }
+    int callEnd = out.size() - 8;
+
+    if (returnType.equals("V")) {
+      write1(out, aconst_null);
+    } else {
+      writeBox(pool, out, returnType);
+    }
+    write1(out, areturn);
+
+    int handler = out.size() - 8;
+    write1(out, new_);
+    write2(out, ConstantPool.addClass
+           (pool, "java/lang/reflect/InvocationTargetException") + 1);
+    write1(out, dup_x1);
+    write1(out, swap);
+    write1(out, invokespecial);
+    write2(out, ConstantPool.addMethodRef
+           (pool, "java/lang/reflect/InvocationTargetException",
+            "<init>", "(Ljava/lang/Throwable;)V") + 1);
+    write1(out, athrow);
+
+    int length = out.size() - 8;
+
+    write2(out, 1); // exception handler table length
+    write2(out, callStart);
+    write2(out, callEnd);
+    write2(out, handler);
+    write2(out, 0); // catch everything
+
+    write2(out, 0); // attribute count
+
+    byte[] result = out.toByteArray();
+    set4(result, 4, length);
+
+    return result;
+  }
+
+  private static byte[] makeGetCode(List<PoolEntry> pool, VMField field)
+    throws IOException
+  {
+    String className = className(field.class_);
+    String spec = new String(field.spec, 0, field.spec.length - 1, false);
+    int reference = ConstantPool.addFieldRef
+      (pool, className, Field.getName(field), spec) + 1;
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write2(out, 2); // max stack
+    write2(out, 2); // max locals
+    write4(out, 0); // length (we'll set the real value later)
+
+    if ((field.flags & Modifier.STATIC) != 0) {
+      write1(out, getstatic);
+      write2(out, reference);
+    } else {
+      write1(out, aload_1);
+      writeUnbox(pool, out, "L" + className + ";");
+      write1(out, getfield);
+      write2(out, reference);
+    }
+
+    writeBox(pool, out, spec);
+    write1(out, areturn);
+
+    write2(out, 0); // exception handler table length
+    write2(out, 0); // attribute count
+
+    byte[] result = out.toByteArray();
+    set4(result, 4, result.length - 12);
+
+    return result;
+  }
+
+  private static byte[] makeSetCode(List<PoolEntry> pool, VMField field)
+    throws IOException
+  {
+    String className = className(field.class_);
+    String spec = new String(field.spec, 0, field.spec.length - 1, false);
+    int reference = ConstantPool.addFieldRef
+      (pool, className, Field.getName(field), spec) + 1;
+    boolean isStatic = (field.flags & Modifier.STATIC) != 0;
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write2(out, 3); // max stack
+    write2(out, 3); // max locals
+    write4(out, 0); // length (we'll set the real value later)
+
+    if (! isStatic) {
+      write1(out, aload_1);
+      writeUnbox(pool, out, "L" + className + ";");
+    }
+
+    write1(out, aload_2);
+    writeUnbox(pool, out, spec);
+
+    write1(out, isStatic ? putstatic : putfield);
+    write2(out, reference);
+    write1(out, return_);
+
+    write2(out, 0); // exception handler table length
+    write2(out, 0); // attribute count
+
+    byte[] result = out.toByteArray();
+    set4(result, 4, result.length - 12);
+
+    return result;
+  }
+
+  private static Object define(ClassLoader loader,
+                               List<PoolEntry> pool,
+                               String name,
+                               String superName,
+                               MethodData[] methodTable)
+    throws IOException
+  {
+    int nameIndex = ConstantPool.addClass(pool, name);
+    int superIndex = ConstantPool.addClass(pool, superName);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Assembler.writeClass
+      (out, pool, nameIndex, superIndex, new int[0], methodTable);
+
+    byte[] classData = out.toByteArray();
+    try {
+      return avian.SystemClassLoader.getClass
+        (avian.Classes.defineVMClass(loader, classData, 0, classData.length))
+        .newInstance();
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static MethodAccessor makeMethodAccessor(VMMethod method) {
+    List<PoolEntry> pool = new ArrayList();
+
+    try {
+      MethodData[] methodTable = new MethodData[] {
+        new MethodData
+        (ACC_PUBLIC,
+         ConstantPool.addUtf8(pool, "invoke"),
+         ConstantPool.addUtf8
+         (pool, "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;"),
+         makeInvokeCode(pool, method)),
+
+        new MethodData
+        (ACC_PUBLIC,
+         ConstantPool.addUtf8(pool, "<init>"),
+         ConstantPool.addUtf8(pool, "()V"),
+         makeConstructorCode(pool, "avian/MethodAccessor"))
+      };
+
+      return (MethodAccessor) define
+        (method.class_.loader, pool, nextName("MethodAccessor-"),
+         "avian/MethodAccessor", methodTable);
+    } catch (IOException e) {
+      AssertionError error = new AssertionError();
+      error.initCause(e);
+      throw error;
+    }
+  }
+
+  public static FieldAccessor makeFieldAccessor(VMField field) {
+    List<PoolEntry> pool = new ArrayList();
+
+    try {
+      MethodData[] methodTable = new MethodData[] {
+        new MethodData
+        (ACC_PUBLIC,
+         ConstantPool.addUtf8(pool, "get"),
+         ConstantPool.addUtf8(pool, "(Ljava/lang/Object;)Ljava/lang/Object;"),
+         makeGetCode(pool, field)),
+
+        new MethodData
+        (ACC_PUBLIC,
+         ConstantPool.addUtf8(pool, "set"),
+         ConstantPool.addUtf8(pool, "(Ljava/lang/Object;Ljava/lang/Object;)V"),
+         makeSetCode(pool, field)),
+
+        new MethodData
+        (ACC_PUBLIC,
+         ConstantPool.addUtf8(pool, "<init>"),
+         ConstantPool.addUtf8(pool, "()V"),
+         makeConstructorCode(pool, "avian/FieldAccessor"))
+      };
+
+      return (FieldAccessor) define
+        (field.class_.loader, pool, nextName("FieldAccessor-"),
+         "avian/FieldAccessor", methodTable);
+    } catch (IOException e) {
+      AssertionError error = new AssertionError();
+      error.initCause(e);
+      throw error;
+    }
+  }
+}
@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -11,6 +11,7 @@
 package java.lang.reflect;
 
 import avian.VMField;
+import avian.FieldAccessor;
 import avian.AnnotationInvocationHandler;
 import avian.SystemClassLoader;
 import avian.Classes;
@@ -31,6 +32,8 @@ public class Field<T> extends AccessibleObject {
 
   private final VMField vmField;
   private boolean accessible = true;
+  private FieldAccessor accessor;
+  private int accessCount;
 
   public Field(VMField vmField) {
     this.vmField = vmField;
@@ -66,6 +69,13 @@ public class Field<T> extends AccessibleObject {
        new String(vmField.spec, 0, vmField.spec.length - 1, false));
   }
 
+  private FieldAccessor accessor() {
+    if (accessor == null && ++ accessCount > Accessors.InflationThreshold) {
+      accessor = Accessors.makeFieldAccessor(vmField);
+    }
+    return accessor;
+  }
+
   public Object get(Object instance) throws IllegalAccessException {
     Object target;
     if ((vmField.flags & Modifier.STATIC) != 0) {
@@ -76,6 +86,11 @@ public class Field<T> extends AccessibleObject {
       throw new IllegalArgumentException();
     }
 
+    FieldAccessor accessor = accessor();
+    if (accessor != null) {
+      return accessor.get(instance);
+    }
+
     switch (vmField.code) {
     case ByteField:
       return Byte.valueOf
@@ -98,8 +113,7 @@ public class Field<T> extends AccessibleObject {
         ((int) getPrimitive(target, vmField.code, vmField.offset));
 
     case LongField:
-      return Long.valueOf
-        ((int) getPrimitive(target, vmField.code, vmField.offset));
+      return Long.valueOf(getPrimitive(target, vmField.code, vmField.offset));
 
     case FloatField:
       return Float.valueOf
@@ -163,6 +177,18 @@ public class Field<T> extends AccessibleObject {
       throw new IllegalArgumentException();
     }
 
+    FieldAccessor accessor = accessor();
+    if (accessor != null) {
+      try {
+        accessor.set(instance, value);
+      } catch (ClassCastException e) {
+        throw new IllegalArgumentException(e);
+      } catch (NullPointerException e) {
+        throw new IllegalArgumentException(e);
+      }
+      return;
+    }
+
     switch (vmField.code) {
     case ByteField:
       setPrimitive(target, vmField.code, vmField.offset, (Byte) value);
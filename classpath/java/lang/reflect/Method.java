@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -11,6 +11,7 @@
 package java.lang.reflect;
 
 import avian.VMMethod;
+import avian.MethodAccessor;
 import avian.AnnotationInvocationHandler;
 import avian.SystemClassLoader;
 
@@ -19,6 +20,8 @@ import java.lang.annotation.Annotation;
 public class Method<T> extends AccessibleObject implements Member {
   private final VMMethod vmMethod;
   private boolean accessible;
+  private MethodAccessor accessor;
+  private int invocationCount;
 
   public Method(VMMethod vmMethod) {
     this.vmMethod = vmMethod;
@@ -133,7 +136,23 @@ public class Method<T> extends AccessibleObject implements Member {
       }
 
       if (arguments.length == vmMethod.parameterCount) {
-        return invoke(vmMethod, instance, arguments);        
+        if (accessor == null
+            && ++ invocationCount > Accessors.InflationThreshold)
+        {
+          accessor = Accessors.makeMethodAccessor(vmMethod);
+        }
+
+        if (accessor == null) {
+          return invoke(vmMethod, instance, arguments);
+        } else {
+          try {
+            return accessor.invoke(instance, arguments);
+          } catch (ClassCastException e) {
+            throw new IllegalArgumentException(e);
+          } catch (NullPointerException e) {
+            throw new IllegalArgumentException(e);
+          }
+        }
       } else {
         throw new ArrayIndexOutOfBoundsException();
       }
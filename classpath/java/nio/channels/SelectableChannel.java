@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -38,6 +38,10 @@ public abstract class SelectableChannel implements Channel {
 
   public void close() throws IOException {
     open = false;
-    key = null;
+    if (key != null) {
+      // let the selector notice that the key is no longer valid
+      key.selector().wakeup();
+      key = null;
+    }
   }
 }
@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2009, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -21,6 +21,7 @@ public class SelectionKey {
   private int interestOps;
   private int readyOps;
   private final Object attachment;
+  private volatile boolean cancelled;
 
   public SelectionKey(SelectableChannel channel, Selector selector,
                       int interestOps, Object attachment)
@@ -66,7 +67,15 @@ public class SelectionKey {
   }
 
   public boolean isValid() {
-    return channel.isOpen() && selector.isOpen();
+    return (! cancelled) && channel.isOpen() && selector.isOpen();
+  }
+
+  /**
+   * Requests that the key be removed from its selector, which will
+   * happen during the next selection.  May be called from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
   }
 
   public SelectableChannel channel() {
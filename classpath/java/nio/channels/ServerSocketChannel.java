@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -10,6 +10,8 @@
 
 package java.nio.channels;
 
+import avian.Fiber;
+
 import java.io.IOException;
 
 import java.net.InetSocketAddress;
@@ -41,12 +43,18 @@ public class ServerSocketChannel extends SelectableChannel {
   }
 
   public void close() throws IOException {
+    super.close();
     channel.close();
   }
 
   public SocketChannel accept() throws IOException {
+    int s = doAccept();
+    if (s == -1) {
+      return null;
+    }
+
     SocketChannel c = new SocketChannel();
-    c.socket = doAccept();
+    c.socket = s;
     c.connected = true;
     return c;
   }
@@ -56,10 +64,15 @@ public class ServerSocketChannel extends SelectableChannel {
   }
 
   private int doAccept() throws IOException {
+    boolean park = channel.parkFiber();
     while (true) {
       int s = natDoAccept(channel.socket);
       if (s != -1) {
         return s;
+      } else if (park) {
+        Fiber.awaitReady(this, SelectionKey.OP_ACCEPT);
+      } else if (! channel.isBlocking()) {
+        return -1;
       }
       // todo: throw ClosedByInterruptException if this thread was
       // interrupted during the accept call
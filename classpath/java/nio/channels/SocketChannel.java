@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -10,6 +10,8 @@
 
 package java.nio.channels;
 
+import avian.Fiber;
+
 import java.io.IOException;
 import java.net.SocketException;
 import java.net.SocketAddress;
@@ -26,6 +28,9 @@ public class SocketChannel extends SelectableChannel
   boolean connected = false;
   boolean readyToConnect = false;
   boolean blocking = true;
+  // whether the socket itself is in blocking mode, which differs from
+  // the above when a fiber is waiting for it to become ready
+  boolean socketBlocking = true;
 
   public static SocketChannel open() throws IOException {
     Socket.init();
@@ -37,10 +42,30 @@ public class SocketChannel extends SelectableChannel
     blocking = v;
     if (socket != InvalidSocket) {
       configureBlocking(socket, v);
+      socketBlocking = v;
     }
     return this;
   }
 
+  void setSocketBlocking(boolean v) throws IOException {
+    if (socketBlocking != v) {
+      configureBlocking(socket, v);
+      socketBlocking = v;
+    }
+  }
+
+  /**
+   * Returns true if a blocking operation on this channel should park
+   * the current fiber instead of blocking its carrier thread, in which
+   * case the socket is put in non-blocking mode.  Otherwise, makes
+   * sure the socket's mode matches the channel's.
+   */
+  boolean parkFiber() throws IOException {
+    boolean park = blocking && Fiber.current() != null;
+    setSocketBlocking(blocking && ! park);
+    return park;
+  }
+
   public boolean isBlocking() {
     return blocking;
   }
@@ -60,8 +85,14 @@ public class SocketChannel extends SelectableChannel
     } catch (ClassCastException e) {
       throw new UnsupportedAddressTypeException();
     }
-    socket = doConnect(a.getHostName(), a.getPort());
-    configureBlocking(blocking);
+    boolean park = blocking && Fiber.current() != null;
+    socket = doConnect(a.getHostName(), a.getPort(), blocking && ! park);
+    socketBlocking = blocking && ! park;
+    if (park && ! connected) {
+      Fiber.awaitReady(this, SelectionKey.OP_CONNECT);
+      natFinishConnect(socket);
+      connected = true;
+    }
     return connected;
   }
 
@@ -94,7 +125,9 @@ public class SocketChannel extends SelectableChannel
     }
   }
 
-  private int doConnect(String host, int port) throws IOException {
+  private int doConnect(String host, int port, boolean blocking)
+    throws IOException
+  {
     if (host == null) throw new NullPointerException();
 
     boolean b[] = new boolean[1];
@@ -110,7 +143,15 @@ public class SocketChannel extends SelectableChannel
     byte[] array = b.array();
     if (array == null) throw new NullPointerException();
 
-    int r = natRead(socket, array, b.arrayOffset() + b.position(), b.remaining(), blocking);
+    int r;
+    if (parkFiber()) {
+      while ((r = natRead(socket, array, b.arrayOffset() + b.position(), b.remaining(), false)) == 0) {
+        if (! isOpen()) return -1;
+        Fiber.awaitReady(this, SelectionKey.OP_READ);
+      }
+    } else {
+      r = natRead(socket, array, b.arrayOffset() + b.position(), b.remaining(), blocking);
+    }
     if (r > 0) {
       b.position(b.position() + r);
     }
@@ -126,7 +167,15 @@ public class SocketChannel extends SelectableChannel
     byte[] array = b.array();
     if (array == null) throw new NullPointerException();
 
-    int w = natWrite(socket, array, b.arrayOffset() + b.position(), b.remaining(), blocking);
+    int w;
+    if (parkFiber()) {
+      while ((w = natWrite(socket, array, b.arrayOffset() + b.position(), b.remaining(), false)) == 0) {
+        if (! isOpen()) throw new IOException("channel closed");
+        Fiber.awaitReady(this, SelectionKey.OP_WRITE);
+      }
+    } else {
+      w = natWrite(socket, array, b.arrayOffset() + b.position(), b.remaining(), blocking);
+    }
     if (w > 0) {
       b.position(b.position() + w);
     }
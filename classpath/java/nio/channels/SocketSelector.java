@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -70,23 +70,25 @@ class SocketSelector extends Selector {
 
     if (clearWoken()) interval = -1;
 
-    int max=0;
+    // drop invalid keys before updating the interest set, since a
+    // valid key may refer to the same socket as a cancelled one
     for (Iterator<SelectionKey> it = keys.iterator();
          it.hasNext();)
     {
       SelectionKey key = it.next();
-      SelectableChannel c = key.channel();
-      int socket = c.socketFD();
-      if (c.isOpen()) {
-        key.readyOps(0);
-        max = natSelectUpdateInterestSet
-          (socket, key.interestOps(), state, max);
-      } else {
-        natSelectClearAll(socket, state);
+      if (! key.isValid()) {
+        natSelectClearAll(key.channel().socketFD(), state);
         it.remove();
       }
     }
 
+    int max=0;
+    for (SelectionKey key: keys) {
+      key.readyOps(0);
+      max = natSelectUpdateInterestSet
+        (key.channel().socketFD(), key.interestOps(), state, max);
+    }
+
     int r = natDoSocketSelect(state, max, interval);
 
     if (r > 0) {
@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -10,7 +10,13 @@
 
 package java.util;
 
+import java.lang.reflect.Array;
+
 public class Arrays {
+  // fill sets this many elements one at a time before switching to
+  // bulk copies
+  private static final int FillPrefixLength = 16;
+
   private Arrays() { }
 
   public static String toString(Object[] a) {
@@ -339,22 +345,822 @@ public class Arrays {
     };
   }
 
-  public static void fill(int[] array, int value) {
-    for (int i=0;i<array.length;i++) {
+  private static void checkRange(int length, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || end > length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+  }
+
+  public static void fill(boolean[] array, boolean value) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(boolean[] array, int start, int end, boolean value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
       array[i] = value;
     }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
+  }
+
+  public static void fill(byte[] array, byte value) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(byte[] array, int start, int end, byte value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
+      array[i] = value;
+    }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
+  }
+
+  public static void fill(short[] array, short value) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(short[] array, int start, int end, short value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
+      array[i] = value;
+    }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
   }
 
   public static void fill(char[] array, char value) {
-    for (int i=0;i<array.length;i++) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(char[] array, int start, int end, char value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
       array[i] = value;
     }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
   }
-  
-  public static <T> void fill(T[] array, T value) {
-    for (int i=0;i<array.length;i++) {
+
+  public static void fill(int[] array, int value) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(int[] array, int start, int end, int value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
       array[i] = value;
     }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
+  }
+
+  public static void fill(long[] array, long value) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(long[] array, int start, int end, long value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
+      array[i] = value;
+    }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
+  }
+
+  public static void fill(float[] array, float value) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(float[] array, int start, int end, float value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
+      array[i] = value;
+    }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
+  }
+
+  public static void fill(double[] array, double value) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(double[] array, int start, int end, double value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
+      array[i] = value;
+    }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
+  }
+
+  public static void fill(Object[] array, Object value) {
+    fill(array, 0, array.length, value);
+  }
+
+  public static void fill(Object[] array, int start, int end, Object value) {
+    checkRange(array.length, start, end);
+
+    // set a few elements directly, then keep doubling the filled
+    // prefix with System.arraycopy
+    int filled = Math.min(end - start, FillPrefixLength);
+    for (int i = start; i < start + filled; ++i) {
+      array[i] = value;
+    }
+    while (filled < end - start) {
+      int n = Math.min(filled, end - start - filled);
+      System.arraycopy(array, start, array, start + filled, n);
+      filled += n;
+    }
+  }
+
+  public static boolean[] copyOf(boolean[] array, int length) {
+    boolean[] copy = new boolean[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static boolean[] copyOfRange(boolean[] array, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    boolean[] copy = new boolean[end - start];
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
+  }
+
+  public static byte[] copyOf(byte[] array, int length) {
+    byte[] copy = new byte[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static byte[] copyOfRange(byte[] array, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    byte[] copy = new byte[end - start];
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
   }
 
+  public static short[] copyOf(short[] array, int length) {
+    short[] copy = new short[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static short[] copyOfRange(short[] array, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    short[] copy = new short[end - start];
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
+  }
+
+  public static char[] copyOf(char[] array, int length) {
+    char[] copy = new char[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static char[] copyOfRange(char[] array, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    char[] copy = new char[end - start];
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
+  }
+
+  public static int[] copyOf(int[] array, int length) {
+    int[] copy = new int[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static int[] copyOfRange(int[] array, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    int[] copy = new int[end - start];
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
+  }
+
+  public static long[] copyOf(long[] array, int length) {
+    long[] copy = new long[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static long[] copyOfRange(long[] array, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    long[] copy = new long[end - start];
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
+  }
+
+  public static float[] copyOf(float[] array, int length) {
+    float[] copy = new float[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static float[] copyOfRange(float[] array, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    float[] copy = new float[end - start];
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
+  }
+
+  public static double[] copyOf(double[] array, int length) {
+    double[] copy = new double[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static double[] copyOfRange(double[] array, int start, int end) {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    double[] copy = new double[end - start];
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
+  }
+
+  public static <T> T[] copyOf(T[] array, int length) {
+    return (T[]) copyOf(array, length, array.getClass());
+  }
+
+  public static <T, U> T[] copyOf(U[] array, int length,
+                                  Class<? extends T[]> type)
+  {
+    T[] copy = (T[]) Array.newInstance(type.getComponentType(), length);
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  public static <T> T[] copyOfRange(T[] array, int start, int end) {
+    return (T[]) copyOfRange(array, start, end, array.getClass());
+  }
+
+  public static <T, U> T[] copyOfRange(U[] array, int start, int end,
+                                       Class<? extends T[]> type)
+  {
+    if (start > end) {
+      throw new IllegalArgumentException(start + " > " + end);
+    }
+    if (start < 0 || start > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    T[] copy = (T[]) Array.newInstance(type.getComponentType(), end - start);
+    System.arraycopy
+      (array, start, copy, 0, Math.min(array.length - start, end - start));
+    return copy;
+  }
+
+  public static boolean equals(boolean[] a, boolean[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean equals(byte[] a, byte[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean equals(short[] a, short[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean equals(char[] a, char[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean equals(int[] a, int[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean equals(long[] a, long[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean equals(float[] a, float[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (Float.floatToIntBits(a[i]) != Float.floatToIntBits(b[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean equals(double[] a, double[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static boolean equals(Object[] a, Object[] b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; ++i) {
+      if (! equal(a[i], b[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static int hashCode(boolean[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      h = (31 * h) + (array[i] ? 1231 : 1237);
+    }
+    return h;
+  }
+
+  public static int hashCode(byte[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      h = (31 * h) + array[i];
+    }
+    return h;
+  }
+
+  public static int hashCode(short[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      h = (31 * h) + array[i];
+    }
+    return h;
+  }
+
+  public static int hashCode(char[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      h = (31 * h) + array[i];
+    }
+    return h;
+  }
+
+  public static int hashCode(int[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      h = (31 * h) + array[i];
+    }
+    return h;
+  }
+
+  public static int hashCode(long[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      h = (31 * h) + (int) (array[i] ^ (array[i] >>> 32));
+    }
+    return h;
+  }
+
+  public static int hashCode(float[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      h = (31 * h) + Float.floatToIntBits(array[i]);
+    }
+    return h;
+  }
+
+  public static int hashCode(double[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      long v = Double.doubleToLongBits(array[i]);
+      h = (31 * h) + (int) (v ^ (v >>> 32));
+    }
+    return h;
+  }
+
+  public static int hashCode(Object[] array) {
+    if (array == null) {
+      return 0;
+    }
+    int h = 1;
+    for (int i = 0; i < array.length; ++i) {
+      h = (31 * h) + (array[i] == null ? 0 : array[i].hashCode());
+    }
+    return h;
+  }
+
+  public static int binarySearch(byte[] array, byte key) {
+    return binarySearch(array, 0, array.length, key);
+  }
+
+  public static int binarySearch(byte[] array, int start, int end, byte key) {
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (array[middle] < key) {
+        low = middle + 1;
+      } else if (array[middle] > key) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public static int binarySearch(short[] array, short key) {
+    return binarySearch(array, 0, array.length, key);
+  }
+
+  public static int binarySearch(short[] array, int start, int end, short key) {
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (array[middle] < key) {
+        low = middle + 1;
+      } else if (array[middle] > key) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public static int binarySearch(char[] array, char key) {
+    return binarySearch(array, 0, array.length, key);
+  }
+
+  public static int binarySearch(char[] array, int start, int end, char key) {
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (array[middle] < key) {
+        low = middle + 1;
+      } else if (array[middle] > key) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public static int binarySearch(int[] array, int key) {
+    return binarySearch(array, 0, array.length, key);
+  }
+
+  public static int binarySearch(int[] array, int start, int end, int key) {
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (array[middle] < key) {
+        low = middle + 1;
+      } else if (array[middle] > key) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public static int binarySearch(long[] array, long key) {
+    return binarySearch(array, 0, array.length, key);
+  }
+
+  public static int binarySearch(long[] array, int start, int end, long key) {
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (array[middle] < key) {
+        low = middle + 1;
+      } else if (array[middle] > key) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public static int binarySearch(float[] array, float key) {
+    return binarySearch(array, 0, array.length, key);
+  }
+
+  public static int binarySearch(float[] array, int start, int end, float key) {
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int c = Float.compare(array[middle], key);
+      if (c < 0) {
+        low = middle + 1;
+      } else if (c > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public static int binarySearch(double[] array, double key) {
+    return binarySearch(array, 0, array.length, key);
+  }
+
+  public static int binarySearch(double[] array, int start, int end, double key) {
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int c = Double.compare(array[middle], key);
+      if (c < 0) {
+        low = middle + 1;
+      } else if (c > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public static int binarySearch(Object[] array, Object key) {
+    return binarySearch(array, 0, array.length, key);
+  }
+
+  public static int binarySearch(Object[] array, int start, int end,
+                                 Object key)
+  {
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int c = ((Comparable) array[middle]).compareTo(key);
+      if (c < 0) {
+        low = middle + 1;
+      } else if (c > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  public static <T> int binarySearch(T[] array, T key,
+                                     Comparator<? super T> comparator)
+  {
+    return binarySearch(array, 0, array.length, key, comparator);
+  }
+
+  public static <T> int binarySearch(T[] array, int start, int end, T key,
+                                     Comparator<? super T> comparator)
+  {
+    if (comparator == null) {
+      return binarySearch(array, start, end, key);
+    }
+
+    checkRange(array.length, start, end);
+
+    int low = start;
+    int high = end - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int c = comparator.compare(array[middle], key);
+      if (c < 0) {
+        low = middle + 1;
+      } else if (c > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
 }
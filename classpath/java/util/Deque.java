@@ -0,0 +1,47 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util;
+
+public interface Deque<T> extends Queue<T> {
+  public void addFirst(T element);
+
+  public void addLast(T element);
+
+  public boolean offerFirst(T element);
+
+  public boolean offerLast(T element);
+
+  public T removeFirst();
+
+  public T removeLast();
+
+  public T pollFirst();
+
+  public T pollLast();
+
+  public T getFirst();
+
+  public T getLast();
+
+  public T peekFirst();
+
+  public T peekLast();
+
+  public boolean removeFirstOccurrence(Object element);
+
+  public boolean removeLastOccurrence(Object element);
+
+  public void push(T element);
+
+  public T pop();
+
+  public Iterator<T> descendingIterator();
+}
@@ -0,0 +1,44 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util;
+
+public interface NavigableMap<K, V> extends SortedMap<K, V> {
+  public Entry<K, V> firstEntry();
+
+  public Entry<K, V> lastEntry();
+
+  public Entry<K, V> pollFirstEntry();
+
+  public Entry<K, V> pollLastEntry();
+
+  public Entry<K, V> lowerEntry(K key);
+
+  public K lowerKey(K key);
+
+  public Entry<K, V> floorEntry(K key);
+
+  public K floorKey(K key);
+
+  public Entry<K, V> ceilingEntry(K key);
+
+  public K ceilingKey(K key);
+
+  public Entry<K, V> higherEntry(K key);
+
+  public K higherKey(K key);
+
+  public NavigableMap<K, V> headMap(K end, boolean inclusive);
+
+  public NavigableMap<K, V> tailMap(K start, boolean inclusive);
+
+  public NavigableMap<K, V> subMap(K start, boolean startInclusive,
+                                   K end, boolean endInclusive);
+}
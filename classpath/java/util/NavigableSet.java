@@ -0,0 +1,32 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util;
+
+public interface NavigableSet<E> extends SortedSet<E> {
+  public E lower(E element);
+
+  public E floor(E element);
+
+  public E ceiling(E element);
+
+  public E higher(E element);
+
+  public E pollFirst();
+
+  public E pollLast();
+
+  public NavigableSet<E> headSet(E end, boolean inclusive);
+
+  public NavigableSet<E> tailSet(E start, boolean inclusive);
+
+  public NavigableSet<E> subSet(E start, boolean startInclusive,
+                                E end, boolean endInclusive);
+}
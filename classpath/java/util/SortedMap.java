@@ -0,0 +1,25 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util;
+
+public interface SortedMap<K, V> extends Map<K, V> {
+  public Comparator<? super K> comparator();
+
+  public K firstKey();
+
+  public K lastKey();
+
+  public SortedMap<K, V> headMap(K end);
+
+  public SortedMap<K, V> tailMap(K start);
+
+  public SortedMap<K, V> subMap(K start, K end);
+}
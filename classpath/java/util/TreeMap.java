@@ -1,4 +1,4 @@
-/* Copyright (c) 2009-2010, Avian Contributors
+/* Copyright (c) 2009-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -10,37 +10,168 @@
 
 package java.util;
 
-public class TreeMap<K,V> implements Map<K,V> {
-  private TreeSet<MyEntry<K,V>> set;
-
-  public TreeMap(final Comparator<K> comparator) {
-    set = new TreeSet(new Comparator<MyEntry<K,V>>() {
-        public int compare(MyEntry<K,V> a, MyEntry<K,V> b) {
-          return comparator.compare(a.key, b.key);
-        }
-      });
+/**
+ * Red-black tree, updated in place.  Lookups walk the tree without
+ * allocating; insertions allocate exactly one node.
+ */
+public class TreeMap<K,V> implements NavigableMap<K,V> {
+  private final Comparator<? super K> comparator;
+  private Node<K,V> root;
+  private int size;
+  private int modCount;
+
+  public TreeMap(Comparator<? super K> comparator) {
+    this.comparator = comparator;
   }
 
   public TreeMap() {
-    this(new Comparator<K>() {
-        public int compare(K a, K b) {
-          return ((Comparable) a).compareTo(b);
-        }
-    });
+    this((Comparator<? super K>) null);
+  }
+
+  public TreeMap(Map<? extends K,? extends V> map) {
+    this();
+    putAll(map);
   }
 
   public String toString() {
     return Collections.toString(this);
   }
 
+  public Comparator<? super K> comparator() {
+    return comparator;
+  }
+
+  private int compare(Object a, K b) {
+    if (comparator == null) {
+      return ((Comparable) a).compareTo(b);
+    } else {
+      return comparator.compare((K) a, b);
+    }
+  }
+
+  private Node<K,V> find(Object key) {
+    Node<K,V> n = root;
+    while (n != null) {
+      int c = compare(key, n.key);
+      if (c < 0) {
+        n = n.left;
+      } else if (c > 0) {
+        n = n.right;
+      } else {
+        return n;
+      }
+    }
+    return null;
+  }
+
+  private Node<K,V> ceiling(Object key, boolean inclusive) {
+    Node<K,V> n = root;
+    Node<K,V> best = null;
+    while (n != null) {
+      int c = compare(key, n.key);
+      if (c == 0 && inclusive) {
+        return n;
+      } else if (c < 0) {
+        best = n;
+        n = n.left;
+      } else {
+        n = n.right;
+      }
+    }
+    return best;
+  }
+
+  private Node<K,V> floor(Object key, boolean inclusive) {
+    Node<K,V> n = root;
+    Node<K,V> best = null;
+    while (n != null) {
+      int c = compare(key, n.key);
+      if (c == 0 && inclusive) {
+        return n;
+      } else if (c > 0) {
+        best = n;
+        n = n.right;
+      } else {
+        n = n.left;
+      }
+    }
+    return best;
+  }
+
+  private Node<K,V> first() {
+    Node<K,V> n = root;
+    if (n != null) {
+      while (n.left != null) n = n.left;
+    }
+    return n;
+  }
+
+  private Node<K,V> last() {
+    Node<K,V> n = root;
+    if (n != null) {
+      while (n.right != null) n = n.right;
+    }
+    return n;
+  }
+
+  private static <K,V> Node<K,V> successor(Node<K,V> n) {
+    if (n.right != null) {
+      n = n.right;
+      while (n.left != null) n = n.left;
+      return n;
+    } else {
+      Node<K,V> p = n.parent;
+      while (p != null && n == p.right) {
+        n = p;
+        p = p.parent;
+      }
+      return p;
+    }
+  }
+
   public V get(Object key) {
-    MyEntry<K,V> e = set.find(new MyEntry(key, null));
-    return e == null ? null : e.value;
+    Node<K,V> n = find(key);
+    return n == null ? null : n.value;
+  }
+
+  public boolean containsKey(Object key) {
+    return find(key) != null;
   }
 
   public V put(K key, V value) {
-    MyEntry<K,V> e = set.addAndReplace(new MyEntry(key, value));
-    return e == null ? null : e.value;
+    Node<K,V> parent = null;
+    Node<K,V> n = root;
+    int c = 0;
+    while (n != null) {
+      parent = n;
+      c = compare(key, n.key);
+      if (c < 0) {
+        n = n.left;
+      } else if (c > 0) {
+        n = n.right;
+      } else {
+        return n.setValue(value);
+      }
+    }
+
+    if (parent == null) {
+      // check the key is comparable (and non-null) before accepting it
+      compare(key, key);
+    }
+
+    n = new Node(key, value, parent);
+    if (parent == null) {
+      root = n;
+    } else if (c < 0) {
+      parent.left = n;
+    } else {
+      parent.right = n;
+    }
+
+    fixAfterInsert(n);
+    ++ size;
+    ++ modCount;
+    return null;
   }
 
   public void putAll(Map<? extends K,? extends V> elts) {
@@ -48,60 +179,358 @@ public class TreeMap<K,V> implements Map<K,V> {
       put(entry.getKey(), entry.getValue());
     }
   }
-    
+
   public V remove(Object key) {
-    MyEntry<K,V> e = set.removeAndReturn(new MyEntry(key, null));
-    return e == null ? null : e.value;
+    Node<K,V> n = find(key);
+    if (n == null) {
+      return null;
+    } else {
+      V old = n.value;
+      delete(n);
+      return old;
+    }
   }
 
   public void clear() {
-    set.clear();
+    root = null;
+    size = 0;
+    ++ modCount;
   }
 
   public int size() {
-    return set.size();
+    return size;
   }
 
   public boolean isEmpty() {
-    return size() == 0;
+    return size == 0;
   }
 
-  public boolean containsKey(Object key) {
-    return set.contains(new MyEntry(key, null));
-  }
-
-  private boolean equal(Object a, Object b) {
+  private static boolean equal(Object a, Object b) {
     return a == null ? b == null : a.equals(b);
   }
 
   public boolean containsValue(Object value) {
-    for (V v: values()) {
-      if (equal(v, value)) {
+    for (Node<K,V> n = first(); n != null; n = successor(n)) {
+      if (equal(n.value, value)) {
         return true;
       }
     }
     return false;
   }
 
-  public Set<Entry<K, V>> entrySet() {
-    return (Set<Entry<K, V>>) (Set) set;
+  private static <K> K key(Node<K,?> n) {
+    if (n == null) throw new NoSuchElementException();
+    return n.key;
+  }
+
+  private static <K> K keyOrNull(Node<K,?> n) {
+    return n == null ? null : n.key;
+  }
+
+  // nodes are live and may later hold a different mapping (see
+  // delete), so entries returned by navigation methods are copies
+  private static <K,V> Entry<K,V> snapshot(Node<K,V> n) {
+    return n == null ? null : new Snapshot<K,V>(n.key, n.value);
+  }
+
+  public K firstKey() {
+    return key(first());
+  }
+
+  public K lastKey() {
+    return key(last());
+  }
+
+  public Entry<K,V> firstEntry() {
+    return snapshot(first());
+  }
+
+  public Entry<K,V> lastEntry() {
+    return snapshot(last());
+  }
+
+  public Entry<K,V> pollFirstEntry() {
+    return poll(first());
+  }
+
+  public Entry<K,V> pollLastEntry() {
+    return poll(last());
+  }
+
+  private Entry<K,V> poll(Node<K,V> n) {
+    if (n == null) {
+      return null;
+    } else {
+      Entry<K,V> e = snapshot(n);
+      delete(n);
+      return e;
+    }
+  }
+
+  public Entry<K,V> lowerEntry(K key) {
+    return snapshot(floor(key, false));
+  }
+
+  public K lowerKey(K key) {
+    return keyOrNull(floor(key, false));
+  }
+
+  public Entry<K,V> floorEntry(K key) {
+    return snapshot(floor(key, true));
+  }
+
+  public K floorKey(K key) {
+    return keyOrNull(floor(key, true));
+  }
+
+  public Entry<K,V> ceilingEntry(K key) {
+    return snapshot(ceiling(key, true));
+  }
+
+  public K ceilingKey(K key) {
+    return keyOrNull(ceiling(key, true));
+  }
+
+  public Entry<K,V> higherEntry(K key) {
+    return snapshot(ceiling(key, false));
+  }
+
+  public K higherKey(K key) {
+    return keyOrNull(ceiling(key, false));
+  }
+
+  public NavigableMap<K,V> headMap(K end, boolean inclusive) {
+    return new SubMap(true, null, false, false, end, inclusive);
+  }
+
+  public SortedMap<K,V> headMap(K end) {
+    return headMap(end, false);
+  }
+
+  public NavigableMap<K,V> tailMap(K start, boolean inclusive) {
+    return new SubMap(false, start, inclusive, true, null, false);
+  }
+
+  public SortedMap<K,V> tailMap(K start) {
+    return tailMap(start, true);
+  }
+
+  public NavigableMap<K,V> subMap(K start, boolean startInclusive,
+                                  K end, boolean endInclusive)
+  {
+    if (compare(start, end) > 0) {
+      throw new IllegalArgumentException("start > end");
+    }
+    return new SubMap(false, start, startInclusive, false, end, endInclusive);
+  }
+
+  public SortedMap<K,V> subMap(K start, K end) {
+    return subMap(start, true, end, false);
+  }
+
+  public Set<Entry<K,V>> entrySet() {
+    return new EntrySet(null);
   }
 
   public Set<K> keySet() {
-    return new KeySet();
+    return new KeySet(null);
   }
 
   public Collection<V> values() {
-    return new Values();
+    return new Values(null);
+  }
+
+  private static boolean isRed(Node n) {
+    return n != null && n.red;
+  }
+
+  private static void setRed(Node n, boolean red) {
+    if (n != null) n.red = red;
   }
 
-  private static class MyEntry<K,V> implements Entry<K,V> {
-    public final K key;
+  private static <K,V> Node<K,V> parent(Node<K,V> n) {
+    return n == null ? null : n.parent;
+  }
+
+  private static <K,V> Node<K,V> left(Node<K,V> n) {
+    return n == null ? null : n.left;
+  }
+
+  private static <K,V> Node<K,V> right(Node<K,V> n) {
+    return n == null ? null : n.right;
+  }
+
+  private void replace(Node<K,V> n, Node<K,V> replacement) {
+    if (n.parent == null) {
+      root = replacement;
+    } else if (n == n.parent.left) {
+      n.parent.left = replacement;
+    } else {
+      n.parent.right = replacement;
+    }
+  }
+
+  private void rotateLeft(Node<K,V> n) {
+    Node<K,V> r = n.right;
+    n.right = r.left;
+    if (r.left != null) r.left.parent = n;
+    r.parent = n.parent;
+    replace(n, r);
+    r.left = n;
+    n.parent = r;
+  }
+
+  private void rotateRight(Node<K,V> n) {
+    Node<K,V> l = n.left;
+    n.left = l.right;
+    if (l.right != null) l.right.parent = n;
+    l.parent = n.parent;
+    replace(n, l);
+    l.right = n;
+    n.parent = l;
+  }
+
+  private void fixAfterInsert(Node<K,V> n) {
+    n.red = true;
+    while (n != root && isRed(n.parent)) {
+      Node<K,V> p = parent(n);
+      Node<K,V> g = parent(p);
+      if (p == left(g)) {
+        Node<K,V> uncle = right(g);
+        if (isRed(uncle)) {
+          setRed(p, false);
+          setRed(uncle, false);
+          setRed(g, true);
+          n = g;
+        } else {
+          if (n == right(p)) {
+            n = p;
+            rotateLeft(n);
+          }
+          setRed(parent(n), false);
+          setRed(parent(parent(n)), true);
+          rotateRight(parent(parent(n)));
+        }
+      } else {
+        Node<K,V> uncle = left(g);
+        if (isRed(uncle)) {
+          setRed(p, false);
+          setRed(uncle, false);
+          setRed(g, true);
+          n = g;
+        } else {
+          if (n == left(p)) {
+            n = p;
+            rotateRight(n);
+          }
+          setRed(parent(n), false);
+          setRed(parent(parent(n)), true);
+          rotateLeft(parent(parent(n)));
+        }
+      }
+    }
+    root.red = false;
+  }
+
+  private void delete(Node<K,V> n) {
+    ++ modCount;
+    -- size;
+
+    if (n.left != null && n.right != null) {
+      // move the successor's contents here and delete the successor
+      // node instead, which has at most one child
+      Node<K,V> s = successor(n);
+      n.key = s.key;
+      n.value = s.value;
+      n = s;
+    }
+
+    Node<K,V> child = n.left != null ? n.left : n.right;
+    if (child != null) {
+      child.parent = n.parent;
+      replace(n, child);
+      n.left = n.right = n.parent = null;
+      if (! n.red) fixAfterDelete(child);
+    } else if (n.parent == null) {
+      root = null;
+    } else {
+      if (! n.red) fixAfterDelete(n);
+      if (n.parent != null) {
+        replace(n, null);
+        n.parent = null;
+      }
+    }
+  }
+
+  private void fixAfterDelete(Node<K,V> n) {
+    while (n != root && ! isRed(n)) {
+      if (n == left(parent(n))) {
+        Node<K,V> sibling = right(parent(n));
+        if (isRed(sibling)) {
+          setRed(sibling, false);
+          setRed(parent(n), true);
+          rotateLeft(parent(n));
+          sibling = right(parent(n));
+        }
+
+        if (! isRed(left(sibling)) && ! isRed(right(sibling))) {
+          setRed(sibling, true);
+          n = parent(n);
+        } else {
+          if (! isRed(right(sibling))) {
+            setRed(left(sibling), false);
+            setRed(sibling, true);
+            rotateRight(sibling);
+            sibling = right(parent(n));
+          }
+          setRed(sibling, isRed(parent(n)));
+          setRed(parent(n), false);
+          setRed(right(sibling), false);
+          rotateLeft(parent(n));
+          n = root;
+        }
+      } else {
+        Node<K,V> sibling = left(parent(n));
+        if (isRed(sibling)) {
+          setRed(sibling, false);
+          setRed(parent(n), true);
+          rotateRight(parent(n));
+          sibling = left(parent(n));
+        }
+
+        if (! isRed(right(sibling)) && ! isRed(left(sibling))) {
+          setRed(sibling, true);
+          n = parent(n);
+        } else {
+          if (! isRed(left(sibling))) {
+            setRed(right(sibling), false);
+            setRed(sibling, true);
+            rotateLeft(sibling);
+            sibling = left(parent(n));
+          }
+          setRed(sibling, isRed(parent(n)));
+          setRed(parent(n), false);
+          setRed(left(sibling), false);
+          rotateRight(parent(n));
+          n = root;
+        }
+      }
+    }
+    setRed(n, false);
+  }
+
+  private static class Node<K,V> implements Entry<K,V> {
+    public K key;
     public V value;
+    public Node<K,V> left;
+    public Node<K,V> right;
+    public Node<K,V> parent;
+    public boolean red;
 
-    public MyEntry(K key, V value) {
+    public Node(K key, V value, Node<K,V> parent) {
       this.key = key;
       this.value = value;
+      this.parent = parent;
     }
 
     public K getKey() {
@@ -117,92 +546,465 @@ public class TreeMap<K,V> implements Map<K,V> {
       this.value = value;
       return old;
     }
-    
+
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  private static class Snapshot<K,V> implements Entry<K,V> {
+    private final K key;
+    private final V value;
+
+    public Snapshot(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public K getKey() {
+      return key;
+    }
+
+    public V getValue() {
+      return value;
+    }
+
+    public V setValue(V value) {
+      throw new UnsupportedOperationException();
+    }
+
+    public boolean equals(Object o) {
+      if (o instanceof Entry) {
+        Entry e = (Entry) o;
+        return (key == null ? e.getKey() == null : key.equals(e.getKey()))
+          && (value == null ? e.getValue() == null
+              : value.equals(e.getValue()));
+      } else {
+        return false;
+      }
+    }
+
+    public int hashCode() {
+      return (key == null ? 0 : key.hashCode())
+        ^ (value == null ? 0 : value.hashCode());
+    }
+
+    public String toString() {
+      return key + "=" + value;
+    }
   }
 
-  private class KeySet implements Set<K> {
+  private class SubMap implements NavigableMap<K,V> {
+    private final boolean fromStart;
+    private final K start;
+    private final boolean startInclusive;
+    private final boolean toEnd;
+    private final K end;
+    private final boolean endInclusive;
+
+    public SubMap(boolean fromStart, K start, boolean startInclusive,
+                  boolean toEnd, K end, boolean endInclusive)
+    {
+      this.fromStart = fromStart;
+      this.start = start;
+      this.startInclusive = startInclusive;
+      this.toEnd = toEnd;
+      this.end = end;
+      this.endInclusive = endInclusive;
+    }
+
+    private boolean tooLow(Object key) {
+      if (fromStart) {
+        return false;
+      } else {
+        int c = compare(key, start);
+        return c < 0 || (c == 0 && ! startInclusive);
+      }
+    }
+
+    private boolean tooHigh(Object key) {
+      if (toEnd) {
+        return false;
+      } else {
+        int c = compare(key, end);
+        return c > 0 || (c == 0 && ! endInclusive);
+      }
+    }
+
+    private boolean inRange(Object key) {
+      return ! (tooLow(key) || tooHigh(key));
+    }
+
+    private boolean inRange(Object key, boolean inclusive) {
+      if (inclusive) {
+        return inRange(key);
+      } else {
+        // an exclusive bound may sit on an exclusive bound of ours
+        return (fromStart || compare(key, start) >= 0)
+          && (toEnd || compare(key, end) <= 0);
+      }
+    }
+
+    private Node<K,V> check(Node<K,V> n) {
+      return n == null || tooLow(n.key) || tooHigh(n.key) ? null : n;
+    }
+
+    private Node<K,V> lowest() {
+      return check(fromStart ? TreeMap.this.first()
+                   : ceiling(start, startInclusive));
+    }
+
+    private Node<K,V> highest() {
+      return check(toEnd ? TreeMap.this.last() : floor(end, endInclusive));
+    }
+
+    private Node<K,V> ceilingNode(Object key, boolean inclusive) {
+      return tooLow(key) ? lowest() : check(ceiling(key, inclusive));
+    }
+
+    private Node<K,V> floorNode(Object key, boolean inclusive) {
+      return tooHigh(key) ? highest() : check(floor(key, inclusive));
+    }
+
+    public String toString() {
+      return Collections.toString(this);
+    }
+
+    public Comparator<? super K> comparator() {
+      return comparator;
+    }
+
+    public V get(Object key) {
+      return inRange(key) ? TreeMap.this.get(key) : null;
+    }
+
+    public boolean containsKey(Object key) {
+      return inRange(key) && TreeMap.this.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+      for (Node<K,V> n = lowest(); n != null && ! tooHigh(n.key);
+           n = successor(n))
+      {
+        if (equal(n.value, value)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public V put(K key, V value) {
+      if (! inRange(key)) {
+        throw new IllegalArgumentException("key out of range");
+      }
+      return TreeMap.this.put(key, value);
+    }
+
+    public void putAll(Map<? extends K,? extends V> elts) {
+      for (Map.Entry<? extends K, ? extends V> entry : elts.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    public V remove(Object key) {
+      return inRange(key) ? TreeMap.this.remove(key) : null;
+    }
+
+    public void clear() {
+      for (Iterator<Entry<K,V>> it = entrySet().iterator(); it.hasNext();) {
+        it.next();
+        it.remove();
+      }
+    }
+
     public int size() {
-      return TreeMap.this.size();
+      int count = 0;
+      for (Node<K,V> n = lowest(); n != null && ! tooHigh(n.key);
+           n = successor(n))
+      {
+        ++ count;
+      }
+      return count;
     }
 
     public boolean isEmpty() {
-      return TreeMap.this.isEmpty();
+      return lowest() == null;
     }
 
-    public boolean contains(Object key) {
-      return containsKey(key);
+    public K firstKey() {
+      return key(lowest());
     }
 
-    public boolean add(K key) {
-      return set.addAndReplace(new MyEntry(key, null)) != null;
+    public K lastKey() {
+      return key(highest());
     }
 
-    public boolean addAll(Collection<? extends K> collection) {
-      boolean change = false;
-      for (K k: collection) if (add(k)) change = true;
-      return change;
+    public Entry<K,V> firstEntry() {
+      return snapshot(lowest());
     }
 
-    public boolean remove(Object key) {
-      return set.removeAndReturn(new MyEntry(key, null)) != null;
+    public Entry<K,V> lastEntry() {
+      return snapshot(highest());
+    }
+
+    public Entry<K,V> pollFirstEntry() {
+      return poll(lowest());
+    }
+
+    public Entry<K,V> pollLastEntry() {
+      return poll(highest());
+    }
+
+    public Entry<K,V> lowerEntry(K key) {
+      return snapshot(floorNode(key, false));
+    }
+
+    public K lowerKey(K key) {
+      return keyOrNull(floorNode(key, false));
+    }
+
+    public Entry<K,V> floorEntry(K key) {
+      return snapshot(floorNode(key, true));
+    }
+
+    public K floorKey(K key) {
+      return keyOrNull(floorNode(key, true));
+    }
+
+    public Entry<K,V> ceilingEntry(K key) {
+      return snapshot(ceilingNode(key, true));
+    }
+
+    public K ceilingKey(K key) {
+      return keyOrNull(ceilingNode(key, true));
+    }
+
+    public Entry<K,V> higherEntry(K key) {
+      return snapshot(ceilingNode(key, false));
+    }
+
+    public K higherKey(K key) {
+      return keyOrNull(ceilingNode(key, false));
+    }
+
+    public NavigableMap<K,V> headMap(K end, boolean inclusive) {
+      if (! inRange(end, inclusive)) {
+        throw new IllegalArgumentException("key out of range");
+      }
+      return new SubMap(fromStart, start, startInclusive,
+                        false, end, inclusive);
+    }
+
+    public SortedMap<K,V> headMap(K end) {
+      return headMap(end, false);
+    }
+
+    public NavigableMap<K,V> tailMap(K start, boolean inclusive) {
+      if (! inRange(start, inclusive)) {
+        throw new IllegalArgumentException("key out of range");
+      }
+      return new SubMap(false, start, inclusive,
+                        toEnd, end, endInclusive);
+    }
+
+    public SortedMap<K,V> tailMap(K start) {
+      return tailMap(start, true);
+    }
+
+    public NavigableMap<K,V> subMap(K start, boolean startInclusive,
+                                    K end, boolean endInclusive)
+    {
+      if (! (inRange(start, startInclusive) && inRange(end, endInclusive))) {
+        throw new IllegalArgumentException("key out of range");
+      }
+      return TreeMap.this.subMap(start, startInclusive, end, endInclusive);
+    }
+
+    public SortedMap<K,V> subMap(K start, K end) {
+      return subMap(start, true, end, false);
     }
 
-    public Object[] toArray() {
-      return toArray(new Object[size()]);      
+    public Set<Entry<K,V>> entrySet() {
+      return new EntrySet(this);
     }
 
-    public <T> T[] toArray(T[] array) {
-      return Collections.toArray(this, array);      
+    public Set<K> keySet() {
+      return new KeySet(this);
+    }
+
+    public Collection<V> values() {
+      return new Values(this);
+    }
+  }
+
+  private abstract class NodeIterator<T> implements Iterator<T> {
+    private final SubMap range;
+    private Node<K,V> next;
+    private Node<K,V> last;
+    private int expectedModCount = modCount;
+
+    public NodeIterator(SubMap range) {
+      this.range = range;
+      next = range == null ? first() : range.lowest();
+    }
+
+    public abstract T value(Node<K,V> n);
+
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    public T next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+
+      last = next;
+      next = successor(next);
+      if (next != null && range != null && range.tooHigh(next.key)) {
+        next = null;
+      }
+      return value(last);
+    }
+
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+
+      if (next != null && last.left != null && last.right != null) {
+        // delete() will move the contents of the next node into this one
+        next = last;
+      }
+      delete(last);
+      expectedModCount = modCount;
+      last = null;
+    }
+  }
+
+  private class EntrySet extends AbstractSet<Entry<K,V>> {
+    private final SubMap range;
+
+    public EntrySet(SubMap range) {
+      this.range = range;
+    }
+
+    private Node<K,V> find(Object o) {
+      if (o instanceof Entry) {
+        Entry e = (Entry) o;
+        Object key = e.getKey();
+        if (range == null || range.inRange(key)) {
+          Node<K,V> n = TreeMap.this.find(key);
+          if (n != null && equal(n.value, e.getValue())) {
+            return n;
+          }
+        }
+      }
+      return null;
+    }
+
+    public int size() {
+      return range == null ? TreeMap.this.size() : range.size();
+    }
+
+    public boolean contains(Object o) {
+      return find(o) != null;
+    }
+
+    public boolean remove(Object o) {
+      Node<K,V> n = find(o);
+      if (n != null) {
+        delete(n);
+        return true;
+      } else {
+        return false;
+      }
     }
 
     public void clear() {
-      TreeMap.this.clear();
+      if (range == null) TreeMap.this.clear(); else range.clear();
     }
 
-    public Iterator<K> iterator() {
-      return new Collections.KeyIterator(set.iterator());
+    public Iterator<Entry<K,V>> iterator() {
+      return new NodeIterator<Entry<K,V>>(range) {
+        public Entry<K,V> value(Node<K,V> n) {
+          return n;
+        }
+      };
     }
   }
 
-  private class Values implements Collection<V> {
+  private class KeySet extends AbstractSet<K> {
+    private final SubMap range;
+
+    public KeySet(SubMap range) {
+      this.range = range;
+    }
+
     public int size() {
-      return TreeMap.this.size();
+      return range == null ? TreeMap.this.size() : range.size();
     }
 
-    public boolean isEmpty() {
-      return TreeMap.this.isEmpty();
+    public boolean contains(Object key) {
+      return range == null ? containsKey(key) : range.containsKey(key);
     }
 
-    public boolean contains(Object value) {
-      return containsValue(value);
+    public boolean remove(Object key) {
+      if (range == null || range.inRange(key)) {
+        Node<K,V> n = find(key);
+        if (n != null) {
+          delete(n);
+          return true;
+        }
+      }
+      return false;
     }
 
-    public boolean add(V value) {
-      throw new UnsupportedOperationException();
+    public void clear() {
+      if (range == null) TreeMap.this.clear(); else range.clear();
     }
 
-    public boolean addAll(Collection<? extends V> collection) {
-      throw new UnsupportedOperationException();      
+    public Iterator<K> iterator() {
+      return new NodeIterator<K>(range) {
+        public K value(Node<K,V> n) {
+          return n.key;
+        }
+      };
     }
+  }
 
-    public boolean remove(Object value) {
-      throw new UnsupportedOperationException();
+  private class Values extends AbstractCollection<V> {
+    private final SubMap range;
+
+    public Values(SubMap range) {
+      this.range = range;
     }
 
-    public Object[] toArray() {
-      return toArray(new Object[size()]);      
+    public int size() {
+      return range == null ? TreeMap.this.size() : range.size();
     }
 
-    public <T> T[] toArray(T[] array) {
-      return Collections.toArray(this, array);      
+    public boolean contains(Object value) {
+      return range == null ? containsValue(value)
+        : range.containsValue(value);
     }
 
     public void clear() {
-      TreeMap.this.clear();
+      if (range == null) TreeMap.this.clear(); else range.clear();
     }
 
     public Iterator<V> iterator() {
-      return new Collections.ValueIterator(set.iterator());
+      return new NodeIterator<V>(range) {
+        public V value(Node<K,V> n) {
+          return n.value;
+        }
+      };
     }
   }
 }
@@ -1,4 +1,4 @@
-/* Copyright (c) 2009, Avian Contributors
+/* Copyright (c) 2009-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -10,28 +10,21 @@
 
 package java.util;
 
-import avian.PersistentSet;
-import avian.Cell;
+public class TreeSet<T> extends AbstractSet<T> implements NavigableSet<T> {
+  private static final Object Value = new Object();
 
-public class TreeSet<T> extends AbstractSet<T> implements Collection<T> {
-  private PersistentSet<Cell<T>> set;
-  private int size;
+  private final NavigableMap<T, Object> map;
 
-  public TreeSet(final Comparator<T> comparator) {
-    set = new PersistentSet(new Comparator<Cell<T>>() {
-      public int compare(Cell<T> a, Cell<T> b) {
-        return comparator.compare(a.value, b.value);
-      }
-    });
-    size = 0;
+  private TreeSet(NavigableMap<T, Object> map) {
+    this.map = map;
+  }
+
+  public TreeSet(Comparator<? super T> comparator) {
+    this(new TreeMap<T, Object>(comparator));
   }
 
   public TreeSet() {
-    this(new Comparator<T>() {
-        public int compare(T a, T b) {
-          return ((Comparable) a).compareTo(b);
-        }
-    });
+    this(new TreeMap<T, Object>());
   }
 
   public TreeSet(Collection<? extends T> collection) {
@@ -42,166 +35,99 @@ public class TreeSet<T> extends AbstractSet<T> implements Collection<T> {
     }
   }
 
-  public T first() {
-    if (isEmpty()) throw new NoSuchElementException();
+  public Comparator<? super T> comparator() {
+    return map.comparator();
+  }
 
-    return set.first().value().value;
+  public T first() {
+    return map.firstKey();
   }
 
   public T last() {
-    if (isEmpty()) throw new NoSuchElementException();
+    return map.lastKey();
+  }
 
-    return set.last().value().value;
+  public T lower(T value) {
+    return map.lowerKey(value);
   }
-  
-  public Iterator<T> iterator() {
-    return new MyIterator<T>(set.first());
+
+  public T floor(T value) {
+    return map.floorKey(value);
   }
 
-  public String toString() {
-    return Collections.toString(this);
+  public T ceiling(T value) {
+    return map.ceilingKey(value);
   }
 
-  public boolean add(T value) {
-    PersistentSet.Path<Cell<T>> p = set.find(new Cell(value, null));
-    if (p.fresh()) {
-      set = p.add();
-      ++size;
-      return true;
-    }
-    return false;
-  }
-
-  T addAndReplace(T value) {
-    PersistentSet.Path<Cell<T>> p = set.find(new Cell(value, null));
-    if (p.fresh()) {
-      set = p.add();
-      ++size;
-      return null;
-    } else {
-      T old = p.value().value;
-      set = p.replaceWith(new Cell(value, null));
-      return old;
-    }
+  public T higher(T value) {
+    return map.higherKey(value);
   }
-    
-  T find(T value) {
-    PersistentSet.Path<Cell<T>> p = set.find(new Cell(value, null));
-    return p.fresh() ? null : p.value().value;
+
+  public T pollFirst() {
+    Map.Entry<T, Object> e = map.pollFirstEntry();
+    return e == null ? null : e.getKey();
+  }
+
+  public T pollLast() {
+    Map.Entry<T, Object> e = map.pollLastEntry();
+    return e == null ? null : e.getKey();
   }
 
-  T removeAndReturn(T value) {
-    Cell<T> cell = removeCell(value);
-    return cell == null ? null : cell.value;
+  public NavigableSet<T> headSet(T end, boolean inclusive) {
+    return new TreeSet(map.headMap(end, inclusive));
   }
 
-  private Cell<T> removeCell(Object value) {
-    PersistentSet.Path<Cell<T>> p = set.find(new Cell(value, null));
-    if (p.fresh()) {
-      return null;
-    } else {
-      --size;
+  public SortedSet<T> headSet(T end) {
+    return headSet(end, false);
+  }
 
-      Cell<T> old = p.value();
+  public NavigableSet<T> tailSet(T start, boolean inclusive) {
+    return new TreeSet(map.tailMap(start, inclusive));
+  }
 
-      if (p.value().next != null) {
-        set = p.replaceWith(p.value().next);
-      } else {
-        set = p.remove();
-      }
+  public SortedSet<T> tailSet(T start) {
+    return tailSet(start, true);
+  }
 
-      return old;
-    }
+  public NavigableSet<T> subSet(T start, boolean startInclusive,
+                                T end, boolean endInclusive)
+  {
+    return new TreeSet(map.subMap(start, startInclusive, end, endInclusive));
+  }
+
+  public SortedSet<T> subSet(T start, T end) {
+    return subSet(start, true, end, false);
+  }
+
+  public Iterator<T> iterator() {
+    return map.keySet().iterator();
+  }
+
+  public String toString() {
+    return Collections.toString(this);
+  }
+
+  public boolean add(T value) {
+    return map.put(value, Value) == null;
   }
 
   public boolean remove(Object value) {
-    return removeCell(value) != null;
+    return map.remove(value) != null;
   }
 
   public int size() {
-    return size;
+    return map.size();
   }
 
   public boolean isEmpty() {
-    return size == 0;
+    return map.isEmpty();
   }
 
   public boolean contains(Object value) {
-    return !set.find(new Cell(value, null)).fresh();
+    return map.containsKey(value);
   }
 
   public void clear() {
-    set = new PersistentSet(set.comparator());
-    size = 0;
-  }
-
-  private class MyIterator<T> implements java.util.Iterator<T> {
-    private PersistentSet.Path<Cell<T>> path;
-    private PersistentSet.Path<Cell<T>> nextPath;
-    private Cell<T> cell;
-    private Cell<T> prevCell;
-    private Cell<T> prevPrevCell;
-    private boolean canRemove = false;
-
-    private MyIterator(PersistentSet.Path<Cell<T>> path) {
-      this.path = path;
-      if (path != null) {
-        cell = path.value();
-        nextPath = path.successor();
-      }
-    }
-
-    private MyIterator(MyIterator<T> start) {
-      path = start.path;
-      nextPath = start.nextPath;
-      cell = start.cell;
-      prevCell = start.prevCell;
-      prevPrevCell = start.prevPrevCell;
-      canRemove = start.canRemove;
-    }
-
-    public boolean hasNext() {
-      return cell != null || nextPath != null;
-    }
-
-    public T next() {
-      if (cell == null) {
-        path = nextPath;
-        nextPath = path.successor();
-        cell = path.value();
-      }
-      prevPrevCell = prevCell;
-      prevCell = cell;
-      cell = cell.next;
-      canRemove = true;
-      return prevCell.value;
-    }
-
-    public void remove() {
-      if (! canRemove) throw new IllegalStateException();
-
-      --size;
-
-      if (prevPrevCell != null && prevPrevCell.next == prevCell) {
-        // cell to remove is not the first in the list.
-        prevPrevCell.next = prevCell.next;
-        prevCell = prevPrevCell;
-      } else if (prevCell.next == cell && cell != null) {
-        // cell to remove is the first in the list, but not the last.
-        set = (PersistentSet) path.replaceWith(cell);
-        prevCell = null;
-      } else {
-        // cell is alone in the list.
-        set = (PersistentSet) path.remove();
-        path = path.successor();
-        if (path != null) {
-          prevCell = null;
-          cell = path.value();
-          path = (PersistentSet.Path) set.find((Cell) cell);
-        }
-      }
-
-      canRemove = false;
-    }
-  }    
+    map.clear();
+  }
 }
@@ -0,0 +1,203 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Implements the submit and invoke methods of ExecutorService in
+ * terms of execute, wrapping tasks with newTaskFor.
+ */
+public abstract class AbstractExecutorService implements ExecutorService {
+  protected <T> RunnableFuture<T> newTaskFor(Runnable task, T result) {
+    return new FutureTask<T>(task, result);
+  }
+
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> task) {
+    return new FutureTask<T>(task);
+  }
+
+  public Future<?> submit(Runnable task) {
+    return submit(task, null);
+  }
+
+  public <T> Future<T> submit(Runnable task, T result) {
+    if (task == null) throw new NullPointerException();
+
+    RunnableFuture<T> future = newTaskFor(task, result);
+    execute(future);
+    return future;
+  }
+
+  public <T> Future<T> submit(Callable<T> task) {
+    if (task == null) throw new NullPointerException();
+
+    RunnableFuture<T> future = newTaskFor(task);
+    execute(future);
+    return future;
+  }
+
+  private static void cancelAll(List<? extends Future<?>> futures) {
+    for (Future<?> f: futures) {
+      f.cancel(true);
+    }
+  }
+
+  public <T> List<Future<T>> invokeAll
+    (Collection<? extends Callable<T>> tasks)
+    throws InterruptedException
+  {
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    boolean done = false;
+    try {
+      for (Callable<T> task: tasks) {
+        RunnableFuture<T> f = newTaskFor(task);
+        futures.add(f);
+        execute(f);
+      }
+
+      for (Future<T> f: futures) {
+        if (! f.isDone()) {
+          try {
+            f.get();
+          } catch (CancellationException e) {
+            // ignore
+          } catch (ExecutionException e) {
+            // ignore
+          }
+        }
+      }
+
+      done = true;
+      return futures;
+    } finally {
+      if (! done) {
+        cancelAll(futures);
+      }
+    }
+  }
+
+  public <T> List<Future<T>> invokeAll
+    (Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    boolean done = false;
+    try {
+      for (Callable<T> task: tasks) {
+        futures.add(newTaskFor(task));
+      }
+
+      for (Future<T> f: futures) {
+        execute((Runnable) f);
+        if (System.nanoTime() - deadline >= 0) {
+          return futures;
+        }
+      }
+
+      for (Future<T> f: futures) {
+        if (! f.isDone()) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            return futures;
+          }
+
+          try {
+            f.get(remaining, TimeUnit.NANOSECONDS);
+          } catch (CancellationException e) {
+            // ignore
+          } catch (ExecutionException e) {
+            // ignore
+          } catch (TimeoutException e) {
+            return futures;
+          }
+        }
+      }
+
+      done = true;
+      return futures;
+    } finally {
+      if (! done) {
+        cancelAll(futures);
+      }
+    }
+  }
+
+  private <T> T invokeAny(Collection<? extends Callable<T>> tasks,
+                          boolean timed, long nanoseconds)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    if (tasks.isEmpty()) throw new IllegalArgumentException();
+
+    final BlockingQueue<Future<T>> completed
+      = new LinkedBlockingQueue<Future<T>>();
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    long deadline = System.nanoTime() + nanoseconds;
+    try {
+      for (Callable<T> task: tasks) {
+        RunnableFuture<T> f = new FutureTask<T>(task) {
+            protected void done() {
+              completed.add(this);
+            }
+          };
+        futures.add(f);
+        execute(f);
+      }
+
+      ExecutionException failure = null;
+      for (int i = 0; i < futures.size(); ++i) {
+        Future<T> f;
+        if (timed) {
+          f = completed.poll
+            (deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (f == null) {
+            throw new TimeoutException();
+          }
+        } else {
+          f = completed.take();
+        }
+
+        try {
+          return f.get();
+        } catch (ExecutionException e) {
+          failure = e;
+        } catch (CancellationException e) {
+          failure = new ExecutionException(e);
+        }
+      }
+
+      throw failure;
+    } finally {
+      cancelAll(futures);
+    }
+  }
+
+  public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+    throws InterruptedException, ExecutionException
+  {
+    try {
+      return invokeAny(tasks, false, 0);
+    } catch (TimeoutException e) {
+      // only thrown when timed
+      throw new RuntimeException(e);
+    }
+  }
+
+  public <T> T invokeAny(Collection<? extends Callable<T>> tasks,
+                         long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    return invokeAny(tasks, true, unit.toNanos(timeout));
+  }
+}
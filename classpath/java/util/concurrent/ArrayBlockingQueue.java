@@ -0,0 +1,381 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue backed by a circular array.  A single
+ * lock guards the array, so unlike LinkedBlockingQueue no allocation
+ * happens when elements are added.
+ */
+public class ArrayBlockingQueue<T> extends AbstractQueue<T>
+  implements BlockingQueue<T>
+{
+  private final Object[] array;
+  private int takeIndex;
+  private int putIndex;
+  private int count;
+
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+
+  public ArrayBlockingQueue(int capacity, boolean fair) {
+    if (capacity <= 0) throw new IllegalArgumentException();
+
+    array = new Object[capacity];
+    lock = new ReentrantLock(fair);
+    notEmpty = lock.newCondition();
+    notFull = lock.newCondition();
+  }
+
+  public ArrayBlockingQueue(int capacity) {
+    this(capacity, false);
+  }
+
+  public ArrayBlockingQueue(int capacity, boolean fair,
+                            Collection<? extends T> collection)
+  {
+    this(capacity, fair);
+
+    for (T element: collection) {
+      if (element == null) throw new NullPointerException();
+      if (count == capacity) throw new IllegalArgumentException();
+
+      array[putIndex++] = element;
+      ++ count;
+    }
+
+    if (putIndex == capacity) {
+      putIndex = 0;
+    }
+  }
+
+  private int increment(int i) {
+    return ++ i == array.length ? 0 : i;
+  }
+
+  private int decrement(int i) {
+    return (i == 0 ? array.length : i) - 1;
+  }
+
+  // must be called with the lock held and count < array.length
+  private void enqueue(T element) {
+    array[putIndex] = element;
+    putIndex = increment(putIndex);
+    ++ count;
+    notEmpty.signal();
+  }
+
+  // must be called with the lock held and count > 0
+  private T dequeue() {
+    T element = (T) array[takeIndex];
+    array[takeIndex] = null;
+    takeIndex = increment(takeIndex);
+    -- count;
+    notFull.signal();
+    return element;
+  }
+
+  // must be called with the lock held
+  private void removeAt(int index) {
+    if (index == takeIndex) {
+      array[takeIndex] = null;
+      takeIndex = increment(takeIndex);
+    } else {
+      // shift the elements after index down by one
+      for (int i = index, next; (next = increment(i)) != putIndex; i = next) {
+        array[i] = array[next];
+      }
+      putIndex = decrement(putIndex);
+      array[putIndex] = null;
+    }
+    -- count;
+    notFull.signal();
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int remainingCapacity() {
+    lock.lock();
+    try {
+      return array.length - count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean offer(T element) {
+    if (element == null) throw new NullPointerException();
+
+    lock.lock();
+    try {
+      if (count == array.length) {
+        return false;
+      }
+      enqueue(element);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void put(T element) throws InterruptedException {
+    if (element == null) throw new NullPointerException();
+
+    lock.lockInterruptibly();
+    try {
+      while (count == array.length) {
+        notFull.await();
+      }
+      enqueue(element);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean offer(T element, long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    if (element == null) throw new NullPointerException();
+
+    long remaining = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (count == array.length) {
+        if (remaining <= 0) {
+          return false;
+        }
+        remaining = notFull.awaitNanos(remaining);
+      }
+      enqueue(element);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public T poll() {
+    lock.lock();
+    try {
+      return count == 0 ? null : dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public T take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long remaining = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        if (remaining <= 0) {
+          return null;
+        }
+        remaining = notEmpty.awaitNanos(remaining);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public T peek() {
+    lock.lock();
+    try {
+      return (T) array[takeIndex];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean contains(Object element) {
+    if (element != null) {
+      lock.lock();
+      try {
+        for (int i = takeIndex, n = count; n > 0; i = increment(i), --n) {
+          if (element.equals(array[i])) {
+            return true;
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return false;
+  }
+
+  public boolean remove(Object element) {
+    if (element != null) {
+      lock.lock();
+      try {
+        for (int i = takeIndex, n = count; n > 0; i = increment(i), --n) {
+          if (element.equals(array[i])) {
+            removeAt(i);
+            return true;
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return false;
+  }
+
+  public void clear() {
+    lock.lock();
+    try {
+      for (int i = takeIndex; count > 0; i = increment(i), --count) {
+        array[i] = null;
+      }
+      takeIndex = putIndex = 0;
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int drainTo(Collection<? super T> collection) {
+    return drainTo(collection, Integer.MAX_VALUE);
+  }
+
+  public int drainTo(Collection<? super T> collection, int max) {
+    if (collection == null) throw new NullPointerException();
+    if (collection == this) throw new IllegalArgumentException();
+
+    lock.lock();
+    try {
+      int n = 0;
+      try {
+        for (int available = Math.min(max, count); n < available; ++n) {
+          collection.add((T) array[takeIndex]);
+          array[takeIndex] = null;
+          takeIndex = increment(takeIndex);
+        }
+      } finally {
+        if (n > 0) {
+          count -= n;
+          notFull.signalAll();
+        }
+      }
+      return n;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Object[] toArray() {
+    lock.lock();
+    try {
+      Object[] result = new Object[count];
+      for (int i = takeIndex, j = 0; j < result.length; i = increment(i)) {
+        result[j++] = array[i];
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public <S> S[] toArray(S[] result) {
+    lock.lock();
+    try {
+      if (result.length < count) {
+        result = (S[]) java.lang.reflect.Array.newInstance
+          (result.getClass().getComponentType(), count);
+      }
+
+      for (int i = takeIndex, j = 0; j < count; i = increment(i)) {
+        result[j++] = (S) array[i];
+      }
+
+      if (result.length > count) {
+        result[count] = null;
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns an iterator over a snapshot of the queue's contents,
+   * which will never throw ConcurrentModificationException.
+   */
+  public Iterator<T> iterator() {
+    return new MyIterator(toArray());
+  }
+
+  private class MyIterator implements Iterator<T> {
+    private final Object[] snapshot;
+    private int index;
+    private Object lastReturned;
+
+    public MyIterator(Object[] snapshot) {
+      this.snapshot = snapshot;
+    }
+
+    public boolean hasNext() {
+      return index < snapshot.length;
+    }
+
+    public T next() {
+      if (index == snapshot.length) throw new NoSuchElementException();
+
+      return (T) (lastReturned = snapshot[index++]);
+    }
+
+    public void remove() {
+      if (lastReturned == null) throw new IllegalStateException();
+
+      Object element = lastReturned;
+      lastReturned = null;
+
+      // remove exactly the element we returned, if it is still queued
+      lock.lock();
+      try {
+        for (int i = takeIndex, n = count; n > 0; i = increment(i), --n) {
+          if (array[i] == element) {
+            removeAt(i);
+            return;
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,388 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An unbounded, thread-safe deque backed by a doubly linked list.
+ * Insertions and removals are serialized by a private lock, but
+ * reads (peeking, iterating, size and contains) never block: links
+ * are volatile, and an unlinked node keeps pointing into the list so
+ * that a reader positioned on it can still find its way to the live
+ * nodes.
+ */
+public class ConcurrentLinkedDeque<T> extends AbstractCollection<T>
+  implements Deque<T>
+{
+  private final Object lock = new Object();
+  private volatile Node<T> first;
+  private volatile Node<T> last;
+  private volatile int count;
+
+  public ConcurrentLinkedDeque() { }
+
+  public ConcurrentLinkedDeque(Collection<? extends T> collection) {
+    for (T element: collection) {
+      addLast(element);
+    }
+  }
+
+  private void linkFirst(T element) {
+    if (element == null) throw new NullPointerException();
+
+    Node<T> node = new Node<T>(element);
+    synchronized (lock) {
+      Node<T> f = first;
+      node.next = f;
+      if (f == null) {
+        last = node;
+      } else {
+        f.prev = node;
+      }
+      first = node;
+      ++ count;
+    }
+  }
+
+  private void linkLast(T element) {
+    if (element == null) throw new NullPointerException();
+
+    Node<T> node = new Node<T>(element);
+    synchronized (lock) {
+      Node<T> l = last;
+      node.prev = l;
+      if (l == null) {
+        first = node;
+      } else {
+        l.next = node;
+      }
+      last = node;
+      ++ count;
+    }
+  }
+
+  // must be called with the lock held on a node that is still linked
+  private T unlink(Node<T> node) {
+    T element = node.value;
+    node.value = null;
+
+    Node<T> p = node.prev;
+    Node<T> n = node.next;
+    if (p == null) {
+      first = n;
+    } else {
+      p.next = n;
+    }
+
+    if (n == null) {
+      last = p;
+    } else {
+      n.prev = p;
+    }
+
+    -- count;
+    return element;
+  }
+
+  // returns the first live node at or after p
+  private static <T> Node<T> live(Node<T> p) {
+    while (p != null && p.value == null) {
+      p = p.next;
+    }
+    return p;
+  }
+
+  // returns the last live node at or before p
+  private static <T> Node<T> liveReverse(Node<T> p) {
+    while (p != null && p.value == null) {
+      p = p.prev;
+    }
+    return p;
+  }
+
+  public void addFirst(T element) {
+    linkFirst(element);
+  }
+
+  public void addLast(T element) {
+    linkLast(element);
+  }
+
+  public boolean offerFirst(T element) {
+    linkFirst(element);
+    return true;
+  }
+
+  public boolean offerLast(T element) {
+    linkLast(element);
+    return true;
+  }
+
+  public boolean add(T element) {
+    linkLast(element);
+    return true;
+  }
+
+  public boolean offer(T element) {
+    linkLast(element);
+    return true;
+  }
+
+  public void push(T element) {
+    linkFirst(element);
+  }
+
+  public T pollFirst() {
+    if (first == null) {
+      return null;
+    }
+
+    synchronized (lock) {
+      Node<T> f = first;
+      return f == null ? null : unlink(f);
+    }
+  }
+
+  public T pollLast() {
+    if (last == null) {
+      return null;
+    }
+
+    synchronized (lock) {
+      Node<T> l = last;
+      return l == null ? null : unlink(l);
+    }
+  }
+
+  public T poll() {
+    return pollFirst();
+  }
+
+  public T removeFirst() {
+    T element = pollFirst();
+    if (element == null) throw new NoSuchElementException();
+    return element;
+  }
+
+  public T removeLast() {
+    T element = pollLast();
+    if (element == null) throw new NoSuchElementException();
+    return element;
+  }
+
+  public T remove() {
+    return removeFirst();
+  }
+
+  public T pop() {
+    return removeFirst();
+  }
+
+  public T peekFirst() {
+    while (true) {
+      Node<T> f = live(first);
+      if (f == null) {
+        return null;
+      }
+
+      T element = f.value;
+      if (element != null) {
+        return element;
+      }
+    }
+  }
+
+  public T peekLast() {
+    while (true) {
+      Node<T> l = liveReverse(last);
+      if (l == null) {
+        return null;
+      }
+
+      T element = l.value;
+      if (element != null) {
+        return element;
+      }
+    }
+  }
+
+  public T peek() {
+    return peekFirst();
+  }
+
+  public T getFirst() {
+    T element = peekFirst();
+    if (element == null) throw new NoSuchElementException();
+    return element;
+  }
+
+  public T getLast() {
+    T element = peekLast();
+    if (element == null) throw new NoSuchElementException();
+    return element;
+  }
+
+  public T element() {
+    return getFirst();
+  }
+
+  public boolean removeFirstOccurrence(Object element) {
+    if (element != null) {
+      synchronized (lock) {
+        for (Node<T> p = first; p != null; p = p.next) {
+          if (element.equals(p.value)) {
+            unlink(p);
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  public boolean removeLastOccurrence(Object element) {
+    if (element != null) {
+      synchronized (lock) {
+        for (Node<T> p = last; p != null; p = p.prev) {
+          if (element.equals(p.value)) {
+            unlink(p);
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  public boolean remove(Object element) {
+    return removeFirstOccurrence(element);
+  }
+
+  public boolean contains(Object element) {
+    if (element != null) {
+      for (Node<T> p = live(first); p != null; p = live(p.next)) {
+        if (element.equals(p.value)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public boolean isEmpty() {
+    return peekFirst() == null;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public void clear() {
+    synchronized (lock) {
+      while (first != null) {
+        unlink(first);
+      }
+    }
+  }
+
+  public Object[] toArray() {
+    return new ArrayList<T>(this).toArray();
+  }
+
+  public <S> S[] toArray(S[] array) {
+    return new ArrayList<T>(this).toArray(array);
+  }
+
+  /**
+   * Returns a weakly consistent iterator, which will never throw
+   * ConcurrentModificationException and may or may not reflect
+   * modifications made after it was created.
+   */
+  public Iterator<T> iterator() {
+    return new MyIterator(false);
+  }
+
+  public Iterator<T> descendingIterator() {
+    return new MyIterator(true);
+  }
+
+  public String toString() {
+    return new ArrayList<T>(this).toString();
+  }
+
+  private static class Node<T> {
+    public volatile T value;
+    public volatile Node<T> prev;
+    public volatile Node<T> next;
+
+    public Node(T value) {
+      this.value = value;
+    }
+  }
+
+  private class MyIterator implements Iterator<T> {
+    private final boolean descending;
+    private Node<T> current;
+    // the value is remembered in case another thread removes the
+    // node between hasNext and next
+    private T currentValue;
+    private Node<T> lastReturned;
+
+    public MyIterator(boolean descending) {
+      this.descending = descending;
+      advance(descending ? last : first);
+    }
+
+    private void advance(Node<T> p) {
+      while (p != null) {
+        T value = p.value;
+        if (value != null) {
+          current = p;
+          currentValue = value;
+          return;
+        }
+        p = descending ? p.prev : p.next;
+      }
+      current = null;
+      currentValue = null;
+    }
+
+    public boolean hasNext() {
+      return current != null;
+    }
+
+    public T next() {
+      if (current == null) throw new NoSuchElementException();
+
+      T element = currentValue;
+      lastReturned = current;
+      advance(descending ? current.prev : current.next);
+      return element;
+    }
+
+    public void remove() {
+      if (lastReturned == null) throw new IllegalStateException();
+
+      synchronized (lock) {
+        if (lastReturned.value != null) {
+          unlink(lastReturned);
+        }
+      }
+      lastReturned = null;
+    }
+  }
+}
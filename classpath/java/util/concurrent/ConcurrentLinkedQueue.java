@@ -2,10 +2,26 @@ package java.util.concurrent;
 
 import avian.Atomic;
 
-public class ConcurrentLinkedQueue<T> {
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * An unbounded, non-blocking queue based on the Michael-Scott
+ * algorithm.  Elements are claimed by swapping their node's value to
+ * null, so that iterators may remove elements from the middle of the
+ * queue without racing with poll; such dead nodes are skipped and
+ * dropped once they reach the head.
+ */
+public class ConcurrentLinkedQueue<T> extends AbstractQueue<T>
+  implements Queue<T>
+{
   private static final long QueueHead;
   private static final long QueueTail;
   private static final long NodeNext;
+  private static final long NodeValue;
 
   static {
     try {
@@ -17,6 +33,9 @@ public class ConcurrentLinkedQueue<T> {
 
       NodeNext = Atomic.getOffset
         (Node.class.getField("next"));
+
+      NodeValue = Atomic.getOffset
+        (Node.class.getField("value"));
     } catch (NoSuchFieldException e) {
       throw new RuntimeException(e);
     }
@@ -31,6 +50,12 @@ public class ConcurrentLinkedQueue<T> {
   }
 
   public boolean add(T value) {
+    return offer(value);
+  }
+
+  public boolean offer(T value) {
+    if (value == null) throw new NullPointerException();
+
     Node<T> n = new Node(value, null);
     while (true) {
       Node<T> t = tail;
@@ -71,8 +96,16 @@ public class ConcurrentLinkedQueue<T> {
           }
         } else {
           T value = next.value;
-          if ((! remove)
-              || Atomic.compareAndSwapObject(this, QueueHead, h, next))
+          if (value != null && ! remove) {
+            return value;
+          }
+
+          // next becomes the new dummy node whether or not we manage
+          // to claim its value, since a null value means it was
+          // already removed
+          if (Atomic.compareAndSwapObject(this, QueueHead, h, next)
+              && value != null
+              && Atomic.compareAndSwapObject(next, NodeValue, value, null))
           {
             return value;
           }
@@ -81,6 +114,81 @@ public class ConcurrentLinkedQueue<T> {
     }
   }
 
+  public boolean isEmpty() {
+    return peek() == null;
+  }
+
+  /**
+   * Returns the number of elements in this queue.  Unlike most
+   * collections, this is an O(n) operation, and the result may be
+   * stale by the time it is returned if other threads are modifying
+   * the queue.
+   */
+  public int size() {
+    int count = 0;
+    for (Node<T> p = first(); p != null; p = successor(p)) {
+      if (++ count == Integer.MAX_VALUE) {
+        break;
+      }
+    }
+    return count;
+  }
+
+  public boolean contains(Object element) {
+    if (element != null) {
+      for (Node<T> p = first(); p != null; p = successor(p)) {
+        T value = p.value;
+        if (value != null && element.equals(value)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public boolean remove(Object element) {
+    if (element != null) {
+      for (Node<T> p = first(); p != null; p = successor(p)) {
+        T value = p.value;
+        if (value != null
+            && element.equals(value)
+            && Atomic.compareAndSwapObject(p, NodeValue, value, null))
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public Object[] toArray() {
+    return new ArrayList<T>(this).toArray();
+  }
+
+  public <S> S[] toArray(S[] array) {
+    return new ArrayList<T>(this).toArray(array);
+  }
+
+  private Node<T> first() {
+    return successor(head);
+  }
+
+  private Node<T> successor(Node<T> p) {
+    do {
+      p = p.next;
+    } while (p != null && p.value == null);
+    return p;
+  }
+
+  /**
+   * Returns a weakly consistent iterator, which will never throw
+   * ConcurrentModificationException and may or may not reflect
+   * modifications made after it was created.
+   */
+  public Iterator<T> iterator() {
+    return new MyIterator();
+  }
+
   private static class Node<T> {
     public volatile T value;
     public volatile Node<T> next;
@@ -90,4 +198,50 @@ public class ConcurrentLinkedQueue<T> {
       this.next = next;
     }
   }
+
+  private class MyIterator implements Iterator<T> {
+    private Node<T> current;
+    // the value is remembered in case another thread polls the node
+    // between hasNext and next
+    private T currentValue;
+    private Node<T> lastReturned;
+    private T lastReturnedValue;
+
+    public MyIterator() {
+      advance(head);
+    }
+
+    private void advance(Node<T> p) {
+      current = p;
+      currentValue = null;
+      while ((current = current.next) != null) {
+        currentValue = current.value;
+        if (currentValue != null) {
+          break;
+        }
+      }
+    }
+
+    public boolean hasNext() {
+      return current != null;
+    }
+
+    public T next() {
+      if (current == null) throw new NoSuchElementException();
+
+      lastReturned = current;
+      lastReturnedValue = currentValue;
+      advance(current);
+      return lastReturnedValue;
+    }
+
+    public void remove() {
+      if (lastReturned == null) throw new IllegalStateException();
+
+      Atomic.compareAndSwapObject
+        (lastReturned, NodeValue, lastReturnedValue, null);
+      lastReturned = null;
+      lastReturnedValue = null;
+    }
+  }
 }
@@ -0,0 +1,254 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import java.util.Collection;
+import java.util.List;
+
+public class Executors {
+  private Executors() { }
+
+  public static ExecutorService newFixedThreadPool(int threadCount,
+                                                   ThreadFactory factory)
+  {
+    return new ThreadPoolExecutor
+      (threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+       new LinkedBlockingQueue<Runnable>(), factory);
+  }
+
+  public static ExecutorService newFixedThreadPool(int threadCount) {
+    return newFixedThreadPool(threadCount, defaultThreadFactory());
+  }
+
+  public static ExecutorService newCachedThreadPool(ThreadFactory factory) {
+    return new ThreadPoolExecutor
+      (0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+       new SynchronousQueue<Runnable>(), factory);
+  }
+
+  public static ExecutorService newCachedThreadPool() {
+    return newCachedThreadPool(defaultThreadFactory());
+  }
+
+  public static ExecutorService newSingleThreadExecutor
+    (ThreadFactory factory)
+  {
+    return new DelegatedExecutorService(newFixedThreadPool(1, factory));
+  }
+
+  public static ExecutorService newSingleThreadExecutor() {
+    return newSingleThreadExecutor(defaultThreadFactory());
+  }
+
+  public static ScheduledExecutorService newScheduledThreadPool
+    (int threadCount, ThreadFactory factory)
+  {
+    return new ScheduledThreadPoolExecutor(threadCount, factory);
+  }
+
+  public static ScheduledExecutorService newScheduledThreadPool
+    (int threadCount)
+  {
+    return new ScheduledThreadPoolExecutor(threadCount);
+  }
+
+  public static ScheduledExecutorService newSingleThreadScheduledExecutor
+    (ThreadFactory factory)
+  {
+    return new DelegatedScheduledExecutorService
+      (new ScheduledThreadPoolExecutor(1, factory));
+  }
+
+  public static ScheduledExecutorService newSingleThreadScheduledExecutor() {
+    return newSingleThreadScheduledExecutor(defaultThreadFactory());
+  }
+
+  public static ExecutorService newWorkStealingPool(int parallelism) {
+    return new ForkJoinPool(parallelism);
+  }
+
+  public static ExecutorService newWorkStealingPool() {
+    return new ForkJoinPool();
+  }
+
+  public static ExecutorService unconfigurableExecutorService
+    (ExecutorService executor)
+  {
+    if (executor == null) throw new NullPointerException();
+
+    return new DelegatedExecutorService(executor);
+  }
+
+  public static ThreadFactory defaultThreadFactory() {
+    return new DefaultThreadFactory();
+  }
+
+  public static <T> Callable<T> callable(final Runnable task,
+                                         final T result)
+  {
+    if (task == null) throw new NullPointerException();
+
+    return new Callable<T>() {
+      public T call() {
+        task.run();
+        return result;
+      }
+    };
+  }
+
+  public static Callable<Object> callable(Runnable task) {
+    return callable(task, null);
+  }
+
+  private static class DefaultThreadFactory implements ThreadFactory {
+    private static final Object lock = new Object();
+    private static int nextPoolNumber = 1;
+
+    private final String prefix;
+    private int nextThreadNumber = 1;
+
+    public DefaultThreadFactory() {
+      synchronized (lock) {
+        prefix = "pool-" + (nextPoolNumber++) + "-thread-";
+      }
+    }
+
+    public Thread newThread(Runnable task) {
+      String name;
+      synchronized (this) {
+        name = prefix + (nextThreadNumber++);
+      }
+
+      Thread t = new Thread(task, name);
+      if (t.isDaemon()) {
+        t.setDaemon(false);
+      }
+      return t;
+    }
+  }
+
+  /**
+   * Exposes only the ExecutorService methods of an executor, so that
+   * callers can't reconfigure it.
+   */
+  private static class DelegatedExecutorService
+    extends AbstractExecutorService
+  {
+    private final ExecutorService executor;
+
+    public DelegatedExecutorService(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    public void execute(Runnable task) {
+      executor.execute(task);
+    }
+
+    public void shutdown() {
+      executor.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+      return executor.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+      return executor.isShutdown();
+    }
+
+    public boolean isTerminated() {
+      return executor.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException
+    {
+      return executor.awaitTermination(timeout, unit);
+    }
+
+    public Future<?> submit(Runnable task) {
+      return executor.submit(task);
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+      return executor.submit(task);
+    }
+
+    public <T> Future<T> submit(Runnable task, T result) {
+      return executor.submit(task, result);
+    }
+
+    public <T> List<Future<T>> invokeAll
+      (Collection<? extends Callable<T>> tasks)
+      throws InterruptedException
+    {
+      return executor.invokeAll(tasks);
+    }
+
+    public <T> List<Future<T>> invokeAll
+      (Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+      throws InterruptedException
+    {
+      return executor.invokeAll(tasks, timeout, unit);
+    }
+
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+      throws InterruptedException, ExecutionException
+    {
+      return executor.invokeAny(tasks);
+    }
+
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks,
+                           long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException
+    {
+      return executor.invokeAny(tasks, timeout, unit);
+    }
+  }
+
+  private static class DelegatedScheduledExecutorService
+    extends DelegatedExecutorService
+    implements ScheduledExecutorService
+  {
+    private final ScheduledExecutorService executor;
+
+    public DelegatedScheduledExecutorService
+      (ScheduledExecutorService executor)
+    {
+      super(executor);
+      this.executor = executor;
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long delay,
+                                       TimeUnit unit)
+    {
+      return executor.schedule(task, delay, unit);
+    }
+
+    public <V> ScheduledFuture<V> schedule(Callable<V> task, long delay,
+                                           TimeUnit unit)
+    {
+      return executor.schedule(task, delay, unit);
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate
+      (Runnable task, long initialDelay, long period, TimeUnit unit)
+    {
+      return executor.scheduleAtFixedRate(task, initialDelay, period, unit);
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay
+      (Runnable task, long initialDelay, long delay, TimeUnit unit)
+    {
+      return executor.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+    }
+  }
+}
@@ -0,0 +1,630 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import avian.Atomic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An executor whose workers each own a double-ended queue of tasks.
+ * A worker pushes and pops tasks it forks at the top of its own
+ * queue without locking, while idle workers steal from the bottom of
+ * other workers' queues using a single compare-and-swap on the base
+ * index.  Tasks submitted from outside the pool go to a shared
+ * submission queue.
+ */
+public class ForkJoinPool extends AbstractExecutorService {
+  private static final long IdleCountOffset;
+
+  static {
+    try {
+      IdleCountOffset = Atomic.getOffset
+        (ForkJoinPool.class.getField("idleCount"));
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final Object commonLock = new Object();
+  private static ForkJoinPool common;
+  private static int nextPoolNumber = 1;
+
+  private final int parallelism;
+  private final String name;
+  private final boolean isCommon;
+  private final ConcurrentLinkedQueue<ForkJoinTask<?>> submissions
+    = new ConcurrentLinkedQueue<ForkJoinTask<?>>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition work = lock.newCondition();
+  private final Condition termination = lock.newCondition();
+
+  // copied on write while holding the lock, so thieves can scan it
+  // without locking
+  private volatile WorkQueue[] queues;
+  private volatile int workerCount;
+  private volatile int idleCount;
+  private volatile boolean shutdown;
+  private int version;
+  private boolean terminated;
+  private long stealCount;
+  private int nextWorkerNumber = 1;
+
+  private ForkJoinPool(int parallelism, boolean isCommon) {
+    if (parallelism <= 0) throw new IllegalArgumentException();
+
+    this.parallelism = parallelism;
+    this.isCommon = isCommon;
+    this.queues = new WorkQueue[parallelism];
+
+    synchronized (commonLock) {
+      this.name = isCommon ? "ForkJoinPool.commonPool"
+        : "ForkJoinPool-" + (nextPoolNumber++);
+    }
+  }
+
+  public ForkJoinPool(int parallelism) {
+    this(parallelism, false);
+  }
+
+  public ForkJoinPool() {
+    this(Runtime.getRuntime().availableProcessors(), false);
+  }
+
+  public static ForkJoinPool commonPool() {
+    synchronized (commonLock) {
+      if (common == null) {
+        common = new ForkJoinPool
+          (Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+           true);
+      }
+      return common;
+    }
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  public int getPoolSize() {
+    return workerCount;
+  }
+
+  public long getStealCount() {
+    lock.lock();
+    try {
+      long count = stealCount;
+      for (WorkQueue q: queues) {
+        if (q != null) {
+          count += q.stealCount;
+        }
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getQueuedTaskCount() {
+    long count = 0;
+    for (WorkQueue q: queues) {
+      if (q != null) {
+        count += q.size();
+      }
+    }
+    return count;
+  }
+
+  public boolean hasQueuedSubmissions() {
+    return submissions.peek() != null;
+  }
+
+  public int getQueuedSubmissionCount() {
+    return submissions.size();
+  }
+
+  private boolean hasQueuedTasks() {
+    if (hasQueuedSubmissions()) {
+      return true;
+    }
+
+    for (WorkQueue q: queues) {
+      if (q != null && q.size() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void push(WorkQueue queue, ForkJoinTask<?> task) {
+    queue.push(task);
+    signalWork();
+  }
+
+  void externalPush(ForkJoinTask<?> task) {
+    if (task == null) throw new NullPointerException();
+    if (shutdown) throw new RejectedExecutionException();
+
+    submissions.add(task);
+    signalWork();
+  }
+
+  /**
+   * Wakes an idle worker if there is one, or else starts a new worker
+   * if the pool has not yet reached its target parallelism.
+   */
+  private void signalWork() {
+    if (idleCount > 0) {
+      lock.lock();
+      try {
+        ++ version;
+        work.signal();
+      } finally {
+        lock.unlock();
+      }
+    } else if (workerCount < parallelism) {
+      tryAddWorker();
+    }
+  }
+
+  private void tryAddWorker() {
+    ForkJoinWorkerThread thread;
+    lock.lock();
+    try {
+      if (shutdown || workerCount >= parallelism) {
+        return;
+      }
+
+      WorkQueue[] array = queues;
+      int index = 0;
+      while (array[index] != null) ++ index;
+
+      WorkQueue queue = new WorkQueue(index);
+      thread = new ForkJoinWorkerThread
+        (this, queue, name + "-worker-" + (nextWorkerNumber++));
+
+      WorkQueue[] copy = new WorkQueue[array.length];
+      System.arraycopy(array, 0, copy, 0, array.length);
+      copy[index] = queue;
+      queues = copy;
+      ++ workerCount;
+    } finally {
+      lock.unlock();
+    }
+
+    try {
+      thread.start();
+    } catch (RuntimeException e) {
+      deregisterWorker(thread);
+      throw e;
+    } catch (Error e) {
+      deregisterWorker(thread);
+      throw e;
+    }
+  }
+
+  private void deregisterWorker(ForkJoinWorkerThread thread) {
+    lock.lock();
+    try {
+      WorkQueue[] array = queues;
+      WorkQueue[] copy = new WorkQueue[array.length];
+      System.arraycopy(array, 0, copy, 0, array.length);
+      copy[thread.queue.index] = null;
+      queues = copy;
+      -- workerCount;
+      stealCount += thread.queue.stealCount;
+
+      if (shutdown) {
+        tryTerminate();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (! shutdown && hasQueuedTasks()) {
+      signalWork();
+    }
+  }
+
+  // must be called with the lock held
+  private void tryTerminate() {
+    if (shutdown && workerCount == 0 && ! terminated) {
+      terminated = true;
+      termination.signalAll();
+    }
+  }
+
+  private ForkJoinTask<?> scan(WorkQueue queue) {
+    ForkJoinTask<?> task = submissions.poll();
+    if (task != null) {
+      return task;
+    }
+
+    WorkQueue[] array = queues;
+    int start = queue.nextRandom() & Integer.MAX_VALUE;
+    for (int i = 0; i < array.length; ++i) {
+      WorkQueue victim = array[(start + i) % array.length];
+      if (victim != null && victim != queue) {
+        task = victim.steal();
+        if (task != null) {
+          ++ queue.stealCount;
+          return task;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Parks the calling worker until new work may be available,
+   * returning false if the worker should exit instead.
+   */
+  private boolean awaitWork(WorkQueue queue) {
+    incrementIdleCount(1);
+    try {
+      int v;
+      lock.lock();
+      try {
+        v = version;
+      } finally {
+        lock.unlock();
+      }
+
+      // a pusher which saw idleCount == 0 published its task before
+      // we incremented it, so a rescan here will find that task
+      if (hasQueuedTasks()) {
+        return true;
+      }
+
+      lock.lock();
+      try {
+        while (version == v && ! shutdown) {
+          work.awaitUninterruptibly();
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      return ! (shutdown && ! hasQueuedTasks());
+    } finally {
+      incrementIdleCount(-1);
+    }
+  }
+
+  private void incrementIdleCount(int delta) {
+    int c;
+    do {
+      c = idleCount;
+    } while (! Atomic.compareAndSwapInt(this, IdleCountOffset, c, c + delta));
+  }
+
+  void runWorker(ForkJoinWorkerThread thread) {
+    WorkQueue queue = thread.queue;
+    try {
+      while (true) {
+        ForkJoinTask<?> task = scan(queue);
+        if (task != null) {
+          task.doExec();
+          while ((task = queue.pop()) != null) {
+            task.doExec();
+          }
+        } else if (! awaitWork(queue)) {
+          break;
+        }
+      }
+    } finally {
+      deregisterWorker(thread);
+    }
+  }
+
+  /**
+   * Waits for the specified task to complete on behalf of a worker,
+   * running other queued tasks in the meantime rather than blocking.
+   */
+  int awaitJoin(WorkQueue queue, ForkJoinTask<?> task) {
+    if (queue.tryUnpush(task)) {
+      int s = task.doExec();
+      if (ForkJoinTask.isDone(s)) {
+        return s;
+      }
+    }
+
+    while (true) {
+      int s = task.getStatus();
+      if (ForkJoinTask.isDone(s)) {
+        return s;
+      }
+
+      ForkJoinTask<?> t = queue.pop();
+      if (t == null) {
+        t = scan(queue);
+      }
+
+      if (t != null) {
+        t.doExec();
+      } else {
+        try {
+          task.awaitDone(1, false);
+        } catch (InterruptedException e) {
+          // only thrown when interruptible
+          throw new RuntimeException(e);
+        }
+      }
+    }
+  }
+
+  public <T> T invoke(ForkJoinTask<T> task) {
+    externalPush(task);
+    return task.join();
+  }
+
+  public void execute(ForkJoinTask<?> task) {
+    externalPush(task);
+  }
+
+  public void execute(Runnable task) {
+    if (task == null) throw new NullPointerException();
+
+    if (task instanceof ForkJoinTask) {
+      externalPush((ForkJoinTask<?>) task);
+    } else {
+      externalPush(ForkJoinTask.adapt(task));
+    }
+  }
+
+  public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+    externalPush(task);
+    return task;
+  }
+
+  public <T> ForkJoinTask<T> submit(Callable<T> task) {
+    ForkJoinTask<T> t = ForkJoinTask.adapt(task);
+    externalPush(t);
+    return t;
+  }
+
+  public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+    ForkJoinTask<T> t = ForkJoinTask.adapt(task, result);
+    externalPush(t);
+    return t;
+  }
+
+  public ForkJoinTask<?> submit(Runnable task) {
+    ForkJoinTask<?> t = ForkJoinTask.adapt(task);
+    externalPush(t);
+    return t;
+  }
+
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> task) {
+    return (RunnableFuture<T>) ForkJoinTask.adapt(task);
+  }
+
+  protected <T> RunnableFuture<T> newTaskFor(Runnable task, T result) {
+    return (RunnableFuture<T>) ForkJoinTask.adapt(task, result);
+  }
+
+  /**
+   * Stops accepting new tasks.  Tasks already queued still run.  This
+   * has no effect on the common pool.
+   */
+  public void shutdown() {
+    if (isCommon) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      shutdown = true;
+      ++ version;
+      work.signalAll();
+      tryTerminate();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stops accepting new tasks and cancels all queued tasks.  Since
+   * queued tasks are not necessarily Runnable, this always returns an
+   * empty list.  This has no effect on the common pool.
+   */
+  public List<Runnable> shutdownNow() {
+    if (isCommon) {
+      return new ArrayList<Runnable>();
+    }
+
+    shutdown();
+
+    ForkJoinTask<?> task;
+    while ((task = submissions.poll()) != null) {
+      task.cancel(false);
+    }
+
+    for (WorkQueue q: queues) {
+      if (q != null) {
+        while ((task = q.steal()) != null) {
+          task.cancel(false);
+        }
+      }
+    }
+
+    return new ArrayList<Runnable>();
+  }
+
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  public boolean isTerminated() {
+    lock.lock();
+    try {
+      return terminated;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    long remaining = unit.toNanos(timeout);
+    lock.lock();
+    try {
+      while (! terminated) {
+        if (remaining <= 0) {
+          return false;
+        }
+        remaining = termination.awaitNanos(remaining);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public String toString() {
+    return super.toString() + "[parallelism = " + parallelism
+      + ", size = " + workerCount
+      + ", steals = " + getStealCount()
+      + ", tasks = " + getQueuedTaskCount()
+      + ", submissions = " + getQueuedSubmissionCount()
+      + (terminated ? ", terminated"
+         : shutdown ? ", shutting down" : ", running")
+      + "]";
+  }
+
+  /**
+   * A Chase-Lev work-stealing deque.  Only the owning worker calls
+   * push, pop and tryUnpush, which touch the top index; thieves only
+   * advance the base index, using compare-and-swap.
+   */
+  static final class WorkQueue {
+    private static final int InitialCapacity = 1 << 5;
+    private static final long BaseOffset;
+
+    static {
+      try {
+        BaseOffset = Atomic.getOffset(WorkQueue.class.getField("base"));
+      } catch (NoSuchFieldException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    final int index;
+    // written only by the owner
+    long stealCount;
+    private int seed;
+    private volatile int base;
+    private volatile int top;
+    private volatile ForkJoinTask<?>[] array
+      = new ForkJoinTask<?>[InitialCapacity];
+
+    public WorkQueue(int index) {
+      this.index = index;
+      this.seed = (index + 1) * 0x9E3779B9;
+    }
+
+    int nextRandom() {
+      int s = seed;
+      s ^= s << 13;
+      s ^= s >>> 17;
+      s ^= s << 5;
+      return seed = s;
+    }
+
+    int size() {
+      int n = top - base;
+      return n < 0 ? 0 : n;
+    }
+
+    void push(ForkJoinTask<?> task) {
+      int t = top;
+      ForkJoinTask<?>[] a = array;
+      if (t - base >= a.length - 1) {
+        a = grow(a, t);
+      }
+
+      a[t & (a.length - 1)] = task;
+      // the volatile write publishes the slot to thieves
+      top = t + 1;
+    }
+
+    private ForkJoinTask<?>[] grow(ForkJoinTask<?>[] a, int t) {
+      ForkJoinTask<?>[] b = new ForkJoinTask<?>[a.length * 2];
+      for (int i = base; i != t; ++i) {
+        b[i & (b.length - 1)] = a[i & (a.length - 1)];
+      }
+      array = b;
+      return b;
+    }
+
+    ForkJoinTask<?> pop() {
+      ForkJoinTask<?>[] a = array;
+      int t = top - 1;
+      top = t;
+      int b = base;
+      if (t < b) {
+        // empty
+        top = b;
+        return null;
+      }
+
+      int i = t & (a.length - 1);
+      ForkJoinTask<?> task = a[i];
+      if (t > b) {
+        a[i] = null;
+        return task;
+      }
+
+      // last element: race any thieves for it
+      boolean won = Atomic.compareAndSwapInt(this, BaseOffset, b, b + 1);
+      top = b + 1;
+      if (won) {
+        a[i] = null;
+        return task;
+      } else {
+        return null;
+      }
+    }
+
+    /**
+     * Pops the specified task if it is at the top of the queue,
+     * returning true if we removed it before any thief could steal
+     * it.
+     */
+    boolean tryUnpush(ForkJoinTask<?> task) {
+      ForkJoinTask<?>[] a = array;
+      int t = top - 1;
+      return t >= base && a[t & (a.length - 1)] == task && pop() == task;
+    }
+
+    ForkJoinTask<?> steal() {
+      while (true) {
+        int b = base;
+        int t = top;
+        if (t - b <= 0) {
+          return null;
+        }
+
+        ForkJoinTask<?>[] a = array;
+        ForkJoinTask<?> task = a[b & (a.length - 1)];
+        if (task != null
+            && Atomic.compareAndSwapInt(this, BaseOffset, b, b + 1))
+        {
+          return task;
+        }
+      }
+    }
+  }
+}
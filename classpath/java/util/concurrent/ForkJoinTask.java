@@ -0,0 +1,436 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import avian.Atomic;
+
+import java.util.Collection;
+
+/**
+ * A lightweight task run by a ForkJoinPool.  Forking a task from a
+ * pool worker pushes it onto that worker's deque, where idle workers
+ * may steal it; joining it either runs it directly (if nobody has
+ * stolen it yet) or helps by running other queued tasks until it
+ * completes.
+ */
+public abstract class ForkJoinTask<V> implements Future<V> {
+  private static final long StatusOffset;
+
+  static {
+    try {
+      StatusOffset = Atomic.getOffset
+        (ForkJoinTask.class.getField("status"));
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static final int Normal = 1;
+  static final int Cancelled = 2;
+  static final int Exceptional = 3;
+  static final int DoneMask = 3;
+  // set when some thread is waiting on this task's monitor
+  static final int Signal = 4;
+
+  private volatile int status;
+  private Throwable exception;
+
+  public abstract V getRawResult();
+
+  protected abstract void setRawResult(V value);
+
+  /**
+   * Runs the task, returning true if it completed normally.
+   */
+  protected abstract boolean exec();
+
+  final int getStatus() {
+    return status;
+  }
+
+  static boolean isDone(int status) {
+    return (status & DoneMask) != 0;
+  }
+
+  private int setCompletion(int completion) {
+    while (true) {
+      int s = status;
+      if (isDone(s)) {
+        return s;
+      }
+
+      if (Atomic.compareAndSwapInt(this, StatusOffset, s, s | completion)) {
+        if ((s & Signal) != 0) {
+          synchronized (this) {
+            notifyAll();
+          }
+        }
+        return completion;
+      }
+    }
+  }
+
+  private int setExceptionalCompletion(Throwable e) {
+    if (! isDone(status)) {
+      exception = e;
+    }
+    return setCompletion(Exceptional);
+  }
+
+  final int doExec() {
+    int s = status;
+    if (! isDone(s)) {
+      boolean completed;
+      try {
+        completed = exec();
+      } catch (Throwable e) {
+        return setExceptionalCompletion(e);
+      }
+
+      if (completed) {
+        s = setCompletion(Normal);
+      } else {
+        s = status;
+      }
+    }
+    return s;
+  }
+
+  /**
+   * Blocks until the task completes, waiting at most the specified
+   * number of milliseconds if it is non-zero.
+   */
+  final int awaitDone(long milliseconds, boolean interruptible)
+    throws InterruptedException
+  {
+    boolean interrupted = false;
+    try {
+      synchronized (this) {
+        while (true) {
+          int s = status;
+          if (isDone(s)) {
+            return s;
+          }
+
+          if ((s & Signal) != 0
+              || Atomic.compareAndSwapInt
+              (this, StatusOffset, s, s | Signal))
+          {
+            try {
+              wait(milliseconds);
+            } catch (InterruptedException e) {
+              if (interruptible) {
+                throw e;
+              }
+              interrupted = true;
+            }
+
+            if (milliseconds != 0) {
+              return status;
+            }
+          }
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private int externalAwaitDone() {
+    try {
+      return awaitDone(0, false);
+    } catch (InterruptedException e) {
+      // only thrown when interruptible
+      throw new RuntimeException(e);
+    }
+  }
+
+  private int doJoin() {
+    int s = status;
+    if (isDone(s)) {
+      return s;
+    }
+
+    Thread t = Thread.currentThread();
+    if (t instanceof ForkJoinWorkerThread) {
+      ForkJoinWorkerThread w = (ForkJoinWorkerThread) t;
+      return w.pool.awaitJoin(w.queue, this);
+    } else {
+      return externalAwaitDone();
+    }
+  }
+
+  private void reportException(int s) {
+    if (s == Cancelled) {
+      throw new CancellationException();
+    } else if (s == Exceptional) {
+      Throwable e = exception;
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      } else if (e instanceof Error) {
+        throw (Error) e;
+      } else {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  public final ForkJoinTask<V> fork() {
+    Thread t = Thread.currentThread();
+    if (t instanceof ForkJoinWorkerThread) {
+      ForkJoinWorkerThread w = (ForkJoinWorkerThread) t;
+      w.pool.push(w.queue, this);
+    } else {
+      ForkJoinPool.commonPool().externalPush(this);
+    }
+    return this;
+  }
+
+  public final V join() {
+    int s = doJoin() & DoneMask;
+    if (s != Normal) {
+      reportException(s);
+    }
+    return getRawResult();
+  }
+
+  public final V invoke() {
+    int s = doExec();
+    if (! isDone(s)) {
+      s = doJoin();
+    }
+
+    s &= DoneMask;
+    if (s != Normal) {
+      reportException(s);
+    }
+    return getRawResult();
+  }
+
+  public final void quietlyJoin() {
+    doJoin();
+  }
+
+  public final void quietlyInvoke() {
+    if (! isDone(doExec())) {
+      doJoin();
+    }
+  }
+
+  public static void invokeAll(ForkJoinTask<?> a, ForkJoinTask<?> b) {
+    b.fork();
+    a.invoke();
+    b.join();
+  }
+
+  public static void invokeAll(ForkJoinTask<?> ... tasks) {
+    for (int i = tasks.length - 1; i > 0; --i) {
+      tasks[i].fork();
+    }
+
+    if (tasks.length > 0) {
+      tasks[0].invoke();
+    }
+
+    for (int i = 1; i < tasks.length; ++i) {
+      tasks[i].join();
+    }
+  }
+
+  public static <T extends ForkJoinTask<?>> Collection<T> invokeAll
+    (Collection<T> tasks)
+  {
+    invokeAll(tasks.toArray(new ForkJoinTask<?>[tasks.size()]));
+    return tasks;
+  }
+
+  public static boolean inForkJoinPool() {
+    return Thread.currentThread() instanceof ForkJoinWorkerThread;
+  }
+
+  public static ForkJoinPool getPool() {
+    Thread t = Thread.currentThread();
+    return t instanceof ForkJoinWorkerThread
+      ? ((ForkJoinWorkerThread) t).pool : null;
+  }
+
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return (setCompletion(Cancelled) & DoneMask) == Cancelled;
+  }
+
+  public final boolean isDone() {
+    return isDone(status);
+  }
+
+  public final boolean isCancelled() {
+    return (status & DoneMask) == Cancelled;
+  }
+
+  public final boolean isCompletedNormally() {
+    return (status & DoneMask) == Normal;
+  }
+
+  public final boolean isCompletedAbnormally() {
+    int s = status & DoneMask;
+    return s == Cancelled || s == Exceptional;
+  }
+
+  public final Throwable getException() {
+    int s = status & DoneMask;
+    if (s == Cancelled) {
+      return new CancellationException();
+    } else if (s == Exceptional) {
+      return exception;
+    } else {
+      return null;
+    }
+  }
+
+  public void completeExceptionally(Throwable exception) {
+    setExceptionalCompletion
+      ((exception instanceof RuntimeException || exception instanceof Error)
+       ? exception : new RuntimeException(exception));
+  }
+
+  public void complete(V value) {
+    try {
+      setRawResult(value);
+    } catch (Throwable e) {
+      setExceptionalCompletion(e);
+      return;
+    }
+    setCompletion(Normal);
+  }
+
+  /**
+   * Resets the task so that it may be forked again.  This must only
+   * be called when the task is not queued or running.
+   */
+  public void reinitialize() {
+    status = 0;
+    exception = null;
+  }
+
+  private V get(int s) throws ExecutionException {
+    s &= DoneMask;
+    if (s == Cancelled) {
+      throw new CancellationException();
+    } else if (s == Exceptional) {
+      throw new ExecutionException(exception);
+    } else {
+      return getRawResult();
+    }
+  }
+
+  public final V get() throws InterruptedException, ExecutionException {
+    int s = Thread.currentThread() instanceof ForkJoinWorkerThread
+      ? doJoin() : awaitDone(0, true);
+    return get(s);
+  }
+
+  public final V get(long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+    int s = status;
+    while (! isDone(s)) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new TimeoutException();
+      }
+      s = awaitDone(remaining, true);
+    }
+    return get(s);
+  }
+
+  public static ForkJoinTask<?> adapt(Runnable task) {
+    return new AdaptedRunnable<Object>(task, null);
+  }
+
+  public static <T> ForkJoinTask<T> adapt(Runnable task, T result) {
+    return new AdaptedRunnable<T>(task, result);
+  }
+
+  public static <T> ForkJoinTask<T> adapt(Callable<? extends T> task) {
+    return new AdaptedCallable<T>(task);
+  }
+
+  private static class AdaptedRunnable<T> extends ForkJoinTask<T>
+    implements RunnableFuture<T>
+  {
+    private final Runnable task;
+    private T result;
+
+    public AdaptedRunnable(Runnable task, T result) {
+      if (task == null) throw new NullPointerException();
+
+      this.task = task;
+      this.result = result;
+    }
+
+    public T getRawResult() {
+      return result;
+    }
+
+    protected void setRawResult(T value) {
+      result = value;
+    }
+
+    protected boolean exec() {
+      task.run();
+      return true;
+    }
+
+    public void run() {
+      invoke();
+    }
+  }
+
+  private static class AdaptedCallable<T> extends ForkJoinTask<T>
+    implements RunnableFuture<T>
+  {
+    private final Callable<? extends T> task;
+    private T result;
+
+    public AdaptedCallable(Callable<? extends T> task) {
+      if (task == null) throw new NullPointerException();
+
+      this.task = task;
+    }
+
+    public T getRawResult() {
+      return result;
+    }
+
+    protected void setRawResult(T value) {
+      result = value;
+    }
+
+    protected boolean exec() {
+      try {
+        result = task.call();
+        return true;
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Error e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    public void run() {
+      invoke();
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+public class ForkJoinWorkerThread extends Thread {
+  final ForkJoinPool pool;
+  final ForkJoinPool.WorkQueue queue;
+
+  ForkJoinWorkerThread(ForkJoinPool pool, ForkJoinPool.WorkQueue queue,
+                       String name)
+  {
+    super(name);
+    this.pool = pool;
+    this.queue = queue;
+    setDaemon(true);
+  }
+
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  public int getPoolIndex() {
+    return queue.index;
+  }
+
+  public void run() {
+    pool.runWorker(this);
+  }
+}
@@ -0,0 +1,211 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * A cancellable computation whose result may be waited for.  Threads
+ * calling get wait in shared mode on a synchronizer which is released
+ * once the task has run or been cancelled.
+ */
+public class FutureTask<V> implements RunnableFuture<V> {
+  private static final int Ready = 0;
+  private static final int Running = 1;
+  private static final int Ran = 2;
+  private static final int Cancelled = 4;
+
+  private final Sync sync;
+
+  public FutureTask(Callable<V> callable) {
+    if (callable == null) throw new NullPointerException();
+
+    sync = new Sync(callable);
+  }
+
+  public FutureTask(Runnable task, V result) {
+    this(Executors.callable(task, result));
+  }
+
+  public boolean isCancelled() {
+    return sync.isCancelled();
+  }
+
+  public boolean isDone() {
+    return sync.isDone();
+  }
+
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return sync.cancel(mayInterruptIfRunning);
+  }
+
+  public V get() throws InterruptedException, ExecutionException {
+    sync.acquireSharedInterruptibly(0);
+    return sync.report();
+  }
+
+  public V get(long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    if (! sync.tryAcquireSharedNanos(0, unit.toNanos(timeout))) {
+      throw new TimeoutException();
+    }
+    return sync.report();
+  }
+
+  /**
+   * Called when the task completes, whether normally, exceptionally,
+   * or by cancellation.  The default implementation does nothing.
+   */
+  protected void done() { }
+
+  protected void set(V value) {
+    sync.set(value, null);
+  }
+
+  protected void setException(Throwable exception) {
+    sync.set(null, exception);
+  }
+
+  public void run() {
+    sync.run();
+  }
+
+  /**
+   * Runs the task without setting its result, leaving it ready to run
+   * again.  Returns false if the task was cancelled or failed.
+   */
+  protected boolean runAndReset() {
+    return sync.runAndReset();
+  }
+
+  private static boolean ranOrCancelled(int state) {
+    return (state & (Ran | Cancelled)) != 0;
+  }
+
+  private final class Sync extends AbstractQueuedSynchronizer {
+    private final Callable<V> callable;
+    private V result;
+    private Throwable exception;
+    // the thread running the task, cleared once waiters may proceed
+    private volatile Thread runner;
+
+    public Sync(Callable<V> callable) {
+      this.callable = callable;
+    }
+
+    protected int tryAcquireShared(int ignored) {
+      return isDone() ? 1 : -1;
+    }
+
+    protected boolean tryReleaseShared(int ignored) {
+      runner = null;
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return getState() == Cancelled;
+    }
+
+    public boolean isDone() {
+      return ranOrCancelled(getState()) && runner == null;
+    }
+
+    public V report() throws ExecutionException {
+      if (getState() == Cancelled) {
+        throw new CancellationException();
+      } else if (exception != null) {
+        throw new ExecutionException(exception);
+      } else {
+        return result;
+      }
+    }
+
+    public void set(V value, Throwable exception) {
+      while (true) {
+        int s = getState();
+        if (s == Ran) {
+          return;
+        } else if (s == Cancelled) {
+          releaseShared(0);
+          return;
+        } else if (compareAndSetState(s, Ran)) {
+          this.result = value;
+          this.exception = exception;
+          releaseShared(0);
+          done();
+          return;
+        }
+      }
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      while (true) {
+        int s = getState();
+        if (ranOrCancelled(s)) {
+          return false;
+        } else if (compareAndSetState(s, Cancelled)) {
+          break;
+        }
+      }
+
+      if (mayInterruptIfRunning) {
+        Thread r = runner;
+        if (r != null) {
+          r.interrupt();
+        }
+      }
+
+      releaseShared(0);
+      done();
+      return true;
+    }
+
+    public void run() {
+      if (! compareAndSetState(Ready, Running)) {
+        return;
+      }
+
+      runner = Thread.currentThread();
+      if (getState() == Running) {
+        V value;
+        try {
+          value = callable.call();
+        } catch (Throwable e) {
+          FutureTask.this.setException(e);
+          return;
+        }
+        FutureTask.this.set(value);
+      } else {
+        // cancelled before we got started
+        releaseShared(0);
+      }
+    }
+
+    public boolean runAndReset() {
+      if (! compareAndSetState(Ready, Running)) {
+        return false;
+      }
+
+      try {
+        runner = Thread.currentThread();
+        if (getState() == Running) {
+          callable.call();
+        }
+        runner = null;
+        return compareAndSetState(Running, Ready);
+      } catch (Throwable e) {
+        FutureTask.this.setException(e);
+        return false;
+      }
+    }
+  }
+}
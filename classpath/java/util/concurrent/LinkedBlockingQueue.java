@@ -0,0 +1,475 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import avian.Atomic;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An optionally bounded blocking queue backed by a linked list.
+ * Producers and consumers use separate locks, so a put and a take
+ * only contend on the shared element count.
+ */
+public class LinkedBlockingQueue<T> extends AbstractQueue<T>
+  implements BlockingQueue<T>
+{
+  private static final long CountOffset;
+
+  static {
+    try {
+      CountOffset = Atomic.getOffset
+        (LinkedBlockingQueue.class.getField("count"));
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private final int capacity;
+  private volatile int count;
+
+  // head is a dummy node whose next node holds the first element
+  private Node<T> head;
+  private Node<T> last;
+
+  private final ReentrantLock takeLock = new ReentrantLock();
+  private final Condition notEmpty = takeLock.newCondition();
+  private final ReentrantLock putLock = new ReentrantLock();
+  private final Condition notFull = putLock.newCondition();
+
+  public LinkedBlockingQueue(int capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException();
+
+    this.capacity = capacity;
+    head = last = new Node<T>(null);
+  }
+
+  public LinkedBlockingQueue() {
+    this(Integer.MAX_VALUE);
+  }
+
+  public LinkedBlockingQueue(Collection<? extends T> collection) {
+    this(Integer.MAX_VALUE);
+
+    for (T element: collection) {
+      add(element);
+    }
+  }
+
+  private int getAndAdd(int delta) {
+    while (true) {
+      int c = count;
+      if (Atomic.compareAndSwapInt(this, CountOffset, c, c + delta)) {
+        return c;
+      }
+    }
+  }
+
+  private void enqueue(T element) {
+    last = last.next = new Node<T>(element);
+  }
+
+  private T dequeue() {
+    Node<T> h = head;
+    Node<T> first = h.next;
+    h.next = h; // let iterators know this node was removed
+    head = first;
+    T element = first.value;
+    first.value = null;
+    return element;
+  }
+
+  private void signalNotEmpty() {
+    takeLock.lock();
+    try {
+      notEmpty.signal();
+    } finally {
+      takeLock.unlock();
+    }
+  }
+
+  private void signalNotFull() {
+    putLock.lock();
+    try {
+      notFull.signal();
+    } finally {
+      putLock.unlock();
+    }
+  }
+
+  private void fullyLock() {
+    putLock.lock();
+    takeLock.lock();
+  }
+
+  private void fullyUnlock() {
+    takeLock.unlock();
+    putLock.unlock();
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public int remainingCapacity() {
+    return capacity - count;
+  }
+
+  public void put(T element) throws InterruptedException {
+    if (element == null) throw new NullPointerException();
+
+    int c;
+    putLock.lockInterruptibly();
+    try {
+      while (count == capacity) {
+        notFull.await();
+      }
+      enqueue(element);
+      c = getAndAdd(1);
+      if (c + 1 < capacity) {
+        notFull.signal();
+      }
+    } finally {
+      putLock.unlock();
+    }
+
+    if (c == 0) {
+      signalNotEmpty();
+    }
+  }
+
+  public boolean offer(T element, long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    if (element == null) throw new NullPointerException();
+
+    long remaining = unit.toNanos(timeout);
+    int c;
+    putLock.lockInterruptibly();
+    try {
+      while (count == capacity) {
+        if (remaining <= 0) {
+          return false;
+        }
+        remaining = notFull.awaitNanos(remaining);
+      }
+      enqueue(element);
+      c = getAndAdd(1);
+      if (c + 1 < capacity) {
+        notFull.signal();
+      }
+    } finally {
+      putLock.unlock();
+    }
+
+    if (c == 0) {
+      signalNotEmpty();
+    }
+    return true;
+  }
+
+  public boolean offer(T element) {
+    if (element == null) throw new NullPointerException();
+
+    if (count == capacity) {
+      return false;
+    }
+
+    int c = -1;
+    putLock.lock();
+    try {
+      if (count < capacity) {
+        enqueue(element);
+        c = getAndAdd(1);
+        if (c + 1 < capacity) {
+          notFull.signal();
+        }
+      }
+    } finally {
+      putLock.unlock();
+    }
+
+    if (c == 0) {
+      signalNotEmpty();
+    }
+    return c >= 0;
+  }
+
+  public T take() throws InterruptedException {
+    T element;
+    int c;
+    takeLock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        notEmpty.await();
+      }
+      element = dequeue();
+      c = getAndAdd(-1);
+      if (c > 1) {
+        notEmpty.signal();
+      }
+    } finally {
+      takeLock.unlock();
+    }
+
+    if (c == capacity) {
+      signalNotFull();
+    }
+    return element;
+  }
+
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long remaining = unit.toNanos(timeout);
+    T element;
+    int c;
+    takeLock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        if (remaining <= 0) {
+          return null;
+        }
+        remaining = notEmpty.awaitNanos(remaining);
+      }
+      element = dequeue();
+      c = getAndAdd(-1);
+      if (c > 1) {
+        notEmpty.signal();
+      }
+    } finally {
+      takeLock.unlock();
+    }
+
+    if (c == capacity) {
+      signalNotFull();
+    }
+    return element;
+  }
+
+  public T poll() {
+    if (count == 0) {
+      return null;
+    }
+
+    T element = null;
+    int c = -1;
+    takeLock.lock();
+    try {
+      if (count > 0) {
+        element = dequeue();
+        c = getAndAdd(-1);
+        if (c > 1) {
+          notEmpty.signal();
+        }
+      }
+    } finally {
+      takeLock.unlock();
+    }
+
+    if (c == capacity) {
+      signalNotFull();
+    }
+    return element;
+  }
+
+  public T peek() {
+    if (count == 0) {
+      return null;
+    }
+
+    takeLock.lock();
+    try {
+      Node<T> first = head.next;
+      return first == null ? null : first.value;
+    } finally {
+      takeLock.unlock();
+    }
+  }
+
+  private void unlink(Node<T> node, Node<T> trail) {
+    node.value = null;
+    trail.next = node.next;
+    if (last == node) {
+      last = trail;
+    }
+
+    if (getAndAdd(-1) == capacity) {
+      notFull.signal();
+    }
+  }
+
+  public boolean remove(Object element) {
+    if (element == null) {
+      return false;
+    }
+
+    fullyLock();
+    try {
+      for (Node<T> trail = head, p = trail.next; p != null;
+           trail = p, p = p.next)
+      {
+        if (element.equals(p.value)) {
+          unlink(p, trail);
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      fullyUnlock();
+    }
+  }
+
+  public void clear() {
+    fullyLock();
+    try {
+      for (Node<T> p, h = head; (p = h.next) != null; h = p) {
+        h.next = h;
+        p.value = null;
+      }
+      head = last;
+
+      int c;
+      do {
+        c = count;
+      } while (! Atomic.compareAndSwapInt(this, CountOffset, c, 0));
+
+      if (c == capacity) {
+        notFull.signal();
+      }
+    } finally {
+      fullyUnlock();
+    }
+  }
+
+  public int drainTo(Collection<? super T> collection) {
+    return drainTo(collection, Integer.MAX_VALUE);
+  }
+
+  public int drainTo(Collection<? super T> collection, int max) {
+    if (collection == null) throw new NullPointerException();
+    if (collection == this) throw new IllegalArgumentException();
+
+    boolean signal = false;
+    int n = 0;
+    takeLock.lock();
+    try {
+      int available = Math.min(max, count);
+      try {
+        while (n < available) {
+          collection.add(dequeue());
+          ++ n;
+        }
+      } finally {
+        if (n > 0) {
+          signal = getAndAdd(-n) == capacity;
+        }
+      }
+    } finally {
+      takeLock.unlock();
+    }
+
+    if (signal) {
+      signalNotFull();
+    }
+    return n;
+  }
+
+  /**
+   * Returns a weakly consistent iterator, which will never throw
+   * ConcurrentModificationException.
+   */
+  public Iterator<T> iterator() {
+    return new MyIterator();
+  }
+
+  private static class Node<T> {
+    public T value;
+    public Node<T> next;
+
+    public Node(T value) {
+      this.value = value;
+    }
+  }
+
+  private class MyIterator implements Iterator<T> {
+    private Node<T> current;
+    private T currentElement;
+    private Node<T> lastReturned;
+
+    public MyIterator() {
+      fullyLock();
+      try {
+        current = head.next;
+        if (current != null) {
+          currentElement = current.value;
+        }
+      } finally {
+        fullyUnlock();
+      }
+    }
+
+    public boolean hasNext() {
+      return current != null;
+    }
+
+    private Node<T> successor(Node<T> p) {
+      while (true) {
+        Node<T> s = p.next;
+        if (s == p) {
+          // p was dequeued; restart from the live head
+          return head.next;
+        } else if (s == null || s.value != null) {
+          return s;
+        }
+        p = s;
+      }
+    }
+
+    public T next() {
+      fullyLock();
+      try {
+        if (current == null) throw new NoSuchElementException();
+
+        T element = currentElement;
+        lastReturned = current;
+        current = successor(current);
+        currentElement = current == null ? null : current.value;
+        return element;
+      } finally {
+        fullyUnlock();
+      }
+    }
+
+    public void remove() {
+      if (lastReturned == null) throw new IllegalStateException();
+
+      fullyLock();
+      try {
+        Node<T> node = lastReturned;
+        lastReturned = null;
+        for (Node<T> trail = head, p = trail.next; p != null;
+             trail = p, p = p.next)
+        {
+          if (p == node) {
+            unlink(p, trail);
+            break;
+          }
+        }
+      } finally {
+        fullyUnlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,633 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread pool which runs tasks after a delay or periodically.  The
+ * pool has a fixed number of core threads which take tasks from a
+ * binary heap ordered by trigger time.  Only one thread (the
+ * "leader") waits for the task at the head of the heap to become
+ * due; the rest wait indefinitely until a leader hands off.
+ */
+public class ScheduledThreadPoolExecutor extends ThreadPoolExecutor
+  implements ScheduledExecutorService
+{
+  private static final Object sequenceLock = new Object();
+  // breaks ties between tasks with the same trigger time, FIFO
+  private static long nextSequenceNumber;
+
+  private volatile boolean continueExistingPeriodicTasksAfterShutdown;
+  private volatile boolean executeExistingDelayedTasksAfterShutdown = true;
+
+  public ScheduledThreadPoolExecutor(int corePoolSize,
+                                     ThreadFactory threadFactory,
+                                     RejectedExecutionHandler handler)
+  {
+    super(corePoolSize, Integer.MAX_VALUE, 0, TimeUnit.NANOSECONDS,
+          new DelayedWorkQueue(), threadFactory, handler);
+  }
+
+  public ScheduledThreadPoolExecutor(int corePoolSize,
+                                     ThreadFactory threadFactory)
+  {
+    this(corePoolSize, threadFactory, new AbortPolicy());
+  }
+
+  public ScheduledThreadPoolExecutor(int corePoolSize,
+                                     RejectedExecutionHandler handler)
+  {
+    this(corePoolSize, Executors.defaultThreadFactory(), handler);
+  }
+
+  public ScheduledThreadPoolExecutor(int corePoolSize) {
+    this(corePoolSize, Executors.defaultThreadFactory(), new AbortPolicy());
+  }
+
+  private static long sequenceNumber() {
+    synchronized (sequenceLock) {
+      return nextSequenceNumber++;
+    }
+  }
+
+  private static long triggerTime(long delay, TimeUnit unit) {
+    long nanos = unit.toNanos(delay < 0 ? 0 : delay);
+    return System.nanoTime() + nanos;
+  }
+
+  private boolean canRunInCurrentRunState(boolean periodic) {
+    if (! isShutdown()) {
+      return true;
+    } else if (isStopping()) {
+      return false;
+    } else {
+      return periodic
+        ? continueExistingPeriodicTasksAfterShutdown
+        : executeExistingDelayedTasksAfterShutdown;
+    }
+  }
+
+  private void delayedExecute(ScheduledTask<?> task) {
+    if (isShutdown()) {
+      getRejectedExecutionHandler().rejectedExecution(task, this);
+      return;
+    }
+
+    getQueue().add(task);
+
+    if (isShutdown()
+        && ! canRunInCurrentRunState(task.isPeriodic())
+        && remove(task))
+    {
+      task.cancel(false);
+    } else {
+      ensurePrestart();
+    }
+  }
+
+  void reExecutePeriodic(ScheduledTask<?> task) {
+    if (canRunInCurrentRunState(true)) {
+      getQueue().add(task);
+      if ((! canRunInCurrentRunState(true)) && remove(task)) {
+        task.cancel(false);
+      } else {
+        ensurePrestart();
+      }
+    }
+  }
+
+  void onShutdown() {
+    boolean keepDelayed = executeExistingDelayedTasksAfterShutdown;
+    boolean keepPeriodic = continueExistingPeriodicTasksAfterShutdown;
+    for (Object e: getQueue().toArray()) {
+      if (e instanceof ScheduledTask<?>) {
+        ScheduledTask<?> t = (ScheduledTask<?>) e;
+        if ((t.isPeriodic() ? ! keepPeriodic : ! keepDelayed)
+            || t.isCancelled())
+        {
+          if (getQueue().remove(t)) {
+            t.cancel(false);
+          }
+        }
+      }
+    }
+  }
+
+  public ScheduledFuture<?> schedule(Runnable task, long delay,
+                                     TimeUnit unit)
+  {
+    if (task == null || unit == null) throw new NullPointerException();
+
+    ScheduledTask<Object> t = new ScheduledTask<Object>
+      (Executors.callable(task, null), triggerTime(delay, unit), 0);
+    delayedExecute(t);
+    return t;
+  }
+
+  public <V> ScheduledFuture<V> schedule(Callable<V> task, long delay,
+                                         TimeUnit unit)
+  {
+    if (task == null || unit == null) throw new NullPointerException();
+
+    ScheduledTask<V> t = new ScheduledTask<V>
+      (task, triggerTime(delay, unit), 0);
+    delayedExecute(t);
+    return t;
+  }
+
+  public ScheduledFuture<?> scheduleAtFixedRate
+    (Runnable task, long initialDelay, long period, TimeUnit unit)
+  {
+    if (task == null || unit == null) throw new NullPointerException();
+    if (period <= 0) throw new IllegalArgumentException();
+
+    ScheduledTask<Object> t = new ScheduledTask<Object>
+      (Executors.callable(task, null), triggerTime(initialDelay, unit),
+       unit.toNanos(period));
+    delayedExecute(t);
+    return t;
+  }
+
+  public ScheduledFuture<?> scheduleWithFixedDelay
+    (Runnable task, long initialDelay, long delay, TimeUnit unit)
+  {
+    if (task == null || unit == null) throw new NullPointerException();
+    if (delay <= 0) throw new IllegalArgumentException();
+
+    // a negative period means the delay is measured from completion
+    ScheduledTask<Object> t = new ScheduledTask<Object>
+      (Executors.callable(task, null), triggerTime(initialDelay, unit),
+       - unit.toNanos(delay));
+    delayedExecute(t);
+    return t;
+  }
+
+  public void execute(Runnable task) {
+    schedule(task, 0, TimeUnit.NANOSECONDS);
+  }
+
+  public Future<?> submit(Runnable task) {
+    return schedule(task, 0, TimeUnit.NANOSECONDS);
+  }
+
+  public <T> Future<T> submit(Runnable task, T result) {
+    return schedule(Executors.callable(task, result), 0,
+                    TimeUnit.NANOSECONDS);
+  }
+
+  public <T> Future<T> submit(Callable<T> task) {
+    return schedule(task, 0, TimeUnit.NANOSECONDS);
+  }
+
+  public void setContinueExistingPeriodicTasksAfterShutdownPolicy
+    (boolean value)
+  {
+    continueExistingPeriodicTasksAfterShutdown = value;
+    if ((! value) && isShutdown()) {
+      onShutdown();
+    }
+  }
+
+  public boolean getContinueExistingPeriodicTasksAfterShutdownPolicy() {
+    return continueExistingPeriodicTasksAfterShutdown;
+  }
+
+  public void setExecuteExistingDelayedTasksAfterShutdownPolicy
+    (boolean value)
+  {
+    executeExistingDelayedTasksAfterShutdown = value;
+    if ((! value) && isShutdown()) {
+      onShutdown();
+    }
+  }
+
+  public boolean getExecuteExistingDelayedTasksAfterShutdownPolicy() {
+    return executeExistingDelayedTasksAfterShutdown;
+  }
+
+  private class ScheduledTask<V> extends FutureTask<V>
+    implements RunnableScheduledFuture<V>
+  {
+    private final long sequenceNumber;
+    private long time;
+    // positive for fixed rate, negative for fixed delay, zero for once
+    private final long period;
+    // index in the delay queue's heap, or -1 if not queued
+    public int heapIndex = -1;
+
+    public ScheduledTask(Callable<V> callable, long time, long period) {
+      super(callable);
+      this.time = time;
+      this.period = period;
+      this.sequenceNumber = sequenceNumber();
+    }
+
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public int compareTo(Delayed other) {
+      if (other == this) {
+        return 0;
+      }
+
+      if (other instanceof ScheduledTask<?>) {
+        ScheduledTask<?> o = (ScheduledTask<?>) other;
+        long d = time - o.time;
+        if (d < 0) {
+          return -1;
+        } else if (d > 0) {
+          return 1;
+        } else {
+          return sequenceNumber < o.sequenceNumber ? -1 : 1;
+        }
+      }
+
+      long d = getDelay(TimeUnit.NANOSECONDS)
+        - other.getDelay(TimeUnit.NANOSECONDS);
+      return d < 0 ? -1 : (d > 0 ? 1 : 0);
+    }
+
+    public boolean isPeriodic() {
+      return period != 0;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled && heapIndex >= 0) {
+        remove(this);
+      }
+      return cancelled;
+    }
+
+    public void run() {
+      boolean periodic = isPeriodic();
+      if (! canRunInCurrentRunState(periodic)) {
+        cancel(false);
+      } else if (! periodic) {
+        super.run();
+      } else if (runAndReset()) {
+        if (period > 0) {
+          time += period;
+        } else {
+          time = System.nanoTime() - period;
+        }
+        reExecutePeriodic(this);
+      }
+    }
+  }
+
+  /**
+   * A blocking priority queue of scheduled tasks.  Each task records
+   * its own position in the heap so that cancellation can remove it
+   * in logarithmic time.
+   */
+  private static class DelayedWorkQueue extends AbstractQueue<Runnable>
+    implements BlockingQueue<Runnable>
+  {
+    private ScheduledTask<?>[] heap = new ScheduledTask<?>[16];
+    private int size;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // the thread waiting for the head of the queue to become due
+    private Thread leader;
+
+    private void siftUp(int k, ScheduledTask<?> task) {
+      while (k > 0) {
+        int parent = (k - 1) >>> 1;
+        ScheduledTask<?> e = heap[parent];
+        if (task.compareTo(e) >= 0) {
+          break;
+        }
+        heap[k] = e;
+        e.heapIndex = k;
+        k = parent;
+      }
+      heap[k] = task;
+      task.heapIndex = k;
+    }
+
+    private void siftDown(int k, ScheduledTask<?> task) {
+      int half = size >>> 1;
+      while (k < half) {
+        int child = (k << 1) + 1;
+        ScheduledTask<?> c = heap[child];
+        int right = child + 1;
+        if (right < size && c.compareTo(heap[right]) > 0) {
+          c = heap[child = right];
+        }
+        if (task.compareTo(c) <= 0) {
+          break;
+        }
+        heap[k] = c;
+        c.heapIndex = k;
+        k = child;
+      }
+      heap[k] = task;
+      task.heapIndex = k;
+    }
+
+    private int indexOf(Object x) {
+      if (x instanceof ScheduledTask<?>) {
+        int i = ((ScheduledTask<?>) x).heapIndex;
+        // the task might belong to another queue
+        if (i >= 0 && i < size && heap[i] == x) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    public boolean contains(Object x) {
+      lock.lock();
+      try {
+        return indexOf(x) != -1;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public boolean remove(Object x) {
+      lock.lock();
+      try {
+        int i = indexOf(x);
+        if (i < 0) {
+          return false;
+        }
+
+        ((ScheduledTask<?>) x).heapIndex = -1;
+        int s = --size;
+        ScheduledTask<?> replacement = heap[s];
+        heap[s] = null;
+        if (s != i) {
+          siftDown(i, replacement);
+          if (heap[i] == replacement) {
+            siftUp(i, replacement);
+          }
+        }
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public int size() {
+      lock.lock();
+      try {
+        return size;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    public int remainingCapacity() {
+      return Integer.MAX_VALUE;
+    }
+
+    public ScheduledTask<?> peek() {
+      lock.lock();
+      try {
+        return heap[0];
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public boolean offer(Runnable x) {
+      if (x == null) throw new NullPointerException();
+
+      ScheduledTask<?> task = (ScheduledTask<?>) x;
+      lock.lock();
+      try {
+        if (size >= heap.length) {
+          ScheduledTask<?>[] a = new ScheduledTask<?>[heap.length * 2];
+          System.arraycopy(heap, 0, a, 0, size);
+          heap = a;
+        }
+
+        siftUp(size++, task);
+        if (heap[0] == task) {
+          // the new head may be due sooner than the leader expects
+          leader = null;
+          available.signal();
+        }
+      } finally {
+        lock.unlock();
+      }
+      return true;
+    }
+
+    public void put(Runnable x) {
+      offer(x);
+    }
+
+    public boolean offer(Runnable x, long timeout, TimeUnit unit) {
+      return offer(x);
+    }
+
+    private ScheduledTask<?> finishPoll(ScheduledTask<?> first) {
+      int s = --size;
+      ScheduledTask<?> x = heap[s];
+      heap[s] = null;
+      if (s != 0) {
+        siftDown(0, x);
+      }
+      first.heapIndex = -1;
+      return first;
+    }
+
+    public ScheduledTask<?> poll() {
+      lock.lock();
+      try {
+        ScheduledTask<?> first = heap[0];
+        if (first == null || first.getDelay(TimeUnit.NANOSECONDS) > 0) {
+          return null;
+        } else {
+          return finishPoll(first);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public ScheduledTask<?> take() throws InterruptedException {
+      return poll(false, 0);
+    }
+
+    public ScheduledTask<?> poll(long timeout, TimeUnit unit)
+      throws InterruptedException
+    {
+      return poll(true, unit.toNanos(timeout));
+    }
+
+    private ScheduledTask<?> poll(boolean timed, long remaining)
+      throws InterruptedException
+    {
+      lock.lockInterruptibly();
+      try {
+        while (true) {
+          ScheduledTask<?> first = heap[0];
+          if (first == null) {
+            if (! timed) {
+              available.await();
+            } else if (remaining <= 0) {
+              return null;
+            } else {
+              remaining = available.awaitNanos(remaining);
+            }
+            continue;
+          }
+
+          long delay = first.getDelay(TimeUnit.NANOSECONDS);
+          if (delay <= 0) {
+            return finishPoll(first);
+          } else if (timed && remaining <= 0) {
+            return null;
+          }
+
+          first = null; // don't retain it while waiting
+          if (leader != null || (timed && remaining < delay)) {
+            if (timed) {
+              remaining = available.awaitNanos(remaining);
+            } else {
+              available.await();
+            }
+          } else {
+            Thread thisThread = Thread.currentThread();
+            leader = thisThread;
+            try {
+              long left = available.awaitNanos(delay);
+              if (timed) {
+                remaining -= delay - left;
+              }
+            } finally {
+              if (leader == thisThread) {
+                leader = null;
+              }
+            }
+          }
+        }
+      } finally {
+        if (leader == null && heap[0] != null) {
+          available.signal();
+        }
+        lock.unlock();
+      }
+    }
+
+    public void clear() {
+      lock.lock();
+      try {
+        for (int i = 0; i < size; ++i) {
+          heap[i].heapIndex = -1;
+          heap[i] = null;
+        }
+        size = 0;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public int drainTo(Collection<? super Runnable> collection) {
+      return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super Runnable> collection, int max) {
+      if (collection == null) throw new NullPointerException();
+      if (collection == this) throw new IllegalArgumentException();
+
+      lock.lock();
+      try {
+        int n = 0;
+        ScheduledTask<?> first;
+        while (n < max && (first = heap[0]) != null
+               && first.getDelay(TimeUnit.NANOSECONDS) <= 0)
+        {
+          collection.add(finishPoll(first));
+          ++ n;
+        }
+        return n;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public Object[] toArray() {
+      lock.lock();
+      try {
+        Object[] a = new Object[size];
+        System.arraycopy(heap, 0, a, 0, size);
+        return a;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public <T> T[] toArray(T[] array) {
+      lock.lock();
+      try {
+        if (array.length < size) {
+          array = (T[]) java.lang.reflect.Array.newInstance
+            (array.getClass().getComponentType(), size);
+        }
+        System.arraycopy(heap, 0, array, 0, size);
+        if (array.length > size) {
+          array[size] = null;
+        }
+        return array;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public Iterator<Runnable> iterator() {
+      return new MyIterator(toArray());
+    }
+
+    private class MyIterator implements Iterator<Runnable> {
+      private final Object[] array;
+      private int index;
+      private int last = -1;
+
+      public MyIterator(Object[] array) {
+        this.array = array;
+      }
+
+      public boolean hasNext() {
+        return index < array.length;
+      }
+
+      public Runnable next() {
+        if (index >= array.length) throw new NoSuchElementException();
+
+        last = index;
+        return (Runnable) array[index++];
+      }
+
+      public void remove() {
+        if (last < 0) throw new IllegalStateException();
+
+        DelayedWorkQueue.this.remove(array[last]);
+        last = -1;
+      }
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A queue with no capacity: an insert only succeeds when a consumer
+ * is waiting to receive the element.
+ *
+ * Elements are handed to waiting consumers through a pending list
+ * which never holds more elements than there are consumers waiting,
+ * and a consumer never leaves while an element is pending, so every
+ * accepted element is received.
+ */
+public class SynchronousQueue<T> extends AbstractQueue<T>
+  implements BlockingQueue<T>
+{
+  private final ReentrantLock lock;
+  private final Condition available;
+  private final Condition consumers;
+  private final LinkedList<T> pending = new LinkedList<T>();
+  private int waiting;
+
+  public SynchronousQueue(boolean fair) {
+    lock = new ReentrantLock(fair);
+    available = lock.newCondition();
+    consumers = lock.newCondition();
+  }
+
+  public SynchronousQueue() {
+    this(false);
+  }
+
+  private boolean canHandOff() {
+    return pending.size() < waiting;
+  }
+
+  private void handOff(T element) {
+    pending.addLast(element);
+    available.signal();
+  }
+
+  public void put(T element) throws InterruptedException {
+    if (element == null) throw new NullPointerException();
+
+    lock.lockInterruptibly();
+    try {
+      while (! canHandOff()) {
+        consumers.await();
+      }
+      handOff(element);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean offer(T element, long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    if (element == null) throw new NullPointerException();
+
+    long remaining = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (! canHandOff()) {
+        if (remaining <= 0) {
+          return false;
+        }
+        remaining = consumers.awaitNanos(remaining);
+      }
+      handOff(element);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean offer(T element) {
+    if (element == null) throw new NullPointerException();
+
+    lock.lock();
+    try {
+      if (canHandOff()) {
+        handOff(element);
+        return true;
+      } else {
+        return false;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private T receive(boolean timed, long remaining)
+    throws InterruptedException
+  {
+    lock.lockInterruptibly();
+    try {
+      ++ waiting;
+      consumers.signal();
+      try {
+        while (pending.isEmpty()) {
+          if (timed) {
+            if (remaining <= 0) {
+              return null;
+            }
+            remaining = available.awaitNanos(remaining);
+          } else {
+            available.await();
+          }
+        }
+        return pending.removeFirst();
+      } catch (InterruptedException e) {
+        // don't leave an element which was handed to us behind
+        if (! pending.isEmpty()) {
+          Thread.currentThread().interrupt();
+          return pending.removeFirst();
+        }
+        throw e;
+      } finally {
+        -- waiting;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public T take() throws InterruptedException {
+    return receive(false, 0);
+  }
+
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return receive(true, unit.toNanos(timeout));
+  }
+
+  /**
+   * Always returns null, since producers never wait with an element
+   * in hand; they wait for a consumer to arrive instead.
+   */
+  public T poll() {
+    return null;
+  }
+
+  public T peek() {
+    return null;
+  }
+
+  public int size() {
+    return 0;
+  }
+
+  public boolean isEmpty() {
+    return true;
+  }
+
+  public int remainingCapacity() {
+    return 0;
+  }
+
+  public Iterator<T> iterator() {
+    return Collections.<T>emptySet().iterator();
+  }
+
+  public int drainTo(Collection<? super T> collection) {
+    return drainTo(collection, Integer.MAX_VALUE);
+  }
+
+  public int drainTo(Collection<? super T> collection, int max) {
+    if (collection == null) throw new NullPointerException();
+    if (collection == this) throw new IllegalArgumentException();
+
+    int n = 0;
+    T element;
+    while (n < max && (element = poll()) != null) {
+      collection.add(element);
+      ++ n;
+    }
+    return n;
+  }
+}
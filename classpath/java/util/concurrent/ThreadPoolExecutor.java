@@ -0,0 +1,858 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent;
+
+import avian.Atomic;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An executor which runs tasks on a pool of worker threads fed from
+ * a blocking queue.  New tasks start a core thread if fewer than
+ * corePoolSize are running, are queued otherwise, and start a
+ * non-core thread (up to maximumPoolSize) only if the queue refuses
+ * them.
+ *
+ * The run state and the worker count share a single int so that
+ * both can be checked and updated with one compare-and-swap.  The
+ * main lock guards only the set of workers and the statistics.
+ */
+public class ThreadPoolExecutor extends AbstractExecutorService {
+  private static final long ControlOffset;
+
+  static {
+    try {
+      ControlOffset = Atomic.getOffset
+        (ThreadPoolExecutor.class.getField("control"));
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static final int CountBits = 29;
+  private static final int CountMask = (1 << CountBits) - 1;
+
+  // run states, ordered so they can be compared numerically
+  private static final int Running = -1 << CountBits;
+  private static final int Shutdown = 0 << CountBits;
+  private static final int Stop = 1 << CountBits;
+  private static final int Tidying = 2 << CountBits;
+  private static final int Terminated = 3 << CountBits;
+
+  private volatile int control = Running;
+
+  private final BlockingQueue<Runnable> workQueue;
+  private final ReentrantLock mainLock = new ReentrantLock();
+  private final Condition termination = mainLock.newCondition();
+  private final HashSet<Worker> workers = new HashSet<Worker>();
+  private int largestPoolSize;
+  private long completedTaskCount;
+
+  private volatile ThreadFactory threadFactory;
+  private volatile RejectedExecutionHandler handler;
+  private volatile long keepAliveTime;
+  private volatile boolean allowCoreThreadTimeOut;
+  private volatile int corePoolSize;
+  private volatile int maximumPoolSize;
+
+  public ThreadPoolExecutor(int corePoolSize,
+                            int maximumPoolSize,
+                            long keepAliveTime,
+                            TimeUnit unit,
+                            BlockingQueue<Runnable> workQueue,
+                            ThreadFactory threadFactory,
+                            RejectedExecutionHandler handler)
+  {
+    if (corePoolSize < 0
+        || maximumPoolSize <= 0
+        || maximumPoolSize < corePoolSize
+        || keepAliveTime < 0)
+    {
+      throw new IllegalArgumentException();
+    }
+
+    if (workQueue == null || threadFactory == null || handler == null) {
+      throw new NullPointerException();
+    }
+
+    this.corePoolSize = corePoolSize;
+    this.maximumPoolSize = maximumPoolSize;
+    this.keepAliveTime = unit.toNanos(keepAliveTime);
+    this.workQueue = workQueue;
+    this.threadFactory = threadFactory;
+    this.handler = handler;
+  }
+
+  public ThreadPoolExecutor(int corePoolSize,
+                            int maximumPoolSize,
+                            long keepAliveTime,
+                            TimeUnit unit,
+                            BlockingQueue<Runnable> workQueue,
+                            ThreadFactory threadFactory)
+  {
+    this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+         threadFactory, new AbortPolicy());
+  }
+
+  public ThreadPoolExecutor(int corePoolSize,
+                            int maximumPoolSize,
+                            long keepAliveTime,
+                            TimeUnit unit,
+                            BlockingQueue<Runnable> workQueue,
+                            RejectedExecutionHandler handler)
+  {
+    this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+         Executors.defaultThreadFactory(), handler);
+  }
+
+  public ThreadPoolExecutor(int corePoolSize,
+                            int maximumPoolSize,
+                            long keepAliveTime,
+                            TimeUnit unit,
+                            BlockingQueue<Runnable> workQueue)
+  {
+    this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+         Executors.defaultThreadFactory(), new AbortPolicy());
+  }
+
+  private static int runState(int c) {
+    return c & ~CountMask;
+  }
+
+  private static int workerCount(int c) {
+    return c & CountMask;
+  }
+
+  private static boolean isRunning(int c) {
+    return c < Shutdown;
+  }
+
+  private boolean compareAndSetControl(int expect, int update) {
+    return Atomic.compareAndSwapInt(this, ControlOffset, expect, update);
+  }
+
+  private void decrementWorkerCount() {
+    int c;
+    do {
+      c = control;
+    } while (! compareAndSetControl(c, c - 1));
+  }
+
+  private void advanceRunState(int target) {
+    while (true) {
+      int c = control;
+      if (runState(c) >= target
+          || compareAndSetControl(c, target | workerCount(c)))
+      {
+        break;
+      }
+    }
+  }
+
+  public void execute(Runnable task) {
+    if (task == null) throw new NullPointerException();
+
+    int c = control;
+    if (workerCount(c) < corePoolSize) {
+      if (addWorker(task, true)) {
+        return;
+      }
+      c = control;
+    }
+
+    if (isRunning(c) && workQueue.offer(task)) {
+      // recheck in case we shut down or the last worker died while
+      // we were queueing
+      int recheck = control;
+      if ((! isRunning(recheck)) && remove(task)) {
+        reject(task);
+      } else if (workerCount(recheck) == 0) {
+        addWorker(null, false);
+      }
+    } else if (! addWorker(task, false)) {
+      reject(task);
+    }
+  }
+
+  private void reject(Runnable task) {
+    handler.rejectedExecution(task, this);
+  }
+
+  /**
+   * Starts a new worker whose first task is the specified one,
+   * returning false if the pool is shut down or full.
+   */
+  private boolean addWorker(Runnable firstTask, boolean core) {
+    retry:
+    while (true) {
+      int c = control;
+      int rs = runState(c);
+
+      // after shutdown, workers may only be added to drain the queue
+      if (rs >= Shutdown
+          && ! (rs == Shutdown && firstTask == null
+                && ! workQueue.isEmpty()))
+      {
+        return false;
+      }
+
+      while (true) {
+        int wc = workerCount(c);
+        if (wc >= CountMask
+            || wc >= (core ? corePoolSize : maximumPoolSize))
+        {
+          return false;
+        }
+
+        if (compareAndSetControl(c, c + 1)) {
+          break retry;
+        }
+
+        c = control;
+        if (runState(c) != rs) {
+          continue retry;
+        }
+      }
+    }
+
+    boolean started = false;
+    Worker w = null;
+    try {
+      w = new Worker(firstTask);
+      Thread t = w.thread;
+      if (t != null) {
+        boolean added = false;
+        mainLock.lock();
+        try {
+          int rs = runState(control);
+          if (rs < Shutdown || (rs == Shutdown && firstTask == null)) {
+            workers.add(w);
+            if (workers.size() > largestPoolSize) {
+              largestPoolSize = workers.size();
+            }
+            added = true;
+          }
+        } finally {
+          mainLock.unlock();
+        }
+
+        if (added) {
+          t.start();
+          started = true;
+        }
+      }
+    } finally {
+      if (! started) {
+        addWorkerFailed(w);
+      }
+    }
+    return started;
+  }
+
+  private void addWorkerFailed(Worker w) {
+    mainLock.lock();
+    try {
+      if (w != null) {
+        workers.remove(w);
+      }
+      decrementWorkerCount();
+      tryTerminate();
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the next task for a worker, or null if the worker should
+   * exit, in which case the worker count has already been
+   * decremented.
+   */
+  private Runnable getTask() {
+    boolean timedOut = false;
+
+    while (true) {
+      int c = control;
+      int rs = runState(c);
+
+      if (rs >= Stop || (rs >= Shutdown && workQueue.isEmpty())) {
+        decrementWorkerCount();
+        return null;
+      }
+
+      int wc = workerCount(c);
+      boolean timed = allowCoreThreadTimeOut || wc > corePoolSize;
+
+      if ((wc > maximumPoolSize || (timed && timedOut))
+          && (wc > 1 || workQueue.isEmpty()))
+      {
+        if (compareAndSetControl(c, c - 1)) {
+          return null;
+        }
+        continue;
+      }
+
+      try {
+        Runnable r = timed
+          ? workQueue.poll(keepAliveTime, TimeUnit.NANOSECONDS)
+          : workQueue.take();
+
+        if (r != null) {
+          return r;
+        }
+        timedOut = true;
+      } catch (InterruptedException e) {
+        timedOut = false;
+      }
+    }
+  }
+
+  private void runWorker(Worker w) {
+    Thread wt = Thread.currentThread();
+    Runnable task = w.firstTask;
+    w.firstTask = null;
+    w.unlock(); // allow interrupts
+    boolean abrupt = true;
+    try {
+      while (task != null || (task = getTask()) != null) {
+        w.lock();
+
+        // make sure we are interrupted iff the pool is stopping
+        if (runState(control) >= Stop
+            || (wt.interrupted() && runState(control) >= Stop))
+        {
+          wt.interrupt();
+        }
+
+        try {
+          beforeExecute(wt, task);
+          Throwable thrown = null;
+          try {
+            task.run();
+          } catch (RuntimeException e) {
+            thrown = e;
+            throw e;
+          } catch (Error e) {
+            thrown = e;
+            throw e;
+          } catch (Throwable e) {
+            thrown = e;
+            throw new Error(e);
+          } finally {
+            afterExecute(task, thrown);
+          }
+        } finally {
+          task = null;
+          ++ w.completedTasks;
+          w.unlock();
+        }
+      }
+      abrupt = false;
+    } finally {
+      processWorkerExit(w, abrupt);
+    }
+  }
+
+  private void processWorkerExit(Worker w, boolean abrupt) {
+    if (abrupt) {
+      // getTask did not get a chance to decrement the count
+      decrementWorkerCount();
+    }
+
+    mainLock.lock();
+    try {
+      completedTaskCount += w.completedTasks;
+      workers.remove(w);
+    } finally {
+      mainLock.unlock();
+    }
+
+    tryTerminate();
+
+    int c = control;
+    if (runState(c) < Stop) {
+      if (! abrupt) {
+        int min = allowCoreThreadTimeOut ? 0 : corePoolSize;
+        if (min == 0 && ! workQueue.isEmpty()) {
+          min = 1;
+        }
+        if (workerCount(c) >= min) {
+          return;
+        }
+      }
+      addWorker(null, false);
+    }
+  }
+
+  private void interruptIdleWorkers(boolean onlyOne) {
+    mainLock.lock();
+    try {
+      for (Worker w: workers) {
+        Thread t = w.thread;
+        // a worker holding its lock is running a task
+        if (w.tryLock()) {
+          try {
+            t.interrupt();
+          } finally {
+            w.unlock();
+          }
+        }
+        if (onlyOne) {
+          break;
+        }
+      }
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  private void interruptWorkers() {
+    mainLock.lock();
+    try {
+      for (Worker w: workers) {
+        w.interruptIfStarted();
+      }
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  /**
+   * Moves to Terminated if we are shut down with an empty queue and
+   * no workers, or if we are stopped with no workers.  If workers
+   * remain, wakes one idle worker so that the shutdown propagates.
+   */
+  private void tryTerminate() {
+    while (true) {
+      int c = control;
+      if (isRunning(c)
+          || runState(c) >= Tidying
+          || (runState(c) == Shutdown && ! workQueue.isEmpty()))
+      {
+        return;
+      }
+
+      if (workerCount(c) != 0) {
+        interruptIdleWorkers(true);
+        return;
+      }
+
+      mainLock.lock();
+      try {
+        if (compareAndSetControl(c, Tidying)) {
+          try {
+            terminated();
+          } finally {
+            control = Terminated;
+            termination.signalAll();
+          }
+          return;
+        }
+      } finally {
+        mainLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Called by ScheduledThreadPoolExecutor to cancel tasks which should
+   * not run after shutdown.
+   */
+  void onShutdown() { }
+
+  boolean isStopping() {
+    return runState(control) >= Stop;
+  }
+
+  /**
+   * Starts a worker if there are fewer than corePoolSize, or if there
+   * are none at all, for queues which take tasks directly.
+   */
+  void ensurePrestart() {
+    int wc = workerCount(control);
+    if (wc < corePoolSize) {
+      addWorker(null, true);
+    } else if (wc == 0) {
+      addWorker(null, false);
+    }
+  }
+
+  public void shutdown() {
+    mainLock.lock();
+    try {
+      advanceRunState(Shutdown);
+      interruptIdleWorkers(false);
+      onShutdown();
+    } finally {
+      mainLock.unlock();
+    }
+    tryTerminate();
+  }
+
+  public List<Runnable> shutdownNow() {
+    List<Runnable> tasks = new ArrayList<Runnable>();
+    mainLock.lock();
+    try {
+      advanceRunState(Stop);
+      interruptWorkers();
+      workQueue.drainTo(tasks);
+      // some queues refuse drainTo for some elements
+      if (! workQueue.isEmpty()) {
+        for (Runnable r: workQueue.toArray(new Runnable[0])) {
+          if (workQueue.remove(r)) {
+            tasks.add(r);
+          }
+        }
+      }
+    } finally {
+      mainLock.unlock();
+    }
+    tryTerminate();
+    return tasks;
+  }
+
+  public boolean isShutdown() {
+    return ! isRunning(control);
+  }
+
+  public boolean isTerminating() {
+    int c = control;
+    return (! isRunning(c)) && runState(c) < Terminated;
+  }
+
+  public boolean isTerminated() {
+    return runState(control) == Terminated;
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    long remaining = unit.toNanos(timeout);
+    mainLock.lock();
+    try {
+      while (runState(control) != Terminated) {
+        if (remaining <= 0) {
+          return false;
+        }
+        remaining = termination.awaitNanos(remaining);
+      }
+      return true;
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  public void setThreadFactory(ThreadFactory threadFactory) {
+    if (threadFactory == null) throw new NullPointerException();
+
+    this.threadFactory = threadFactory;
+  }
+
+  public ThreadFactory getThreadFactory() {
+    return threadFactory;
+  }
+
+  public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+    if (handler == null) throw new NullPointerException();
+
+    this.handler = handler;
+  }
+
+  public RejectedExecutionHandler getRejectedExecutionHandler() {
+    return handler;
+  }
+
+  public void setCorePoolSize(int corePoolSize) {
+    if (corePoolSize < 0) throw new IllegalArgumentException();
+
+    int delta = corePoolSize - this.corePoolSize;
+    this.corePoolSize = corePoolSize;
+    if (workerCount(control) > corePoolSize) {
+      interruptIdleWorkers(false);
+    } else if (delta > 0) {
+      // start enough threads to handle what is already queued
+      int k = Math.min(delta, workQueue.size());
+      while (k-- > 0 && addWorker(null, true)) {
+        if (workQueue.isEmpty()) {
+          break;
+        }
+      }
+    }
+  }
+
+  public int getCorePoolSize() {
+    return corePoolSize;
+  }
+
+  public boolean prestartCoreThread() {
+    return workerCount(control) < corePoolSize && addWorker(null, true);
+  }
+
+  public int prestartAllCoreThreads() {
+    int n = 0;
+    while (addWorker(null, true)) {
+      ++ n;
+    }
+    return n;
+  }
+
+  public boolean allowsCoreThreadTimeOut() {
+    return allowCoreThreadTimeOut;
+  }
+
+  public void allowCoreThreadTimeOut(boolean value) {
+    if (value && keepAliveTime <= 0) {
+      throw new IllegalArgumentException
+        ("core threads must have nonzero keep alive times");
+    }
+
+    if (value != allowCoreThreadTimeOut) {
+      allowCoreThreadTimeOut = value;
+      if (value) {
+        interruptIdleWorkers(false);
+      }
+    }
+  }
+
+  public void setMaximumPoolSize(int maximumPoolSize) {
+    if (maximumPoolSize <= 0 || maximumPoolSize < corePoolSize) {
+      throw new IllegalArgumentException();
+    }
+
+    this.maximumPoolSize = maximumPoolSize;
+    if (workerCount(control) > maximumPoolSize) {
+      interruptIdleWorkers(false);
+    }
+  }
+
+  public int getMaximumPoolSize() {
+    return maximumPoolSize;
+  }
+
+  public void setKeepAliveTime(long time, TimeUnit unit) {
+    if (time < 0) throw new IllegalArgumentException();
+    if (time == 0 && allowsCoreThreadTimeOut()) {
+      throw new IllegalArgumentException
+        ("core threads must have nonzero keep alive times");
+    }
+
+    long keepAliveTime = unit.toNanos(time);
+    long delta = keepAliveTime - this.keepAliveTime;
+    this.keepAliveTime = keepAliveTime;
+    if (delta < 0) {
+      interruptIdleWorkers(false);
+    }
+  }
+
+  public long getKeepAliveTime(TimeUnit unit) {
+    return unit.convert(keepAliveTime, TimeUnit.NANOSECONDS);
+  }
+
+  public BlockingQueue<Runnable> getQueue() {
+    return workQueue;
+  }
+
+  public boolean remove(Runnable task) {
+    boolean removed = workQueue.remove(task);
+    tryTerminate();
+    return removed;
+  }
+
+  /**
+   * Removes cancelled futures from the work queue.
+   */
+  public void purge() {
+    for (Object r: workQueue.toArray()) {
+      if (r instanceof Future<?> && ((Future<?>) r).isCancelled()) {
+        workQueue.remove(r);
+      }
+    }
+    tryTerminate();
+  }
+
+  public int getPoolSize() {
+    mainLock.lock();
+    try {
+      return runState(control) >= Tidying ? 0 : workers.size();
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  public int getActiveCount() {
+    mainLock.lock();
+    try {
+      int n = 0;
+      for (Worker w: workers) {
+        if (w.isLocked()) {
+          ++ n;
+        }
+      }
+      return n;
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  public int getLargestPoolSize() {
+    mainLock.lock();
+    try {
+      return largestPoolSize;
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  public long getTaskCount() {
+    mainLock.lock();
+    try {
+      long n = completedTaskCount;
+      for (Worker w: workers) {
+        n += w.completedTasks;
+        if (w.isLocked()) {
+          ++ n;
+        }
+      }
+      return n + workQueue.size();
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  public long getCompletedTaskCount() {
+    mainLock.lock();
+    try {
+      long n = completedTaskCount;
+      for (Worker w: workers) {
+        n += w.completedTasks;
+      }
+      return n;
+    } finally {
+      mainLock.unlock();
+    }
+  }
+
+  public String toString() {
+    int c = control;
+    String state = isRunning(c) ? "Running"
+      : runState(c) == Terminated ? "Terminated" : "Shutting down";
+    return super.toString() + "[" + state
+      + ", pool size = " + getPoolSize()
+      + ", active threads = " + getActiveCount()
+      + ", queued tasks = " + workQueue.size()
+      + ", completed tasks = " + getCompletedTaskCount() + "]";
+  }
+
+  protected void beforeExecute(Thread thread, Runnable task) { }
+
+  protected void afterExecute(Runnable task, Throwable thrown) { }
+
+  protected void terminated() { }
+
+  /**
+   * A worker thread's task loop.  Each worker is also a non-reentrant
+   * lock which it holds while running a task, so that shutdown only
+   * interrupts idle workers.  The lock starts out held so the worker
+   * cannot be interrupted before it has started.
+   */
+  private final class Worker extends AbstractQueuedSynchronizer
+    implements Runnable
+  {
+    public final Thread thread;
+    public Runnable firstTask;
+    public volatile long completedTasks;
+
+    public Worker(Runnable firstTask) {
+      setState(-1);
+      this.firstTask = firstTask;
+      this.thread = threadFactory.newThread(this);
+    }
+
+    public void run() {
+      runWorker(this);
+    }
+
+    protected boolean isHeldExclusively() {
+      return getState() != 0;
+    }
+
+    protected boolean tryAcquire(int ignored) {
+      if (compareAndSetState(0, 1)) {
+        setExclusiveOwnerThread(Thread.currentThread());
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    protected boolean tryRelease(int ignored) {
+      setExclusiveOwnerThread(null);
+      setState(0);
+      return true;
+    }
+
+    public void lock() {
+      acquire(1);
+    }
+
+    public boolean tryLock() {
+      return tryAcquire(1);
+    }
+
+    public void unlock() {
+      release(1);
+    }
+
+    public boolean isLocked() {
+      return isHeldExclusively();
+    }
+
+    public void interruptIfStarted() {
+      if (getState() >= 0 && thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  public static class AbortPolicy implements RejectedExecutionHandler {
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor e) {
+      throw new RejectedExecutionException
+        ("task " + task + " rejected from " + e);
+    }
+  }
+
+  public static class CallerRunsPolicy implements RejectedExecutionHandler {
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor e) {
+      if (! e.isShutdown()) {
+        task.run();
+      }
+    }
+  }
+
+  public static class DiscardPolicy implements RejectedExecutionHandler {
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor e) { }
+  }
+
+  public static class DiscardOldestPolicy
+    implements RejectedExecutionHandler
+  {
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor e) {
+      if (! e.isShutdown()) {
+        e.getQueue().poll();
+        e.execute(task);
+      }
+    }
+  }
+}
@@ -0,0 +1,25 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent.locks;
+
+public abstract class AbstractOwnableSynchronizer {
+  private transient Thread exclusiveOwnerThread;
+
+  protected AbstractOwnableSynchronizer() { }
+
+  protected final void setExclusiveOwnerThread(Thread thread) {
+    exclusiveOwnerThread = thread;
+  }
+
+  protected final Thread getExclusiveOwnerThread() {
+    return exclusiveOwnerThread;
+  }
+}
@@ -0,0 +1,862 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent.locks;
+
+import avian.Atomic;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A framework for locks and synchronizers which keep their state in
+ * a single int and block threads on a FIFO queue.  Subclasses define
+ * what the state means by implementing tryAcquire and tryRelease for
+ * exclusive mode and/or tryAcquireShared and tryReleaseShared for
+ * shared mode.
+ *
+ * The queue is a variant of the CLH lock queue: a thread only parks
+ * after marking its predecessor with Signal, and a release only
+ * unparks a successor when the head is so marked.  An uncontended
+ * acquire or release is therefore a single compare-and-swap and
+ * never blocks in the VM.
+ */
+public abstract class AbstractQueuedSynchronizer
+  extends AbstractOwnableSynchronizer
+{
+  private static final long StateOffset;
+  private static final long HeadOffset;
+  private static final long TailOffset;
+  private static final long NodeWaitStatusOffset;
+  private static final long NodeNextOffset;
+
+  static {
+    try {
+      StateOffset = Atomic.getOffset
+        (AbstractQueuedSynchronizer.class.getField("state"));
+
+      HeadOffset = Atomic.getOffset
+        (AbstractQueuedSynchronizer.class.getField("head"));
+
+      TailOffset = Atomic.getOffset
+        (AbstractQueuedSynchronizer.class.getField("tail"));
+
+      NodeWaitStatusOffset = Atomic.getOffset
+        (Node.class.getField("waitStatus"));
+
+      NodeNextOffset = Atomic.getOffset
+        (Node.class.getField("next"));
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // timed waits shorter than this spin rather than park
+  private static final long SpinThreshold = 1000;
+
+  // results of acquireQueued
+  private static final int Acquired = 0;
+  private static final int AcquiredAfterInterrupt = 1;
+  private static final int Interrupted = 2;
+  private static final int TimedOut = 3;
+
+  private volatile Node head;
+  private volatile Node tail;
+  private volatile int state;
+
+  protected AbstractQueuedSynchronizer() { }
+
+  protected final int getState() {
+    return state;
+  }
+
+  protected final void setState(int value) {
+    state = value;
+  }
+
+  protected final boolean compareAndSetState(int expect, int update) {
+    return Atomic.compareAndSwapInt(this, StateOffset, expect, update);
+  }
+
+  protected boolean tryAcquire(int arg) {
+    throw new UnsupportedOperationException();
+  }
+
+  protected boolean tryRelease(int arg) {
+    throw new UnsupportedOperationException();
+  }
+
+  protected int tryAcquireShared(int arg) {
+    throw new UnsupportedOperationException();
+  }
+
+  protected boolean tryReleaseShared(int arg) {
+    throw new UnsupportedOperationException();
+  }
+
+  protected boolean isHeldExclusively() {
+    throw new UnsupportedOperationException();
+  }
+
+  public final void acquire(int arg) {
+    if (! tryAcquire(arg)) {
+      if (acquireQueued(enqueue(Node.Exclusive), arg, false, 0)
+          == AcquiredAfterInterrupt)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public final void acquireInterruptibly(int arg)
+    throws InterruptedException
+  {
+    if (Thread.currentThread().interrupted()) {
+      throw new InterruptedException();
+    }
+
+    if (! tryAcquire(arg)) {
+      if (acquireQueued(enqueue(Node.Exclusive), arg, true, 0)
+          == Interrupted)
+      {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  public final boolean tryAcquireNanos(int arg, long nanoseconds)
+    throws InterruptedException
+  {
+    if (Thread.currentThread().interrupted()) {
+      throw new InterruptedException();
+    }
+
+    if (tryAcquire(arg)) {
+      return true;
+    } else if (nanoseconds <= 0) {
+      return false;
+    }
+
+    switch (acquireQueued(enqueue(Node.Exclusive), arg, true,
+                          System.nanoTime() + nanoseconds))
+    {
+    case Interrupted:
+      throw new InterruptedException();
+
+    case TimedOut:
+      return false;
+
+    default:
+      return true;
+    }
+  }
+
+  public final boolean release(int arg) {
+    if (tryRelease(arg)) {
+      Node h = head;
+      if (h != null && h.waitStatus != 0) {
+        unparkSuccessor(h);
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  public final void acquireShared(int arg) {
+    if (tryAcquireShared(arg) < 0) {
+      if (acquireQueued(enqueue(Node.Shared), arg, false, 0)
+          == AcquiredAfterInterrupt)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public final void acquireSharedInterruptibly(int arg)
+    throws InterruptedException
+  {
+    if (Thread.currentThread().interrupted()) {
+      throw new InterruptedException();
+    }
+
+    if (tryAcquireShared(arg) < 0) {
+      if (acquireQueued(enqueue(Node.Shared), arg, true, 0)
+          == Interrupted)
+      {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  public final boolean tryAcquireSharedNanos(int arg, long nanoseconds)
+    throws InterruptedException
+  {
+    if (Thread.currentThread().interrupted()) {
+      throw new InterruptedException();
+    }
+
+    if (tryAcquireShared(arg) >= 0) {
+      return true;
+    } else if (nanoseconds <= 0) {
+      return false;
+    }
+
+    switch (acquireQueued(enqueue(Node.Shared), arg, true,
+                          System.nanoTime() + nanoseconds))
+    {
+    case Interrupted:
+      throw new InterruptedException();
+
+    case TimedOut:
+      return false;
+
+    default:
+      return true;
+    }
+  }
+
+  public final boolean releaseShared(int arg) {
+    if (tryReleaseShared(arg)) {
+      signalShared();
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  public final boolean hasQueuedThreads() {
+    return head != tail;
+  }
+
+  /**
+   * Returns true if some thread other than the current one has been
+   * waiting longer than the current thread.  Fair synchronizers use
+   * this to refuse barging.
+   */
+  public final boolean hasQueuedPredecessors() {
+    Node t = tail;
+    Node h = head;
+    Node s;
+    return h != t
+      && ((s = h.next) == null || s.thread != Thread.currentThread());
+  }
+
+  /**
+   * Returns true if the thread at the front of the queue is waiting
+   * in exclusive mode.  The answer may be stale by the time the
+   * caller sees it.
+   */
+  final boolean firstQueuedIsExclusive() {
+    Node h = head;
+    Node s;
+    return h != null && (s = h.next) != null && (! s.isShared())
+      && s.thread != null;
+  }
+
+  public final boolean isQueued(Thread thread) {
+    if (thread == null) throw new NullPointerException();
+
+    for (Node p = tail; p != null; p = p.prev) {
+      if (p.thread == thread) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public final int getQueueLength() {
+    int count = 0;
+    for (Node p = tail; p != null; p = p.prev) {
+      if (p.thread != null) {
+        ++ count;
+      }
+    }
+    return count;
+  }
+
+  public final Thread getFirstQueuedThread() {
+    Thread first = null;
+    for (Node p = tail; p != null && p != head; p = p.prev) {
+      Thread t = p.thread;
+      if (t != null) {
+        first = t;
+      }
+    }
+    return first;
+  }
+
+  public final boolean owns(ConditionObject condition) {
+    return condition.owner() == this;
+  }
+
+  public final boolean hasWaiters(ConditionObject condition) {
+    if (! owns(condition)) throw new IllegalArgumentException();
+
+    return condition.hasWaiters();
+  }
+
+  public final int getWaitQueueLength(ConditionObject condition) {
+    if (! owns(condition)) throw new IllegalArgumentException();
+
+    return condition.getWaitQueueLength();
+  }
+
+  public String toString() {
+    return super.toString() + "[state = " + state + ", "
+      + (hasQueuedThreads() ? "non" : "") + "empty queue]";
+  }
+
+  private boolean compareAndSetHead(Node update) {
+    return Atomic.compareAndSwapObject(this, HeadOffset, null, update);
+  }
+
+  private boolean compareAndSetTail(Node expect, Node update) {
+    return Atomic.compareAndSwapObject(this, TailOffset, expect, update);
+  }
+
+  private static boolean compareAndSetWaitStatus(Node node, int expect,
+                                                 int update)
+  {
+    return Atomic.compareAndSwapInt
+      (node, NodeWaitStatusOffset, expect, update);
+  }
+
+  private static boolean compareAndSetNext(Node node, Node expect,
+                                           Node update)
+  {
+    return Atomic.compareAndSwapObject(node, NodeNextOffset, expect, update);
+  }
+
+  /**
+   * Appends the specified node to the queue, initializing the queue
+   * with a dummy head if necessary, and returns its predecessor.
+   */
+  private Node append(Node node) {
+    while (true) {
+      Node t = tail;
+      if (t == null) {
+        if (compareAndSetHead(new Node())) {
+          tail = head;
+        }
+      } else {
+        node.prev = t;
+        if (compareAndSetTail(t, node)) {
+          t.next = node;
+          return t;
+        }
+      }
+    }
+  }
+
+  private Node enqueue(Node mode) {
+    Node node = new Node(Thread.currentThread(), mode);
+    append(node);
+    return node;
+  }
+
+  private void setHead(Node node) {
+    head = node;
+    node.thread = null;
+    node.prev = null;
+  }
+
+  private void unparkSuccessor(Node node) {
+    int ws = node.waitStatus;
+    if (ws < 0) {
+      compareAndSetWaitStatus(node, ws, 0);
+    }
+
+    // the successor is normally just the next node, but if that is
+    // cancelled or not yet linked, search backward from the tail
+    Node s = node.next;
+    if (s == null || s.waitStatus > 0) {
+      s = null;
+      for (Node p = tail; p != null && p != node; p = p.prev) {
+        if (p.waitStatus <= 0) {
+          s = p;
+        }
+      }
+    }
+
+    if (s != null) {
+      LockSupport.unpark(s.thread);
+    }
+  }
+
+  /**
+   * Wakes the successor of the head in shared mode, or marks the head
+   * with Propagate so that a concurrent acquirer passes the release
+   * on.
+   */
+  private void signalShared() {
+    while (true) {
+      Node h = head;
+      if (h != null && h != tail) {
+        int ws = h.waitStatus;
+        if (ws == Node.Signal) {
+          if (! compareAndSetWaitStatus(h, Node.Signal, 0)) {
+            continue;
+          }
+          unparkSuccessor(h);
+        } else if (ws == 0
+                   && ! compareAndSetWaitStatus(h, 0, Node.Propagate))
+        {
+          continue;
+        }
+      }
+
+      if (h == head) {
+        break;
+      }
+    }
+  }
+
+  private void setHeadAndPropagate(Node node, int propagate) {
+    Node h = head;
+    setHead(node);
+
+    if (propagate > 0 || h == null || h.waitStatus < 0
+        || (h = head) == null || h.waitStatus < 0)
+    {
+      Node s = node.next;
+      if (s == null || s.isShared()) {
+        signalShared();
+      }
+    }
+  }
+
+  private void cancelAcquire(Node node) {
+    node.thread = null;
+
+    Node pred = node.prev;
+    while (pred.waitStatus > 0) {
+      node.prev = pred = pred.prev;
+    }
+
+    Node predNext = pred.next;
+
+    node.waitStatus = Node.Cancelled;
+
+    if (node == tail && compareAndSetTail(node, pred)) {
+      compareAndSetNext(pred, predNext, null);
+    } else {
+      int ws;
+      if (pred != head
+          && ((ws = pred.waitStatus) == Node.Signal
+              || (ws <= 0 && compareAndSetWaitStatus(pred, ws, Node.Signal)))
+          && pred.thread != null)
+      {
+        Node next = node.next;
+        if (next != null && next.waitStatus <= 0) {
+          compareAndSetNext(pred, predNext, next);
+        }
+      } else {
+        unparkSuccessor(node);
+      }
+
+      node.next = node;
+    }
+  }
+
+  /**
+   * Returns true if the caller may park because its predecessor has
+   * been marked to signal it.  Otherwise, skips cancelled
+   * predecessors or marks the live one, and returns false so the
+   * caller retries the acquire before parking.
+   */
+  private static boolean shouldPark(Node pred, Node node) {
+    int ws = pred.waitStatus;
+    if (ws == Node.Signal) {
+      return true;
+    }
+
+    if (ws > 0) {
+      do {
+        node.prev = pred = pred.prev;
+      } while (pred.waitStatus > 0);
+      pred.next = node;
+    } else {
+      compareAndSetWaitStatus(pred, ws, Node.Signal);
+    }
+    return false;
+  }
+
+  /**
+   * Acquires in the mode of the specified node, which must already be
+   * queued.  A deadline of zero means wait forever.
+   */
+  private int acquireQueued(Node node, int arg, boolean interruptible,
+                            long deadline)
+  {
+    boolean interrupted = false;
+    boolean failed = true;
+    try {
+      while (true) {
+        Node p = node.prev;
+        if (p == head) {
+          if (node.isShared()) {
+            int r = tryAcquireShared(arg);
+            if (r >= 0) {
+              setHeadAndPropagate(node, r);
+              p.next = null;
+              failed = false;
+              return interrupted ? AcquiredAfterInterrupt : Acquired;
+            }
+          } else if (tryAcquire(arg)) {
+            setHead(node);
+            p.next = null;
+            failed = false;
+            return interrupted ? AcquiredAfterInterrupt : Acquired;
+          }
+        }
+
+        long remaining = 0;
+        if (deadline != 0) {
+          remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            return TimedOut;
+          }
+        }
+
+        if (shouldPark(p, node)) {
+          if (deadline == 0) {
+            LockSupport.park(this);
+          } else if (remaining > SpinThreshold) {
+            LockSupport.parkNanos(this, remaining);
+          }
+
+          if (Thread.currentThread().interrupted()) {
+            if (interruptible) {
+              return Interrupted;
+            } else {
+              interrupted = true;
+            }
+          }
+        }
+      }
+    } finally {
+      if (failed) {
+        cancelAcquire(node);
+      }
+    }
+  }
+
+  private boolean isOnSyncQueue(Node node) {
+    if (node.waitStatus == Node.Condition || node.prev == null) {
+      return false;
+    } else if (node.next != null) {
+      return true;
+    }
+
+    // the node may have been appended but not yet linked forward
+    for (Node p = tail; p != null; p = p.prev) {
+      if (p == node) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Moves a node from a condition queue to the sync queue, returning
+   * false if the node was cancelled before it could be signalled.
+   */
+  private boolean transferForSignal(Node node) {
+    if (! compareAndSetWaitStatus(node, Node.Condition, 0)) {
+      return false;
+    }
+
+    Node p = append(node);
+    int ws = p.waitStatus;
+    if (ws > 0 || ! compareAndSetWaitStatus(p, ws, Node.Signal)) {
+      LockSupport.unpark(node.thread);
+    }
+    return true;
+  }
+
+  /**
+   * Moves a node whose wait was interrupted or timed out to the sync
+   * queue, returning true if this happened before it was signalled.
+   */
+  private boolean transferAfterCancelledWait(Node node) {
+    if (compareAndSetWaitStatus(node, Node.Condition, 0)) {
+      append(node);
+      return true;
+    }
+
+    // a signal got there first; wait for it to finish the transfer
+    while (! isOnSyncQueue(node)) {
+      Thread.yield();
+    }
+    return false;
+  }
+
+  private int fullyRelease(Node node) {
+    boolean failed = true;
+    try {
+      int saved = state;
+      if (release(saved)) {
+        failed = false;
+        return saved;
+      } else {
+        throw new IllegalMonitorStateException();
+      }
+    } finally {
+      if (failed) {
+        node.waitStatus = Node.Cancelled;
+      }
+    }
+  }
+
+  private static class Node {
+    public static final Node Shared = new Node();
+    public static final Node Exclusive = null;
+
+    public static final int Cancelled = 1;
+    public static final int Signal = -1;
+    public static final int Condition = -2;
+    public static final int Propagate = -3;
+
+    public volatile int waitStatus;
+    public volatile Node prev;
+    public volatile Node next;
+    public volatile Thread thread;
+    // next node on a condition queue, or Shared for shared mode nodes
+    public Node nextWaiter;
+
+    public Node() { }
+
+    public Node(Thread thread, Node mode) {
+      this.thread = thread;
+      this.nextWaiter = mode;
+    }
+
+    public Node(Thread thread, int waitStatus) {
+      this.thread = thread;
+      this.waitStatus = waitStatus;
+    }
+
+    public boolean isShared() {
+      return nextWaiter == Shared;
+    }
+  }
+
+  public class ConditionObject implements Condition {
+    private Node firstWaiter;
+    private Node lastWaiter;
+
+    public ConditionObject() { }
+
+    private AbstractQueuedSynchronizer owner() {
+      return AbstractQueuedSynchronizer.this;
+    }
+
+    private Node addWaiter() {
+      Node t = lastWaiter;
+      if (t != null && t.waitStatus != Node.Condition) {
+        unlinkCancelledWaiters();
+        t = lastWaiter;
+      }
+
+      Node node = new Node(Thread.currentThread(), Node.Condition);
+      if (t == null) {
+        firstWaiter = node;
+      } else {
+        t.nextWaiter = node;
+      }
+      lastWaiter = node;
+      return node;
+    }
+
+    private void unlinkCancelledWaiters() {
+      Node trail = null;
+      for (Node t = firstWaiter; t != null;) {
+        Node next = t.nextWaiter;
+        if (t.waitStatus != Node.Condition) {
+          t.nextWaiter = null;
+          if (trail == null) {
+            firstWaiter = next;
+          } else {
+            trail.nextWaiter = next;
+          }
+
+          if (next == null) {
+            lastWaiter = trail;
+          }
+        } else {
+          trail = t;
+        }
+        t = next;
+      }
+    }
+
+    private void checkOwner() {
+      if (! isHeldExclusively()) {
+        throw new IllegalMonitorStateException();
+      }
+    }
+
+    public void signal() {
+      checkOwner();
+
+      Node first = firstWaiter;
+      while (first != null) {
+        firstWaiter = first.nextWaiter;
+        if (firstWaiter == null) {
+          lastWaiter = null;
+        }
+        first.nextWaiter = null;
+
+        if (transferForSignal(first)) {
+          break;
+        }
+        first = firstWaiter;
+      }
+    }
+
+    public void signalAll() {
+      checkOwner();
+
+      Node first = firstWaiter;
+      firstWaiter = lastWaiter = null;
+      while (first != null) {
+        Node next = first.nextWaiter;
+        first.nextWaiter = null;
+        transferForSignal(first);
+        first = next;
+      }
+    }
+
+    /**
+     * Waits until signalled, interrupted (if interruptible), or the
+     * deadline passes (if non-zero), then reacquires the lock.
+     * Returns the nanoseconds remaining before the deadline, or zero
+     * if it passed without a signal.
+     */
+    private long await(boolean interruptible, long deadline)
+      throws InterruptedException
+    {
+      if (interruptible && Thread.currentThread().interrupted()) {
+        throw new InterruptedException();
+      }
+
+      Node node = addWaiter();
+      int saved = fullyRelease(node);
+      boolean interruptedBeforeSignal = false;
+      boolean interruptedAfterSignal = false;
+      boolean timedOut = false;
+
+      while (! isOnSyncQueue(node)) {
+        if (deadline != 0) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            timedOut = transferAfterCancelledWait(node);
+            break;
+          } else if (remaining > SpinThreshold) {
+            LockSupport.parkNanos(this, remaining);
+          }
+        } else {
+          LockSupport.park(this);
+        }
+
+        if (Thread.currentThread().interrupted()) {
+          if (! interruptible) {
+            // remember the interrupt and keep waiting for a signal
+            interruptedAfterSignal = true;
+          } else {
+            if (transferAfterCancelledWait(node)) {
+              interruptedBeforeSignal = true;
+            } else {
+              interruptedAfterSignal = true;
+            }
+            break;
+          }
+        }
+      }
+
+      if (acquireQueued(node, saved, false, 0) == AcquiredAfterInterrupt) {
+        interruptedAfterSignal = true;
+      }
+
+      if (node.nextWaiter != null) {
+        unlinkCancelledWaiters();
+      }
+
+      if (interruptedBeforeSignal) {
+        throw new InterruptedException();
+      } else if (interruptedAfterSignal) {
+        Thread.currentThread().interrupt();
+      }
+
+      if (timedOut) {
+        return 0;
+      } else if (deadline == 0) {
+        return 1;
+      } else {
+        return Math.max(1, deadline - System.nanoTime());
+      }
+    }
+
+    public void await() throws InterruptedException {
+      await(true, 0);
+    }
+
+    public void awaitUninterruptibly() {
+      try {
+        await(false, 0);
+      } catch (InterruptedException e) {
+        // only thrown when interruptible
+        throw new RuntimeException(e);
+      }
+    }
+
+    public long awaitNanos(long nanoseconds) throws InterruptedException {
+      if (nanoseconds <= 0) {
+        nanoseconds = 1;
+      }
+      return await(true, System.nanoTime() + nanoseconds);
+    }
+
+    public boolean await(long time, TimeUnit unit)
+      throws InterruptedException
+    {
+      return awaitNanos(unit.toNanos(time)) > 0;
+    }
+
+    public boolean awaitUntil(Date deadline) throws InterruptedException {
+      return awaitNanos
+        ((deadline.getTime() - System.currentTimeMillis()) * 1000000) > 0;
+    }
+
+    private boolean hasWaiters() {
+      checkOwner();
+
+      for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
+        if (w.waitStatus == Node.Condition) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private int getWaitQueueLength() {
+      checkOwner();
+
+      int count = 0;
+      for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
+        if (w.waitStatus == Node.Condition) {
+          ++ count;
+        }
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent.locks;
+
+/**
+ * Basic thread blocking primitives.  Each thread has a single permit
+ * which unpark makes available and park consumes, blocking until it
+ * becomes available if necessary.  The permit lives in the thread's
+ * unparked field and blocking happens on the VM's per-thread monitor,
+ * so parking never touches the global monitor table.
+ *
+ * Any park method may also return spuriously, when the thread is
+ * interrupted, or when its timeout expires; callers are expected to
+ * recheck their condition in a loop.
+ */
+public class LockSupport {
+  private LockSupport() { }
+
+  private static native void doPark(boolean absolute, long time);
+
+  private static native void doUnpark(Thread thread);
+
+  public static void unpark(Thread thread) {
+    if (thread != null) {
+      doUnpark(thread);
+    }
+  }
+
+  public static void park() {
+    doPark(false, 0);
+  }
+
+  /**
+   * Blocks for at most the specified number of nanoseconds, which
+   * are rounded up to the granularity of the system clock.
+   */
+  public static void parkNanos(long nanoseconds) {
+    if (nanoseconds > 0) {
+      doPark(false, nanoseconds);
+    }
+  }
+
+  /**
+   * Blocks until the specified time in milliseconds since the epoch.
+   */
+  public static void parkUntil(long deadline) {
+    doPark(true, deadline);
+  }
+
+  // Avian does not track blockers, so these variants just ignore them
+
+  public static void park(Object blocker) {
+    park();
+  }
+
+  public static void parkNanos(Object blocker, long nanoseconds) {
+    parkNanos(nanoseconds);
+  }
+
+  public static void parkUntil(Object blocker, long deadline) {
+    parkUntil(deadline);
+  }
+}
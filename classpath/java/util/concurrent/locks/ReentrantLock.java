@@ -0,0 +1,198 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent.locks;
+
+import java.util.concurrent.TimeUnit;
+
+public class ReentrantLock implements Lock {
+  private final Sync sync;
+
+  public ReentrantLock(boolean fair) {
+    sync = fair ? new FairSync() : new Sync();
+  }
+
+  public ReentrantLock() {
+    this(false);
+  }
+
+  public void lock() {
+    sync.lock();
+  }
+
+  public void lockInterruptibly() throws InterruptedException {
+    sync.acquireInterruptibly(1);
+  }
+
+  /**
+   * Acquires the lock if it is available, even if this is a fair
+   * lock and other threads are waiting for it.
+   */
+  public boolean tryLock() {
+    return sync.nonfairTryAcquire(1);
+  }
+
+  public boolean tryLock(long time, TimeUnit unit)
+    throws InterruptedException
+  {
+    return sync.tryAcquireNanos(1, unit.toNanos(time));
+  }
+
+  public void unlock() {
+    sync.release(1);
+  }
+
+  public Condition newCondition() {
+    return sync.newCondition();
+  }
+
+  public int getHoldCount() {
+    return sync.isHeldExclusively() ? sync.state() : 0;
+  }
+
+  public boolean isHeldByCurrentThread() {
+    return sync.isHeldExclusively();
+  }
+
+  public boolean isLocked() {
+    return sync.state() != 0;
+  }
+
+  public final boolean isFair() {
+    return sync instanceof FairSync;
+  }
+
+  public final boolean hasQueuedThreads() {
+    return sync.hasQueuedThreads();
+  }
+
+  public final boolean hasQueuedThread(Thread thread) {
+    return sync.isQueued(thread);
+  }
+
+  public final int getQueueLength() {
+    return sync.getQueueLength();
+  }
+
+  public boolean hasWaiters(Condition condition) {
+    return sync.hasWaiters(conditionObject(condition));
+  }
+
+  public int getWaitQueueLength(Condition condition) {
+    return sync.getWaitQueueLength(conditionObject(condition));
+  }
+
+  private static AbstractQueuedSynchronizer.ConditionObject conditionObject
+    (Condition condition)
+  {
+    if (condition == null) throw new NullPointerException();
+
+    if (condition instanceof AbstractQueuedSynchronizer.ConditionObject) {
+      return (AbstractQueuedSynchronizer.ConditionObject) condition;
+    } else {
+      throw new IllegalArgumentException();
+    }
+  }
+
+  public String toString() {
+    Thread owner = sync.owner();
+    return super.toString() + (owner == null
+                               ? "[Unlocked]"
+                               : "[Locked by thread " + owner.getName() + "]");
+  }
+
+  private static class Sync extends AbstractQueuedSynchronizer {
+    public ConditionObject newCondition() {
+      return new ConditionObject();
+    }
+
+    public void lock() {
+      if (compareAndSetState(0, 1)) {
+        setExclusiveOwnerThread(Thread.currentThread());
+      } else {
+        acquire(1);
+      }
+    }
+
+    public final boolean nonfairTryAcquire(int acquires) {
+      Thread current = Thread.currentThread();
+      int c = getState();
+      if (c == 0) {
+        if (compareAndSetState(0, acquires)) {
+          setExclusiveOwnerThread(current);
+          return true;
+        }
+      } else if (current == getExclusiveOwnerThread()) {
+        int next = c + acquires;
+        if (next < 0) throw new Error("maximum lock count exceeded");
+
+        setState(next);
+        return true;
+      }
+      return false;
+    }
+
+    protected boolean tryAcquire(int acquires) {
+      return nonfairTryAcquire(acquires);
+    }
+
+    protected final boolean tryRelease(int releases) {
+      if (Thread.currentThread() != getExclusiveOwnerThread()) {
+        throw new IllegalMonitorStateException();
+      }
+
+      int c = getState() - releases;
+      boolean free = c == 0;
+      if (free) {
+        setExclusiveOwnerThread(null);
+      }
+      setState(c);
+      return free;
+    }
+
+    protected final boolean isHeldExclusively() {
+      return getExclusiveOwnerThread() == Thread.currentThread();
+    }
+
+    public final int state() {
+      return getState();
+    }
+
+    public final Thread owner() {
+      return getState() == 0 ? null : getExclusiveOwnerThread();
+    }
+  }
+
+  private static class FairSync extends Sync {
+    public void lock() {
+      acquire(1);
+    }
+
+    protected boolean tryAcquire(int acquires) {
+      Thread current = Thread.currentThread();
+      int c = getState();
+      if (c == 0) {
+        if ((! hasQueuedPredecessors())
+            && compareAndSetState(0, acquires))
+        {
+          setExclusiveOwnerThread(current);
+          return true;
+        }
+      } else if (current == getExclusiveOwnerThread()) {
+        int next = c + acquires;
+        if (next < 0) throw new Error("maximum lock count exceeded");
+
+        setState(next);
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,393 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.concurrent.locks;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read-write lock built on AbstractQueuedSynchronizer.  The low 16
+ * bits of the synchronizer state count write holds and the high 16
+ * bits count read holds.  A writer may acquire the read lock, and
+ * so may downgrade by acquiring it before releasing the write lock,
+ * but a reader may not upgrade.
+ */
+public class ReentrantReadWriteLock implements ReadWriteLock {
+  private static final int SharedShift = 16;
+  private static final int SharedUnit = 1 << SharedShift;
+  private static final int MaxCount = (1 << SharedShift) - 1;
+  private static final int ExclusiveMask = (1 << SharedShift) - 1;
+
+  private final Sync sync;
+  private final ReadLock readLock;
+  private final WriteLock writeLock;
+
+  public ReentrantReadWriteLock(boolean fair) {
+    sync = new Sync(fair);
+    readLock = new ReadLock(sync);
+    writeLock = new WriteLock(sync);
+  }
+
+  public ReentrantReadWriteLock() {
+    this(false);
+  }
+
+  public ReadLock readLock() {
+    return readLock;
+  }
+
+  public WriteLock writeLock() {
+    return writeLock;
+  }
+
+  public final boolean isFair() {
+    return sync.fair;
+  }
+
+  public int getReadLockCount() {
+    return sharedCount(sync.state());
+  }
+
+  public int getReadHoldCount() {
+    return sync.readHoldCount();
+  }
+
+  public boolean isWriteLocked() {
+    return exclusiveCount(sync.state()) != 0;
+  }
+
+  public boolean isWriteLockedByCurrentThread() {
+    return sync.isHeldExclusively();
+  }
+
+  public int getWriteHoldCount() {
+    return sync.isHeldExclusively() ? exclusiveCount(sync.state()) : 0;
+  }
+
+  public final boolean hasQueuedThreads() {
+    return sync.hasQueuedThreads();
+  }
+
+  public final boolean hasQueuedThread(Thread thread) {
+    return sync.isQueued(thread);
+  }
+
+  public final int getQueueLength() {
+    return sync.getQueueLength();
+  }
+
+  public String toString() {
+    int c = sync.state();
+    return super.toString() + "[Write locks = " + exclusiveCount(c)
+      + ", Read locks = " + sharedCount(c) + "]";
+  }
+
+  private static int sharedCount(int c) {
+    return c >>> SharedShift;
+  }
+
+  private static int exclusiveCount(int c) {
+    return c & ExclusiveMask;
+  }
+
+  private static class HoldCounter {
+    public int count;
+  }
+
+  private static class Sync extends AbstractQueuedSynchronizer {
+    public final boolean fair;
+
+    private final ThreadLocal<HoldCounter> holds
+      = new ThreadLocal<HoldCounter>() {
+        protected HoldCounter initialValue() {
+          return new HoldCounter();
+        }
+      };
+
+    // the common case of a single reader is tracked without touching
+    // the thread local
+    private Thread firstReader;
+    private int firstReaderHoldCount;
+
+    public Sync(boolean fair) {
+      this.fair = fair;
+    }
+
+    public final int state() {
+      return getState();
+    }
+
+    public ConditionObject newCondition() {
+      return new ConditionObject();
+    }
+
+    private boolean readerShouldBlock() {
+      if (fair) {
+        return hasQueuedPredecessors();
+      } else {
+        // let a waiting writer go first so it is not starved, even
+        // though we do not otherwise honor queue order
+        return firstQueuedIsExclusive();
+      }
+    }
+
+    private boolean writerShouldBlock() {
+      return fair && hasQueuedPredecessors();
+    }
+
+    private void addReadHold(Thread current, int readers) {
+      if (readers == 0) {
+        firstReader = current;
+        firstReaderHoldCount = 1;
+      } else if (firstReader == current) {
+        ++ firstReaderHoldCount;
+      } else {
+        ++ holds.get().count;
+      }
+    }
+
+    public final int readHoldCount() {
+      if (getReadLockCount() == 0) {
+        return 0;
+      }
+
+      Thread current = Thread.currentThread();
+      if (firstReader == current) {
+        return firstReaderHoldCount;
+      } else {
+        int count = holds.get().count;
+        if (count == 0) {
+          holds.remove();
+        }
+        return count;
+      }
+    }
+
+    private int getReadLockCount() {
+      return sharedCount(getState());
+    }
+
+    protected final boolean tryAcquire(int acquires) {
+      Thread current = Thread.currentThread();
+      int c = getState();
+      if (c != 0) {
+        // there are readers, or a writer other than us
+        if (exclusiveCount(c) == 0 || current != getExclusiveOwnerThread()) {
+          return false;
+        }
+
+        if (exclusiveCount(c) + acquires > MaxCount) {
+          throw new Error("maximum lock count exceeded");
+        }
+
+        setState(c + acquires);
+        return true;
+      }
+
+      if (writerShouldBlock() || ! compareAndSetState(c, c + acquires)) {
+        return false;
+      }
+
+      setExclusiveOwnerThread(current);
+      return true;
+    }
+
+    protected final boolean tryRelease(int releases) {
+      if (! isHeldExclusively()) {
+        throw new IllegalMonitorStateException();
+      }
+
+      int c = getState() - releases;
+      boolean free = exclusiveCount(c) == 0;
+      if (free) {
+        setExclusiveOwnerThread(null);
+      }
+      setState(c);
+      return free;
+    }
+
+    protected final int tryAcquireShared(int unused) {
+      Thread current = Thread.currentThread();
+      while (true) {
+        int c = getState();
+        if (exclusiveCount(c) != 0
+            && getExclusiveOwnerThread() != current)
+        {
+          return -1;
+        }
+
+        if (readerShouldBlock() && readHoldCount() == 0) {
+          // only a reentrant acquire may barge past queued threads
+          return -1;
+        }
+
+        if (sharedCount(c) == MaxCount) {
+          throw new Error("maximum lock count exceeded");
+        }
+
+        if (compareAndSetState(c, c + SharedUnit)) {
+          addReadHold(current, sharedCount(c));
+          return 1;
+        }
+      }
+    }
+
+    protected final boolean tryReleaseShared(int unused) {
+      Thread current = Thread.currentThread();
+      if (firstReader == current) {
+        if (firstReaderHoldCount == 1) {
+          firstReader = null;
+        }
+        -- firstReaderHoldCount;
+      } else {
+        HoldCounter h = holds.get();
+        if (h.count <= 0) {
+          holds.remove();
+          throw new IllegalMonitorStateException();
+        }
+
+        if (-- h.count == 0) {
+          holds.remove();
+        }
+      }
+
+      while (true) {
+        int c = getState();
+        int next = c - SharedUnit;
+        if (compareAndSetState(c, next)) {
+          return next == 0;
+        }
+      }
+    }
+
+    public final boolean tryWriteLock() {
+      Thread current = Thread.currentThread();
+      int c = getState();
+      if (c != 0) {
+        if (exclusiveCount(c) == 0 || current != getExclusiveOwnerThread()) {
+          return false;
+        }
+
+        if (exclusiveCount(c) == MaxCount) {
+          throw new Error("maximum lock count exceeded");
+        }
+      }
+
+      if (! compareAndSetState(c, c + 1)) {
+        return false;
+      }
+
+      setExclusiveOwnerThread(current);
+      return true;
+    }
+
+    public final boolean tryReadLock() {
+      Thread current = Thread.currentThread();
+      while (true) {
+        int c = getState();
+        if (exclusiveCount(c) != 0
+            && getExclusiveOwnerThread() != current)
+        {
+          return false;
+        }
+
+        if (sharedCount(c) == MaxCount) {
+          throw new Error("maximum lock count exceeded");
+        }
+
+        if (compareAndSetState(c, c + SharedUnit)) {
+          addReadHold(current, sharedCount(c));
+          return true;
+        }
+      }
+    }
+
+    protected final boolean isHeldExclusively() {
+      return getExclusiveOwnerThread() == Thread.currentThread();
+    }
+  }
+
+  public static class ReadLock implements Lock {
+    private final Sync sync;
+
+    private ReadLock(Sync sync) {
+      this.sync = sync;
+    }
+
+    public void lock() {
+      sync.acquireShared(1);
+    }
+
+    public void lockInterruptibly() throws InterruptedException {
+      sync.acquireSharedInterruptibly(1);
+    }
+
+    public boolean tryLock() {
+      return sync.tryReadLock();
+    }
+
+    public boolean tryLock(long time, TimeUnit unit)
+      throws InterruptedException
+    {
+      return sync.tryAcquireSharedNanos(1, unit.toNanos(time));
+    }
+
+    public void unlock() {
+      sync.releaseShared(1);
+    }
+
+    public Condition newCondition() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  public static class WriteLock implements Lock {
+    private final Sync sync;
+
+    private WriteLock(Sync sync) {
+      this.sync = sync;
+    }
+
+    public void lock() {
+      sync.acquire(1);
+    }
+
+    public void lockInterruptibly() throws InterruptedException {
+      sync.acquireInterruptibly(1);
+    }
+
+    public boolean tryLock() {
+      return sync.tryWriteLock();
+    }
+
+    public boolean tryLock(long time, TimeUnit unit)
+      throws InterruptedException
+    {
+      return sync.tryAcquireNanos(1, unit.toNanos(time));
+    }
+
+    public void unlock() {
+      sync.release(1);
+    }
+
+    public Condition newCondition() {
+      return sync.newCondition();
+    }
+
+    public boolean isHeldByCurrentThread() {
+      return sync.isHeldExclusively();
+    }
+
+    public int getHoldCount() {
+      return isHeldByCurrentThread()
+        ? exclusiveCount(sync.state()) : 0;
+    }
+  }
+}
@@ -19,7 +19,12 @@ public class Logger {
   private Level levelValue = null;
   private static final ArrayList<Handler> handlers;
   private static Logger rootLogger;
+  // incremented whenever any logger's level changes, invalidating the
+  // effective levels cached by every logger
+  private static volatile int levelGeneration;
   private Logger parent;
+  // (levelGeneration << 32) | effective level, or -1 if not computed
+  private volatile long cachedLevel = -1;
 
   static {
     rootLogger = new Logger("");
@@ -55,28 +60,45 @@ public class Logger {
     return parent;
   }
 
+  // Each of the following checks the level before calling
+  // Method.getCaller, which walks the stack and is far more expensive
+  // than the check.  The call must stay in these methods so that it
+  // finds the right caller.
+
   public void fine(String message) {
-    log(Level.FINE, Method.getCaller(), message, null);
+    if (isLoggable(Level.FINE)) {
+      log(Level.FINE, Method.getCaller(), message, null);
+    }
   }
 
   public void info(String message) {
-    log(Level.INFO, Method.getCaller(), message, null);
+    if (isLoggable(Level.INFO)) {
+      log(Level.INFO, Method.getCaller(), message, null);
+    }
   }
 
   public void warning(String message) {
-    log(Level.WARNING, Method.getCaller(), message, null);
+    if (isLoggable(Level.WARNING)) {
+      log(Level.WARNING, Method.getCaller(), message, null);
+    }
   }
 
   public void severe(String message) {
-    log(Level.SEVERE, Method.getCaller(), message, null);
+    if (isLoggable(Level.SEVERE)) {
+      log(Level.SEVERE, Method.getCaller(), message, null);
+    }
   }
 
   public void log(Level level, String message) {
-    log(level, Method.getCaller(), message, null);
+    if (isLoggable(level)) {
+      log(level, Method.getCaller(), message, null);
+    }
   }
 
   public void log(Level level, String message, Throwable exception) {
-    log(level, Method.getCaller(), message, exception);
+    if (isLoggable(level)) {
+      log(level, Method.getCaller(), message, exception);
+    }
   }
 
   public void logp(Level level, String sourceClass, String sourceMethod, String msg) {
@@ -109,10 +131,6 @@ public class Logger {
       
   private void log(Level level, avian.VMMethod caller, String message,
                    Throwable exception) {
-    
-    if (level.intValue() < getEffectiveLevel().intValue()) {
-      return;
-    }
     LogRecord r = new LogRecord
       (name, caller == null ? "<unknown>" : Method.getName(caller), level,
        message, exception);
@@ -126,11 +144,21 @@ public class Logger {
   }
 
   public void setLevel(Level level) {
-    levelValue = level;
+    synchronized (Logger.class) {
+      levelValue = level;
+      ++ levelGeneration;
+    }
   }
   
   public boolean isLoggable(Level level) {
-    return level.intValue() >= levelValue.intValue();
+    long cached = cachedLevel;
+    int generation = levelGeneration;
+    if ((int) (cached >>> 32) != generation || cached == -1) {
+      cached = (((long) generation) << 32)
+        | (getEffectiveLevel().intValue() & 0xFFFFFFFFL);
+      cachedLevel = cached;
+    }
+    return level.intValue() >= (int) cached;
   }
   
   private static class DefaultHandler extends Handler {
@@ -0,0 +1,75 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.zip;
+
+/**
+ * Computes the Adler-32 checksum used by zlib.  Like CRC32, long
+ * updates are handed to zlib by a VM builtin.
+ */
+public class Adler32 implements Checksum {
+  private static final int Base = 65521;
+  // the largest n such that 255n(n+1)/2 + (n+1)(Base-1) <= 2^31-1
+  private static final int MaxDeferred = 3854;
+  private static final int NativeThreshold = 256;
+
+  private int a = 1;
+  private int b = 0;
+
+  public void reset() {
+    a = 1;
+    b = 0;
+  }
+
+  public void update(int value) {
+    a = (a + (value & 0xFF)) % Base;
+    b = (b + a) % Base;
+  }
+
+  public void update(byte[] array, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
+    if (length >= NativeThreshold) {
+      int value = updateBytes((b << 16) | a, array, offset, length);
+      a = value & 0xFFFF;
+      b = value >>> 16;
+      return;
+    }
+
+    int a = this.a;
+    int b = this.b;
+    while (length > 0) {
+      // defer the modulo until the sums could overflow
+      int n = length < MaxDeferred ? length : MaxDeferred;
+      length -= n;
+      for (int end = offset + n; offset < end; ++offset) {
+        a += array[offset] & 0xFF;
+        b += a;
+      }
+      a %= Base;
+      b %= Base;
+    }
+    this.a = a;
+    this.b = b;
+  }
+
+  private static native int updateBytes(int adler, byte[] array, int offset,
+                                        int length);
+
+  public void update(byte[] array) {
+    update(array, 0, array.length);
+  }
+
+  public long getValue() {
+    return ((b << 16) | a) & 0xFFFFFFFFL;
+  }
+}
@@ -10,24 +10,35 @@
 
 package java.util.zip;
 
-public class CRC32 {
-  private static final int Polynomial = 0x04C11DB7;
-  private static final int Width = 32;
-  private static final int Top = 1 << (Width - 1);
+/**
+ * Computes the reflected CRC-32 used by zlib.  Short updates are
+ * handled here eight bytes at a time using the "slicing-by-8" table
+ * method; long ones are handed to zlib's crc32 by a VM builtin which
+ * reads the array in place.
+ */
+public class CRC32 implements Checksum {
+  private static final int Polynomial = 0xEDB88320;
   private static final int InitialRemainder = 0xFFFFFFFF;
-  private static final long ResultXor = 0xFFFFFFFFL;
+  private static final int NativeThreshold = 256;
 
-  private static final int[] table = new int[256];
+  // eight 256-entry tables, one after the other: table[k * 256 + i]
+  // is the remainder of byte i followed by k zero bytes
+  private static final int[] table = new int[8 * 256];
 
   static {
-    for (int dividend = 0; dividend < 256; ++ dividend) {
-      int remainder = dividend << (Width - 8);
+    for (int i = 0; i < 256; ++i) {
+      int remainder = i;
       for (int bit = 8; bit > 0; --bit) {
-        remainder = ((remainder & Top) != 0)
-          ? (remainder << 1) ^ Polynomial
-          : (remainder << 1);
+        remainder = ((remainder & 1) != 0)
+          ? (remainder >>> 1) ^ Polynomial
+          : (remainder >>> 1);
       }
-      table[dividend] = remainder;
+      table[i] = remainder;
+    }
+
+    for (int i = 256; i < table.length; ++i) {
+      int previous = table[i - 256];
+      table[i] = (previous >>> 8) ^ table[previous & 0xFF];
     }
   }
 
@@ -38,32 +49,58 @@ public class CRC32 {
   }
 
   public void update(int b) {
-    remainder = table[reflect(b, 8) ^ (remainder >>> (Width - 8))]
-      ^ (remainder << 8);
+    remainder = table[(remainder ^ b) & 0xFF] ^ (remainder >>> 8);
   }
 
   public void update(byte[] array, int offset, int length) {
-    for (int i = 0; i < length; ++i) {
-      update(array[offset + i] & 0xFF);
+    if (offset < 0 || length < 0 || offset + length > array.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
+    if (length >= NativeThreshold) {
+      remainder = ~updateBytes(~remainder, array, offset, length);
+      return;
+    }
+
+    int[] t = table;
+    int r = remainder;
+    int end = offset + length;
+
+    for (int limit = end - 8; offset <= limit; offset += 8) {
+      int one = r ^ ((array[offset    ] & 0xFF)
+                     | ((array[offset + 1] & 0xFF) <<  8)
+                     | ((array[offset + 2] & 0xFF) << 16)
+                     | ((array[offset + 3]       ) << 24));
+      int two = (array[offset + 4] & 0xFF)
+        | ((array[offset + 5] & 0xFF) <<  8)
+        | ((array[offset + 6] & 0xFF) << 16)
+        | ((array[offset + 7]       ) << 24);
+
+      r = t[(7 * 256) + (one & 0xFF)]
+        ^ t[(6 * 256) + ((one >>> 8) & 0xFF)]
+        ^ t[(5 * 256) + ((one >>> 16) & 0xFF)]
+        ^ t[(4 * 256) + (one >>> 24)]
+        ^ t[(3 * 256) + (two & 0xFF)]
+        ^ t[(2 * 256) + ((two >>> 8) & 0xFF)]
+        ^ t[(1 * 256) + ((two >>> 16) & 0xFF)]
+        ^ t[two >>> 24];
     }
+
+    for (; offset < end; ++offset) {
+      r = t[(r ^ array[offset]) & 0xFF] ^ (r >>> 8);
+    }
+
+    remainder = r;
   }
 
+  private static native int updateBytes(int crc, byte[] array, int offset,
+                                        int length);
+
   public void update(byte[] array) {
     update(array, 0, array.length);
   }
 
   public long getValue() {
-    return (reflect(remainder, Width) ^ ResultXor) & 0xFFFFFFFFL;
-  }
-
-  private static int reflect(int x, int n) {
-    int reflection = 0;
-    for (int i = 0; i < n; ++i) {
-      if ((x & 1) != 0) {
-        reflection |= (1 << ((n - 1) - i));
-      }
-      x = (x >>> 1);
-    }
-    return reflection;
+    return (~remainder) & 0xFFFFFFFFL;
   }
 }
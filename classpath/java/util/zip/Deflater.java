@@ -1,4 +1,4 @@
-/* Copyright (c) 2009, Avian Contributors
+/* Copyright (c) 2009-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -11,15 +11,32 @@
 package java.util.zip;
 
 public class Deflater {
+  public static final int DEFLATED = 8;
+  public static final int NO_COMPRESSION = 0;
+  public static final int BEST_SPEED = 1;
+  public static final int BEST_COMPRESSION = 9;
+  public static final int DEFAULT_COMPRESSION = -1;
+
   private static final int DEFAULT_LEVEL = 6; // default compression level (6 is default for gzip)
   private static final int Z_OK = 0;
   private static final int Z_STREAM_END = 1;
   private static final int Z_NEED_DICT = 2;
+  private static final int Z_BUF_ERROR = -5;
+
+  private static final int PoolCapacity = 8;
+
+  private static final byte[] EmptyInput = new byte[0];
+
+  // released native streams, indexed by nowrap; they are reset to
+  // the requested level when reused
+  private static final PeerPool WrappedPool = new PeerPool(PoolCapacity);
+  private static final PeerPool RawPool = new PeerPool(PoolCapacity);
 
 //   static {
 //     System.loadLibrary("natives");
 //   }
 
+  private final int[] results = new int[3];
   private long peer;
   private byte[] input;
   private int offset;
@@ -28,10 +45,12 @@ public class Deflater {
   private boolean finished;
   private final boolean nowrap;
   private boolean finish;
+  private int level;
 
   public Deflater(int level, boolean nowrap) {
     this.nowrap = nowrap;
-    peer = make(nowrap, level);
+    this.level = checkLevel(level);
+    peer = acquire(nowrap, this.level);
   }
 
   public Deflater(int level) {
@@ -44,7 +63,30 @@ public class Deflater {
 
   private void check() {
     if (peer == 0) {
-      throw new IllegalStateException();      
+      throw new IllegalStateException();
+    }
+  }
+
+  private static int checkLevel(int level) {
+    if (level == DEFAULT_COMPRESSION) {
+      return DEFAULT_LEVEL;
+    } else if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("Valid compression levels are 0-9");
+    }
+    return level;
+  }
+
+  private static PeerPool pool(boolean nowrap) {
+    return nowrap ? RawPool : WrappedPool;
+  }
+
+  private static long acquire(boolean nowrap, int level) {
+    long peer = pool(nowrap).poll();
+    if (peer == 0) {
+      return make(nowrap, level);
+    } else {
+      reset(peer, level);
+      return peer;
     }
   }
 
@@ -65,35 +107,48 @@ public class Deflater {
   public int getRemaining() {
     return length;
   }
-  
+
+  /**
+   * Sets the compression level.  As in previous versions, this also
+   * discards any data already passed to the deflater, so it should
+   * only be called before the first call to deflate or after a
+   * reset.
+   */
   public void setLevel(int level) throws IllegalArgumentException {
-    if (level < 0 || level > 9) {
-      throw new IllegalArgumentException("Valid compression levels are 0-9");
+    this.level = checkLevel(level);
+    if (peer != 0) {
+      reset(peer, this.level);
     }
-
-    dispose(peer);
-    peer = make(nowrap, level);
   }
-  
+
   public void setInput(byte[] input) {
     setInput(input, 0, input.length);
   }
 
   public void setInput(byte[] input, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > input.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
     this.input = input;
     this.offset = offset;
     this.length = length;
   }
 
   public void reset() {
-    dispose();
-    peer = make(nowrap, DEFAULT_LEVEL);
+    if (peer == 0) {
+      peer = acquire(nowrap, level);
+    } else {
+      reset(peer, level);
+    }
     input = null;
     offset = length = 0;
     finish = false;
     needDictionary = finished = false;
   }
 
+  private static native void reset(long peer, int level);
+
   public int deflate(byte[] output) {
     return deflate(output, 0, output.length);
   }
@@ -104,19 +159,28 @@ public class Deflater {
     final int outputCount = 2;
 
     if (peer == 0) {
-      throw new IllegalStateException();      
+      throw new IllegalStateException();
     }
 
-    if (input == null || output == null) {
+    if (output == null) {
       throw new NullPointerException();
     }
 
-    int[] results = new int[3];
-    deflate(peer, 
+    if (input == null) {
+      // nothing has been written yet, but we may still need to finish
+      input = EmptyInput;
+    }
+
+    if (offset < 0 || length < 0 || offset + length > output.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
+    deflate(peer,
             input, this.offset, this.length,
             output, offset, length, finish, results);
 
-    if (results[zlibResult] < 0) {
+    // Z_BUF_ERROR just means no progress was possible
+    if (results[zlibResult] < 0 && results[zlibResult] != Z_BUF_ERROR) {
       throw new AssertionError();
     }
 
@@ -132,7 +196,7 @@ public class Deflater {
 
     this.offset += results[inputCount];
     this.length -= results[inputCount];
-    
+
     return results[outputCount];
   }
 
@@ -151,9 +215,15 @@ public class Deflater {
     dispose();
   }
 
+  /**
+   * Releases the native stream.  It is kept for use by a later
+   * Deflater if there is room in the pool, and freed otherwise.
+   */
   public void dispose() {
     if (peer != 0) {
-      dispose(peer);
+      if (! pool(nowrap).offer(peer)) {
+        dispose(peer);
+      }
       peer = 0;
     }
   }
@@ -1,4 +1,4 @@
-/* Copyright (c) 2009, Avian Contributors
+/* Copyright (c) 2009-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -14,9 +14,10 @@ import java.io.OutputStream;
 import java.io.IOException;
 
 public class DeflaterOutputStream extends OutputStream {
-  private final OutputStream out;
-  private final Deflater deflater;
-  private final byte[] buffer;
+  protected final OutputStream out;
+  protected final Deflater deflater;
+  protected final byte[] buffer;
+  private final byte[] single = new byte[1];
 
   public DeflaterOutputStream(OutputStream out, Deflater deflater, int bufferSize)
   {
@@ -34,9 +35,8 @@ public class DeflaterOutputStream extends OutputStream {
   }
 
   public void write(int b) throws IOException {
-    byte[] buffer = new byte[1];
-    buffer[0] = (byte)(b & 0xff);
-    write(buffer, 0, 1);
+    single[0] = (byte)(b & 0xff);
+    write(single, 0, 1);
   }
 
   public void write(byte[] b, int offset, int length) throws IOException {
@@ -59,18 +59,28 @@ public class DeflaterOutputStream extends OutputStream {
     }
   }
 
-  private void deflate() throws IOException {
+  protected void deflate() throws IOException {
     int len = deflater.deflate(buffer, 0, buffer.length);
     if (len > 0) {
       out.write(buffer, 0, len);
     }
   }
 
-  public void close() throws IOException {
-    deflater.finish();
-    while (! deflater.finished()) {
-      deflate();
+  /**
+   * Writes any remaining compressed data without closing the
+   * underlying stream.
+   */
+  public void finish() throws IOException {
+    if (! deflater.finished()) {
+      deflater.finish();
+      while (! deflater.finished()) {
+        deflate();
+      }
     }
+  }
+
+  public void close() throws IOException {
+    finish();
     out.close();
     deflater.dispose();
   }
@@ -0,0 +1,126 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.zip;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.EOFException;
+
+/**
+ * Reads a single gzip member, verifying its checksum and length once
+ * the end of the compressed data has been reached.
+ */
+public class GZIPInputStream extends InflaterInputStream {
+  public static final int GZIP_MAGIC = 0x8b1f;
+
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private final CRC32 crc = new CRC32();
+  private int size;
+  private boolean trailerRead;
+
+  public GZIPInputStream(InputStream in, int bufferSize) throws IOException {
+    super(in, new Inflater(true), bufferSize);
+    readHeader();
+  }
+
+  public GZIPInputStream(InputStream in) throws IOException {
+    this(in, 4 * 1024);
+  }
+
+  private void readHeader() throws IOException {
+    if (read2() != GZIP_MAGIC) {
+      throw new IOException("not in gzip format");
+    }
+    if (read1() != Deflater.DEFLATED) {
+      throw new IOException("unsupported compression method");
+    }
+
+    int flags = read1();
+    // modification time, extra flags, and operating system
+    skip(6);
+
+    if ((flags & FEXTRA) != 0) {
+      skip(read2());
+    }
+    if ((flags & FNAME) != 0) {
+      while (read1() != 0) { }
+    }
+    if ((flags & FCOMMENT) != 0) {
+      while (read1() != 0) { }
+    }
+    if ((flags & FHCRC) != 0) {
+      skip(2);
+    }
+  }
+
+  private int read1() throws IOException {
+    int c = in.read();
+    if (c < 0) {
+      throw new EOFException();
+    }
+    return c;
+  }
+
+  private int read2() throws IOException {
+    return read1() | (read1() << 8);
+  }
+
+  private void skip(int count) throws IOException {
+    for (int i = 0; i < count; ++i) {
+      read1();
+    }
+  }
+
+  public int read(byte[] b, int offset, int length) throws IOException {
+    int count = super.read(b, offset, length);
+    if (count < 0) {
+      if (! trailerRead) {
+        trailerRead = true;
+        readTrailer();
+      }
+    } else {
+      crc.update(b, offset, count);
+      size += count;
+    }
+    return count;
+  }
+
+  private void readTrailer() throws IOException {
+    // the trailer may already be partly or wholly in the input buffer
+    byte[] trailer = new byte[8];
+    int remaining = inflater.getRemaining();
+    int fromBuffer = Math.min(remaining, trailer.length);
+    System.arraycopy
+      (buffer, this.length - remaining, trailer, 0, fromBuffer);
+    for (int i = fromBuffer; i < trailer.length; ++i) {
+      trailer[i] = (byte) read1();
+    }
+
+    if (get4(trailer, 0) != (int) crc.getValue()) {
+      throw new IOException("corrupt gzip stream: bad checksum");
+    }
+    if (get4(trailer, 4) != size) {
+      throw new IOException("corrupt gzip stream: bad length");
+    }
+  }
+
+  private static int get4(byte[] b, int offset) {
+    return
+      ((b[offset + 3] & 0xFF) << 24) |
+      ((b[offset + 2] & 0xFF) << 16) |
+      ((b[offset + 1] & 0xFF) <<  8) |
+      ((b[offset    ] & 0xFF)      );
+  }
+}
@@ -0,0 +1,70 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.zip;
+
+import java.io.OutputStream;
+import java.io.IOException;
+
+public class GZIPOutputStream extends DeflaterOutputStream {
+  private final CRC32 crc = new CRC32();
+  private int size;
+  private boolean trailerWritten;
+
+  public GZIPOutputStream(OutputStream out, int bufferSize)
+    throws IOException
+  {
+    super(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true), bufferSize);
+    writeHeader();
+  }
+
+  public GZIPOutputStream(OutputStream out) throws IOException {
+    this(out, 4 * 1024);
+  }
+
+  private void writeHeader() throws IOException {
+    final byte[] header = new byte[] {
+      (byte) GZIPInputStream.GZIP_MAGIC,
+      (byte) (GZIPInputStream.GZIP_MAGIC >> 8),
+      Deflater.DEFLATED,
+      0,          // flags
+      0, 0, 0, 0, // modification time
+      0,          // extra flags
+      (byte) 255  // operating system: unknown
+    };
+    out.write(header, 0, header.length);
+  }
+
+  public void write(byte[] b, int offset, int length) throws IOException {
+    super.write(b, offset, length);
+    crc.update(b, offset, length);
+    size += length;
+  }
+
+  public void finish() throws IOException {
+    super.finish();
+
+    if (! trailerWritten) {
+      trailerWritten = true;
+
+      byte[] trailer = new byte[8];
+      put4(trailer, 0, (int) crc.getValue());
+      put4(trailer, 4, size);
+      out.write(trailer, 0, trailer.length);
+    }
+  }
+
+  private static void put4(byte[] b, int offset, int value) {
+    b[offset    ] = (byte) (value       );
+    b[offset + 1] = (byte) (value >>>  8);
+    b[offset + 2] = (byte) (value >>> 16);
+    b[offset + 3] = (byte) (value >>> 24);
+  }
+}
@@ -1,4 +1,4 @@
-/* Copyright (c) 2008, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -14,11 +14,19 @@ public class Inflater {
   private static final int Z_OK = 0;
   private static final int Z_STREAM_END = 1;
   private static final int Z_NEED_DICT = 2;
+  private static final int Z_BUF_ERROR = -5;
+
+  private static final int PoolCapacity = 8;
+
+  // released native streams, already reset, indexed by nowrap
+  private static final PeerPool WrappedPool = new PeerPool(PoolCapacity);
+  private static final PeerPool RawPool = new PeerPool(PoolCapacity);
 
 //   static {
 //     System.loadLibrary("natives");
 //   }
 
+  private final int[] results = new int[3];
   private long peer;
   private byte[] input;
   private int offset;
@@ -29,7 +37,7 @@ public class Inflater {
 
   public Inflater(boolean nowrap) {
     this.nowrap = nowrap;
-    peer = make(nowrap);
+    peer = acquire(nowrap);
   }
 
   public Inflater() {
@@ -38,10 +46,19 @@ public class Inflater {
 
   private void check() {
     if (peer == 0) {
-      throw new IllegalStateException();      
+      throw new IllegalStateException();
     }
   }
 
+  private static PeerPool pool(boolean nowrap) {
+    return nowrap ? RawPool : WrappedPool;
+  }
+
+  private static long acquire(boolean nowrap) {
+    long peer = pool(nowrap).poll();
+    return peer == 0 ? make(nowrap) : peer;
+  }
+
   private static native long make(boolean nowrap);
 
   public boolean finished() {
@@ -59,25 +76,34 @@ public class Inflater {
   public int getRemaining() {
     return length;
   }
-  
+
   public void setInput(byte[] input) {
     setInput(input, 0, input.length);
   }
 
   public void setInput(byte[] input, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > input.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
     this.input = input;
     this.offset = offset;
     this.length = length;
   }
 
   public void reset() {
-    dispose();
-    peer = make(nowrap);
+    if (peer == 0) {
+      peer = acquire(nowrap);
+    } else {
+      reset(peer);
+    }
     input = null;
     offset = length = 0;
     needDictionary = finished = false;
   }
 
+  private static native void reset(long peer);
+
   public int inflate(byte[] output) throws DataFormatException {
     return inflate(output, 0, output.length);
   }
@@ -90,18 +116,22 @@ public class Inflater {
     final int outputCount = 2;
 
     if (peer == 0) {
-      throw new IllegalStateException();      
+      throw new IllegalStateException();
     }
 
     if (input == null || output == null) {
       throw new NullPointerException();
     }
 
-    int[] results = new int[3];
+    if (offset < 0 || length < 0 || offset + length > output.length) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+
     inflate(peer, input, this.offset, this.length,
             output, offset, length, results);
 
-    if (results[zlibResult] < 0) {
+    // Z_BUF_ERROR just means no progress was possible
+    if (results[zlibResult] < 0 && results[zlibResult] != Z_BUF_ERROR) {
       throw new DataFormatException();
     }
 
@@ -117,7 +147,7 @@ public class Inflater {
 
     this.offset += results[inputCount];
     this.length -= results[inputCount];
-    
+
     return results[outputCount];
   }
 
@@ -131,9 +161,17 @@ public class Inflater {
     dispose();
   }
 
+  /**
+   * Releases the native stream.  It is reset and kept for use by a
+   * later Inflater if there is room in the pool, and freed
+   * otherwise.
+   */
   public void dispose() {
     if (peer != 0) {
-      dispose(peer);
+      reset(peer);
+      if (! pool(nowrap).offer(peer)) {
+        dispose(peer);
+      }
       peer = 0;
     }
   }
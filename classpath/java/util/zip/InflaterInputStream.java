@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -15,9 +15,12 @@ import java.io.IOException;
 import java.io.EOFException;
 
 public class InflaterInputStream extends InputStream {
-  private final InputStream in;
-  private final Inflater inflater;
-  private final byte[] buffer;
+  protected final InputStream in;
+  protected final Inflater inflater;
+  protected final byte[] buffer;
+  // number of bytes most recently read into the buffer
+  protected int length;
+  private final byte[] single = new byte[1];
 
   public InflaterInputStream(InputStream in, Inflater inflater, int bufferSize)
   {
@@ -35,9 +38,8 @@ public class InflaterInputStream extends InputStream {
   }
 
   public int read() throws IOException {
-    byte[] buffer = new byte[1];
-    int c = read(buffer);
-    return (c < 0 ? c : (buffer[0] & 0xFF));
+    int c = read(single, 0, 1);
+    return (c < 0 ? c : (single[0] & 0xFF));
   }
 
   public int read(byte[] b, int offset, int length) throws IOException {
@@ -49,6 +51,7 @@ public class InflaterInputStream extends InputStream {
       if (inflater.needsInput()) {
         int count = in.read(buffer);
         if (count > 0) {
+          this.length = count;
           inflater.setInput(buffer, 0, count);
         } else {
           throw new EOFException();
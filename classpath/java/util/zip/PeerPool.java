@@ -0,0 +1,44 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.zip;
+
+/**
+ * Holds native zlib streams released by Inflaters and Deflaters so
+ * that later instances can reset and reuse them instead of
+ * allocating and initializing new ones.
+ */
+class PeerPool {
+  private final long[] peers;
+  private int count;
+
+  public PeerPool(int capacity) {
+    peers = new long[capacity];
+  }
+
+  /**
+   * Returns a pooled peer, or zero if the pool is empty.
+   */
+  public synchronized long poll() {
+    return count == 0 ? 0 : peers[-- count];
+  }
+
+  /**
+   * Adds the specified peer to the pool, returning false if the pool
+   * is full, in which case the caller should dispose of it.
+   */
+  public synchronized boolean offer(long peer) {
+    if (count == peers.length) {
+      return false;
+    }
+    peers[count++] = peer;
+    return true;
+  }
+}
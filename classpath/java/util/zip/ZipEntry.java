@@ -1,4 +1,4 @@
-/* Copyright (c) 2008, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -10,8 +10,85 @@
 
 package java.util.zip;
 
-public abstract class ZipEntry {
-  public abstract String getName();
-  public abstract int getCompressedSize();
-  public abstract int getSize();
+/**
+ * Describes an entry in a zip file.  Entries read from a ZipFile
+ * override the accessors below; entries to be written with a
+ * ZipOutputStream are created with ZipEntry(String) and filled in as
+ * they are written.
+ */
+public class ZipEntry {
+  public static final int STORED = 0;
+  public static final int DEFLATED = 8;
+
+  private final String name;
+  private int method = -1;
+  private long time = -1;
+  private long crc = -1;
+  private int size = -1;
+  private int compressedSize = -1;
+
+  public ZipEntry(String name) {
+    if (name == null) throw new NullPointerException();
+    this.name = name;
+  }
+
+  protected ZipEntry() {
+    this.name = null;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isDirectory() {
+    return getName().endsWith("/");
+  }
+
+  public int getMethod() {
+    return method;
+  }
+
+  public void setMethod(int method) {
+    if (method != STORED && method != DEFLATED) {
+      throw new IllegalArgumentException();
+    }
+    this.method = method;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public void setTime(long time) {
+    this.time = time;
+  }
+
+  public long getCrc() {
+    return crc;
+  }
+
+  public void setCrc(long crc) {
+    this.crc = crc;
+  }
+
+  public int getCompressedSize() {
+    return compressedSize;
+  }
+
+  public void setCompressedSize(int size) {
+    this.compressedSize = size;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public void setSize(int size) {
+    if (size < 0) throw new IllegalArgumentException();
+    this.size = size;
+  }
+
+  public String toString() {
+    return getName();
+  }
 }
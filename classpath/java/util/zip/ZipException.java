@@ -0,0 +1,23 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.zip;
+
+import java.io.IOException;
+
+public class ZipException extends IOException {
+  public ZipException(String s) {
+    super(s);
+  }
+
+  public ZipException() {
+    super();
+  }
+}
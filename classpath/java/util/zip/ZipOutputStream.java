@@ -0,0 +1,328 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+package java.util.zip;
+
+import java.io.OutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a zip file to a stream, one entry at a time.  Deflated
+ * entries are compressed as they are written and followed by a data
+ * descriptor, so their sizes and checksums need not be known in
+ * advance; stored entries must have their size and CRC set before
+ * they are started.  All entries share one Deflater, which is reset
+ * rather than recreated between entries.
+ *
+ * <p>Zip64 extensions are not supported, so neither entries nor the
+ * whole file may exceed 4GB.  Modification times are recorded in UTC.
+ */
+public class ZipOutputStream extends DeflaterOutputStream {
+  public static final int STORED = ZipEntry.STORED;
+  public static final int DEFLATED = ZipEntry.DEFLATED;
+
+  private static final int LocalHeaderSignature = 0x04034b50;
+  private static final int DataDescriptorSignature = 0x08074b50;
+  private static final int CentralHeaderSignature = 0x02014b50;
+  private static final int EndSignature = 0x06054b50;
+
+  private static final int Version = 20;
+  private static final int DataDescriptorFlag = 1 << 3;
+  private static final int UTF8Flag = 1 << 11;
+
+  private final Counter counter;
+  private final List<Entry> entries = new ArrayList<Entry>();
+  private final CRC32 crc = new CRC32();
+  // scratch space for headers, big enough for the largest fixed part
+  private final byte[] header = new byte[46];
+  private int method = DEFLATED;
+  private int level = Deflater.DEFAULT_COMPRESSION;
+  private Entry current;
+  private ZipEntry currentEntry;
+  private int dataStart;
+  private int size;
+  private boolean finished;
+
+  public ZipOutputStream(OutputStream out) {
+    this(new Counter(out));
+  }
+
+  private ZipOutputStream(Counter counter) {
+    super(counter, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    this.counter = counter;
+  }
+
+  /**
+   * Sets the default compression method for subsequent entries which
+   * do not specify one.
+   */
+  public void setMethod(int method) {
+    if (method != STORED && method != DEFLATED) {
+      throw new IllegalArgumentException();
+    }
+    this.method = method;
+  }
+
+  /**
+   * Sets the compression level for subsequent deflated entries.
+   */
+  public void setLevel(int level) {
+    if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9)) {
+      throw new IllegalArgumentException();
+    }
+    this.level = level;
+  }
+
+  public void putNextEntry(ZipEntry entry) throws IOException {
+    if (finished) {
+      throw new ZipException("stream already finished");
+    }
+
+    closeEntry();
+
+    Entry e = new Entry();
+    e.name = entry.getName().getBytes("UTF-8");
+    e.method = entry.getMethod() == -1 ? method : entry.getMethod();
+    e.time = dosTime(entry.getTime() == -1
+                     ? System.currentTimeMillis() : entry.getTime());
+
+    if (e.method == STORED) {
+      if (entry.getSize() < 0 || entry.getCrc() < 0) {
+        throw new ZipException
+          ("size and CRC must be set for stored entry " + entry.getName());
+      }
+      e.flags = UTF8Flag;
+      e.size = entry.getSize();
+      e.compressedSize = e.size;
+      e.crc = (int) entry.getCrc();
+    } else {
+      e.flags = UTF8Flag | DataDescriptorFlag;
+      deflater.setLevel(level);
+    }
+
+    e.offset = counter.count;
+    writeLocalHeader(e);
+
+    current = e;
+    currentEntry = entry;
+    dataStart = counter.count;
+    crc.reset();
+    size = 0;
+  }
+
+  public void write(byte[] b, int offset, int length) throws IOException {
+    if (current == null) {
+      throw new ZipException("no current entry");
+    }
+
+    if (current.method == DEFLATED) {
+      super.write(b, offset, length);
+    } else {
+      if (offset < 0 || length < 0 || offset + length > b.length) {
+        throw new IndexOutOfBoundsException();
+      }
+      counter.write(b, offset, length);
+    }
+
+    crc.update(b, offset, length);
+    size += length;
+  }
+
+  /**
+   * Finishes the current entry, if any, so that the next one may be
+   * started.
+   */
+  public void closeEntry() throws IOException {
+    Entry e = current;
+    if (e == null) {
+      return;
+    }
+
+    if (e.method == DEFLATED) {
+      super.finish();
+
+      e.crc = (int) crc.getValue();
+      e.size = size;
+      e.compressedSize = counter.count - dataStart;
+
+      put4(header, 0, DataDescriptorSignature);
+      put4(header, 4, e.crc);
+      put4(header, 8, e.compressedSize);
+      put4(header, 12, e.size);
+      counter.write(header, 0, 16);
+
+      deflater.reset();
+    } else if (size != e.size || (int) crc.getValue() != e.crc) {
+      throw new ZipException
+        ("size or CRC mismatch for stored entry " + currentEntry.getName());
+    }
+
+    currentEntry.setCrc(e.crc & 0xFFFFFFFFL);
+    currentEntry.setSize(e.size);
+    currentEntry.setCompressedSize(e.compressedSize);
+
+    entries.add(e);
+    current = null;
+    currentEntry = null;
+  }
+
+  /**
+   * Finishes the current entry and writes the central directory
+   * without closing the underlying stream.
+   */
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+
+    closeEntry();
+
+    int directoryStart = counter.count;
+    for (Entry e: entries) {
+      writeCentralHeader(e);
+    }
+    int directorySize = counter.count - directoryStart;
+
+    put4(header, 0, EndSignature);
+    put2(header, 4, 0); // number of this disk
+    put2(header, 6, 0); // disk where the central directory starts
+    put2(header, 8, entries.size());
+    put2(header, 10, entries.size());
+    put4(header, 12, directorySize);
+    put4(header, 16, directoryStart);
+    put2(header, 20, 0); // comment length
+    counter.write(header, 0, 22);
+
+    finished = true;
+  }
+
+  private void writeLocalHeader(Entry e) throws IOException {
+    boolean descriptor = (e.flags & DataDescriptorFlag) != 0;
+
+    put4(header, 0, LocalHeaderSignature);
+    put2(header, 4, Version);
+    put2(header, 6, e.flags);
+    put2(header, 8, e.method);
+    put4(header, 10, e.time);
+    put4(header, 14, descriptor ? 0 : e.crc);
+    put4(header, 18, descriptor ? 0 : e.compressedSize);
+    put4(header, 22, descriptor ? 0 : e.size);
+    put2(header, 26, e.name.length);
+    put2(header, 28, 0); // extra field length
+    counter.write(header, 0, 30);
+    counter.write(e.name, 0, e.name.length);
+  }
+
+  private void writeCentralHeader(Entry e) throws IOException {
+    put4(header, 0, CentralHeaderSignature);
+    put2(header, 4, Version); // version made by
+    put2(header, 6, Version); // version needed to extract
+    put2(header, 8, e.flags);
+    put2(header, 10, e.method);
+    put4(header, 12, e.time);
+    put4(header, 16, e.crc);
+    put4(header, 20, e.compressedSize);
+    put4(header, 24, e.size);
+    put2(header, 28, e.name.length);
+    put2(header, 30, 0); // extra field length
+    put2(header, 32, 0); // comment length
+    put2(header, 34, 0); // disk number
+    put2(header, 36, 0); // internal attributes
+    put4(header, 38, 0); // external attributes
+    put4(header, 42, e.offset);
+    counter.write(header, 0, 46);
+    counter.write(e.name, 0, e.name.length);
+  }
+
+  private static void put2(byte[] b, int offset, int value) {
+    b[offset    ] = (byte) (value       );
+    b[offset + 1] = (byte) (value >>>  8);
+  }
+
+  private static void put4(byte[] b, int offset, int value) {
+    b[offset    ] = (byte) (value       );
+    b[offset + 1] = (byte) (value >>>  8);
+    b[offset + 2] = (byte) (value >>> 16);
+    b[offset + 3] = (byte) (value >>> 24);
+  }
+
+  private static int dosTime(long time) {
+    long seconds = time / 1000;
+    int days = (int) (seconds / 86400);
+    int second = (int) (seconds % 86400);
+
+    // convert days since 1970-01-01 to a date in the proleptic
+    // Gregorian calendar, using years starting in March so that leap
+    // days come last
+    int z = days + 719468;
+    int era = z / 146097;
+    int dayOfEra = z - (era * 146097);
+    int yearOfEra = (dayOfEra - (dayOfEra / 1460) + (dayOfEra / 36524)
+                     - (dayOfEra / 146096)) / 365;
+    int dayOfYear = dayOfEra
+      - ((365 * yearOfEra) + (yearOfEra / 4) - (yearOfEra / 100));
+    int m = ((5 * dayOfYear) + 2) / 153;
+    int day = dayOfYear - (((153 * m) + 2) / 5) + 1;
+    int month = m < 10 ? m + 3 : m - 9;
+    int year = yearOfEra + (era * 400) + (month <= 2 ? 1 : 0);
+
+    if (year < 1980) {
+      // the earliest time DOS can represent
+      return (1 << 21) | (1 << 16);
+    }
+
+    return ((year - 1980) << 25)
+      | (month << 21)
+      | (day << 16)
+      | ((second / 3600) << 11)
+      | (((second / 60) % 60) << 5)
+      | ((second % 60) / 2);
+  }
+
+  private static class Entry {
+    public byte[] name;
+    public int flags;
+    public int method;
+    public int time;
+    public int crc;
+    public int compressedSize;
+    public int size;
+    public int offset;
+  }
+
+  private static class Counter extends OutputStream {
+    private final OutputStream out;
+    public int count;
+
+    public Counter(OutputStream out) {
+      this.out = out;
+    }
+
+    public void write(int c) throws IOException {
+      out.write(c);
+      ++ count;
+    }
+
+    public void write(byte[] b, int offset, int length) throws IOException {
+      out.write(b, offset, length);
+      count += length;
+    }
+
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
@@ -1550,16 +1550,27 @@ writeBootImage2(Thread* t, FILE* bootimageOutput, FILE* codeOutput,
     }
   }
 
-  image->stringCount = hashMapSize(t, root(t, Machine::StringMap));
+  object stringMap = root(t, Machine::StringMap);
+
+  image->stringCount = 0;
+  for (unsigned i = 0; i < arrayLength(t, stringMap); ++i) {
+    image->stringCount += hashMapSize(t, arrayBody(t, stringMap, i));
+  }
+
   unsigned* stringTable = static_cast<unsigned*>
     (t->m->heap->allocate(image->stringCount * sizeof(unsigned)));
 
   { unsigned i = 0;
-    for (HashMapIterator it(t, root(t, Machine::StringMap)); it.hasMore();) {
-      stringTable[i++] = targetVW
-        (heapWalker->map()->find
-         (jreferenceTarget(t, tripleFirst(t, it.next()))));
+    for (unsigned j = 0; j < arrayLength(t, stringMap); ++j) {
+      for (HashMapIterator it(t, arrayBody(t, stringMap, j)); it.hasMore();)
+      {
+        object s = jreferenceTarget(t, tripleFirst(t, it.next()));
+        if (s) {
+          stringTable[i++] = targetVW(heapWalker->map()->find(s));
+        }
+      }
     }
+    image->stringCount = i;
   }
 
   unsigned* callTable = t->m->processor->makeCallTable(t, heapWalker);
@@ -1652,7 +1663,7 @@ main(int ac, const char** av)
   }
 
   System* s = makeSystem(0);
-  Heap* h = makeHeap(s, HeapCapacity * 2);
+  Heap* h = makeHeap(s, HeapCapacity * 2, 0, 0);
   Classpath* c = makeClasspath(s, h, AVIAN_JAVA_HOME, AVIAN_EMBED_PREFIX);
   Finder* f = makeFinder(s, h, av[1], 0);
   Processor* p = makeProcessor(s, h, false);
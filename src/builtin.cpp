@@ -145,6 +145,154 @@ Avian_avian_Machine_dumpHeap
 
 #endif//AVIAN_HEAPDUMP
 
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Machine_finalizerQueueLength
+(Thread* t, object, uintptr_t*)
+{
+  ACQUIRE(t, t->m->stateLock);
+
+  return t->m->finalizeQueueLength;
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Machine_finalizedCount
+(Thread* t, object, uintptr_t*)
+{
+  ACQUIRE(t, t->m->stateLock);
+
+  return t->m->finalizedCount;
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Machine_maxFinalizerLatency
+(Thread* t, object, uintptr_t*)
+{
+  ACQUIRE(t, t->m->stateLock);
+
+  return t->m->maxFinalizeLatency;
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_collectionCount
+(Thread* t, object, uintptr_t* arguments)
+{
+  int type = arguments[0];
+
+  if (type == Heap::MinorCollection or type == Heap::MajorCollection) {
+    return t->m->collectionCount[type];
+  } else {
+    throwNew(t, Machine::IllegalArgumentExceptionType);
+  }
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_collectionTime
+(Thread* t, object, uintptr_t* arguments)
+{
+  int type = arguments[0];
+
+  if (type == Heap::MinorCollection or type == Heap::MajorCollection) {
+    return t->m->collectionTime[type];
+  } else {
+    throwNew(t, Machine::IllegalArgumentExceptionType);
+  }
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_promotedBytes
+(Thread* t, object, uintptr_t*)
+{
+  return t->m->promotedBytes;
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_pauseHistogram
+(Thread* t, object, uintptr_t*)
+{
+  object array = makeLongArray(t, PauseHistogramSize);
+
+  // no collection can happen between allocating the array and
+  // filling it, so we see a consistent snapshot
+  for (unsigned i = 0; i < PauseHistogramSize; ++i) {
+    longArrayBody(t, array, i) = t->m->pauseHistogram[i];
+  }
+
+  return reinterpret_cast<int64_t>(array);
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_collectionData
+(Thread* t, object, uintptr_t*)
+{
+  const unsigned FieldCount = 6;
+
+  Machine* m = t->m;
+  uint64_t total = m->collectionCount[Heap::MinorCollection]
+    + m->collectionCount[Heap::MajorCollection];
+  unsigned count = total < RecentCollectionCount
+    ? total : RecentCollectionCount;
+
+  object array = makeLongArray(t, count * FieldCount);
+
+  // allocating the array may have caused a collection, so we must
+  // recalculate the total:
+  total = m->collectionCount[Heap::MinorCollection]
+    + m->collectionCount[Heap::MajorCollection];
+
+  for (unsigned i = 0; i < count; ++i) {
+    Machine::CollectionRecord* r = m->recentCollections
+      + ((total - count + i) % RecentCollectionCount);
+
+    int64_t* body = &longArrayBody(t, array, i * FieldCount);
+    body[0] = r->type;
+    body[1] = r->start;
+    body[2] = r->duration;
+    body[3] = r->statistics.promotedBytes;
+    body[4] = r->statistics.survivorBytes;
+    body[5] = r->statistics.tenuredBytes;
+  }
+
+  return reinterpret_cast<int64_t>(array);
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_allocatedBytes
+(Thread* t, object, uintptr_t* arguments)
+{
+  object thread = reinterpret_cast<object>(arguments[0]);
+
+  // a thread is only disposed of during a collection, which cannot
+  // happen while we're in the active state
+  Thread* target = reinterpret_cast<Thread*>(threadPeer(t, thread));
+  if (target) {
+    return target->allocatedBytes
+      + ((target->heapOffset + target->heapIndex) * BytesPerWord);
+  } else {
+    return -1;
+  }
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_monitorCount
+(Thread* t, object, uintptr_t*)
+{
+  return t->m->monitorCount;
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_compiledMethodCount
+(Thread* t, object, uintptr_t*)
+{
+  return t->m->compileCount;
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Metrics_compileTime
+(Thread* t, object, uintptr_t*)
+{
+  return t->m->compileTime;
+}
+
 extern "C" JNIEXPORT void JNICALL
 Avian_java_lang_Runtime_exit
 (Thread* t, object, uintptr_t* arguments)
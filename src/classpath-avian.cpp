@@ -11,6 +11,7 @@
 #include "machine.h"
 #include "classpath-common.h"
 #include "process.h"
+#include "zlib-custom.h"
 
 using namespace vm;
 
@@ -50,7 +51,7 @@ class MyClasspath : public Classpath {
     const unsigned NormalPriority = 5;
 
     return vm::makeThread
-      (t, 0, 0, 0, 0, NewState, NormalPriority, 0, 0, 0,
+      (t, 0, 0, 0, 0, NewState, NormalPriority, 0, 0, 0, 0, 0, 0,
        root(t, Machine::BootLoader), 0, 0, group, 0);
   }
 
@@ -440,6 +441,28 @@ Avian_java_lang_System_arraycopy
             arguments[4]);
 }
 
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_java_util_zip_CRC32_updateBytes
+(Thread* t, object, uintptr_t* arguments)
+{
+  object array = reinterpret_cast<object>(arguments[1]);
+  return static_cast<uint32_t>
+    (crc32(static_cast<uint32_t>(arguments[0]),
+           reinterpret_cast<Bytef*>
+           (&byteArrayBody(t, array, arguments[2])), arguments[3]));
+}
+
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_java_util_zip_Adler32_updateBytes
+(Thread* t, object, uintptr_t* arguments)
+{
+  object array = reinterpret_cast<object>(arguments[1]);
+  return static_cast<uint32_t>
+    (adler32(static_cast<uint32_t>(arguments[0]),
+             reinterpret_cast<Bytef*>
+             (&byteArrayBody(t, array, arguments[2])), arguments[3]));
+}
+
 extern "C" JNIEXPORT int64_t JNICALL
 Avian_java_lang_System_identityHashCode
 (Thread* t, object, uintptr_t* arguments)
@@ -507,7 +530,7 @@ extern "C" JNIEXPORT int64_t JNICALL
 Avian_java_lang_Throwable_trace
 (Thread* t, object, uintptr_t* arguments)
 {
-  return reinterpret_cast<int64_t>(getTrace(t, arguments[0]));
+  return reinterpret_cast<int64_t>(getTrace(t, arguments[0], true));
 }
 
 extern "C" JNIEXPORT int64_t JNICALL
@@ -517,13 +540,21 @@ Avian_java_lang_Throwable_resolveTrace
   object trace = reinterpret_cast<object>(*arguments);
   PROTECT(t, trace);
 
-  unsigned length = objectArrayLength(t, trace);
+  // traces captured by Throwable.trace are raw, while those made by
+  // the VM itself are arrays of trace elements
+  bool raw = objectClass(t, trace) == type(t, Machine::RawTraceType);
+  unsigned length = raw
+    ? rawTraceLength(t, trace) : objectArrayLength(t, trace);
   object elementType = type(t, Machine::StackTraceElementType);
   object array = makeObjectArray(t, elementType, length);
   PROTECT(t, array);
 
   for (unsigned i = 0; i < length; ++i) {
-    object ste = makeStackTraceElement(t, objectArrayBody(t, trace, i));
+    object ste = raw
+      ? makeStackTraceElement
+      (t, objectArrayBody(t, rawTraceMethods(t, trace), i),
+       intArrayBody(t, rawTraceIps(t, trace), i))
+      : makeStackTraceElement(t, objectArrayBody(t, trace, i));
     set(t, array, ArrayBody + (i * BytesPerWord), ste);
   }
 
@@ -560,7 +591,13 @@ Avian_java_lang_Thread_interrupted
 {
   int64_t peer; memcpy(&peer, arguments, 8);
 
-  return getAndClearInterrupted(t, reinterpret_cast<Thread*>(peer));
+  Thread* target = reinterpret_cast<Thread*>(peer);
+  if (target == t) {
+    // a running thread can't be zombified, so skip acquireSystem
+    return t->systemThread->getAndClearInterrupted();
+  } else {
+    return getAndClearInterrupted(t, target);
+  }
 }
 
 extern "C" JNIEXPORT int64_t JNICALL
@@ -602,9 +639,66 @@ extern "C" JNIEXPORT void JNICALL
 Avian_java_lang_Thread_yield
 (Thread* t, object, uintptr_t*)
 {
+  // go idle so that a thread spinning on yield doesn't hold off a
+  // collection requested by the thread it's waiting for
+  ENTER(t, Thread::IdleState);
+
   t->m->system->yield();
 }
 
+extern "C" JNIEXPORT void JNICALL
+Avian_java_util_concurrent_locks_LockSupport_doPark
+(Thread* t, object, uintptr_t* arguments)
+{
+  bool absolute = arguments[0];
+  int64_t time; memcpy(&time, arguments + 1, 8);
+
+  if (absolute) {
+    time -= t->m->system->now();
+    if (time <= 0) {
+      return;
+    }
+  } else if (time) {
+    // round up to the next millisecond so short waits still block
+    time = (time + 999999) / 1000000;
+  }
+
+  { ACQUIRE(t, t->lock);
+
+    if (not threadUnparked(t, t->javaThread)) {
+      ENTER(t, Thread::IdleState);
+
+      t->lock->wait(t->systemThread, time);
+    }
+
+    threadUnparked(t, t->javaThread) = false;
+  }
+}
+
+extern "C" JNIEXPORT void JNICALL
+Avian_java_util_concurrent_locks_LockSupport_doUnpark
+(Thread* t, object, uintptr_t* arguments)
+{
+  object thread = reinterpret_cast<object>(arguments[0]);
+
+  // if a permit is already available, whoever made it so is
+  // responsible for waking the thread
+  if (not threadUnparked(t, thread)) {
+    threadUnparked(t, thread) = true;
+
+    storeLoadMemoryBarrier();
+
+    Thread* target = reinterpret_cast<Thread*>(threadPeer(t, thread));
+    if (target and acquireSystem(t, target)) {
+      ACQUIRE(t, target->lock);
+
+      target->lock->notify(t->systemThread);
+
+      releaseSystem(t, target);
+    }
+  }
+}
+
 extern "C" JNIEXPORT int64_t JNICALL
 Avian_avian_Atomic_getOffset
 (Thread* t, object, uintptr_t* arguments)
@@ -632,6 +726,19 @@ Avian_avian_Atomic_compareAndSwapObject
   return success;
 }
 
+extern "C" JNIEXPORT int64_t JNICALL
+Avian_avian_Atomic_compareAndSwapInt
+(Thread*, object, uintptr_t* arguments)
+{
+  object target = reinterpret_cast<object>(arguments[0]);
+  int64_t offset; memcpy(&offset, arguments + 1, 8);
+  uint32_t expect = arguments[3];
+  uint32_t update = arguments[4];
+
+  return atomicCompareAndSwap32
+    (&cast<uint32_t>(target, offset), expect, update);
+}
+
 extern "C" JNIEXPORT int64_t JNICALL
 Avian_avian_Classes_primitiveClass
 (Thread* t, object, uintptr_t* arguments)
@@ -15,27 +15,38 @@
 
 namespace vm {
 
+inline bool
+isTraceCapture(Thread* t, object method)
+{
+  // frames belonging to the construction of a throwable or to its
+  // fillInStackTrace method are omitted from the trace it captures
+  if (isAssignableFrom
+      (t, type(t, Machine::ThrowableType), methodClass(t, method)))
+  {
+    const int8_t* name = &byteArrayBody(t, methodName(t, method), 0);
+    return vm::strcmp(reinterpret_cast<const int8_t*>("<init>"), name) == 0
+      or vm::strcmp
+      (reinterpret_cast<const int8_t*>("fillInStackTrace"), name) == 0;
+  } else {
+    return false;
+  }
+}
+
 object
-getTrace(Thread* t, unsigned skipCount)
+getTrace(Thread* t, unsigned skipCount, bool raw = false)
 {
   class Visitor: public Processor::StackVisitor {
    public:
-    Visitor(Thread* t, int skipCount):
-      t(t), trace(0), skipCount(skipCount)
+    Visitor(Thread* t, int skipCount, bool raw):
+      t(t), trace(0), skipCount(skipCount), raw(raw)
     { }
 
     virtual bool visit(Processor::StackWalker* walker) {
       if (skipCount == 0) {
-        object method = walker->method();
-        if (isAssignableFrom
-            (t, type(t, Machine::ThrowableType), methodClass(t, method))
-            and vm::strcmp(reinterpret_cast<const int8_t*>("<init>"),
-                           &byteArrayBody(t, methodName(t, method), 0))
-            == 0)
-        {
+        if (isTraceCapture(t, walker->method())) {
           return true;
         } else {
-          trace = makeTrace(t, walker);
+          trace = raw ? makeRawTrace(t, walker) : makeTrace(t, walker);
           return false;
         }
       } else {
@@ -47,73 +58,16 @@ getTrace(Thread* t, unsigned skipCount)
     Thread* t;
     object trace;
     unsigned skipCount;
-  } v(t, skipCount);
+    bool raw;
+  } v(t, skipCount, raw);
 
   t->m->processor->walkStack(t, &v);
 
-  if (v.trace == 0) v.trace = makeObjectArray(t, 0);
-
-  return v.trace;
-}
-
-bool
-compatibleArrayTypes(Thread* t, object a, object b)
-{
-  return classArrayElementSize(t, a)
-    and classArrayElementSize(t, b)
-    and (a == b
-         or (not ((classVmFlags(t, a) & PrimitiveFlag)
-                  or (classVmFlags(t, b) & PrimitiveFlag))));
-}
-
-void
-arrayCopy(Thread* t, object src, int32_t srcOffset, object dst,
-          int32_t dstOffset, int32_t length)
-{
-  if (LIKELY(src and dst)) {
-    if (LIKELY(compatibleArrayTypes
-               (t, objectClass(t, src), objectClass(t, dst))))
-    {
-      unsigned elementSize = classArrayElementSize(t, objectClass(t, src));
-
-      if (LIKELY(elementSize)) {
-        intptr_t sl = cast<uintptr_t>(src, BytesPerWord);
-        intptr_t dl = cast<uintptr_t>(dst, BytesPerWord);
-        if (LIKELY(length > 0)) {
-          if (LIKELY(srcOffset >= 0 and srcOffset + length <= sl and
-                     dstOffset >= 0 and dstOffset + length <= dl))
-          {
-            uint8_t* sbody = &cast<uint8_t>(src, ArrayBody);
-            uint8_t* dbody = &cast<uint8_t>(dst, ArrayBody);
-            if (src == dst) {
-              memmove(dbody + (dstOffset * elementSize),
-                      sbody + (srcOffset * elementSize),
-                      length * elementSize);
-            } else {
-              memcpy(dbody + (dstOffset * elementSize),
-                     sbody + (srcOffset * elementSize),
-                     length * elementSize);
-            }
-
-            if (classObjectMask(t, objectClass(t, dst))) {
-              mark(t, dst, ArrayBody + (dstOffset * BytesPerWord), length);
-            }
-
-            return;
-          } else {
-            throwNew(t, Machine::IndexOutOfBoundsExceptionType);
-          }
-        } else {
-          return;
-        }
-      }
-    }
-  } else {
-    throwNew(t, Machine::NullPointerExceptionType);
-    return;
+  if (v.trace == 0) {
+    v.trace = raw ? makeRawTrace(t, 0, 0, 0) : makeObjectArray(t, 0);
   }
 
-  throwNew(t, Machine::ArrayStoreExceptionType);
+  return v.trace;
 }
 
 void
@@ -258,11 +212,11 @@ clone(Thread* t, object o)
 }
 
 object
-makeStackTraceElement(Thread* t, object e)
+makeStackTraceElement(Thread* t, object method, int ip)
 {
-  PROTECT(t, e);
+  PROTECT(t, method);
 
-  object class_ = className(t, methodClass(t, traceElementMethod(t, e)));
+  object class_ = className(t, methodClass(t, method));
   PROTECT(t, class_);
 
   THREAD_RUNTIME_ARRAY(t, char, s, byteArrayLength(t, class_));
@@ -270,20 +224,26 @@ makeStackTraceElement(Thread* t, object e)
           reinterpret_cast<char*>(&byteArrayBody(t, class_, 0)));
   class_ = makeString(t, "%s", s);
 
-  object method = methodName(t, traceElementMethod(t, e));
-  PROTECT(t, method);
+  object name = methodName(t, method);
+  PROTECT(t, name);
 
-  method = t->m->classpath->makeString
-    (t, method, 0, byteArrayLength(t, method) - 1);
+  name = t->m->classpath->makeString
+    (t, name, 0, byteArrayLength(t, name) - 1);
 
-  unsigned line = t->m->processor->lineNumber
-    (t, traceElementMethod(t, e), traceElementIp(t, e));
+  unsigned line = t->m->processor->lineNumber(t, method, ip);
 
-  object file = classSourceFile(t, methodClass(t, traceElementMethod(t, e)));
+  object file = classSourceFile(t, methodClass(t, method));
   file = file ? t->m->classpath->makeString
     (t, file, 0, byteArrayLength(t, file) - 1) : 0;
 
-  return makeStackTraceElement(t, class_, method, file, line);
+  return makeStackTraceElement(t, class_, name, file, line);
+}
+
+inline object
+makeStackTraceElement(Thread* t, object e)
+{
+  return makeStackTraceElement
+    (t, traceElementMethod(t, e), traceElementIp(t, e));
 }
 
 object
@@ -513,7 +513,7 @@ class MyClasspath : public Classpath {
     t->m->processor->invoke(t, method, t->javaThread);
 
     acquire(t, t->javaThread);
-    t->flags &= ~Thread::ActiveFlag;
+    atomicAnd(&(t->flags), ~Thread::ActiveFlag);
     notifyAll(t, t->javaThread);
     release(t, t->javaThread);
   }
@@ -1696,7 +1696,7 @@ intercept(Thread* t, object c, const char* name, const char* spec,
 
     methodFlags(t, m) |= ACC_NATIVE;
 
-    object native = makeNativeIntercept(t, function, true, clone);
+    object native = makeNativeIntercept(t, function, true, false, 0, 0, clone);
 
     PROTECT(t, native);
 
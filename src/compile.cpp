@@ -47,6 +47,9 @@ const bool DebugIntrinsics = false;
 
 const bool CheckArrayBounds = true;
 
+const bool ScalarReplacement = true;
+const bool LoadElimination = true;
+
 #ifdef AVIAN_CONTINUATIONS
 const bool Continuations = true;
 #else
@@ -809,6 +812,82 @@ class SubroutinePath {
   uintptr_t* rootTable;
 };
 
+// An allocation which never escapes the method that creates it is
+// replaced by a set of locals, one per instance field, plus scratch
+// locals for the constructor arguments.  See findVirtualObjects
+// below.
+
+class VirtualField {
+ public:
+  unsigned offset;
+  unsigned code;
+  unsigned local;
+  bool assigned;
+};
+
+class VirtualAssignment {
+ public:
+  unsigned field;
+  int source;
+  uint8_t type;
+  Compiler::OperandType operandType;
+  int64_t value;
+};
+
+class VirtualParameter {
+ public:
+  unsigned local;
+  uint8_t type;
+};
+
+class VirtualObject {
+ public:
+  VirtualObject(unsigned fieldCount, VirtualField* fields,
+                unsigned fieldFootprint):
+    fieldCount(fieldCount),
+    fields(fields),
+    fieldFootprint(fieldFootprint),
+    parameterFootprint(0),
+    parameterCount(0),
+    parameters(0),
+    assignmentCount(0),
+    assignments(0),
+    local(0),
+    scratch(0)
+  { }
+
+  unsigned fieldCount;
+  VirtualField* fields;
+  unsigned fieldFootprint;
+  unsigned parameterFootprint;
+  unsigned parameterCount;
+  VirtualParameter* parameters;
+  unsigned assignmentCount;
+  VirtualAssignment* assignments;
+  unsigned local;
+  unsigned scratch;
+};
+
+class VirtualOperation {
+ public:
+  enum Type {
+    Skip,
+    Construct,
+    GetField,
+    PutField
+  };
+
+  VirtualOperation(Type type, VirtualObject* object, unsigned field,
+                   unsigned next):
+    type(type), object(object), field(field), next(next)
+  { }
+
+  Type type;
+  VirtualObject* object;
+  unsigned field;
+  unsigned next;
+};
+
 void
 print(SubroutinePath* path)
 {
@@ -1219,6 +1298,8 @@ class Context {
     visitTable(makeVisitTable(t, &zone, method)),
     rootTable(makeRootTable(t, &zone, method)),
     subroutineTable(0),
+    virtualTable(0),
+    branchTargets(0),
     executableAllocator(0),
     executableStart(0),
     executableSize(0),
@@ -1245,6 +1326,8 @@ class Context {
     visitTable(0),
     rootTable(0),
     subroutineTable(0),
+    virtualTable(0),
+    branchTargets(0),
     executableAllocator(0),
     executableStart(0),
     executableSize(0),
@@ -1290,6 +1373,8 @@ class Context {
   uint16_t* visitTable;
   uintptr_t* rootTable;
   Subroutine** subroutineTable;
+  VirtualOperation** virtualTable;
+  bool* branchTargets;
   Allocator* executableAllocator;
   void* executableStart;
   unsigned executableSize;
@@ -1333,6 +1418,18 @@ storeLocal(Context* context, unsigned footprint, Compiler::Operand* value,
 FixedAllocator*
 codeAllocator(MyThread* t);
 
+// Records the result of a field or array length load from the object
+// held in a local so that later loads in the same basic block may
+// reuse it.  An offset of -1 denotes the array length.
+class LoadCacheEntry {
+ public:
+  unsigned local;
+  int offset;
+  Compiler::Operand* value;
+};
+
+const unsigned LoadCacheSize = 8;
+
 class Frame {
  public:
   enum StackType {
@@ -1349,7 +1446,9 @@ class Frame {
     stackMap(stackMap),
     ip(0),
     sp(localSize()),
-    level(0)
+    level(0),
+    loadCacheCount(0),
+    loadedLocal(-1)
   {
     memset(stackMap, 0, codeMaxStack(t, methodCode(t, context->method)));
   }
@@ -1362,7 +1461,9 @@ class Frame {
     stackMap(stackMap),
     ip(f->ip),
     sp(f->sp),
-    level(f->level + 1)
+    level(f->level + 1),
+    loadCacheCount(0),
+    loadedLocal(-1)
   {
     memcpy(stackMap, f->stackMap, codeMaxStack
            (t, methodCode(t, context->method)));
@@ -1969,6 +2070,54 @@ class Frame {
 
     subroutine = subroutine->stackNext;
   }
+
+  Compiler::Operand* cachedLoad(unsigned local, int offset) {
+    for (unsigned i = 0; i < loadCacheCount; ++i) {
+      LoadCacheEntry* e = loadCache + i;
+      if (e->local == local and e->offset == offset) {
+        return e->value;
+      }
+    }
+    return 0;
+  }
+
+  void cacheLoad(unsigned local, int offset, Compiler::Operand* value) {
+    if (loadCacheCount == LoadCacheSize) {
+      // evict the oldest entry
+      memmove(loadCache, loadCache + 1,
+              sizeof(LoadCacheEntry) * (LoadCacheSize - 1));
+      -- loadCacheCount;
+    }
+
+    LoadCacheEntry* e = loadCache + (loadCacheCount++);
+    e->local = local;
+    e->offset = offset;
+    e->value = value;
+  }
+
+  void invalidateLocal(unsigned local) {
+    for (unsigned i = 0; i < loadCacheCount;) {
+      if (loadCache[i].local == local) {
+        loadCache[i] = loadCache[-- loadCacheCount];
+      } else {
+        ++ i;
+      }
+    }
+  }
+
+  void invalidateField(int offset) {
+    for (unsigned i = 0; i < loadCacheCount;) {
+      if (loadCache[i].offset == offset) {
+        loadCache[i] = loadCache[-- loadCacheCount];
+      } else {
+        ++ i;
+      }
+    }
+  }
+
+  void clearLoads() {
+    loadCacheCount = 0;
+  }
   
   Context* context;
   MyThread* t;
@@ -1978,6 +2127,9 @@ class Frame {
   unsigned ip;
   unsigned sp;
   unsigned level;
+  LoadCacheEntry loadCache[LoadCacheSize];
+  unsigned loadCacheCount;
+  int loadedLocal;
 };
 
 unsigned
@@ -3598,7 +3750,13 @@ handleExit(MyThread* t, Frame* frame)
 bool
 inTryBlock(MyThread* t, object code, unsigned ip)
 {
+  // findBranchTargets has already parsed the table, so we read it
+  // directly rather than calling exceptionHandlerTable, which may
+  // allocate while our callers hold unprotected references
   object table = codeExceptionHandlerTable(t, code);
+  assert(t, table == 0
+         or objectClass(t, table) != type(t, Machine::ByteArrayType));
+
   if (table) {
     unsigned length = exceptionHandlerTableLength(t, table);
     for (unsigned i = 0; i < length; ++i) {
@@ -3666,189 +3824,1664 @@ isTailCall(MyThread* t, object code, unsigned ip, object caller,
     and returnsNext(t, code, ip);
 }
 
-bool
-isTailCall(MyThread* t, object code, unsigned ip, object caller, object callee)
-{
-  return isTailCall(t, code, ip, caller, methodReturnCode(t, callee));
-}
+bool
+isTailCall(MyThread* t, object code, unsigned ip, object caller, object callee)
+{
+  return isTailCall(t, code, ip, caller, methodReturnCode(t, callee));
+}
+
+bool
+isReferenceTailCall(MyThread* t, object code, unsigned ip, object caller,
+                    object calleeReference)
+{
+  return isTailCall
+    (t, code, ip, caller, methodReferenceReturnCode(t, calleeReference));
+}
+
+void
+compile(MyThread* t, Frame* initialFrame, unsigned ip,
+        int exceptionHandlerStart = -1);
+
+void
+saveStateAndCompile(MyThread* t, Frame* initialFrame, unsigned ip)
+{
+  Compiler::State* state = initialFrame->c->saveState();
+  compile(t, initialFrame, ip);
+  initialFrame->c->restoreState(state);
+}
+
+bool
+integerBranch(MyThread* t, Frame* frame, object code, unsigned& ip,
+              unsigned size, Compiler::Operand* a, Compiler::Operand* b)
+{
+  if (ip + 3 > codeLength(t, code)) {
+    return false;
+  }
+
+  Compiler* c = frame->c;
+  unsigned instruction = codeBody(t, code, ip++);
+  uint32_t offset = codeReadInt16(t, code, ip);
+  uint32_t newIp = (ip - 3) + offset;
+  assert(t, newIp < codeLength(t, code));
+  
+  Compiler::Operand* target = frame->machineIp(newIp);
+
+  switch (instruction) {
+  case ifeq:
+    c->jumpIfEqual(size, a, b, target);
+    break;
+
+  case ifne:
+    c->jumpIfNotEqual(size, a, b, target);
+    break;
+
+  case ifgt:
+    c->jumpIfGreater(size, a, b, target);
+    break;
+
+  case ifge:
+    c->jumpIfGreaterOrEqual(size, a, b, target);
+    break;
+
+  case iflt:
+    c->jumpIfLess(size, a, b, target);
+    break;
+
+  case ifle:
+    c->jumpIfLessOrEqual(size, a, b, target);
+    break;
+
+  default:
+    ip -= 3;
+    return false;
+  }
+
+  saveStateAndCompile(t, frame, newIp);
+  return true;
+}
+
+bool
+floatBranch(MyThread* t, Frame* frame, object code, unsigned& ip,
+            unsigned size, bool lessIfUnordered, Compiler::Operand* a,
+            Compiler::Operand* b)
+{
+  if (ip + 3 > codeLength(t, code)) {
+    return false;
+  }
+
+  Compiler* c = frame->c;
+  unsigned instruction = codeBody(t, code, ip++);
+  uint32_t offset = codeReadInt16(t, code, ip);
+  uint32_t newIp = (ip - 3) + offset;
+  assert(t, newIp < codeLength(t, code));
+  
+  Compiler::Operand* target = frame->machineIp(newIp);
+
+  switch (instruction) {
+  case ifeq:
+    c->jumpIfFloatEqual(size, a, b, target);
+    break;
+
+  case ifne:
+    c->jumpIfFloatNotEqual(size, a, b, target);
+    break;
+
+  case ifgt:
+    if (lessIfUnordered) {
+      c->jumpIfFloatGreater(size, a, b, target);
+    } else {
+      c->jumpIfFloatGreaterOrUnordered(size, a, b, target);
+    }
+    break;
+
+  case ifge:
+    if (lessIfUnordered) {
+      c->jumpIfFloatGreaterOrEqual(size, a, b, target);
+    } else {
+      c->jumpIfFloatGreaterOrEqualOrUnordered(size, a, b, target);
+    }
+    break;
+
+  case iflt:
+    if (lessIfUnordered) {
+      c->jumpIfFloatLessOrUnordered(size, a, b, target);
+    } else {
+      c->jumpIfFloatLess(size, a, b, target);
+    }
+    break;
+
+  case ifle:
+    if (lessIfUnordered) {
+      c->jumpIfFloatLessOrEqualOrUnordered(size, a, b, target);
+    } else {
+      c->jumpIfFloatLessOrEqual(size, a, b, target);
+    }
+    break;
+
+  default:
+    ip -= 3;
+    return false;
+  }
+
+  saveStateAndCompile(t, frame, newIp);
+  return true;
+}
+
+bool
+intrinsic(MyThread* t, Frame* frame, object target)
+{
+#define MATCH(name, constant)                                           \
+  (byteArrayLength(t, name) == sizeof(constant)                         \
+   and ::strcmp(reinterpret_cast<char*>(&byteArrayBody(t, name, 0)),    \
+                constant) == 0)
+
+  object className = vm::className(t, methodClass(t, target));
+  if (UNLIKELY(MATCH(className, "java/lang/Math"))) {
+    Compiler* c = frame->c;
+    if (MATCH(methodName(t, target), "sqrt")
+        and MATCH(methodSpec(t, target), "(D)D"))
+    {
+      frame->pushLong(c->fsqrt(8, frame->popLong()));
+      return true;
+    } else if (MATCH(methodName(t, target), "abs")) {
+      if (MATCH(methodSpec(t, target), "(I)I")) {
+        frame->pushInt(c->abs(4, frame->popInt()));
+        return true;
+      } else if (MATCH(methodSpec(t, target), "(J)J")) {
+        frame->pushLong(c->abs(8, frame->popLong()));
+        return true;
+      } else if (MATCH(methodSpec(t, target), "(F)F")) {
+        frame->pushInt(c->fabs(4, frame->popInt()));
+        return true;
+      }
+    }
+  } else if (UNLIKELY(MATCH(className, "java/lang/System"))) {
+    Compiler* c = frame->c;
+    if (MATCH(methodName(t, target), "arraycopy")
+        and MATCH(methodSpec(t, target),
+                  "(Ljava/lang/Object;ILjava/lang/Object;II)V"))
+    {
+      // call the copy routine directly rather than going through the
+      // native method invocation path
+      Compiler::Operand* length = frame->popInt();
+      Compiler::Operand* dstOffset = frame->popInt();
+      Compiler::Operand* dst = frame->popObject();
+      Compiler::Operand* srcOffset = frame->popInt();
+      Compiler::Operand* src = frame->popObject();
+
+      c->call
+        (c->constant(getThunk(t, arrayCopyThunk), Compiler::AddressType),
+         0,
+         frame->trace(0, 0),
+         0,
+         Compiler::VoidType,
+         6, c->register_(t->arch->thread()), src, srcOffset, dst, dstOffset,
+         length);
+      return true;
+    }
+  }
+  return false;
+}
+
+unsigned
+targetFieldOffset(Context* context, object field)
+{
+  if (context->bootContext) {
+    return context->bootContext->resolver->fieldOffset(context->thread, field);
+  } else {
+    return fieldOffset(context->thread, field);
+  }
+}
+
+unsigned
+instructionLength(MyThread* t, object code, unsigned ip)
+{
+  switch (codeBody(t, code, ip)) {
+  case aload:
+  case astore:
+  case bipush:
+  case dload:
+  case dstore:
+  case fload:
+  case fstore:
+  case iload:
+  case istore:
+  case ldc:
+  case lload:
+  case lstore:
+  case newarray:
+  case ret:
+    return 2;
+
+  case anewarray:
+  case checkcast:
+  case getfield:
+  case getstatic:
+  case goto_:
+  case if_acmpeq:
+  case if_acmpne:
+  case if_icmpeq:
+  case if_icmpne:
+  case if_icmplt:
+  case if_icmpge:
+  case if_icmpgt:
+  case if_icmple:
+  case ifeq:
+  case ifne:
+  case iflt:
+  case ifge:
+  case ifgt:
+  case ifle:
+  case ifnonnull:
+  case ifnull:
+  case iinc:
+  case instanceof:
+  case invokespecial:
+  case invokestatic:
+  case invokevirtual:
+  case jsr:
+  case ldc_w:
+  case ldc2_w:
+  case new_:
+  case putfield:
+  case putstatic:
+  case sipush:
+    return 3;
+
+  case multianewarray:
+    return 4;
+
+  case goto_w:
+  case invokeinterface:
+  case jsr_w:
+    return 5;
+
+  case wide:
+    return codeBody(t, code, ip + 1) == iinc ? 6 : 4;
+
+  case lookupswitch: {
+    unsigned i = ((ip + 1 + 3) & ~3) + 4;
+    int32_t pairCount = codeReadInt32(t, code, i);
+    return i + (pairCount * 8) - ip;
+  }
+
+  case tableswitch: {
+    unsigned i = ((ip + 1 + 3) & ~3) + 4;
+    int32_t bottom = codeReadInt32(t, code, i);
+    int32_t top = codeReadInt32(t, code, i);
+    return i + ((top - bottom + 1) * 4) - ip;
+  }
+
+  default:
+    return 1;
+  }
+}
+
+int
+localIndex(MyThread* t, object code, unsigned ip, unsigned load,
+           unsigned load0, unsigned store, unsigned store0, bool* isStore)
+{
+  unsigned instruction = codeBody(t, code, ip);
+  if (instruction == wide) {
+    instruction = codeBody(t, code, ip + 1);
+    ip += 2;
+    if (instruction == load or instruction == store) {
+      *isStore = instruction == store;
+      return codeReadInt16(t, code, ip);
+    }
+  } else if (instruction == load or instruction == store) {
+    *isStore = instruction == store;
+    return codeBody(t, code, ip + 1);
+  } else if (instruction >= load0 and instruction < load0 + 4) {
+    *isStore = false;
+    return instruction - load0;
+  } else if (instruction >= store0 and instruction < store0 + 4) {
+    *isStore = true;
+    return instruction - store0;
+  }
+  return -1;
+}
+
+int
+objectLocalIndex(MyThread* t, object code, unsigned ip, bool* isStore)
+{
+  return localIndex(t, code, ip, aload, aload_0, astore, astore_0, isStore);
+}
+
+object
+poolEntrySpec(MyThread* t, object code, unsigned ip)
+{
+  ++ ip;
+  object o = singletonObject
+    (t, codePool(t, code), codeReadInt16(t, code, ip) - 1);
+
+  if (objectClass(t, o) == type(t, Machine::ReferenceType)) {
+    return referenceSpec(t, o);
+  } else if (objectClass(t, o) == type(t, Machine::FieldType)) {
+    return fieldSpec(t, o);
+  } else {
+    return methodSpec(t, o);
+  }
+}
+
+unsigned
+specFootprint(int8_t spec)
+{
+  switch (spec) {
+  case 'V':
+    return 0;
+
+  case 'J':
+  case 'D':
+    return 2;
+
+  default:
+    return 1;
+  }
+}
+
+// Computes the number of stack slots consumed and produced by the
+// instruction at the specified ip, returning false if it is not one
+// of the straight-line, side-effect-free-with-respect-to-locals
+// instructions we are willing to see between the creation of a
+// virtual object and its consumption.
+bool
+stackEffect(MyThread* t, object code, unsigned ip, unsigned* pops,
+            unsigned* pushes)
+{
+  *pops = 0;
+  *pushes = 0;
+
+  unsigned instruction = codeBody(t, code, ip);
+  switch (instruction) {
+  case nop:
+  case iinc:
+    break;
+
+  case aconst_null:
+  case bipush:
+  case fconst_0:
+  case fconst_1:
+  case fconst_2:
+  case iconst_m1:
+  case iconst_0:
+  case iconst_1:
+  case iconst_2:
+  case iconst_3:
+  case iconst_4:
+  case iconst_5:
+  case ldc:
+  case ldc_w:
+  case new_:
+  case sipush:
+  case aload:
+  case aload_0:
+  case aload_1:
+  case aload_2:
+  case aload_3:
+  case fload:
+  case fload_0:
+  case fload_1:
+  case fload_2:
+  case fload_3:
+  case iload:
+  case iload_0:
+  case iload_1:
+  case iload_2:
+  case iload_3:
+    *pushes = 1;
+    break;
+
+  case dconst_0:
+  case dconst_1:
+  case lconst_0:
+  case lconst_1:
+  case ldc2_w:
+  case dload:
+  case dload_0:
+  case dload_1:
+  case dload_2:
+  case dload_3:
+  case lload:
+  case lload_0:
+  case lload_1:
+  case lload_2:
+  case lload_3:
+    *pushes = 2;
+    break;
+
+  case aaload:
+  case baload:
+  case caload:
+  case faload:
+  case iaload:
+  case saload:
+  case fadd:
+  case fcmpg:
+  case fcmpl:
+  case fdiv:
+  case fmul:
+  case frem:
+  case fsub:
+  case iadd:
+  case iand:
+  case idiv:
+  case imul:
+  case ior:
+  case irem:
+  case ishl:
+  case ishr:
+  case isub:
+  case iushr:
+  case ixor:
+    *pops = 2;
+    *pushes = 1;
+    break;
+
+  case daload:
+  case laload:
+  case d2l:
+  case dneg:
+  case l2d:
+  case lneg:
+    *pops = 2;
+    *pushes = 2;
+    break;
+
+  case dadd:
+  case ddiv:
+  case dmul:
+  case vm::drem:
+  case dsub:
+  case ladd:
+  case land:
+  case ldiv_:
+  case lmul:
+  case lor:
+  case lrem:
+  case lsub:
+  case lxor:
+    *pops = 4;
+    *pushes = 2;
+    break;
+
+  case lshl:
+  case lshr:
+  case lushr:
+    *pops = 3;
+    *pushes = 2;
+    break;
+
+  case dcmpg:
+  case dcmpl:
+  case lcmp:
+    *pops = 4;
+    *pushes = 1;
+    break;
+
+  case anewarray:
+  case arraylength:
+  case checkcast:
+  case f2i:
+  case fneg:
+  case i2b:
+  case i2c:
+  case i2f:
+  case i2s:
+  case ineg:
+  case instanceof:
+  case newarray:
+    *pops = 1;
+    *pushes = 1;
+    break;
+
+  case dup:
+  case f2d:
+  case f2l:
+  case i2d:
+  case i2l:
+    *pops = 1;
+    *pushes = 2;
+    break;
+
+  case d2f:
+  case d2i:
+  case l2f:
+  case l2i:
+    *pops = 2;
+    *pushes = 1;
+    break;
+
+  case multianewarray:
+    *pops = codeBody(t, code, ip + 3);
+    *pushes = 1;
+    break;
+
+  case getfield:
+  case getstatic:
+  case putfield: {
+    object spec = poolEntrySpec(t, code, ip);
+    unsigned footprint = specFootprint(byteArrayBody(t, spec, 0));
+
+    if (instruction == putfield) {
+      *pops = 1 + footprint;
+    } else {
+      *pops = (instruction == getfield ? 1 : 0);
+      *pushes = footprint;
+    }
+  } break;
+
+  case invokeinterface:
+  case invokespecial:
+  case invokestatic:
+  case invokevirtual: {
+    object spec = poolEntrySpec(t, code, ip);
+    MethodSpecIterator it
+      (t, reinterpret_cast<const char*>(&byteArrayBody(t, spec, 0)));
+    while (it.hasNext()) {
+      *pops += specFootprint(*it.next());
+    }
+    if (instruction != invokestatic) {
+      ++ *pops;
+    }
+    *pushes = specFootprint(*it.returnSpec());
+  } break;
+
+  default:
+    return false;
+  }
+
+  return true;
+}
+
+int
+findVirtualField(MyThread* t, VirtualObject* o, object field)
+{
+  for (unsigned i = 0; i < o->fieldCount; ++i) {
+    if (o->fields[i].offset == fieldOffset(t, field)) {
+      return i;
+    }
+  }
+  return -1;
+}
+
+// Like resolveField and resolveMethod, except that we use the pool of
+// the specified code rather than that of the method's current code,
+// which is gone once the method has been compiled.  Returns null
+// rather than throwing if the member can't be found.
+object
+resolveInCode(MyThread* t, object method, object code, unsigned index,
+              object (*find)(vm::Thread*, object, object, object))
+{
+  object o = singletonObject(t, codePool(t, code), index);
+
+  loadMemoryBarrier();
+
+  if (objectClass(t, o) == type(t, Machine::ReferenceType)) {
+    PROTECT(t, o);
+
+    object class_ = resolveClassInObject
+      (t, classLoader(t, methodClass(t, method)), o, ReferenceClass, false);
+
+    if (class_) {
+      o = findInHierarchyOrNull
+        (t, class_, referenceName(t, o), referenceSpec(t, o), find);
+    } else {
+      o = 0;
+    }
+  }
+
+  return o;
+}
+
+object
+resolveVirtualField(MyThread* t, object method, object code, unsigned ip,
+                    object class_)
+{
+  ++ ip;
+  object field = resolveInCode
+    (t, method, code, codeReadInt16(t, code, ip) - 1, findFieldInClass);
+
+  if (field and fieldClass(t, field) == class_
+      and (fieldFlags(t, field) & ACC_STATIC) == 0)
+  {
+    return field;
+  } else {
+    return 0;
+  }
+}
+
+uint8_t
+fieldStackType(unsigned code)
+{
+  switch (code) {
+  case DoubleField:
+  case LongField:
+    return Frame::Long;
+
+  case ObjectField:
+    return Frame::Object;
+
+  default:
+    return Frame::Integer;
+  }
+}
+
+VirtualObject*
+makeVirtualObject(MyThread* t, Context* context, object class_)
+{
+  object table = classFieldTable(t, class_);
+  unsigned count = 0;
+  if (table) {
+    for (unsigned i = 0; i < arrayLength(t, table); ++i) {
+      if ((fieldFlags(t, arrayBody(t, table, i)) & ACC_STATIC) == 0) {
+        ++ count;
+      }
+    }
+  }
+
+  VirtualField* fields = static_cast<VirtualField*>
+    (context->zone.allocate(sizeof(VirtualField) * (count ? count : 1)));
+
+  unsigned local = 0;
+  count = 0;
+  if (table) {
+    for (unsigned i = 0; i < arrayLength(t, table); ++i) {
+      object field = arrayBody(t, table, i);
+      if ((fieldFlags(t, field) & ACC_STATIC) == 0) {
+        VirtualField* f = fields + (count++);
+        f->offset = fieldOffset(t, field);
+        f->code = fieldCode(t, field);
+        f->local = local;
+        f->assigned = false;
+
+        local += (fieldStackType(f->code) == Frame::Long ? 2 : 1);
+      }
+    }
+  }
+
+  return new (context->zone.allocate(sizeof(VirtualObject)))
+    VirtualObject(count, fields, local);
+}
+
+// Returns the bytecode of the specified constructor as it was loaded,
+// or null if parseMethodTable didn't keep it.
+object
+retainedBytecode(MyThread* t, object constructor)
+{
+  object addendum = methodAddendum(t, constructor);
+  return addendum ? methodAddendumBytecode(t, addendum) : 0;
+}
+
+// Determines whether the specified constructor does nothing but call
+// Object.<init> and assign parameters or constants to fields of its
+// own class, recording those assignments if so.
+bool
+analyzeConstructor(MyThread* t, Context* context, object constructor,
+                   object class_, VirtualObject* o)
+{
+  PROTECT(t, constructor);
+  PROTECT(t, class_);
+
+  // we use the bytecode kept by parseMethodTable rather than the
+  // constructor's current code, which is replaced once it has been
+  // compiled, so the result does not depend on what has run so far:
+  object code = retainedBytecode(t, constructor);
+  if (code == 0) {
+    return false;
+  }
+
+  PROTECT(t, code);
+
+  unsigned footprint = methodParameterFootprint(t, constructor);
+
+  o->parameterFootprint = footprint - 1;
+  o->parameterCount = methodParameterCount(t, constructor);
+  o->parameters = static_cast<VirtualParameter*>
+    (context->zone.allocate
+     (sizeof(VirtualParameter) * (o->parameterCount ? o->parameterCount : 1)));
+
+  { unsigned local = 0;
+    unsigned i = 0;
+    for (MethodSpecIterator it
+           (t, reinterpret_cast<const char*>
+            (&byteArrayBody(t, methodSpec(t, constructor), 0)));
+         it.hasNext();)
+    {
+      const char* spec = it.next();
+      VirtualParameter* p = o->parameters + (i++);
+      p->local = local;
+      p->type = fieldStackType(fieldCode(t, *spec));
+      local += specFootprint(*spec);
+    }
+  }
+
+  o->assignments = static_cast<VirtualAssignment*>
+    (context->zone.allocate
+     (sizeof(VirtualAssignment) * codeLength(t, code)));
+
+  bool calledSuper = false;
+  unsigned ip = 0;
+  while (ip < codeLength(t, code)) {
+    unsigned instruction = codeBody(t, code, ip++);
+    if (instruction == return_) {
+      return calledSuper and ip == codeLength(t, code);
+    } else if (instruction != aload_0 or ip >= codeLength(t, code)) {
+      return false;
+    }
+
+    instruction = codeBody(t, code, ip++);
+    if (instruction == invokespecial) {
+      object target = resolveInCode
+        (t, constructor, code, codeReadInt16(t, code, ip) - 1,
+         findMethodInClass);
+
+      object targetCode = target ? retainedBytecode(t, target) : 0;
+
+      if (calledSuper or target == 0
+          or methodClass(t, target) != type(t, Machine::JobjectType)
+          or strcmp(reinterpret_cast<const int8_t*>("<init>"),
+                    &byteArrayBody(t, methodName(t, target), 0)) != 0
+          or targetCode == 0
+          or codeLength(t, targetCode) != 1)
+      {
+        return false;
+      }
+
+      calledSuper = true;
+    } else {
+      VirtualAssignment* a = o->assignments + (o->assignmentCount++);
+      a->source = -1;
+      a->operandType = Compiler::IntegerType;
+      a->value = 0;
+
+      switch (instruction) {
+      case aconst_null:
+        a->type = Frame::Object;
+        a->operandType = Compiler::ObjectType;
+        break;
+
+      case iconst_m1:
+      case iconst_0:
+      case iconst_1:
+      case iconst_2:
+      case iconst_3:
+      case iconst_4:
+      case iconst_5:
+        a->type = Frame::Integer;
+        a->value = static_cast<int>(instruction) - iconst_0;
+        break;
+
+      case bipush:
+        a->type = Frame::Integer;
+        a->value = static_cast<int8_t>(codeBody(t, code, ip++));
+        break;
+
+      case sipush:
+        a->type = Frame::Integer;
+        a->value = static_cast<int16_t>(codeReadInt16(t, code, ip));
+        break;
+
+      case lconst_0:
+      case lconst_1:
+        a->type = Frame::Long;
+        a->value = instruction - lconst_0;
+        break;
+
+      case fconst_0:
+      case fconst_1:
+      case fconst_2:
+        a->type = Frame::Integer;
+        a->operandType = Compiler::FloatType;
+        a->value = floatToBits(static_cast<float>(instruction - fconst_0));
+        break;
+
+      case dconst_0:
+      case dconst_1:
+        a->type = Frame::Long;
+        a->operandType = Compiler::FloatType;
+        a->value = doubleToBits(static_cast<double>(instruction - dconst_0));
+        break;
+
+      case wide:
+        return false;
+
+      default: {
+        bool isStore;
+        int index;
+        if ((index = localIndex(t, code, ip - 1, iload, iload_0, istore,
+                                istore_0, &isStore)) >= 0
+            or (index = localIndex(t, code, ip - 1, fload, fload_0, fstore,
+                                   fstore_0, &isStore)) >= 0)
+        {
+          a->type = Frame::Integer;
+        } else if ((index = localIndex(t, code, ip - 1, lload, lload_0,
+                                       lstore, lstore_0, &isStore)) >= 0
+                   or (index = localIndex(t, code, ip - 1, dload, dload_0,
+                                          dstore, dstore_0, &isStore)) >= 0)
+        {
+          a->type = Frame::Long;
+        } else if ((index = objectLocalIndex(t, code, ip - 1, &isStore))
+                   >= 0)
+        {
+          a->type = Frame::Object;
+        } else {
+          return false;
+        }
+
+        if (isStore or index < 1 or index >= static_cast<int>(footprint)) {
+          return false;
+        }
+
+        a->source = index;
+        ip += instructionLength(t, code, ip - 1) - 1;
+      } break;
+      }
+
+      if (ip >= codeLength(t, code) or codeBody(t, code, ip) != putfield) {
+        return false;
+      }
+
+      object field = resolveVirtualField(t, constructor, code, ip, class_);
+      ip += 3;
+
+      int index = field ? findVirtualField(t, o, field) : -1;
+      if (index < 0 or fieldStackType(o->fields[index].code) != a->type) {
+        return false;
+      }
+
+      a->field = index;
+      o->fields[index].assigned = true;
+    }
+  }
+
+  return false;
+}
+
+class VirtualScan {
+ public:
+  VirtualScan(Context* context, bool* targets, unsigned capacity):
+    context(context),
+    targets(targets),
+    ips(static_cast<unsigned*>
+        (context->zone.allocate(sizeof(unsigned) * capacity))),
+    operations(static_cast<VirtualOperation**>
+               (context->zone.allocate(sizeof(VirtualOperation*) * capacity))),
+    capacity(capacity),
+    count(0)
+  { }
+
+  bool append(unsigned ip, VirtualOperation::Type type, VirtualObject* o,
+              unsigned field, unsigned next)
+  {
+    if (count == capacity) {
+      return false;
+    }
+
+    ips[count] = ip;
+    operations[count++] = new
+      (context->zone.allocate(sizeof(VirtualOperation)))
+      VirtualOperation(type, o, field, next);
+
+    return true;
+  }
+
+  Context* context;
+  bool* targets;
+  unsigned* ips;
+  VirtualOperation** operations;
+  unsigned capacity;
+  unsigned count;
+};
+
+// Follows the reference produced by the new or aload instruction at
+// the specified ip through the straight-line code after it, recording
+// an operation for each instruction which consumes it.  Returns false
+// if the reference escapes or reaches an instruction we don't handle.
+// For a new instruction, the reference must be constructed and then
+// stored in a local, whose index is returned via the local parameter.
+bool
+traceVirtual(MyThread* t, VirtualScan* scan, object code, object class_,
+             VirtualObject* o, unsigned start, bool allocation,
+             unsigned* local)
+{
+  PROTECT(t, code);
+  PROTECT(t, class_);
+
+  Context* context = scan->context;
+  unsigned stackSize = codeMaxStack(t, code);
+  THREAD_RUNTIME_ARRAY(t, bool, stack, stackSize);
+  unsigned sp = 0;
+  unsigned live = 1;
+  bool constructed = false;
+
+  unsigned ip = start + instructionLength(t, code, start);
+  RUNTIME_ARRAY_BODY(stack)[sp++] = true;
+
+  if (not scan->append(start, VirtualOperation::Skip, o, 0, ip)) {
+    return false;
+  }
+
+  while (live) {
+    if (ip >= codeLength(t, code) or scan->targets[ip]) {
+      return false;
+    }
+
+    unsigned instruction = codeBody(t, code, ip);
+    unsigned next = ip + instructionLength(t, code, ip);
+    unsigned pops;
+    unsigned pushes;
+
+    if (not stackEffect(t, code, ip, &pops, &pushes)) {
+      bool isStore;
+      int index = objectLocalIndex(t, code, ip, &isStore);
+      if (allocation and constructed and live == 1 and index >= 0
+          and isStore and sp and RUNTIME_ARRAY_BODY(stack)[sp - 1])
+      {
+        *local = index;
+        -- sp;
+        -- live;
+
+        if (not scan->append(ip, VirtualOperation::Skip, o, 0, next)) {
+          return false;
+        }
+
+        ip = next;
+        continue;
+      } else {
+        return false;
+      }
+    }
+
+    unsigned consumed = 0;
+    for (unsigned i = 0; i < pops and i < sp; ++i) {
+      if (RUNTIME_ARRAY_BODY(stack)[sp - i - 1]) {
+        ++ consumed;
+      }
+    }
+
+    if (consumed == 0) {
+      sp = (pops > sp ? 0 : sp - pops);
+      if (sp + pushes > stackSize) {
+        return false;
+      }
+
+      for (unsigned i = 0; i < pushes; ++i) {
+        RUNTIME_ARRAY_BODY(stack)[sp++] = false;
+      }
+    } else if (consumed == 1 and instruction == dup) {
+      if ((allocation and (constructed or live > 1))
+          or sp + 1 > stackSize
+          or not scan->append(ip, VirtualOperation::Skip, o, 0, next))
+      {
+        return false;
+      }
+
+      RUNTIME_ARRAY_BODY(stack)[sp++] = true;
+      ++ live;
+    } else if (consumed == 1 and sp >= pops
+               and RUNTIME_ARRAY_BODY(stack)[sp - pops])
+    {
+      VirtualOperation::Type type;
+      unsigned field = 0;
+
+      if (allocation) {
+        if (constructed or instruction != invokespecial) {
+          return false;
+        }
+
+        unsigned i = ip + 1;
+        object constructor = resolveMethod
+          (t, context->method, codeReadInt16(t, code, i) - 1, false);
+
+        if (constructor == 0 or methodClass(t, constructor) != class_
+            or strcmp(reinterpret_cast<const int8_t*>("<init>"),
+                      &byteArrayBody(t, methodName(t, constructor), 0)) != 0
+            or not analyzeConstructor(t, context, constructor, class_, o))
+        {
+          return false;
+        }
+
+        type = VirtualOperation::Construct;
+        constructed = true;
+      } else if (instruction == getfield or instruction == putfield) {
+        object f = resolveVirtualField(t, context->method, code, ip, class_);
+        int index = f ? findVirtualField(t, o, f) : -1;
+        if (index < 0) {
+          return false;
+        }
+
+        type = (instruction == getfield
+                ? VirtualOperation::GetField : VirtualOperation::PutField);
+        field = index;
+      } else {
+        return false;
+      }
+
+      if (not scan->append(ip, type, o, field, next)) {
+        return false;
+      }
+
+      sp -= pops;
+      -- live;
+
+      if (sp + pushes > stackSize) {
+        return false;
+      }
+
+      for (unsigned i = 0; i < pushes; ++i) {
+        RUNTIME_ARRAY_BODY(stack)[sp++] = false;
+      }
+    } else {
+      return false;
+    }
+
+    ip = next;
+  }
+
+  return (not allocation) or constructed;
+}
+
+void
+markTarget(bool* targets, unsigned length, unsigned ip)
+{
+  if (ip < length) {
+    targets[ip] = true;
+  }
+}
+
+// Returns a table indicating which instructions in the specified
+// code may be reached other than by falling through from the
+// preceding instruction.
+bool*
+findBranchTargets(MyThread* t, Context* context, object code)
+{
+  unsigned length = codeLength(t, code);
+
+  bool* targets = static_cast<bool*>
+    (context->zone.allocate(sizeof(bool) * (length ? length : 1)));
+  memset(targets, 0, sizeof(bool) * length);
+
+  for (unsigned ip = 0; ip < length; ip += instructionLength(t, code, ip)) {
+    switch (codeBody(t, code, ip)) {
+    case goto_:
+    case if_acmpeq:
+    case if_acmpne:
+    case if_icmpeq:
+    case if_icmpne:
+    case if_icmplt:
+    case if_icmpge:
+    case if_icmpgt:
+    case if_icmple:
+    case ifeq:
+    case ifne:
+    case iflt:
+    case ifge:
+    case ifgt:
+    case ifle:
+    case ifnonnull:
+    case ifnull: {
+      unsigned i = ip + 1;
+      markTarget(targets, length, ip + codeReadInt16(t, code, i));
+    } break;
+
+    case jsr: {
+      unsigned i = ip + 1;
+      markTarget(targets, length, ip + codeReadInt16(t, code, i));
+      markTarget(targets, length, i);
+    } break;
+
+    case goto_w: {
+      unsigned i = ip + 1;
+      markTarget(targets, length, ip + codeReadInt32(t, code, i));
+    } break;
+
+    case jsr_w: {
+      unsigned i = ip + 1;
+      markTarget(targets, length, ip + codeReadInt32(t, code, i));
+      markTarget(targets, length, i);
+    } break;
+
+    case lookupswitch: {
+      unsigned i = (ip + 1 + 3) & ~3;
+      markTarget(targets, length, ip + codeReadInt32(t, code, i));
+      int32_t pairCount = codeReadInt32(t, code, i);
+      for (int32_t j = 0; j < pairCount; ++j) {
+        i += 4;
+        markTarget(targets, length, ip + codeReadInt32(t, code, i));
+      }
+    } break;
+
+    case tableswitch: {
+      unsigned i = (ip + 1 + 3) & ~3;
+      markTarget(targets, length, ip + codeReadInt32(t, code, i));
+      int32_t bottom = codeReadInt32(t, code, i);
+      int32_t top = codeReadInt32(t, code, i);
+      for (int32_t j = 0; j < top - bottom + 1; ++j) {
+        markTarget(targets, length, ip + codeReadInt32(t, code, i));
+      }
+    } break;
+
+    default:
+      break;
+    }
+  }
+
+  object eht = exceptionHandlerTable(t, code);
+  if (eht) {
+    for (unsigned i = 0; i < exceptionHandlerTableLength(t, eht); ++i) {
+      markTarget(targets, length, exceptionHandlerIp
+                 (exceptionHandlerTableBody(t, eht, i)));
+    }
+  }
+
+  return targets;
+}
+
+// Finds allocations of classes with trivial constructors whose
+// instances are stored in a single local and only ever used for
+// direct field access, so that they may be replaced by a set of
+// locals.  If any are found, the method's code is replaced by a copy
+// with room for those locals.  Note that context->method is the
+// private clone made by compile, so neither the original method nor
+// its bytecode is modified; the only maxLocals anyone else sees is
+// that of the machine code finish produces, whose frame really does
+// include the extra locals.
+void
+findVirtualObjects(MyThread* t, Context* context)
+{
+  object code = methodCode(t, context->method);
+  PROTECT(t, code);
+
+  unsigned length = codeLength(t, code);
+  unsigned maxLocals = codeMaxLocals(t, code);
+
+  bool* targets = context->branchTargets;
+
+  unsigned* stores = static_cast<unsigned*>
+    (context->zone.allocate(sizeof(unsigned) * (maxLocals + 1)));
+  memset(stores, 0, sizeof(unsigned) * (maxLocals + 1));
+
+  unsigned allocationCount = 0;
+  for (unsigned ip = 0; ip < length; ip += instructionLength(t, code, ip)) {
+    switch (codeBody(t, code, ip)) {
+    case jsr:
+    case jsr_w:
+    case ret:
+      return;
+
+    case new_:
+      ++ allocationCount;
+      break;
+
+    case wide:
+      if (codeBody(t, code, ip + 1) == ret) {
+        return;
+      }
+      break;
+
+    default:
+      break;
+    }
+
+    bool isStore;
+    int index = objectLocalIndex(t, code, ip, &isStore);
+    if (index >= 0 and isStore and index < static_cast<int>(maxLocals)) {
+      ++ stores[index];
+    }
+  }
+
+  if (allocationCount == 0) {
+    return;
+  }
+
+  VirtualScan scan(context, targets, length);
+  unsigned extraLocals = 0;
+
+  for (unsigned ip = 0; ip < length; ip += instructionLength(t, code, ip)) {
+    if (codeBody(t, code, ip) != new_) {
+      continue;
+    }
+
+    unsigned i = ip + 1;
+    object class_ = resolveClassInPool
+      (t, context->method, codeReadInt16(t, code, i) - 1, false);
+
+    if (class_ == 0
+        or classNeedsInit(t, class_)
+        or (classVmFlags(t, class_) & (WeakReferenceFlag | HasFinalizerFlag))
+        or (classFlags(t, class_) & (ACC_ABSTRACT | ACC_INTERFACE))
+        or classSuper(t, class_) != type(t, Machine::JobjectType))
+    {
+      continue;
+    }
+
+    PROTECT(t, class_);
+
+    VirtualObject* o = makeVirtualObject(t, context, class_);
+
+    scan.count = 0;
+    unsigned local;
+    if (not traceVirtual(t, &scan, code, class_, o, ip, true, &local)
+        or local < methodParameterFootprint(t, context->method)
+        or local >= maxLocals
+        or stores[local] != 1)
+    {
+      continue;
+    }
+
+    bool escapes = false;
+    for (unsigned j = 0; j < length and not escapes;
+         j += instructionLength(t, code, j))
+    {
+      bool isStore;
+      if (objectLocalIndex(t, code, j, &isStore) == static_cast<int>(local)
+          and not isStore)
+      {
+        escapes = not traceVirtual(t, &scan, code, class_, o, j, false, 0);
+      }
+    }
+
+    unsigned footprint = o->fieldFootprint + o->parameterFootprint;
+    if (escapes or maxLocals + extraLocals + footprint > 0xFFFF) {
+      continue;
+    }
+
+    if (context->virtualTable == 0) {
+      context->virtualTable = static_cast<VirtualOperation**>
+        (context->zone.allocate(sizeof(VirtualOperation*) * length));
+      memset(context->virtualTable, 0, sizeof(VirtualOperation*) * length);
+    }
+
+    for (unsigned j = 0; j < scan.count; ++j) {
+      if (context->virtualTable[scan.ips[j]]) {
+        escapes = true;
+      }
+    }
+
+    if (escapes) {
+      continue;
+    }
+
+    for (unsigned j = 0; j < scan.count; ++j) {
+      context->virtualTable[scan.ips[j]] = scan.operations[j];
+    }
+
+    o->local = maxLocals + extraLocals;
+    o->scratch = o->local + o->fieldFootprint;
+    extraLocals += footprint;
+  }
+
+  if (extraLocals) {
+    object clone = makeCode
+      (t, codePool(t, code), codeExceptionHandlerTable(t, code),
+       codeLineNumberTable(t, code), codeCompiled(t, code),
+       codeMaxStack(t, code), maxLocals + extraLocals, length);
 
-bool
-isReferenceTailCall(MyThread* t, object code, unsigned ip, object caller,
-                    object calleeReference)
-{
-  return isTailCall
-    (t, code, ip, caller, methodReferenceReturnCode(t, calleeReference));
-}
+    memcpy(&codeBody(t, clone, 0), &codeBody(t, code, 0), length);
 
-void
-compile(MyThread* t, Frame* initialFrame, unsigned ip,
-        int exceptionHandlerStart = -1);
+    set(t, context->method, MethodCode, clone);
 
-void
-saveStateAndCompile(MyThread* t, Frame* initialFrame, unsigned ip)
-{
-  Compiler::State* state = initialFrame->c->saveState();
-  compile(t, initialFrame, ip);
-  initialFrame->c->restoreState(state);
+    context->rootTable = makeRootTable(t, &(context->zone), context->method);
+  }
 }
 
-bool
-integerBranch(MyThread* t, Frame* frame, object code, unsigned& ip,
-              unsigned size, Compiler::Operand* a, Compiler::Operand* b)
+void
+loadVirtualField(MyThread* t, Frame* frame, VirtualObject* o, unsigned field)
 {
-  if (ip + 3 > codeLength(t, code)) {
-    return false;
+  VirtualField* f = o->fields + field;
+  unsigned index = o->local + f->local;
+
+  switch (fieldStackType(f->code)) {
+  case Frame::Integer:
+    frame->loadInt(index);
+    break;
+
+  case Frame::Long:
+    frame->loadLong(index);
+    break;
+
+  case Frame::Object:
+    frame->loadObject(index);
+    break;
+
+  default:
+    abort(t);
   }
+}
 
+void
+storeVirtualField(MyThread* t, Frame* frame, VirtualObject* o, unsigned field)
+{
   Compiler* c = frame->c;
-  unsigned instruction = codeBody(t, code, ip++);
-  uint32_t offset = codeReadInt16(t, code, ip);
-  uint32_t newIp = (ip - 3) + offset;
-  assert(t, newIp < codeLength(t, code));
-  
-  Compiler::Operand* target = frame->machineIp(newIp);
+  VirtualField* f = o->fields + field;
+  unsigned index = o->local + f->local;
 
-  switch (instruction) {
-  case ifeq:
-    c->jumpIfEqual(size, a, b, target);
+  switch (f->code) {
+  case ByteField:
+  case BooleanField:
+    frame->pushInt
+      (c->load(TargetBytesPerWord, 1, frame->popInt(), TargetBytesPerWord));
+    frame->storeInt(index);
     break;
 
-  case ifne:
-    c->jumpIfNotEqual(size, a, b, target);
+  case CharField:
+    frame->pushInt
+      (c->loadz(TargetBytesPerWord, 2, frame->popInt(), TargetBytesPerWord));
+    frame->storeInt(index);
     break;
 
-  case ifgt:
-    c->jumpIfGreater(size, a, b, target);
+  case ShortField:
+    frame->pushInt
+      (c->load(TargetBytesPerWord, 2, frame->popInt(), TargetBytesPerWord));
+    frame->storeInt(index);
     break;
 
-  case ifge:
-    c->jumpIfGreaterOrEqual(size, a, b, target);
+  case FloatField:
+  case IntField:
+    frame->storeInt(index);
     break;
 
-  case iflt:
-    c->jumpIfLess(size, a, b, target);
+  case DoubleField:
+  case LongField:
+    frame->storeLong(index);
     break;
 
-  case ifle:
-    c->jumpIfLessOrEqual(size, a, b, target);
+  case ObjectField:
+    frame->storeObject(index);
     break;
 
   default:
-    ip -= 3;
-    return false;
+    abort(t);
   }
-
-  saveStateAndCompile(t, frame, newIp);
-  return true;
 }
 
-bool
-floatBranch(MyThread* t, Frame* frame, object code, unsigned& ip,
-            unsigned size, bool lessIfUnordered, Compiler::Operand* a,
-            Compiler::Operand* b)
+void
+pushVirtualConstant(MyThread* t, Frame* frame, uint8_t type,
+                    Compiler::OperandType operandType, int64_t value)
 {
-  if (ip + 3 > codeLength(t, code)) {
-    return false;
-  }
+  Compiler::Operand* operand = frame->c->constant(value, operandType);
 
-  Compiler* c = frame->c;
-  unsigned instruction = codeBody(t, code, ip++);
-  uint32_t offset = codeReadInt16(t, code, ip);
-  uint32_t newIp = (ip - 3) + offset;
-  assert(t, newIp < codeLength(t, code));
-  
-  Compiler::Operand* target = frame->machineIp(newIp);
+  switch (type) {
+  case Frame::Integer:
+    frame->pushInt(operand);
+    break;
 
-  switch (instruction) {
-  case ifeq:
-    c->jumpIfFloatEqual(size, a, b, target);
+  case Frame::Long:
+    frame->pushLong(operand);
     break;
 
-  case ifne:
-    c->jumpIfFloatNotEqual(size, a, b, target);
+  case Frame::Object:
+    frame->pushObject(operand);
     break;
 
-  case ifgt:
-    if (lessIfUnordered) {
-      c->jumpIfFloatGreater(size, a, b, target);
-    } else {
-      c->jumpIfFloatGreaterOrUnordered(size, a, b, target);
-    }
+  default:
+    abort(t);
+  }
+}
+
+unsigned
+compileVirtualOperation(MyThread* t, Frame* frame, VirtualOperation* operation)
+{
+  VirtualObject* o = operation->object;
+
+  switch (operation->type) {
+  case VirtualOperation::Skip:
     break;
 
-  case ifge:
-    if (lessIfUnordered) {
-      c->jumpIfFloatGreaterOrEqual(size, a, b, target);
-    } else {
-      c->jumpIfFloatGreaterOrEqualOrUnordered(size, a, b, target);
+  case VirtualOperation::Construct: {
+    for (unsigned i = o->parameterCount; i > 0; --i) {
+      VirtualParameter* p = o->parameters + i - 1;
+      unsigned index = o->scratch + p->local;
+
+      switch (p->type) {
+      case Frame::Integer:
+        frame->storeInt(index);
+        break;
+
+      case Frame::Long:
+        frame->storeLong(index);
+        break;
+
+      case Frame::Object:
+        frame->storeObject(index);
+        break;
+
+      default:
+        abort(t);
+      }
     }
-    break;
 
-  case iflt:
-    if (lessIfUnordered) {
-      c->jumpIfFloatLessOrUnordered(size, a, b, target);
-    } else {
-      c->jumpIfFloatLess(size, a, b, target);
+    for (unsigned i = 0; i < o->fieldCount; ++i) {
+      VirtualField* f = o->fields + i;
+      if (not f->assigned) {
+        bool isFloat = f->code == FloatField or f->code == DoubleField;
+        pushVirtualConstant
+          (t, frame, fieldStackType(f->code),
+           isFloat ? Compiler::FloatType
+           : (f->code == ObjectField ? Compiler::ObjectType
+              : Compiler::IntegerType), 0);
+
+        storeVirtualField(t, frame, o, i);
+      }
     }
-    break;
 
-  case ifle:
-    if (lessIfUnordered) {
-      c->jumpIfFloatLessOrEqualOrUnordered(size, a, b, target);
-    } else {
-      c->jumpIfFloatLessOrEqual(size, a, b, target);
+    for (unsigned i = 0; i < o->assignmentCount; ++i) {
+      VirtualAssignment* a = o->assignments + i;
+      if (a->source < 0) {
+        pushVirtualConstant(t, frame, a->type, a->operandType, a->value);
+      } else {
+        unsigned index = o->scratch + a->source - 1;
+
+        switch (a->type) {
+        case Frame::Integer:
+          frame->loadInt(index);
+          break;
+
+        case Frame::Long:
+          frame->loadLong(index);
+          break;
+
+        case Frame::Object:
+          frame->loadObject(index);
+          break;
+
+        default:
+          abort(t);
+        }
+      }
+
+      storeVirtualField(t, frame, o, a->field);
     }
+  } break;
+
+  case VirtualOperation::GetField:
+    loadVirtualField(t, frame, o, operation->field);
+    break;
+
+  case VirtualOperation::PutField:
+    storeVirtualField(t, frame, o, operation->field);
     break;
 
   default:
-    ip -= 3;
-    return false;
+    abort(t);
   }
 
-  saveStateAndCompile(t, frame, newIp);
-  return true;
+  return operation->next;
 }
 
+// Returns true if the instruction at the specified ip can neither
+// call out of compiled code nor write memory which may be cached by
+// the frame's load cache.  Writes to primitive fields are allowed,
+// since updateLoads invalidates the affected entries.
 bool
-intrinsic(MyThread* t, Frame* frame, object target)
+preservesLoads(MyThread* t, Context* context, object code, unsigned ip,
+               int* fieldOffset)
 {
-#define MATCH(name, constant)                                           \
-  (byteArrayLength(t, name) == sizeof(constant)                         \
-   and ::strcmp(reinterpret_cast<char*>(&byteArrayBody(t, name, 0)),    \
-                constant) == 0)
+  *fieldOffset = -1;
 
-  object className = vm::className(t, methodClass(t, target));
-  if (UNLIKELY(MATCH(className, "java/lang/Math"))) {
-    Compiler* c = frame->c;
-    if (MATCH(methodName(t, target), "sqrt")
-        and MATCH(methodSpec(t, target), "(D)D"))
-    {
-      frame->pushLong(c->fsqrt(8, frame->popLong()));
+  unsigned instruction = codeBody(t, code, ip);
+  switch (instruction) {
+  case aconst_null:
+  case iconst_m1:
+  case iconst_0:
+  case iconst_1:
+  case iconst_2:
+  case iconst_3:
+  case iconst_4:
+  case iconst_5:
+  case lconst_0:
+  case lconst_1:
+  case bipush:
+  case sipush:
+  case iload:
+  case iload_0:
+  case iload_1:
+  case iload_2:
+  case iload_3:
+  case lload:
+  case lload_0:
+  case lload_1:
+  case lload_2:
+  case lload_3:
+  case fload:
+  case fload_0:
+  case fload_1:
+  case fload_2:
+  case fload_3:
+  case dload:
+  case dload_0:
+  case dload_1:
+  case dload_2:
+  case dload_3:
+  case aload:
+  case aload_0:
+  case aload_1:
+  case aload_2:
+  case aload_3:
+  case istore:
+  case istore_0:
+  case istore_1:
+  case istore_2:
+  case istore_3:
+  case lstore:
+  case lstore_0:
+  case lstore_1:
+  case lstore_2:
+  case lstore_3:
+  case fstore:
+  case fstore_0:
+  case fstore_1:
+  case fstore_2:
+  case fstore_3:
+  case dstore:
+  case dstore_0:
+  case dstore_1:
+  case dstore_2:
+  case dstore_3:
+  case astore:
+  case astore_0:
+  case astore_1:
+  case astore_2:
+  case astore_3:
+  case iinc:
+  case pop_:
+  case pop2:
+  case dup:
+  case dup_x1:
+  case dup_x2:
+  case dup2:
+  case dup2_x1:
+  case dup2_x2:
+  case swap:
+  case iadd:
+  case isub:
+  case imul:
+  case iand:
+  case ior:
+  case ixor:
+  case ishl:
+  case ishr:
+  case iushr:
+  case ineg:
+  case ladd:
+  case lsub:
+  case land:
+  case lor:
+  case lxor:
+  case i2b:
+  case i2c:
+  case i2s:
+  case l2i:
+  case arraylength:
+  case iaload:
+  case baload:
+  case caload:
+  case saload:
+  case laload:
+  case faload:
+  case daload:
+  case aaload:
+  case iastore:
+  case bastore:
+  case castore:
+  case sastore:
+  case lastore:
+  case fastore:
+  case dastore:
+    return true;
+
+  case wide:
+    return codeBody(t, code, ip + 1) != ret;
+
+  case getfield:
+  case putfield: {
+    unsigned index = ip + 1;
+    object field = resolveField
+      (t, context->method, codeReadInt16(t, code, index) - 1, false);
+
+    if (field == 0 or (fieldFlags(t, field) & ACC_VOLATILE)) {
+      return false;
+    } else if (instruction == putfield) {
+      *fieldOffset = targetFieldOffset(context, field);
+      return vm::fieldCode(t, field) != ObjectField;
+    } else {
       return true;
-    } else if (MATCH(methodName(t, target), "abs")) {
-      if (MATCH(methodSpec(t, target), "(I)I")) {
-        frame->pushInt(c->abs(4, frame->popInt()));
-        return true;
-      } else if (MATCH(methodSpec(t, target), "(J)J")) {
-        frame->pushLong(c->abs(8, frame->popLong()));
-        return true;
-      } else if (MATCH(methodSpec(t, target), "(F)F")) {
-        frame->pushInt(c->fabs(4, frame->popInt()));
-        return true;
-      }
     }
   }
-  return false;
+
+  default:
+    return false;
+  }
 }
 
-unsigned
-targetFieldOffset(Context* context, object field)
+// Updates the frame's load cache to account for the instruction at
+// the specified ip, returning the local from which the preceding
+// instruction loaded an object, if any.
+int
+updateLoads(MyThread* t, Frame* frame, object code, unsigned ip)
 {
-  if (context->bootContext) {
-    return context->bootContext->resolver->fieldOffset(context->thread, field);
-  } else {
-    return fieldOffset(context->thread, field);
+  int previous = frame->loadedLocal;
+
+  int fieldOffset;
+  if (frame->context->branchTargets[ip]) {
+    frame->clearLoads();
+    previous = -1;
+  } else if (not preservesLoads(t, frame->context, code, ip, &fieldOffset)) {
+    frame->clearLoads();
+  } else if (fieldOffset >= 0) {
+    frame->invalidateField(fieldOffset);
+  }
+
+  bool isStore;
+  int local = objectLocalIndex(t, code, ip, &isStore);
+  if (local >= 0 and isStore) {
+    frame->invalidateLocal(local);
   }
+
+  frame->loadedLocal = (local >= 0 and not isStore) ? local : -1;
+
+  return previous;
 }
 
 void
@@ -3890,6 +5523,16 @@ compile(MyThread* t, Frame* initialFrame, unsigned ip,
          1, c->register_(t->arch->thread()));
     }
     
+    if (context->virtualTable and context->virtualTable[ip]) {
+      frame->clearLoads();
+      frame->loadedLocal = -1;
+
+      ip = compileVirtualOperation(t, frame, context->virtualTable[ip]);
+      continue;
+    }
+
+    int objectLocal = LoadElimination ? updateLoads(t, frame, code, ip) : -1;
+
 //     fprintf(stderr, "ip: %d map: %ld\n", ip, *(frame->map));
 
     unsigned instruction = codeBody(t, code, ip++);
@@ -4129,6 +5772,15 @@ compile(MyThread* t, Frame* initialFrame, unsigned ip,
     } return;
 
     case arraylength: {
+      Compiler::Operand* length = objectLocal >= 0
+        ? frame->cachedLoad(objectLocal, -1) : 0;
+
+      if (length) {
+        frame->popObject();
+        frame->pushInt(length);
+        break;
+      }
+
       frame->pushInt
         (c->load
          (TargetBytesPerWord, TargetBytesPerWord,
@@ -4136,6 +5788,10 @@ compile(MyThread* t, Frame* initialFrame, unsigned ip,
           (frame->popObject(), Compiler::IntegerType,
            TargetArrayLength, 0, 1),
           TargetBytesPerWord));
+
+      if (objectLocal >= 0) {
+        frame->cacheLoad(objectLocal, -1, c->peek(1, 0));
+      }
     } break;
 
     case astore:
@@ -4463,6 +6119,33 @@ compile(MyThread* t, Frame* initialFrame, unsigned ip,
         } else {
           assert(t, (fieldFlags(t, field) & ACC_STATIC) == 0);
 
+          if (fieldFlags(t, field) & ACC_VOLATILE) {
+            objectLocal = -1;
+          } else if (objectLocal >= 0) {
+            Compiler::Operand* value = frame->cachedLoad
+              (objectLocal, targetFieldOffset(context, field));
+
+            if (value) {
+              frame->popObject();
+
+              switch (fieldCode(t, field)) {
+              case DoubleField:
+              case LongField:
+                frame->pushLong(value);
+                break;
+
+              case ObjectField:
+                frame->pushObject(value);
+                break;
+
+              default:
+                frame->pushInt(value);
+                break;
+              }
+              break;
+            }
+          }
+
           table = frame->popObject();
 
           if (inTryBlock(t, code, ip - 3)) {
@@ -4542,6 +6225,13 @@ compile(MyThread* t, Frame* initialFrame, unsigned ip,
           abort(t);
         }
 
+        if (instruction == getfield and objectLocal >= 0) {
+          frame->cacheLoad
+            (objectLocal, targetFieldOffset(context, field), c->peek
+             ((fieldCode(t, field) == DoubleField
+               or fieldCode(t, field) == LongField) ? 2 : 1, 0));
+        }
+
         if (fieldFlags(t, field) & ACC_VOLATILE) {
           if (TargetBytesPerWord == 4
               and (fieldCode(t, field) == DoubleField
@@ -6115,7 +7805,7 @@ translateExceptionHandlerTable(MyThread* t, Context* context, intptr_t start)
 {
   Compiler* c = context->compiler;
 
-  object oldTable = codeExceptionHandlerTable
+  object oldTable = exceptionHandlerTable
     (t, methodCode(t, context->method));
 
   if (oldTable) {
@@ -6184,7 +7874,7 @@ translateExceptionHandlerTable(MyThread* t, Context* context, intptr_t start)
 object
 translateLineNumberTable(MyThread* t, Context* context, intptr_t start)
 {
-  object oldTable = codeLineNumberTable(t, methodCode(t, context->method));
+  object oldTable = lineNumberTable(t, methodCode(t, context->method));
   if (oldTable) {
     PROTECT(t, oldTable);
 
@@ -7022,6 +8712,13 @@ compile(MyThread* t, Context* context)
 {
   Compiler* c = context->compiler;
 
+  context->branchTargets = findBranchTargets
+    (t, context, methodCode(t, context->method));
+
+  if (ScalarReplacement and context->bootContext == 0) {
+    findVirtualObjects(t, context);
+  }
+
 //   fprintf(stderr, "compiling %s.%s%s\n",
 //           &byteArrayBody(t, className(t, methodClass(t, context->method)), 0),
 //           &byteArrayBody(t, methodName(t, context->method), 0),
@@ -7087,7 +8784,7 @@ compile(MyThread* t, Context* context)
   context->dirtyRoots = false;
   unsigned eventIndex = calculateFrameMaps(t, context, 0, 0);
 
-  object eht = codeExceptionHandlerTable(t, methodCode(t, context->method));
+  object eht = exceptionHandlerTable(t, methodCode(t, context->method));
   if (eht) {
     PROTECT(t, eht);
 
@@ -7232,8 +8929,13 @@ invokeNativeFast(MyThread* t, object method, void* function)
 }
 
 uint64_t
-invokeNativeSlow(MyThread* t, object method, void* function)
+invokeNativeSlow(MyThread* t, object method, object native)
 {
+  void* function = nativeFunction(t, native);
+  bool direct = nativeDirect(t, native);
+  unsigned references = nativeReferences(t, native);
+  unsigned longs = nativeLongs(t, native);
+
   PROTECT(t, method);
 
   unsigned footprint = methodParameterFootprint(t, method) + 1;
@@ -7267,40 +8969,55 @@ invokeNativeSlow(MyThread* t, object method, void* function)
   }
   RUNTIME_ARRAY_BODY(types)[typeOffset++] = POINTER_TYPE;
 
-  MethodSpecIterator it
-    (t, reinterpret_cast<const char*>
-     (&byteArrayBody(t, methodSpec(t, method), 0)));
+  if (direct) {
+    for (unsigned i = 0; i < methodParameterCount(t, method); ++i) {
+      if (references & (1 << i)) {
+        RUNTIME_ARRAY_BODY(args)[argOffset++]
+          = *sp ? reinterpret_cast<uintptr_t>(sp) : 0;
+        ++ sp;
+      } else if (longs & (1 << i)) {
+        memcpy(RUNTIME_ARRAY_BODY(args) + (argOffset++), sp, 8);
+        sp += 2;
+      } else {
+        RUNTIME_ARRAY_BODY(args)[argOffset++] = *(sp++);
+      }
+    }
+  } else {
+    MethodSpecIterator it
+      (t, reinterpret_cast<const char*>
+       (&byteArrayBody(t, methodSpec(t, method), 0)));
   
-  while (it.hasNext()) {
-    unsigned type = RUNTIME_ARRAY_BODY(types)[typeOffset++]
-      = fieldType(t, fieldCode(t, *it.next()));
+    while (it.hasNext()) {
+      unsigned type = RUNTIME_ARRAY_BODY(types)[typeOffset++]
+        = fieldType(t, fieldCode(t, *it.next()));
+
+      switch (type) {
+      case INT8_TYPE:
+      case INT16_TYPE:
+      case INT32_TYPE:
+      case FLOAT_TYPE:
+        RUNTIME_ARRAY_BODY(args)[argOffset++] = *(sp++);
+        break;
 
-    switch (type) {
-    case INT8_TYPE:
-    case INT16_TYPE:
-    case INT32_TYPE:
-    case FLOAT_TYPE:
-      RUNTIME_ARRAY_BODY(args)[argOffset++] = *(sp++);
-      break;
+      case INT64_TYPE:
+      case DOUBLE_TYPE: {
+        memcpy(RUNTIME_ARRAY_BODY(args) + argOffset, sp, 8);
+        argOffset += (8 / BytesPerWord);
+        sp += 2;
+      } break;
 
-    case INT64_TYPE:
-    case DOUBLE_TYPE: {
-      memcpy(RUNTIME_ARRAY_BODY(args) + argOffset, sp, 8);
-      argOffset += (8 / BytesPerWord);
-      sp += 2;
-    } break;
+      case POINTER_TYPE: {
+        if (*sp) {
+          RUNTIME_ARRAY_BODY(args)[argOffset++]
+            = reinterpret_cast<uintptr_t>(sp);
+        } else {
+          RUNTIME_ARRAY_BODY(args)[argOffset++] = 0;
+        }
+        ++ sp;
+      } break;
 
-    case POINTER_TYPE: {
-      if (*sp) {
-        RUNTIME_ARRAY_BODY(args)[argOffset++]
-          = reinterpret_cast<uintptr_t>(sp);
-      } else {
-        RUNTIME_ARRAY_BODY(args)[argOffset++] = 0;
+      default: abort(t);
       }
-      ++ sp;
-    } break;
-
-    default: abort(t);
     }
   }
 
@@ -7330,13 +9047,18 @@ invokeNativeSlow(MyThread* t, object method, void* function)
     t->checkpoint->noThrow = true;
     THREAD_RESOURCE(t, bool, noThrow, t->checkpoint->noThrow = noThrow);
 
-    result = t->m->system->call
-      (function,
-       RUNTIME_ARRAY_BODY(args),
-       RUNTIME_ARRAY_BODY(types),
-       count,
-       footprint * BytesPerWord,
-       returnType);
+    if (direct) {
+      result = invokeDirectNative
+        (t, function, RUNTIME_ARRAY_BODY(args), count);
+    } else {
+      result = t->m->system->call
+        (function,
+         RUNTIME_ARRAY_BODY(args),
+         RUNTIME_ARRAY_BODY(types),
+         count,
+         footprint * BytesPerWord,
+         returnType);
+    }
   }
 
   if (methodFlags(t, method) & ACC_SYNCHRONIZED) {
@@ -7408,7 +9130,7 @@ invokeNative2(MyThread* t, object method)
   if (nativeFast(t, native)) {
     return invokeNativeFast(t, method, nativeFunction(t, native));
   } else {
-    return invokeNativeSlow(t, method, nativeFunction(t, native));
+    return invokeNativeSlow(t, method, native);
   }
 }
 
@@ -9175,16 +10897,13 @@ makeStaticTableArray(Thread* t, unsigned* bootTable, unsigned bootCount,
 object
 makeStringMap(Thread* t, unsigned* table, unsigned count, uintptr_t* heap)
 {
-  object array = makeArray(t, nextPowerOfTwo(count));
-  object map = makeWeakHashMap(t, 0, array);
-  PROTECT(t, map);
-  
+  setRoot(t, Machine::StringMap, makeStringMap(t));
+
   for (unsigned i = 0; i < count; ++i) {
-    object s = bootObject(heap, table[i]);
-    hashMapInsert(t, map, s, 0, stringHash);
+    intern(t, bootObject(heap, table[i]));
   }
 
-  return map;
+  return root(t, Machine::StringMap);
 }
 
 object
@@ -9836,10 +11555,12 @@ compile(MyThread* t, FixedAllocator* allocator, BootContext* bootContext,
 
   PROTECT(t, clone);
 
+  int64_t start = t->m->system->nanoTime();
+
   Context context(t, bootContext, clone);
   compile(t, &context);
 
-  { object ehTable = codeExceptionHandlerTable(t, methodCode(t, clone));
+  { object ehTable = exceptionHandlerTable(t, methodCode(t, clone));
 
     if (ehTable) {
       PROTECT(t, ehTable);
@@ -9901,6 +11622,9 @@ compile(MyThread* t, FixedAllocator* allocator, BootContext* bootContext,
 
   treeUpdate(t, root(t, MethodTree), methodCompiled(t, clone),
              method, root(t, MethodTreeSentinal), compareIpToMethodBounds);
+
+  ++ t->m->compileCount;
+  t->m->compileTime += t->m->system->nanoTime() - start;
 }
 
 object&
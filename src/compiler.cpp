@@ -290,6 +290,9 @@ class Read {
   
   virtual bool valid() = 0;
 
+  // returns true if valid() may need to visit other reads
+  virtual bool recursive() { return false; }
+
   virtual void append(Context* c, Read* r) = 0;
 
   virtual Read* next(Context* c) = 0;
@@ -2699,20 +2702,43 @@ class MultiRead: public Read {
     bool result = false;
     if (not visited) {
       visited = true;
+
+      // check the reads which can be answered directly first, since
+      // chains of multireads may be as long as the number of
+      // junctions a value flows through
       for (Cell** cell = &reads; *cell;) {
         Read* r = static_cast<Read*>((*cell)->value);
-        if (r->valid()) {
-          result = true;
+        if (r->recursive()) {
           cell = &((*cell)->next);
+        } else if (r->valid()) {
+          result = true;
+          break;
         } else {
           *cell = (*cell)->next;
         }
       }
+
+      if (not result) {
+        for (Cell** cell = &reads; *cell;) {
+          Read* r = static_cast<Read*>((*cell)->value);
+          if (r->valid()) {
+            result = true;
+            cell = &((*cell)->next);
+          } else {
+            *cell = (*cell)->next;
+          }
+        }
+      }
+
       visited = false;
     }
     return result;
   }
 
+  virtual bool recursive() {
+    return true;
+  }
+
   virtual void append(Context* c, Read* r) {
     Cell* cell = cons(c, r, 0);
     if (lastRead == 0) {
@@ -26,6 +26,9 @@ const unsigned InitialTenuredFixieCeilingInBytes = 4 * 1024 * 1024;
 
 const unsigned LowMemoryPaddingInBytes = 1024 * 1024;
 
+const unsigned InitialYoungGenerationInBytes = 4 * 1024 * 1024;
+const unsigned MinimumYoungGenerationInBytes = 1024 * 1024;
+
 const bool Verbose = false;
 const bool Verbose2 = false;
 const bool Debug = false;
@@ -564,12 +567,14 @@ free(Context* c, Fixie** fixies, bool resetImmortal = false);
 
 class Context {
  public:
-  Context(System* system, unsigned limit):
+  Context(System* system, unsigned limit, unsigned youngLimit,
+          unsigned pauseTarget):
     system(system),
     client(0),
     count(0),
     limit(limit),
     lowMemoryThreshold(limit / 2),
+    pauseTarget(pauseTarget),
     lock(0),
     
     immortalHeapStart(0),
@@ -595,6 +600,7 @@ class Context {
     gen2Base(0),
     incomingFootprint(0),
     tenureFootprint(0),
+    promotedFootprint(0),
     gen1Padding(0),
     tenurePadding(0),
     gen2Padding(0),
@@ -604,6 +610,8 @@ class Context {
     tenuredFixieFootprint(0),
     tenuredFixieCeiling(InitialTenuredFixieCeilingInBytes),
 
+    tenureThreshold(TenureThreshold),
+
     mode(Heap::MinorCollection),
 
     fixies(0),
@@ -619,6 +627,22 @@ class Context {
     if (not system->success(system->make(&lock))) {
       system->abort();
     }
+
+    memset(ageFootprint, 0, sizeof(ageFootprint));
+
+    if (youngLimit) {
+      minimumYoungLimit = maximumYoungLimit
+        = min(youngLimit, MaximumYoungGenerationInBytes);
+    } else {
+      // unless told otherwise, we let the young generation grow to an
+      // eighth of the heap
+      minimumYoungLimit = MinimumYoungGenerationInBytes;
+      maximumYoungLimit = max
+        (minimumYoungLimit, min(limit / 8, MaximumYoungGenerationInBytes));
+    }
+
+    this->youngLimit = max
+      (minimumYoungLimit, min(InitialYoungGenerationInBytes, maximumYoungLimit));
   }
 
   void dispose() {
@@ -642,6 +666,13 @@ class Context {
   unsigned limit;
   unsigned lowMemoryThreshold;
 
+  // bounds and current value for the number of bytes allocated
+  // between minor collections
+  unsigned minimumYoungLimit;
+  unsigned maximumYoungLimit;
+  unsigned youngLimit;
+  unsigned pauseTarget;
+
   System::Mutex* lock;
 
   uintptr_t* immortalHeapStart;
@@ -667,6 +698,7 @@ class Context {
   
   unsigned incomingFootprint;
   unsigned tenureFootprint;
+  unsigned promotedFootprint;
   unsigned gen1Padding;
   unsigned tenurePadding;
   unsigned gen2Padding;
@@ -676,6 +708,12 @@ class Context {
   unsigned tenuredFixieFootprint;
   unsigned tenuredFixieCeiling;
 
+  // objects in gen1 at least this old are copied to gen2 by the next
+  // collection
+  unsigned tenureThreshold;
+  // footprint of the objects copied to nextGen1, by age
+  unsigned ageFootprint[TenureThreshold + 1];
+
   Heap::CollectionType mode;
 
   Fixie* fixies;
@@ -957,7 +995,7 @@ copy2(Context* c, void* o)
     return copyTo(c, &(c->nextGen2), o, size);
   } else if (c->gen1.contains(o)) {
     unsigned age = c->ageMap.get(o);
-    if (age == TenureThreshold) {
+    if (age >= c->tenureThreshold) {
       if (c->mode == Heap::MinorCollection) {
         assert(c, c->gen2.remaining() >= size);
 
@@ -965,17 +1003,19 @@ copy2(Context* c, void* o)
           c->gen2Base = c->gen2.position();
         }
 
+        c->promotedFootprint += size;
+
         return copyTo(c, &(c->gen2), o, size);
       } else {
+        c->promotedFootprint += size;
+
         return copyTo(c, &(c->nextGen2), o, size);
       }
     } else {
       o = copyTo(c, &(c->nextGen1), o, size);
 
       c->nextAgeMap.setOnly(o, age + 1);
-      if (age + 1 == TenureThreshold) {
-        c->tenureFootprint += size;
-      }
+      c->ageFootprint[age + 1] += size;
 
       return o;
     }
@@ -987,6 +1027,7 @@ copy2(Context* c, void* o)
     o = copyTo(c, &(c->nextGen1), o, size);
 
     c->nextAgeMap.clear(o);
+    c->ageFootprint[0] += size;
 
     return o;
   }
@@ -1581,7 +1622,8 @@ void
 collect2(Context* c)
 {
   c->gen2Base = Top;
-  c->tenureFootprint = 0;
+  c->promotedFootprint = 0;
+  memset(c->ageFootprint, 0, sizeof(c->ageFootprint));
   c->fixieTenureFootprint = 0;
   c->gen1Padding = 0;
   c->tenurePadding = 0;
@@ -1616,6 +1658,43 @@ collect2(Context* c)
   c->client->visitRoots(&v);
 }
 
+void
+chooseTenureThreshold(Context* c)
+{
+  // keep as many survivors in gen1 as will fit in half the young
+  // generation, promoting the oldest ones first if there are too many
+  unsigned desired = c->youngLimit / BytesPerWord / 2;
+
+  unsigned threshold = 1;
+  unsigned retained = c->ageFootprint[0];
+  while (threshold < TenureThreshold
+         and retained + c->ageFootprint[threshold] <= desired)
+  {
+    retained += c->ageFootprint[threshold++];
+  }
+
+  c->tenureThreshold = threshold;
+
+  c->tenureFootprint = 0;
+  for (unsigned i = threshold; i <= TenureThreshold; ++i) {
+    c->tenureFootprint += c->ageFootprint[i];
+  }
+}
+
+void
+resizeYoungGeneration(Context* c, int64_t pause)
+{
+  if (lowMemory(c) or (c->pauseTarget and pause > c->pauseTarget)) {
+    c->youngLimit = max(c->minimumYoungLimit, c->youngLimit / 2);
+  } else if ((c->pauseTarget == 0 or pause * 2 < c->pauseTarget)
+             and c->gen1.position() * 4 < c->incomingFootprint)
+  {
+    // few objects survived, so collecting less often will cost
+    // little extra per collection
+    c->youngLimit = min(c->maximumYoungLimit, c->youngLimit * 2);
+  }
+}
+
 void
 collect(Context* c)
 {
@@ -1641,15 +1720,13 @@ collect(Context* c)
     c->mode = Heap::MajorCollection;
   }
 
-  int64_t then;
+  int64_t then = c->system->now();
   if (Verbose) {
     if (c->mode == Heap::MajorCollection) {
       fprintf(stderr, "major collection\n");
     } else {
       fprintf(stderr, "minor collection\n");
     }
-
-    then = c->system->now();
   }
 
   unsigned count = memoryNeeded(c);
@@ -1686,6 +1763,12 @@ collect(Context* c)
 
   sweepFixies(c);
 
+  chooseTenureThreshold(c);
+
+  if (c->mode == Heap::MinorCollection) {
+    resizeYoungGeneration(c, c->system->now() - then);
+  }
+
   if (Verbose) {
     int64_t now = c->system->now();
     int64_t collection = now - then;
@@ -1721,6 +1804,10 @@ collect(Context* c)
     fprintf(stderr,
             " -   tenured fixies:          %8d bytes\n",
             c->tenuredFixieFootprint);
+
+    fprintf(stderr,
+            " -            young: %8d bytes; tenure threshold: %d\n",
+            c->youngLimit, c->tenureThreshold);
   }
 }
 
@@ -1797,8 +1884,9 @@ free_(Context* c, const void* p, unsigned size)
 
 class MyHeap: public Heap {
  public:
-  MyHeap(System* system, unsigned limit):
-    c(system, limit)
+  MyHeap(System* system, unsigned limit, unsigned youngLimit,
+         unsigned pauseTarget):
+    c(system, limit, youngLimit, pauseTarget)
   { }
 
   virtual void setClient(Heap::Client* client) {
@@ -1925,7 +2013,7 @@ class MyHeap: public Heap {
 
   virtual void pad(void* p) {
     if (c.gen1.contains(p)) {
-      if (c.ageMap.get(p) == TenureThreshold) {
+      if (c.ageMap.get(p) >= c.tenureThreshold) {
         ++ c.tenurePadding;
       } else {
         ++ c.gen1Padding;
@@ -1978,6 +2066,18 @@ class MyHeap: public Heap {
     return c.mode;
   }
 
+  virtual unsigned youngGenerationLimit() {
+    return c.youngLimit;
+  }
+
+  virtual void statistics(Statistics* s) {
+    s->promotedBytes = c.promotedFootprint * BytesPerWord;
+    s->survivorBytes = (c.gen1.position() * BytesPerWord)
+      + c.untenuredFixieFootprint;
+    s->tenuredBytes = (c.gen2.position() * BytesPerWord)
+      + c.tenuredFixieFootprint;
+  }
+
   virtual void disposeFixies() {
     c.disposeFixies();
   }
@@ -1998,10 +2098,11 @@ class MyHeap: public Heap {
 namespace vm {
 
 Heap*
-makeHeap(System* system, unsigned limit)
+makeHeap(System* system, unsigned limit, unsigned youngLimit,
+         unsigned pauseTarget)
 {  
   return new (system->tryAllocate(sizeof(local::MyHeap)))
-    local::MyHeap(system, limit);
+    local::MyHeap(system, limit, youngLimit, pauseTarget);
 }
 
 } // namespace vm
@@ -16,10 +16,15 @@
 
 namespace vm {
 
-// an object must survive TenureThreshold + 2 garbage collections
-// before being copied to gen2 (must be at least 1):
+// an object must survive at most TenureThreshold + 2 garbage
+// collections before being copied to gen2 (must be at least 1).  The
+// heap lowers the threshold when too many objects survive:
 const unsigned TenureThreshold = 3;
 
+// upper bound on the amount of memory allocated between minor
+// collections, whether chosen by the heap or requested by the user:
+const unsigned MaximumYoungGenerationInBytes = 64 * 1024 * 1024;
+
 const unsigned FixieTenureThreshold = TenureThreshold + 2;
 
 class Heap: public Allocator {
@@ -46,6 +51,19 @@ class Heap: public Allocator {
     virtual bool visit(unsigned) = 0;
   };
 
+  class Statistics {
+   public:
+    // bytes copied from the young generation to the old one by the
+    // last collection
+    unsigned promotedBytes;
+    // bytes left in the young generation after the last collection,
+    // including untenured fixed objects
+    unsigned survivorBytes;
+    // bytes in use in the old generation after the last collection,
+    // including tenured fixed objects
+    unsigned tenuredBytes;
+  };
+
   class Client {
    public:
     virtual void collect(void* context, CollectionType type) = 0;
@@ -71,11 +89,17 @@ class Heap: public Allocator {
   virtual void* follow(void* p) = 0;
   virtual Status status(void* p) = 0;
   virtual CollectionType collectionType() = 0;
+  virtual unsigned youngGenerationLimit() = 0;
+  virtual void statistics(Statistics* s) = 0;
   virtual void disposeFixies() = 0;
   virtual void dispose() = 0;
 };
 
-Heap* makeHeap(System* system, unsigned limit);
+// youngLimit fixes the number of bytes allocated between minor
+// collections if nonzero, and pauseTarget asks the heap to keep minor
+// collections shorter than that many milliseconds if nonzero:
+Heap* makeHeap(System* system, unsigned limit, unsigned youngLimit,
+               unsigned pauseTarget);
 
 } // namespace vm
 
@@ -10,6 +10,7 @@
 
 #include "machine.h"
 #include "heapwalk.h"
+#include "zlib-custom.h"
 
 using namespace vm;
 
@@ -25,25 +26,83 @@ enum {
   Pop
 };
 
-void
-write1(FILE* out, uint8_t v)
-{
-  size_t n UNUSED = fwrite(&v, 1, 1, out);
-}
+const uint8_t Magic[] = { 'A', 'V', 'H', 'D' };
 
-void
-write4(FILE* out, uint32_t v)
-{
-  uint8_t b[] = { v >> 24, (v >> 16) & 0xFF, (v >> 8) & 0xFF, v & 0xFF };
-  size_t n UNUSED = fwrite(b, 4, 1, out);
-}
+const uint8_t Version = 2;
 
-void
-writeString(FILE* out, int8_t* p, unsigned size)
-{
-  write4(out, size);
-  size_t n UNUSED = fwrite(p, size, 1, out);
-}
+const uint8_t Compressed = 1 << 0;
+
+const unsigned BufferSize = 16 * 1024;
+
+class Writer {
+ public:
+  Writer(FILE* out, bool compress):
+    out(out), position(0), compressed(false)
+  {
+    if (compress) {
+      memset(&stream, 0, sizeof(z_stream));
+      compressed = deflateInit(&stream, Z_BEST_SPEED) == Z_OK;
+    }
+
+    uint8_t header[] = { Magic[0], Magic[1], Magic[2], Magic[3], Version,
+                         static_cast<uint8_t>(compressed ? Compressed : 0),
+                         BytesPerWord };
+    size_t n UNUSED = fwrite(header, sizeof(header), 1, out);
+  }
+
+  void write1(uint8_t v) {
+    if (position == BufferSize) {
+      flush(Z_NO_FLUSH);
+    }
+    buffer[position++] = v;
+  }
+
+  void writeVarint(uint32_t v) {
+    while (v >= 0x80) {
+      write1((v & 0x7F) | 0x80);
+      v >>= 7;
+    }
+    write1(v);
+  }
+
+  void writeString(int8_t* p, unsigned size) {
+    writeVarint(size);
+    for (unsigned i = 0; i < size; ++i) {
+      write1(p[i]);
+    }
+  }
+
+  void flush(int mode) {
+    if (compressed) {
+      stream.next_in = buffer;
+      stream.avail_in = position;
+      do {
+        stream.next_out = output;
+        stream.avail_out = BufferSize;
+        deflate(&stream, mode);
+        size_t n UNUSED = fwrite
+          (output, BufferSize - stream.avail_out, 1, out);
+      } while (stream.avail_out == 0);
+    } else {
+      size_t n UNUSED = fwrite(buffer, position, 1, out);
+    }
+    position = 0;
+  }
+
+  void dispose() {
+    flush(Z_FINISH);
+    if (compressed) {
+      deflateEnd(&stream);
+    }
+  }
+
+  FILE* out;
+  unsigned position;
+  bool compressed;
+  z_stream stream;
+  uint8_t buffer[BufferSize];
+  uint8_t output[BufferSize];
+};
 
 unsigned
 objectSize(Thread* t, object o)
@@ -62,26 +121,26 @@ dumpHeap(Thread* t, FILE* out)
 {
   class Visitor: public HeapVisitor {
    public:
-    Visitor(Thread* t, FILE* out): t(t), out(out), nextNumber(1) { }
+    Visitor(Thread* t, local::Writer* w): t(t), w(w), nextNumber(1) { }
 
     virtual void root() {
-      write1(out, local::Root);      
+      w->write1(local::Root);
     }
 
     virtual unsigned visitNew(object p) {
       if (p) {
         unsigned number = nextNumber++;
-        local::write4(out, number);
+        w->writeVarint(number);
 
-        local::write1(out, local::Size);
-        local::write4(out, local::objectSize(t, p));
+        w->write1(local::Size);
+        w->writeVarint(local::objectSize(t, p));
 
         if (objectClass(t, p) == type(t, Machine::ClassType)) {
           object name = className(t, p);
           if (name) {
-            local::write1(out, local::ClassName);
-            local::writeString(out, &byteArrayBody(t, name, 0),
-                               byteArrayLength(t, name) - 1);
+            w->write1(local::ClassName);
+            w->writeString(&byteArrayBody(t, name, 0),
+                           byteArrayLength(t, name) - 1);
           }
         }
 
@@ -92,25 +151,41 @@ dumpHeap(Thread* t, FILE* out)
     }
 
     virtual void visitOld(object, unsigned number) {
-      local::write4(out, number);      
+      w->writeVarint(number);
     }
 
     virtual void push(object, unsigned, unsigned) {
-      local::write1(out, local::Push);
+      w->write1(local::Push);
     }
 
     virtual void pop() {
-      local::write1(out, local::Pop);
+      w->write1(local::Pop);
     }
 
     Thread* t;
-    FILE* out;
+    local::Writer* w;
     unsigned nextNumber;
-  } visitor(t, out);
+  };
+
+  const char* compress = findProperty(t, "avian.heap.dump.compress");
+
+  local::Writer* w = static_cast<local::Writer*>
+    (t->m->heap->tryAllocate(sizeof(local::Writer)));
+  if (w == 0) {
+    return;
+  }
+
+  new (w) local::Writer
+    (out, compress == 0 or ::strcmp(compress, "false") != 0);
+
+  Visitor visitor(t, w);
+
+  HeapWalker* hw = makeHeapWalker(t, &visitor);
+  hw->visitAllRoots();
+  hw->dispose();
 
-  HeapWalker* w = makeHeapWalker(t, &visitor);
-  w->visitAllRoots();
   w->dispose();
+  t->m->heap->free(w, sizeof(local::Writer));
 }
 
 } // namespace vm
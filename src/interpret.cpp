@@ -26,6 +26,32 @@ const unsigned FrameMethodOffset = 2;
 const unsigned FrameIpOffset = 3;
 const unsigned FrameFootprint = 4;
 
+// Opcodes which the interpreter substitutes for standard ones once
+// the constant pool entries they refer to have been resolved.  Each
+// keeps the operands of the instruction it replaces, so a thread
+// which read the original opcode just before it was replaced still
+// executes correctly.  See quicken().
+enum QuickOpCode {
+  getfield_quick_int = 0xcb,
+  getfield_quick_long,
+  getfield_quick_object,
+  putfield_quick_int,
+  putfield_quick_long,
+  putfield_quick_object,
+  invokevirtual_quick,
+  invokespecial_quick,
+  invokestatic_quick,
+  ldc_quick_int,
+  ldc_quick_object,
+  ldc_w_quick_int,
+  ldc_w_quick_object,
+
+  // superinstructions: aload_0 fused with the quickened getfield
+  // following it
+  aload_0_getfield_quick_int,
+  aload_0_getfield_quick_object
+};
+
 class Thread: public vm::Thread {
  public:
   Thread(Machine* m, object javaThread, vm::Thread* parent):
@@ -530,8 +556,13 @@ marshalArguments(Thread* t, uintptr_t* args, uint8_t* types, unsigned sp,
 }
 
 unsigned
-invokeNativeSlow(Thread* t, object method, void* function)
+invokeNativeSlow(Thread* t, object method, object native)
 {
+  void* function = nativeFunction(t, native);
+  bool direct = nativeDirect(t, native);
+  unsigned references = nativeReferences(t, native);
+  unsigned longs = nativeLongs(t, native);
+
   PROTECT(t, method);
 
   pushFrame(t, method);
@@ -569,9 +600,24 @@ invokeNativeSlow(Thread* t, object method, void* function)
   }
   RUNTIME_ARRAY_BODY(types)[typeOffset++] = POINTER_TYPE;
 
-  marshalArguments
-    (t, RUNTIME_ARRAY_BODY(args) + argOffset,
-     RUNTIME_ARRAY_BODY(types) + typeOffset, sp, method, false);
+  if (direct) {
+    for (unsigned i = 0; i < methodParameterCount(t, method); ++i) {
+      if (references & (1 << i)) {
+        object* v = reinterpret_cast<object*>(t->stack + ((sp++) * 2) + 1);
+        RUNTIME_ARRAY_BODY(args)[argOffset++]
+          = *v ? reinterpret_cast<uintptr_t>(v) : 0;
+      } else if (longs & (1 << i)) {
+        RUNTIME_ARRAY_BODY(args)[argOffset++] = peekLong(t, sp);
+        sp += 2;
+      } else {
+        RUNTIME_ARRAY_BODY(args)[argOffset++] = peekInt(t, sp++);
+      }
+    }
+  } else {
+    marshalArguments
+      (t, RUNTIME_ARRAY_BODY(args) + argOffset,
+       RUNTIME_ARRAY_BODY(types) + typeOffset, sp, method, false);
+  }
 
   unsigned returnCode = methodReturnCode(t, method);
   unsigned returnType = fieldType(t, returnCode);
@@ -589,13 +635,18 @@ invokeNativeSlow(Thread* t, object method, void* function)
     t->checkpoint->noThrow = true;
     THREAD_RESOURCE(t, bool, noThrow, t->checkpoint->noThrow = noThrow);
 
-    result = t->m->system->call
-      (function,
-       RUNTIME_ARRAY_BODY(args),
-       RUNTIME_ARRAY_BODY(types),
-       count,
-       footprint * BytesPerWord,
-       returnType);
+    if (direct) {
+      result = invokeDirectNative
+        (t, function, RUNTIME_ARRAY_BODY(args), count);
+    } else {
+      result = t->m->system->call
+        (function,
+         RUNTIME_ARRAY_BODY(args),
+         RUNTIME_ARRAY_BODY(types),
+         count,
+         footprint * BytesPerWord,
+         returnType);
+    }
   }
 
   if (DebugRun) {
@@ -653,7 +704,7 @@ invokeNative(Thread* t, object method)
 
     return methodReturnCode(t, method);
   } else {
-    return invokeNativeSlow(t, method, nativeFunction(t, native));
+    return invokeNativeSlow(t, method, native);
   }
 }
 
@@ -670,7 +721,7 @@ findExceptionHandler(Thread* t, object method, unsigned ip)
 {
   PROTECT(t, method);
 
-  object eht = codeExceptionHandlerTable(t, methodCode(t, method));
+  object eht = exceptionHandlerTable(t, methodCode(t, method));
       
   if (eht) {
     for (unsigned i = 0; i < exceptionHandlerTableLength(t, eht); ++i) {
@@ -724,6 +775,9 @@ pushField(Thread* t, object target, object field)
     break;
 
   case CharField:
+    pushInt(t, cast<uint16_t>(target, fieldOffset(t, field)));
+    break;
+
   case ShortField:
     pushInt(t, cast<int16_t>(target, fieldOffset(t, field)));
     break;
@@ -747,6 +801,121 @@ pushField(Thread* t, object target, object field)
   }
 }
 
+void
+quicken(Thread* t, unsigned ip, unsigned opcode)
+{
+  // make sure anything resolved on the way here is visible to
+  // threads which see the new opcode
+  storeStoreMemoryBarrier();
+
+  codeBody(t, t->code, ip) = opcode;
+}
+
+// Replaces the getfield or putfield at ip with the quick form for
+// the type of the specified field, where base is the int form and
+// the long and object forms follow it.  Returns false if the field is
+// not eligible.
+bool
+quickenField(Thread* t, unsigned ip, object field, unsigned base)
+{
+  // volatile fields need the barriers and locking done by
+  // ACQUIRE_FIELD_FOR_READ and ACQUIRE_FIELD_FOR_WRITE, and narrow
+  // fields are rare enough not to be worth their own opcodes
+  if (fieldFlags(t, field) & ACC_VOLATILE) {
+    return false;
+  }
+
+  switch (fieldCode(t, field)) {
+  case FloatField:
+  case IntField:
+    quicken(t, ip, base);
+    return true;
+
+  case DoubleField:
+  case LongField:
+    quicken(t, ip, base + 1);
+    return true;
+
+  case ObjectField:
+    quicken(t, ip, base + 2);
+    return true;
+
+  default:
+    return false;
+  }
+}
+
+inline object
+quickReference(Thread* t, unsigned index)
+{
+  object o = singletonObject(t, codePool(t, t->code), index - 1);
+  loadMemoryBarrier();
+  return o;
+}
+
+#define STANDARD_OPCODES(X) \
+  X(aaload) X(aastore) X(aconst_null) X(aload) X(aload_0) X(aload_1) \
+  X(aload_2) X(aload_3) X(anewarray) X(areturn) X(arraylength) \
+  X(astore) X(astore_0) X(astore_1) X(astore_2) X(astore_3) X(athrow) \
+  X(baload) X(bastore) X(bipush) X(caload) X(castore) X(checkcast) \
+  X(d2f) X(d2i) X(d2l) X(dadd) X(daload) X(dastore) X(dcmpg) X(dcmpl) \
+  X(dconst_0) X(dconst_1) X(ddiv) X(dload) X(dload_0) X(dload_1) \
+  X(dload_2) X(dload_3) X(dmul) X(dneg) X(drem) X(dreturn) X(dstore) \
+  X(dstore_0) X(dstore_1) X(dstore_2) X(dstore_3) X(dsub) X(dup) \
+  X(dup2) X(dup2_x1) X(dup2_x2) X(dup_x1) X(dup_x2) X(f2d) X(f2i) \
+  X(f2l) X(fadd) X(faload) X(fastore) X(fcmpg) X(fcmpl) X(fconst_0) \
+  X(fconst_1) X(fconst_2) X(fdiv) X(fload) X(fload_0) X(fload_1) \
+  X(fload_2) X(fload_3) X(fmul) X(fneg) X(frem) X(freturn) X(fstore) \
+  X(fstore_0) X(fstore_1) X(fstore_2) X(fstore_3) X(fsub) X(getfield) \
+  X(getstatic) X(goto_) X(goto_w) X(i2b) X(i2c) X(i2d) X(i2f) X(i2l) \
+  X(i2s) X(iadd) X(iaload) X(iand) X(iastore) X(iconst_0) X(iconst_1) \
+  X(iconst_2) X(iconst_3) X(iconst_4) X(iconst_5) X(iconst_m1) \
+  X(idiv) X(if_acmpeq) X(if_acmpne) X(if_icmpeq) X(if_icmpge) \
+  X(if_icmpgt) X(if_icmple) X(if_icmplt) X(if_icmpne) X(ifeq) X(ifge) \
+  X(ifgt) X(ifle) X(iflt) X(ifne) X(ifnonnull) X(ifnull) X(iinc) \
+  X(iload) X(iload_0) X(iload_1) X(iload_2) X(iload_3) X(impdep1) \
+  X(imul) X(ineg) X(instanceof) X(invokeinterface) X(invokespecial) \
+  X(invokestatic) X(invokevirtual) X(ior) X(irem) X(ireturn) X(ishl) \
+  X(ishr) X(istore) X(istore_0) X(istore_1) X(istore_2) X(istore_3) \
+  X(isub) X(iushr) X(ixor) X(jsr) X(jsr_w) X(l2d) X(l2f) X(l2i) \
+  X(ladd) X(laload) X(land) X(lastore) X(lcmp) X(lconst_0) \
+  X(lconst_1) X(ldc) X(ldc2_w) X(ldc_w) X(ldiv_) X(lload) X(lload_0) \
+  X(lload_1) X(lload_2) X(lload_3) X(lmul) X(lneg) X(lookupswitch) \
+  X(lor) X(lrem) X(lreturn) X(lshl) X(lshr) X(lstore) X(lstore_0) \
+  X(lstore_1) X(lstore_2) X(lstore_3) X(lsub) X(lushr) X(lxor) \
+  X(monitorenter) X(monitorexit) X(multianewarray) X(new_) \
+  X(newarray) X(nop) X(pop2) X(pop_) X(putfield) X(putstatic) X(ret) \
+  X(return_) X(saload) X(sastore) X(sipush) X(swap) X(tableswitch) \
+  X(wide)
+
+#define QUICK_OPCODES(X) \
+  X(getfield_quick_int) X(getfield_quick_long) \
+  X(getfield_quick_object) X(putfield_quick_int) \
+  X(putfield_quick_long) X(putfield_quick_object) \
+  X(invokevirtual_quick) X(invokespecial_quick) X(invokestatic_quick) \
+  X(ldc_quick_int) X(ldc_quick_object) X(ldc_w_quick_int) \
+  X(ldc_w_quick_object) X(aload_0_getfield_quick_int) \
+  X(aload_0_getfield_quick_object)
+
+#ifdef __GNUC__
+// Use the "labels as values" extension to jump directly from the end
+// of each instruction to the start of the next one.  This gives every
+// instruction its own indirect branch, which branch predictors
+// handle much better than the single one a switch compiles to.
+#  define LABEL(x) op_##x:
+#  define NEXT                                  \
+  do {                                          \
+    if (DebugRun) goto loop;                    \
+    instruction = codeBody(t, code, ip++);      \
+    goto *dispatchTable[instruction];           \
+  } while (0)
+#else
+#  define LABEL(x)
+#  define NEXT goto loop
+#endif
+
+#define CASE(x) case x: LABEL(x)
+
 object
 interpret3(Thread* t, const int base)
 {
@@ -758,6 +927,28 @@ interpret3(Thread* t, const int base)
   object& exception = t->exception;
   uintptr_t* stack = t->stack;
 
+#ifdef __GNUC__
+  static void* dispatchTable[256];
+  static bool dispatchTableReady = false;
+
+  if (UNLIKELY(not dispatchTableReady)) {
+    for (unsigned i = 0; i < 256; ++i) {
+      dispatchTable[i] = &&op_default;
+    }
+
+#  define ENTRY(x) dispatchTable[vm::x] = &&op_##x;
+    STANDARD_OPCODES(ENTRY)
+#  undef ENTRY
+#  define ENTRY(x) dispatchTable[x] = &&op_##x;
+    QUICK_OPCODES(ENTRY)
+#  undef ENTRY
+
+    storeStoreMemoryBarrier();
+    dispatchTableReady = true;
+  }
+  loadMemoryBarrier();
+#endif
+
   if (UNLIKELY(exception)) {
     goto throw_;
   }
@@ -790,7 +981,7 @@ interpret3(Thread* t, const int base)
   }
 
   switch (instruction) {
-  case aaload: {
+  CASE(aaload) {
     int32_t index = popInt(t);
     object array = popObject(t);
 
@@ -809,9 +1000,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case aastore: {
+  CASE(aastore) {
     object value = popObject(t);
     int32_t index = popInt(t);
     object array = popObject(t);
@@ -831,33 +1022,69 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case aconst_null: {
+  CASE(aconst_null) {
     pushObject(t, 0);
-  } goto loop;
+  } NEXT;
 
-  case aload: {
+  CASE(aload) {
     pushObject(t, localObject(t, codeBody(t, code, ip++)));
-  } goto loop;
+  } NEXT;
 
-  case aload_0: {
+  CASE(aload_0) {
     pushObject(t, localObject(t, 0));
-  } goto loop;
 
-  case aload_1: {
+    switch (codeBody(t, code, ip)) {
+    case getfield_quick_int:
+      quicken(t, ip - 1, aload_0_getfield_quick_int);
+      break;
+
+    case getfield_quick_object:
+      quicken(t, ip - 1, aload_0_getfield_quick_object);
+      break;
+    }
+  } NEXT;
+
+  CASE(aload_0_getfield_quick_int) {
+    object o = localObject(t, 0);
+    // skip the getfield opcode
+    ++ ip;
+    if (LIKELY(o)) {
+      uint16_t index = codeReadInt16(t, code, ip);
+      pushInt(t, cast<int32_t>(o, fieldOffset(t, quickReference(t, index))));
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
+
+  CASE(aload_0_getfield_quick_object) {
+    object o = localObject(t, 0);
+    ++ ip;
+    if (LIKELY(o)) {
+      uint16_t index = codeReadInt16(t, code, ip);
+      pushObject
+        (t, cast<object>(o, fieldOffset(t, quickReference(t, index))));
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
+
+  CASE(aload_1) {
     pushObject(t, localObject(t, 1));
-  } goto loop;
+  } NEXT;
 
-  case aload_2: {
+  CASE(aload_2) {
     pushObject(t, localObject(t, 2));
-  } goto loop;
+  } NEXT;
 
-  case aload_3: {
+  CASE(aload_3) {
     pushObject(t, localObject(t, 3));
-  } goto loop;
+  } NEXT;
 
-  case anewarray: {
+  CASE(anewarray) {
     int32_t count = popInt(t);
 
     if (LIKELY(count >= 0)) {
@@ -871,20 +1098,20 @@ interpret3(Thread* t, const int base)
         (t, Machine::NegativeArraySizeExceptionType, "%d", count);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case areturn: {
+  CASE(areturn) {
     object result = popObject(t);
     if (frame > base) {
       popFrame(t);
       pushObject(t, result);
-      goto loop;
+      NEXT;
     } else {
       return result;
     }
-  } goto loop;
+  } NEXT;
 
-  case arraylength: {
+  CASE(arraylength) {
     object array = popObject(t);
     if (LIKELY(array)) {
       pushInt(t, cast<uintptr_t>(array, BytesPerWord));
@@ -892,36 +1119,36 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case astore: {
+  CASE(astore) {
     store(t, codeBody(t, code, ip++));
-  } goto loop;
+  } NEXT;
 
-  case astore_0: {
+  CASE(astore_0) {
     store(t, 0);
-  } goto loop;
+  } NEXT;
 
-  case astore_1: {
+  CASE(astore_1) {
     store(t, 1);
-  } goto loop;
+  } NEXT;
 
-  case astore_2: {
+  CASE(astore_2) {
     store(t, 2);
-  } goto loop;
+  } NEXT;
 
-  case astore_3: {
+  CASE(astore_3) {
     store(t, 3);
-  } goto loop;
+  } NEXT;
 
-  case athrow: {
+  CASE(athrow) {
     exception = popObject(t);
     if (UNLIKELY(exception == 0)) {
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
     }
   } goto throw_;
 
-  case baload: {
+  CASE(baload) {
     int32_t index = popInt(t);
     object array = popObject(t);
 
@@ -955,9 +1182,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case bastore: {
+  CASE(bastore) {
     int8_t value = popInt(t);
     int32_t index = popInt(t);
     object array = popObject(t);
@@ -991,13 +1218,13 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case bipush: {
+  CASE(bipush) {
     pushInt(t, static_cast<int8_t>(codeBody(t, code, ip++)));
-  } goto loop;
+  } NEXT;
 
-  case caload: {
+  CASE(caload) {
     int32_t index = popInt(t);
     object array = popObject(t);
 
@@ -1016,9 +1243,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case castore: {
+  CASE(castore) {
     uint16_t value = popInt(t);
     int32_t index = popInt(t);
     object array = popObject(t);
@@ -1038,9 +1265,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case checkcast: {
+  CASE(checkcast) {
     uint16_t index = codeReadInt16(t, code, ip);
 
     if (peekObject(t, sp - 1)) {
@@ -1056,28 +1283,28 @@ interpret3(Thread* t, const int base)
         goto throw_;
       }
     }
-  } goto loop;
+  } NEXT;
 
-  case d2f: {
+  CASE(d2f) {
     pushFloat(t, static_cast<float>(popDouble(t)));
-  } goto loop;
+  } NEXT;
 
-  case d2i: {
+  CASE(d2i) {
     pushInt(t, static_cast<int32_t>(popDouble(t)));
-  } goto loop;
+  } NEXT;
 
-  case d2l: {
+  CASE(d2l) {
     pushLong(t, static_cast<int64_t>(popDouble(t)));
-  } goto loop;
+  } NEXT;
 
-  case dadd: {
+  CASE(dadd) {
     double b = popDouble(t);
     double a = popDouble(t);
     
     pushDouble(t, a + b);
-  } goto loop;
+  } NEXT;
 
-  case daload: {
+  CASE(daload) {
     int32_t index = popInt(t);
     object array = popObject(t);
 
@@ -1096,9 +1323,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case dastore: {
+  CASE(dastore) {
     double value = popDouble(t);
     int32_t index = popInt(t);
     object array = popObject(t);
@@ -1118,9 +1345,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case dcmpg: {
+  CASE(dcmpg) {
     double b = popDouble(t);
     double a = popDouble(t);
     
@@ -1133,9 +1360,9 @@ interpret3(Thread* t, const int base)
     } else {
       pushInt(t, 1);
     }
-  } goto loop;
+  } NEXT;
 
-  case dcmpl: {
+  CASE(dcmpl) {
     double b = popDouble(t);
     double a = popDouble(t);
     
@@ -1148,60 +1375,60 @@ interpret3(Thread* t, const int base)
     } else {
       pushInt(t, static_cast<unsigned>(-1));
     }
-  } goto loop;
+  } NEXT;
 
-  case dconst_0: {
+  CASE(dconst_0) {
     pushDouble(t, 0);
-  } goto loop;
+  } NEXT;
 
-  case dconst_1: {
+  CASE(dconst_1) {
     pushDouble(t, 1);
-  } goto loop;
+  } NEXT;
 
-  case ddiv: {
+  CASE(ddiv) {
     double b = popDouble(t);
     double a = popDouble(t);
     
     pushDouble(t, a / b);
-  } goto loop;
+  } NEXT;
 
-  case dmul: {
+  CASE(dmul) {
     double b = popDouble(t);
     double a = popDouble(t);
     
     pushDouble(t, a * b);
-  } goto loop;
+  } NEXT;
 
-  case dneg: {
+  CASE(dneg) {
     double a = popDouble(t);
     
     pushDouble(t, - a);
-  } goto loop;
+  } NEXT;
 
-  case vm::drem: {
+  case vm::drem: LABEL(drem) {
     double b = popDouble(t);
     double a = popDouble(t);
     
     pushDouble(t, fmod(a, b));
-  } goto loop;
+  } NEXT;
 
-  case dsub: {
+  CASE(dsub) {
     double b = popDouble(t);
     double a = popDouble(t);
     
     pushDouble(t, a - b);
-  } goto loop;
+  } NEXT;
 
-  case dup: {
+  CASE(dup) {
     if (DebugStack) {
       fprintf(stderr, "dup\n");
     }
 
     memcpy(stack + ((sp    ) * 2), stack + ((sp - 1) * 2), BytesPerWord * 2);
     ++ sp;
-  } goto loop;
+  } NEXT;
 
-  case dup_x1: {
+  CASE(dup_x1) {
     if (DebugStack) {
       fprintf(stderr, "dup_x1\n");
     }
@@ -1210,9 +1437,9 @@ interpret3(Thread* t, const int base)
     memcpy(stack + ((sp - 1) * 2), stack + ((sp - 2) * 2), BytesPerWord * 2);
     memcpy(stack + ((sp - 2) * 2), stack + ((sp    ) * 2), BytesPerWord * 2);
     ++ sp;
-  } goto loop;
+  } NEXT;
 
-  case dup_x2: {
+  CASE(dup_x2) {
     if (DebugStack) {
       fprintf(stderr, "dup_x2\n");
     }
@@ -1222,18 +1449,18 @@ interpret3(Thread* t, const int base)
     memcpy(stack + ((sp - 2) * 2), stack + ((sp - 3) * 2), BytesPerWord * 2);
     memcpy(stack + ((sp - 3) * 2), stack + ((sp    ) * 2), BytesPerWord * 2);
     ++ sp;
-  } goto loop;
+  } NEXT;
 
-  case dup2: {
+  CASE(dup2) {
     if (DebugStack) {
       fprintf(stderr, "dup2\n");
     }
 
     memcpy(stack + ((sp    ) * 2), stack + ((sp - 2) * 2), BytesPerWord * 4);
     sp += 2;
-  } goto loop;
+  } NEXT;
 
-  case dup2_x1: {
+  CASE(dup2_x1) {
     if (DebugStack) {
       fprintf(stderr, "dup2_x1\n");
     }
@@ -1243,9 +1470,9 @@ interpret3(Thread* t, const int base)
     memcpy(stack + ((sp - 1) * 2), stack + ((sp - 3) * 2), BytesPerWord * 2);
     memcpy(stack + ((sp - 3) * 2), stack + ((sp    ) * 2), BytesPerWord * 4);
     sp += 2;
-  } goto loop;
+  } NEXT;
 
-  case dup2_x2: {
+  CASE(dup2_x2) {
     if (DebugStack) {
       fprintf(stderr, "dup2_x2\n");
     }
@@ -1256,28 +1483,28 @@ interpret3(Thread* t, const int base)
     memcpy(stack + ((sp - 2) * 2), stack + ((sp - 4) * 2), BytesPerWord * 2);
     memcpy(stack + ((sp - 4) * 2), stack + ((sp    ) * 2), BytesPerWord * 4);
     sp += 2;
-  } goto loop;
+  } NEXT;
 
-  case f2d: {
+  CASE(f2d) {
     pushDouble(t, popFloat(t));
-  } goto loop;
+  } NEXT;
 
-  case f2i: {
+  CASE(f2i) {
     pushInt(t, static_cast<int32_t>(popFloat(t)));
-  } goto loop;
+  } NEXT;
 
-  case f2l: {
+  CASE(f2l) {
     pushLong(t, static_cast<int64_t>(popFloat(t)));
-  } goto loop;
+  } NEXT;
 
-  case fadd: {
+  CASE(fadd) {
     float b = popFloat(t);
     float a = popFloat(t);
     
     pushFloat(t, a + b);
-  } goto loop;
+  } NEXT;
 
-  case faload: {
+  CASE(faload) {
     int32_t index = popInt(t);
     object array = popObject(t);
 
@@ -1296,9 +1523,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case fastore: {
+  CASE(fastore) {
     float value = popFloat(t);
     int32_t index = popInt(t);
     object array = popObject(t);
@@ -1318,9 +1545,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case fcmpg: {
+  CASE(fcmpg) {
     float b = popFloat(t);
     float a = popFloat(t);
     
@@ -1333,9 +1560,9 @@ interpret3(Thread* t, const int base)
     } else {
       pushInt(t, 1);
     }
-  } goto loop;
+  } NEXT;
 
-  case fcmpl: {
+  CASE(fcmpl) {
     float b = popFloat(t);
     float a = popFloat(t);
     
@@ -1348,55 +1575,55 @@ interpret3(Thread* t, const int base)
     } else {
       pushInt(t, static_cast<unsigned>(-1));
     }
-  } goto loop;
+  } NEXT;
 
-  case fconst_0: {
+  CASE(fconst_0) {
     pushFloat(t, 0);
-  } goto loop;
+  } NEXT;
 
-  case fconst_1: {
+  CASE(fconst_1) {
     pushFloat(t, 1);
-  } goto loop;
+  } NEXT;
 
-  case fconst_2: {
+  CASE(fconst_2) {
     pushFloat(t, 2);
-  } goto loop;
+  } NEXT;
 
-  case fdiv: {
+  CASE(fdiv) {
     float b = popFloat(t);
     float a = popFloat(t);
     
     pushFloat(t, a / b);
-  } goto loop;
+  } NEXT;
 
-  case fmul: {
+  CASE(fmul) {
     float b = popFloat(t);
     float a = popFloat(t);
     
     pushFloat(t, a * b);
-  } goto loop;
+  } NEXT;
 
-  case fneg: {
+  CASE(fneg) {
     float a = popFloat(t);
     
     pushFloat(t, - a);
-  } goto loop;
+  } NEXT;
 
-  case frem: {
+  CASE(frem) {
     float b = popFloat(t);
     float a = popFloat(t);
     
     pushFloat(t, fmodf(a, b));
-  } goto loop;
+  } NEXT;
 
-  case fsub: {
+  CASE(fsub) {
     float b = popFloat(t);
     float a = popFloat(t);
     
     pushFloat(t, a - b);
-  } goto loop;
+  } NEXT;
 
-  case getfield: {
+  CASE(getfield) {
     if (LIKELY(peekObject(t, sp - 1))) {
       uint16_t index = codeReadInt16(t, code, ip);
     
@@ -1404,6 +1631,11 @@ interpret3(Thread* t, const int base)
 
       assert(t, (fieldFlags(t, field) & ACC_STATIC) == 0);
 
+      if (quickenField(t, ip - 3, field, getfield_quick_int)) {
+        ip -= 3;
+        NEXT;
+      }
+
       PROTECT(t, field);
 
       ACQUIRE_FIELD_FOR_READ(t, field);
@@ -1413,9 +1645,46 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
+
+  CASE(getfield_quick_int) {
+    object o = peekObject(t, sp - 1);
+    if (LIKELY(o)) {
+      uint16_t index = codeReadInt16(t, code, ip);
+      popObject(t);
+      pushInt(t, cast<int32_t>(o, fieldOffset(t, quickReference(t, index))));
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
+
+  CASE(getfield_quick_long) {
+    object o = peekObject(t, sp - 1);
+    if (LIKELY(o)) {
+      uint16_t index = codeReadInt16(t, code, ip);
+      popObject(t);
+      pushLong(t, cast<int64_t>(o, fieldOffset(t, quickReference(t, index))));
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
+
+  CASE(getfield_quick_object) {
+    object o = peekObject(t, sp - 1);
+    if (LIKELY(o)) {
+      uint16_t index = codeReadInt16(t, code, ip);
+      popObject(t);
+      pushObject
+        (t, cast<object>(o, fieldOffset(t, quickReference(t, index))));
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
 
-  case getstatic: {
+  CASE(getstatic) {
     uint16_t index = codeReadInt16(t, code, ip);
 
     object field = resolveField(t, frameMethod(t, frame), index - 1);
@@ -1429,50 +1698,50 @@ interpret3(Thread* t, const int base)
     ACQUIRE_FIELD_FOR_READ(t, field);
 
     pushField(t, classStaticTable(t, fieldClass(t, field)), field);
-  } goto loop;
+  } NEXT;
 
-  case goto_: {
+  CASE(goto_) {
     int16_t offset = codeReadInt16(t, code, ip);
     ip = (ip - 3) + offset;
-  } goto loop;
+  } NEXT;
     
-  case goto_w: {
+  CASE(goto_w) {
     int32_t offset = codeReadInt32(t, code, ip);
     ip = (ip - 5) + offset;
-  } goto loop;
+  } NEXT;
 
-  case i2b: {
+  CASE(i2b) {
     pushInt(t, static_cast<int8_t>(popInt(t)));
-  } goto loop;
+  } NEXT;
 
-  case i2c: {
+  CASE(i2c) {
     pushInt(t, static_cast<uint16_t>(popInt(t)));
-  } goto loop;
+  } NEXT;
 
-  case i2d: {
+  CASE(i2d) {
     pushDouble(t, static_cast<double>(static_cast<int32_t>(popInt(t))));
-  } goto loop;
+  } NEXT;
 
-  case i2f: {
+  CASE(i2f) {
     pushFloat(t, static_cast<float>(static_cast<int32_t>(popInt(t))));
-  } goto loop;
+  } NEXT;
 
-  case i2l: {
+  CASE(i2l) {
     pushLong(t, static_cast<int32_t>(popInt(t)));
-  } goto loop;
+  } NEXT;
 
-  case i2s: {
+  CASE(i2s) {
     pushInt(t, static_cast<int16_t>(popInt(t)));
-  } goto loop;
+  } NEXT;
 
-  case iadd: {
+  CASE(iadd) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
     pushInt(t, a + b);
-  } goto loop;
+  } NEXT;
 
-  case iaload: {
+  CASE(iaload) {
     int32_t index = popInt(t);
     object array = popObject(t);
 
@@ -1491,16 +1760,16 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case iand: {
+  CASE(iand) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
     pushInt(t, a & b);
-  } goto loop;
+  } NEXT;
 
-  case iastore: {
+  CASE(iastore) {
     int32_t value = popInt(t);
     int32_t index = popInt(t);
     object array = popObject(t);
@@ -1520,37 +1789,37 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case iconst_m1: {
+  CASE(iconst_m1) {
     pushInt(t, static_cast<unsigned>(-1));
-  } goto loop;
+  } NEXT;
 
-  case iconst_0: {
+  CASE(iconst_0) {
     pushInt(t, 0);
-  } goto loop;
+  } NEXT;
 
-  case iconst_1: {
+  CASE(iconst_1) {
     pushInt(t, 1);
-  } goto loop;
+  } NEXT;
 
-  case iconst_2: {
+  CASE(iconst_2) {
     pushInt(t, 2);
-  } goto loop;
+  } NEXT;
 
-  case iconst_3: {
+  CASE(iconst_3) {
     pushInt(t, 3);
-  } goto loop;
+  } NEXT;
 
-  case iconst_4: {
+  CASE(iconst_4) {
     pushInt(t, 4);
-  } goto loop;
+  } NEXT;
 
-  case iconst_5: {
+  CASE(iconst_5) {
     pushInt(t, 5);
-  } goto loop;
+  } NEXT;
 
-  case idiv: {
+  CASE(idiv) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
 
@@ -1560,9 +1829,9 @@ interpret3(Thread* t, const int base)
     }
     
     pushInt(t, a / b);
-  } goto loop;
+  } NEXT;
 
-  case if_acmpeq: {
+  CASE(if_acmpeq) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     object b = popObject(t);
@@ -1571,9 +1840,9 @@ interpret3(Thread* t, const int base)
     if (a == b) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case if_acmpne: {
+  CASE(if_acmpne) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     object b = popObject(t);
@@ -1582,9 +1851,9 @@ interpret3(Thread* t, const int base)
     if (a != b) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case if_icmpeq: {
+  CASE(if_icmpeq) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     int32_t b = popInt(t);
@@ -1593,9 +1862,9 @@ interpret3(Thread* t, const int base)
     if (a == b) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case if_icmpne: {
+  CASE(if_icmpne) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     int32_t b = popInt(t);
@@ -1604,9 +1873,9 @@ interpret3(Thread* t, const int base)
     if (a != b) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case if_icmpgt: {
+  CASE(if_icmpgt) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     int32_t b = popInt(t);
@@ -1615,9 +1884,9 @@ interpret3(Thread* t, const int base)
     if (a > b) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case if_icmpge: {
+  CASE(if_icmpge) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     int32_t b = popInt(t);
@@ -1626,9 +1895,9 @@ interpret3(Thread* t, const int base)
     if (a >= b) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case if_icmplt: {
+  CASE(if_icmplt) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     int32_t b = popInt(t);
@@ -1637,9 +1906,9 @@ interpret3(Thread* t, const int base)
     if (a < b) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case if_icmple: {
+  CASE(if_icmple) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     int32_t b = popInt(t);
@@ -1648,116 +1917,116 @@ interpret3(Thread* t, const int base)
     if (a <= b) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case ifeq: {
+  CASE(ifeq) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     if (popInt(t) == 0) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case ifne: {
+  CASE(ifne) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     if (popInt(t)) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case ifgt: {
+  CASE(ifgt) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     if (static_cast<int32_t>(popInt(t)) > 0) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case ifge: {
+  CASE(ifge) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     if (static_cast<int32_t>(popInt(t)) >= 0) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case iflt: {
+  CASE(iflt) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     if (static_cast<int32_t>(popInt(t)) < 0) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case ifle: {
+  CASE(ifle) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     if (static_cast<int32_t>(popInt(t)) <= 0) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case ifnonnull: {
+  CASE(ifnonnull) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     if (popObject(t)) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case ifnull: {
+  CASE(ifnull) {
     int16_t offset = codeReadInt16(t, code, ip);
 
     if (popObject(t) == 0) {
       ip = (ip - 3) + offset;
     }
-  } goto loop;
+  } NEXT;
 
-  case iinc: {
+  CASE(iinc) {
     uint8_t index = codeBody(t, code, ip++);
     int8_t c = codeBody(t, code, ip++);
     
     setLocalInt(t, index, localInt(t, index) + c);
-  } goto loop;
+  } NEXT;
 
-  case iload:
-  case fload: {
+  CASE(iload)
+  CASE(fload) {
     pushInt(t, localInt(t, codeBody(t, code, ip++)));
-  } goto loop;
+  } NEXT;
 
-  case iload_0:
-  case fload_0: {
+  CASE(iload_0)
+  CASE(fload_0) {
     pushInt(t, localInt(t, 0));
-  } goto loop;
+  } NEXT;
 
-  case iload_1:
-  case fload_1: {
+  CASE(iload_1)
+  CASE(fload_1) {
     pushInt(t, localInt(t, 1));
-  } goto loop;
+  } NEXT;
 
-  case iload_2:
-  case fload_2: {
+  CASE(iload_2)
+  CASE(fload_2) {
     pushInt(t, localInt(t, 2));
-  } goto loop;
+  } NEXT;
 
-  case iload_3:
-  case fload_3: {
+  CASE(iload_3)
+  CASE(fload_3) {
     pushInt(t, localInt(t, 3));
-  } goto loop;
+  } NEXT;
 
-  case imul: {
+  CASE(imul) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
     pushInt(t, a * b);
-  } goto loop;
+  } NEXT;
 
-  case ineg: {
+  CASE(ineg) {
     pushInt(t, - popInt(t));
-  } goto loop;
+  } NEXT;
 
-  case instanceof: {
+  CASE(instanceof) {
     uint16_t index = codeReadInt16(t, code, ip);
 
     if (peekObject(t, sp - 1)) {
@@ -1772,9 +2041,9 @@ interpret3(Thread* t, const int base)
       popObject(t);
       pushInt(t, 0);
     }
-  } goto loop;
+  } NEXT;
 
-  case invokeinterface: {
+  CASE(invokeinterface) {
     uint16_t index = codeReadInt16(t, code, ip);
     
     ip += 2;
@@ -1790,9 +2059,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case invokespecial: {
+  CASE(invokespecial) {
     uint16_t index = codeReadInt16(t, code, ip);
 
     object method = resolveMethod(t, frameMethod(t, frame), index - 1);
@@ -1809,6 +2078,9 @@ interpret3(Thread* t, const int base)
 
         code = findVirtualMethod(t, method, class_);
       } else {
+        // the target never depends on the receiver, so we can call
+        // it directly from now on
+        quicken(t, ip - 3, invokespecial_quick);
         code = method;
       }
       
@@ -1817,9 +2089,23 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case invokestatic: {
+  CASE(invokespecial_quick) {
+    uint16_t index = codeReadInt16(t, code, ip);
+
+    object method = quickReference(t, index);
+
+    if (LIKELY(peekObject(t, sp - methodParameterFootprint(t, method)))) {
+      code = method;
+      goto invoke;
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
+
+  CASE(invokestatic) {
     uint16_t index = codeReadInt16(t, code, ip);
 
     object method = resolveMethod(t, frameMethod(t, frame), index - 1);
@@ -1827,13 +2113,34 @@ interpret3(Thread* t, const int base)
     
     initClass(t, methodClass(t, method));
 
+    if ((classVmFlags(t, methodClass(t, method)) & NeedInitFlag) == 0) {
+      // the class has been initialized, so there's nothing left to
+      // check
+      quicken(t, ip - 3, invokestatic_quick);
+    }
+
     code = method;
   } goto invoke;
 
-  case invokevirtual: {
+  CASE(invokestatic_quick) {
     uint16_t index = codeReadInt16(t, code, ip);
 
-    object method = resolveMethod(t, frameMethod(t, frame), index - 1);
+    code = quickReference(t, index);
+  } goto invoke;
+
+  CASE(invokevirtual) {
+    uint16_t index = codeReadInt16(t, code, ip);
+
+    resolveMethod(t, frameMethod(t, frame), index - 1);
+
+    quicken(t, ip - 3, invokevirtual_quick);
+    ip -= 3;
+  } NEXT;
+
+  CASE(invokevirtual_quick) {
+    uint16_t index = codeReadInt16(t, code, ip);
+
+    object method = quickReference(t, index);
     
     unsigned parameterFootprint = methodParameterFootprint(t, method);
     if (LIKELY(peekObject(t, sp - parameterFootprint))) {
@@ -1849,16 +2156,16 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case ior: {
+  CASE(ior) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
     pushInt(t, a | b);
-  } goto loop;
+  } NEXT;
 
-  case irem: {
+  CASE(irem) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
@@ -1868,114 +2175,114 @@ interpret3(Thread* t, const int base)
     }
     
     pushInt(t, a % b);
-  } goto loop;
+  } NEXT;
 
-  case ireturn:
-  case freturn: {
+  CASE(ireturn)
+  CASE(freturn) {
     int32_t result = popInt(t);
     if (frame > base) {
       popFrame(t);
       pushInt(t, result);
-      goto loop;
+      NEXT;
     } else {
       return makeInt(t, result);
     }
-  } goto loop;
+  } NEXT;
 
-  case ishl: {
+  CASE(ishl) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
     pushInt(t, a << b);
-  } goto loop;
+  } NEXT;
 
-  case ishr: {
+  CASE(ishr) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
     pushInt(t, a >> b);
-  } goto loop;
+  } NEXT;
 
-  case istore:
-  case fstore: {
+  CASE(istore)
+  CASE(fstore) {
     setLocalInt(t, codeBody(t, code, ip++), popInt(t));
-  } goto loop;
+  } NEXT;
 
-  case istore_0:
-  case fstore_0: {
+  CASE(istore_0)
+  CASE(fstore_0) {
     setLocalInt(t, 0, popInt(t));
-  } goto loop;
+  } NEXT;
 
-  case istore_1:
-  case fstore_1: {
+  CASE(istore_1)
+  CASE(fstore_1) {
     setLocalInt(t, 1, popInt(t));
-  } goto loop;
+  } NEXT;
 
-  case istore_2:
-  case fstore_2: {
+  CASE(istore_2)
+  CASE(fstore_2) {
     setLocalInt(t, 2, popInt(t));
-  } goto loop;
+  } NEXT;
 
-  case istore_3:
-  case fstore_3: {
+  CASE(istore_3)
+  CASE(fstore_3) {
     setLocalInt(t, 3, popInt(t));
-  } goto loop;
+  } NEXT;
 
-  case isub: {
+  CASE(isub) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
     pushInt(t, a - b);
-  } goto loop;
+  } NEXT;
 
-  case iushr: {
+  CASE(iushr) {
     int32_t b = popInt(t);
     uint32_t a = popInt(t);
     
     pushInt(t, a >> b);
-  } goto loop;
+  } NEXT;
 
-  case ixor: {
+  CASE(ixor) {
     int32_t b = popInt(t);
     int32_t a = popInt(t);
     
     pushInt(t, a ^ b);
-  } goto loop;
+  } NEXT;
 
-  case jsr: {
+  CASE(jsr) {
     uint16_t offset = codeReadInt16(t, code, ip);
 
     pushInt(t, ip);
     ip = (ip - 3) + static_cast<int16_t>(offset);
-  } goto loop;
+  } NEXT;
 
-  case jsr_w: {
+  CASE(jsr_w) {
     uint32_t offset = codeReadInt32(t, code, ip);
 
     pushInt(t, ip);
     ip = (ip - 5) + static_cast<int32_t>(offset);
-  } goto loop;
+  } NEXT;
 
-  case l2d: {
+  CASE(l2d) {
     pushDouble(t, static_cast<double>(static_cast<int64_t>(popLong(t))));
-  } goto loop;
+  } NEXT;
 
-  case l2f: {
+  CASE(l2f) {
     pushFloat(t, static_cast<float>(static_cast<int64_t>(popLong(t))));
-  } goto loop;
+  } NEXT;
 
-  case l2i: {
+  CASE(l2i) {
     pushInt(t, static_cast<int32_t>(popLong(t)));
-  } goto loop;
+  } NEXT;
 
-  case ladd: {
+  CASE(ladd) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
     pushLong(t, a + b);
-  } goto loop;
+  } NEXT;
 
-  case laload: {
+  CASE(laload) {
     int32_t index = popInt(t);
     object array = popObject(t);
 
@@ -1994,16 +2301,16 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case land: {
+  CASE(land) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
     pushLong(t, a & b);
-  } goto loop;
+  } NEXT;
 
-  case lastore: {
+  CASE(lastore) {
     int64_t value = popLong(t);
     int32_t index = popInt(t);
     object array = popObject(t);
@@ -2023,25 +2330,26 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case lcmp: {
+  CASE(lcmp) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
     pushInt(t, a > b ? 1 : a == b ? 0 : -1);
-  } goto loop;
+  } NEXT;
 
-  case lconst_0: {
+  CASE(lconst_0) {
     pushLong(t, 0);
-  } goto loop;
+  } NEXT;
 
-  case lconst_1: {
+  CASE(lconst_1) {
     pushLong(t, 1);
-  } goto loop;
+  } NEXT;
 
-  case ldc:
-  case ldc_w: {
+  CASE(ldc)
+  CASE(ldc_w) {
+    unsigned start = ip - 1;
     uint16_t index;
 
     if (instruction == ldc) {
@@ -2062,14 +2370,38 @@ interpret3(Thread* t, const int base)
       } else if (objectClass(t, v) == type(t, Machine::ClassType)) {
         pushObject(t, getJClass(t, v));
       } else {     
+        quicken(t, start, instruction == ldc
+                ? ldc_quick_object : ldc_w_quick_object);
         pushObject(t, v);
       }
     } else {
+      quicken(t, start, instruction == ldc
+              ? ldc_quick_int : ldc_w_quick_int);
       pushInt(t, singletonValue(t, pool, index - 1));
     }
-  } goto loop;
+  } NEXT;
+
+  CASE(ldc_quick_int) {
+    uint8_t index = codeBody(t, code, ip++);
+    pushInt(t, singletonValue(t, codePool(t, code), index - 1));
+  } NEXT;
 
-  case ldc2_w: {
+  CASE(ldc_quick_object) {
+    uint8_t index = codeBody(t, code, ip++);
+    pushObject(t, quickReference(t, index));
+  } NEXT;
+
+  CASE(ldc_w_quick_int) {
+    uint16_t index = codeReadInt16(t, code, ip);
+    pushInt(t, singletonValue(t, codePool(t, code), index - 1));
+  } NEXT;
+
+  CASE(ldc_w_quick_object) {
+    uint16_t index = codeReadInt16(t, code, ip);
+    pushObject(t, quickReference(t, index));
+  } NEXT;
+
+  CASE(ldc2_w) {
     uint16_t index = codeReadInt16(t, code, ip);
 
     object pool = codePool(t, code);
@@ -2077,9 +2409,9 @@ interpret3(Thread* t, const int base)
     uint64_t v;
     memcpy(&v, &singletonValue(t, pool, index - 1), 8);
     pushLong(t, v);
-  } goto loop;
+  } NEXT;
 
-  case ldiv_: {
+  CASE(ldiv_) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
@@ -2089,45 +2421,45 @@ interpret3(Thread* t, const int base)
     }
     
     pushLong(t, a / b);
-  } goto loop;
+  } NEXT;
 
-  case lload:
-  case dload: {
+  CASE(lload)
+  CASE(dload) {
     pushLong(t, localLong(t, codeBody(t, code, ip++)));
-  } goto loop;
+  } NEXT;
 
-  case lload_0:
-  case dload_0: {
+  CASE(lload_0)
+  CASE(dload_0) {
     pushLong(t, localLong(t, 0));
-  } goto loop;
+  } NEXT;
 
-  case lload_1:
-  case dload_1: {
+  CASE(lload_1)
+  CASE(dload_1) {
     pushLong(t, localLong(t, 1));
-  } goto loop;
+  } NEXT;
 
-  case lload_2:
-  case dload_2: {
+  CASE(lload_2)
+  CASE(dload_2) {
     pushLong(t, localLong(t, 2));
-  } goto loop;
+  } NEXT;
 
-  case lload_3:
-  case dload_3: {
+  CASE(lload_3)
+  CASE(dload_3) {
     pushLong(t, localLong(t, 3));
-  } goto loop;
+  } NEXT;
 
-  case lmul: {
+  CASE(lmul) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
     pushLong(t, a * b);
-  } goto loop;
+  } NEXT;
 
-  case lneg: {
+  CASE(lneg) {
     pushLong(t, - popLong(t));
-  } goto loop;
+  } NEXT;
 
-  case lookupswitch: {
+  CASE(lookupswitch) {
     int32_t base = ip - 1;
 
     ip += 3;
@@ -2152,21 +2484,21 @@ interpret3(Thread* t, const int base)
         bottom = middle + 1;
       } else {
         ip = base + codeReadInt32(t, code, index);
-        goto loop;
+        NEXT;
       }
     }
 
     ip = base + default_;
-  } goto loop;
+  } NEXT;
 
-  case lor: {
+  CASE(lor) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
     pushLong(t, a | b);
-  } goto loop;
+  } NEXT;
 
-  case lrem: {
+  CASE(lrem) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
@@ -2176,81 +2508,81 @@ interpret3(Thread* t, const int base)
     }
     
     pushLong(t, a % b);
-  } goto loop;
+  } NEXT;
 
-  case lreturn:
-  case dreturn: {
+  CASE(lreturn)
+  CASE(dreturn) {
     int64_t result = popLong(t);
     if (frame > base) {
       popFrame(t);
       pushLong(t, result);
-      goto loop;
+      NEXT;
     } else {
       return makeLong(t, result);
     }
-  } goto loop;
+  } NEXT;
 
-  case lshl: {
+  CASE(lshl) {
     int32_t b = popInt(t);
     int64_t a = popLong(t);
     
     pushLong(t, a << b);
-  } goto loop;
+  } NEXT;
 
-  case lshr: {
+  CASE(lshr) {
     int32_t b = popInt(t);
     int64_t a = popLong(t);
     
     pushLong(t, a >> b);
-  } goto loop;
+  } NEXT;
 
-  case lstore:
-  case dstore: {
+  CASE(lstore)
+  CASE(dstore) {
     setLocalLong(t, codeBody(t, code, ip++), popLong(t));
-  } goto loop;
+  } NEXT;
 
-  case lstore_0: 
-  case dstore_0:{
+  CASE(lstore_0) 
+  CASE(dstore_0){
     setLocalLong(t, 0, popLong(t));
-  } goto loop;
+  } NEXT;
 
-  case lstore_1: 
-  case dstore_1: {
+  CASE(lstore_1) 
+  CASE(dstore_1) {
     setLocalLong(t, 1, popLong(t));
-  } goto loop;
+  } NEXT;
 
-  case lstore_2: 
-  case dstore_2: {
+  CASE(lstore_2) 
+  CASE(dstore_2) {
     setLocalLong(t, 2, popLong(t));
-  } goto loop;
+  } NEXT;
 
-  case lstore_3: 
-  case dstore_3: {
+  CASE(lstore_3) 
+  CASE(dstore_3) {
     setLocalLong(t, 3, popLong(t));
-  } goto loop;
+  } NEXT;
 
-  case lsub: {
+  CASE(lsub) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
     pushLong(t, a - b);
-  } goto loop;
+  } NEXT;
 
-  case lushr: {
+  CASE(lushr) {
     int64_t b = popInt(t);
     uint64_t a = popLong(t);
     
     pushLong(t, a >> b);
-  } goto loop;
+  } NEXT;
 
-  case lxor: {
+  CASE(lxor) {
     int64_t b = popLong(t);
     int64_t a = popLong(t);
     
     pushLong(t, a ^ b);
-  } goto loop;
+  } NEXT;
 
-  case monitorenter: {
+  CASE(monitorenter) {
     object o = popObject(t);
     if (LIKELY(o)) {
       acquire(t, o);
@@ -2258,9 +2590,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case monitorexit: {
+  CASE(monitorexit) {
     object o = popObject(t);
     if (LIKELY(o)) {
       release(t, o);
@@ -2268,9 +2600,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case multianewarray: {
+  CASE(multianewarray) {
     uint16_t index = codeReadInt16(t, code, ip);
     uint8_t dimensions = codeBody(t, code, ip++);
 
@@ -2294,9 +2626,9 @@ interpret3(Thread* t, const int base)
     populateMultiArray(t, array, counts, 0, dimensions);
 
     pushObject(t, array);
-  } goto loop;
+  } NEXT;
 
-  case new_: {
+  CASE(new_) {
     uint16_t index = codeReadInt16(t, code, ip);
     
     object class_ = resolveClassInPool(t, frameMethod(t, frame), index - 1);
@@ -2305,9 +2637,9 @@ interpret3(Thread* t, const int base)
     initClass(t, class_);
 
     pushObject(t, make(t, class_));
-  } goto loop;
+  } NEXT;
 
-  case newarray: {
+  CASE(newarray) {
     int32_t count = popInt(t);
 
     if (LIKELY(count >= 0)) {
@@ -2357,24 +2689,30 @@ interpret3(Thread* t, const int base)
         (t, Machine::NegativeArraySizeExceptionType, "%d", count);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case nop: goto loop;
+  CASE(nop) NEXT;
 
-  case pop_: {
+  CASE(pop_) {
     -- sp;
-  } goto loop;
+  } NEXT;
 
-  case pop2: {
+  CASE(pop2) {
     sp -= 2;
-  } goto loop;
+  } NEXT;
 
-  case putfield: {
+  CASE(putfield) {
     uint16_t index = codeReadInt16(t, code, ip);
     
     object field = resolveField(t, frameMethod(t, frame), index - 1);
 
     assert(t, (fieldFlags(t, field) & ACC_STATIC) == 0);
+
+    if (quickenField(t, ip - 3, field, putfield_quick_int)) {
+      ip -= 3;
+      NEXT;
+    }
+
     PROTECT(t, field);
 
     { ACQUIRE_FIELD_FOR_WRITE(t, field);
@@ -2438,9 +2776,45 @@ interpret3(Thread* t, const int base)
     if (UNLIKELY(exception)) {
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
+
+  CASE(putfield_quick_int) {
+    int32_t value = popInt(t);
+    object o = popObject(t);
+    if (LIKELY(o)) {
+      uint16_t index = codeReadInt16(t, code, ip);
+      cast<int32_t>(o, fieldOffset(t, quickReference(t, index))) = value;
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
 
-  case putstatic: {
+  CASE(putfield_quick_long) {
+    int64_t value = popLong(t);
+    object o = popObject(t);
+    if (LIKELY(o)) {
+      uint16_t index = codeReadInt16(t, code, ip);
+      cast<int64_t>(o, fieldOffset(t, quickReference(t, index))) = value;
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
+
+  CASE(putfield_quick_object) {
+    object value = popObject(t);
+    object o = popObject(t);
+    if (LIKELY(o)) {
+      uint16_t index = codeReadInt16(t, code, ip);
+      set(t, o, fieldOffset(t, quickReference(t, index)), value);
+    } else {
+      exception = makeThrowable(t, Machine::NullPointerExceptionType);
+      goto throw_;
+    }
+  } NEXT;
+
+  CASE(putstatic) {
     uint16_t index = codeReadInt16(t, code, ip);
 
     object field = resolveField(t, frameMethod(t, frame), index - 1);
@@ -2492,13 +2866,13 @@ interpret3(Thread* t, const int base)
 
     default: abort(t);
     }
-  } goto loop;
+  } NEXT;
 
-  case ret: {
+  CASE(ret) {
     ip = localInt(t, codeBody(t, code, ip));
-  } goto loop;
+  } NEXT;
 
-  case return_: {
+  CASE(return_) {
     object method = frameMethod(t, frame);
     if ((methodFlags(t, method) & ConstructorFlag)
         and (classVmFlags(t, methodClass(t, method)) & HasFinalMemberFlag))
@@ -2508,13 +2882,13 @@ interpret3(Thread* t, const int base)
 
     if (frame > base) {
       popFrame(t);
-      goto loop;
+      NEXT;
     } else {
       return 0;
     }
-  } goto loop;
+  } NEXT;
 
-  case saload: {
+  CASE(saload) {
     int32_t index = popInt(t);
     object array = popObject(t);
 
@@ -2533,9 +2907,9 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case sastore: {
+  CASE(sastore) {
     int16_t value = popInt(t);
     int32_t index = popInt(t);
     object array = popObject(t);
@@ -2555,20 +2929,20 @@ interpret3(Thread* t, const int base)
       exception = makeThrowable(t, Machine::NullPointerExceptionType);
       goto throw_;
     }
-  } goto loop;
+  } NEXT;
 
-  case sipush: {
+  CASE(sipush) {
     pushInt(t, static_cast<int16_t>(codeReadInt16(t, code, ip)));
-  } goto loop;
+  } NEXT;
 
-  case swap: {
+  CASE(swap) {
     uintptr_t tmp[2];
     memcpy(tmp                   , stack + ((sp - 1) * 2), BytesPerWord * 2);
     memcpy(stack + ((sp - 1) * 2), stack + ((sp - 2) * 2), BytesPerWord * 2);
     memcpy(stack + ((sp - 2) * 2), tmp                   , BytesPerWord * 2);
-  } goto loop;
+  } NEXT;
 
-  case tableswitch: {
+  CASE(tableswitch) {
     int32_t base = ip - 1;
 
     ip += 3;
@@ -2586,11 +2960,11 @@ interpret3(Thread* t, const int base)
     } else {
       ip = base + default_;
     }
-  } goto loop;
+  } NEXT;
 
-  case wide: goto wide;
+  CASE(wide) goto wide;
 
-  case impdep1: {
+  CASE(impdep1) {
     // this means we're invoking a virtual method on an instance of a
     // bootstrap class, so we need to load the real class to get the
     // real method and call it.
@@ -2598,7 +2972,8 @@ interpret3(Thread* t, const int base)
     assert(t, frameNext(t, frame) >= base);
     popFrame(t);
 
-    assert(t, codeBody(t, code, ip - 3) == invokevirtual);
+    assert(t, codeBody(t, code, ip - 3) == invokevirtual
+           or codeBody(t, code, ip - 3) == invokevirtual_quick);
     ip -= 2;
 
     uint16_t index = codeReadInt16(t, code, ip);
@@ -2612,47 +2987,48 @@ interpret3(Thread* t, const int base)
                  className(t, class_));
 
     ip -= 3;
-  } goto loop;
+  } NEXT;
 
-  default: abort(t);
+  default: LABEL(default)
+    abort(t);
   }
 
  wide:
   switch (codeBody(t, code, ip++)) {
   case aload: {
     pushObject(t, localObject(t, codeReadInt16(t, code, ip)));
-  } goto loop;
+  } NEXT;
 
   case astore: {
     setLocalObject(t, codeReadInt16(t, code, ip), popObject(t));
-  } goto loop;
+  } NEXT;
 
   case iinc: {
     uint16_t index = codeReadInt16(t, code, ip);
     int16_t count = codeReadInt16(t, code, ip);
     
     setLocalInt(t, index, localInt(t, index) + count);
-  } goto loop;
+  } NEXT;
 
   case iload: {
     pushInt(t, localInt(t, codeReadInt16(t, code, ip)));
-  } goto loop;
+  } NEXT;
 
   case istore: {
     setLocalInt(t, codeReadInt16(t, code, ip), popInt(t));
-  } goto loop;
+  } NEXT;
 
   case lload: {
     pushLong(t, localLong(t, codeReadInt16(t, code, ip)));
-  } goto loop;
+  } NEXT;
 
   case lstore: {
     setLocalLong(t, codeReadInt16(t, code, ip),  popLong(t));
-  } goto loop;
+  } NEXT;
 
   case ret: {
     ip = localInt(t, codeReadInt16(t, code, ip));
-  } goto loop;
+  } NEXT;
 
   default: abort(t);
   }
@@ -2664,7 +3040,7 @@ interpret3(Thread* t, const int base)
       checkStack(t, code);
       pushFrame(t, code);
     }
-  } goto loop;
+  } NEXT;
 
  throw_:
   if (DebugRun) {
@@ -2679,7 +3055,7 @@ interpret3(Thread* t, const int base)
       ip = exceptionHandlerIp(eh);
       pushObject(t, exception);
       exception = 0;
-      goto loop;
+      NEXT;
     }
   }
 
@@ -160,14 +160,24 @@ GetStringCritical(Thread* t, jstring s, jboolean* isCopy)
     enter(t, Thread::ActiveState);
   }
 
-  if (isCopy) {
-    *isCopy = true;
-  }
-  
   object data = stringData(t, *s);
   if (objectClass(t, data) == type(t, Machine::ByteArrayType)) {
-    return GetStringChars(t, s, isCopy);
+    // we're already in the active state, so widen the characters here
+    // rather than via GetStringChars
+    jchar* chars = static_cast<jchar*>
+      (t->m->heap->allocate((stringLength(t, *s) + 1) * sizeof(jchar)));
+    stringChars(t, *s, chars);
+
+    if (isCopy) {
+      *isCopy = true;
+    }
+
+    return chars;
   } else {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
     return &charArrayBody(t, data, stringOffset(t, *s));
   }
 }
@@ -176,7 +186,7 @@ void JNICALL
 ReleaseStringCritical(Thread* t, jstring s, const jchar* chars)
 {
   if (objectClass(t, stringData(t, *s)) == type(t, Machine::ByteArrayType)) {
-    ReleaseStringChars(t, s, chars);
+    t->m->heap->free(chars, (stringLength(t, *s) + 1) * sizeof(jchar));
   }
 
   if ((-- t->criticalLevel) == 0) {
@@ -2370,6 +2380,14 @@ GetBooleanArrayElements(Thread* t, jbooleanArray array, jboolean* isCopy)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (objectFixed(t, *array)) {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
+    return &booleanArrayBody(t, *array, 0);
+  }
+
   unsigned size = booleanArrayLength(t, *array) * sizeof(jboolean);
   jboolean* p = static_cast<jboolean*>(t->m->heap->allocate(size));
   if (size) {
@@ -2388,6 +2406,14 @@ GetByteArrayElements(Thread* t, jbyteArray array, jboolean* isCopy)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (objectFixed(t, *array)) {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
+    return &byteArrayBody(t, *array, 0);
+  }
+
   unsigned size = byteArrayLength(t, *array) * sizeof(jbyte);
   jbyte* p = static_cast<jbyte*>(t->m->heap->allocate(size));
   if (size) {
@@ -2406,6 +2432,14 @@ GetCharArrayElements(Thread* t, jcharArray array, jboolean* isCopy)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (objectFixed(t, *array)) {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
+    return &charArrayBody(t, *array, 0);
+  }
+
   unsigned size = charArrayLength(t, *array) * sizeof(jchar);
   jchar* p = static_cast<jchar*>(t->m->heap->allocate(size));
   if (size) {
@@ -2424,6 +2458,14 @@ GetShortArrayElements(Thread* t, jshortArray array, jboolean* isCopy)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (objectFixed(t, *array)) {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
+    return &shortArrayBody(t, *array, 0);
+  }
+
   unsigned size = shortArrayLength(t, *array) * sizeof(jshort);
   jshort* p = static_cast<jshort*>(t->m->heap->allocate(size));
   if (size) {
@@ -2442,6 +2484,14 @@ GetIntArrayElements(Thread* t, jintArray array, jboolean* isCopy)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (objectFixed(t, *array)) {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
+    return &intArrayBody(t, *array, 0);
+  }
+
   unsigned size = intArrayLength(t, *array) * sizeof(jint);
   jint* p = static_cast<jint*>(t->m->heap->allocate(size));
   if (size) {
@@ -2460,6 +2510,14 @@ GetLongArrayElements(Thread* t, jlongArray array, jboolean* isCopy)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (objectFixed(t, *array)) {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
+    return &longArrayBody(t, *array, 0);
+  }
+
   unsigned size = longArrayLength(t, *array) * sizeof(jlong);
   jlong* p = static_cast<jlong*>(t->m->heap->allocate(size));
   if (size) {
@@ -2478,6 +2536,14 @@ GetFloatArrayElements(Thread* t, jfloatArray array, jboolean* isCopy)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (objectFixed(t, *array)) {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
+    return reinterpret_cast<jfloat*>(&floatArrayBody(t, *array, 0));
+  }
+
   unsigned size = floatArrayLength(t, *array) * sizeof(jfloat);
   jfloat* p = static_cast<jfloat*>(t->m->heap->allocate(size));
   if (size) {
@@ -2496,6 +2562,14 @@ GetDoubleArrayElements(Thread* t, jdoubleArray array, jboolean* isCopy)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (objectFixed(t, *array)) {
+    if (isCopy) {
+      *isCopy = false;
+    }
+
+    return reinterpret_cast<jdouble*>(&doubleArrayBody(t, *array, 0));
+  }
+
   unsigned size = doubleArrayLength(t, *array) * sizeof(jdouble);
   jdouble* p = static_cast<jdouble*>(t->m->heap->allocate(size));
   if (size) {
@@ -2514,7 +2588,11 @@ ReleaseBooleanArrayElements(Thread* t, jbooleanArray array, jboolean* p,
                             jint mode)
 {
   ENTER(t, Thread::ActiveState);
-    
+
+  if (p == &booleanArrayBody(t, *array, 0)) {
+    return;
+  }
+
   unsigned size = booleanArrayLength(t, *array) * sizeof(jboolean);
 
   if (mode == 0 or mode == JNI_COMMIT) {
@@ -2532,7 +2610,11 @@ void JNICALL
 ReleaseByteArrayElements(Thread* t, jbyteArray array, jbyte* p, jint mode)
 {
   ENTER(t, Thread::ActiveState);
-    
+
+  if (p == &byteArrayBody(t, *array, 0)) {
+    return;
+  }
+
   unsigned size = byteArrayLength(t, *array) * sizeof(jbyte);
 
   if (mode == 0 or mode == JNI_COMMIT) {
@@ -2551,6 +2633,10 @@ ReleaseCharArrayElements(Thread* t, jcharArray array, jchar* p, jint mode)
 {
   ENTER(t, Thread::ActiveState);
 
+  if (p == &charArrayBody(t, *array, 0)) {
+    return;
+  }
+
   unsigned size = charArrayLength(t, *array) * sizeof(jchar);
 
   if (mode == 0 or mode == JNI_COMMIT) {    
@@ -2569,6 +2655,10 @@ ReleaseShortArrayElements(Thread* t, jshortArray array, jshort* p, jint mode)
 {
   ENTER(t, Thread::ActiveState);  
 
+  if (p == &shortArrayBody(t, *array, 0)) {
+    return;
+  }
+
   unsigned size = shortArrayLength(t, *array) * sizeof(jshort);
 
   if (mode == 0 or mode == JNI_COMMIT) {
@@ -2586,7 +2676,11 @@ void JNICALL
 ReleaseIntArrayElements(Thread* t, jintArray array, jint* p, jint mode)
 {
   ENTER(t, Thread::ActiveState);
-    
+
+  if (p == &intArrayBody(t, *array, 0)) {
+    return;
+  }
+
   unsigned size = intArrayLength(t, *array) * sizeof(jint);
 
   if (mode == 0 or mode == JNI_COMMIT) {
@@ -2604,7 +2698,11 @@ void JNICALL
 ReleaseLongArrayElements(Thread* t, jlongArray array, jlong* p, jint mode)
 {
   ENTER(t, Thread::ActiveState);
-    
+
+  if (p == &longArrayBody(t, *array, 0)) {
+    return;
+  }
+
   unsigned size = longArrayLength(t, *array) * sizeof(jlong);
 
   if (mode == 0 or mode == JNI_COMMIT) {
@@ -2622,7 +2720,11 @@ void JNICALL
 ReleaseFloatArrayElements(Thread* t, jfloatArray array, jfloat* p, jint mode)
 {
   ENTER(t, Thread::ActiveState);
-    
+
+  if (p == reinterpret_cast<jfloat*>(&floatArrayBody(t, *array, 0))) {
+    return;
+  }
+
   unsigned size = floatArrayLength(t, *array) * sizeof(jfloat);
 
   if (mode == 0 or mode == JNI_COMMIT) {
@@ -2641,7 +2743,11 @@ ReleaseDoubleArrayElements(Thread* t, jdoubleArray array, jdouble* p,
                            jint mode)
 {
   ENTER(t, Thread::ActiveState);
-    
+
+  if (p == reinterpret_cast<jdouble*>(&doubleArrayBody(t, *array, 0))) {
+    return;
+  }
+
   unsigned size = doubleArrayLength(t, *array) * sizeof(jdouble);
 
   if (mode == 0 or mode == JNI_COMMIT) {
@@ -2840,8 +2946,10 @@ GetPrimitiveArrayCritical(Thread* t, jarray array, jboolean* isCopy)
     enter(t, Thread::ActiveState);
   }
   
+  // the collector cannot run until we leave the active state, so the
+  // array will stay put until ReleasePrimitiveArrayCritical is called
   if (isCopy) {
-    *isCopy = true;
+    *isCopy = false;
   }
 
   return reinterpret_cast<uintptr_t*>(*array) + 2;
@@ -3026,9 +3134,17 @@ boot(Thread* t, uintptr_t*)
 
   setRoot(t, Machine::Shutdown, makeThrowable(t, Machine::ThrowableType));
 
-  setRoot(t, Machine::FinalizerThread, t->m->classpath->makeThread(t, t));
+  { object threads = makeObjectArray
+      (t, type(t, Machine::ThreadType), t->m->finalizeThreadLimit);
+    setRoot(t, Machine::FinalizerThreads, threads);
 
-  threadDaemon(t, root(t, Machine::FinalizerThread)) = true;
+    for (unsigned i = 0; i < t->m->finalizeThreadLimit; ++i) {
+      object thread = t->m->classpath->makeThread(t, t);
+      threadDaemon(t, thread) = true;
+      set(t, root(t, Machine::FinalizerThreads), ArrayBody + (i * BytesPerWord),
+          thread);
+    }
+  }
 
   t->m->classpath->boot(t);
 
@@ -3237,6 +3353,7 @@ populateJNITables(JavaVMVTable* vmTable, JNIEnvVTable* envTable)
 #define BOOTCLASSPATH_OPTION "bootclasspath"
 #define BOOTCLASSPATH_APPEND_OPTION "bootclasspath/a"
 #define BOOTCLASSPATH_APPEND_OPTION "bootclasspath/a"
+#define PAUSE_TARGET_OPTION "X:MaxGCPauseMillis"
 
 extern "C" JNIEXPORT jint JNICALL
 JNI_GetDefaultJavaVMInitArgs(void*)
@@ -3250,6 +3367,8 @@ JNI_CreateJavaVM(Machine** m, Thread** t, void* args)
   local::JavaVMInitArgs* a = static_cast<local::JavaVMInitArgs*>(args);
 
   unsigned heapLimit = 0;
+  unsigned youngLimit = 0;
+  unsigned pauseTarget = 0;
   const char* bootLibrary = 0;
   const char* classpath = 0;
   const char* javaHome = AVIAN_JAVA_HOME;
@@ -3266,6 +3385,12 @@ JNI_CreateJavaVM(Machine** m, Thread** t, void* args)
       const char* p = a->options[i].optionString + 2;
       if (strncmp(p, "mx", 2) == 0) {
         heapLimit = local::parseSize(p + 2);
+      } else if (strncmp(p, "mn", 2) == 0) {
+        youngLimit = local::parseSize(p + 2);
+      } else if (strncmp(p, PAUSE_TARGET_OPTION "=",
+                         sizeof(PAUSE_TARGET_OPTION)) == 0)
+      {
+        pauseTarget = atoi(p + sizeof(PAUSE_TARGET_OPTION));
       } else if (strncmp(p, BOOTCLASSPATH_PREPEND_OPTION ":",
                          sizeof(BOOTCLASSPATH_PREPEND_OPTION)) == 0)
       {
@@ -3312,7 +3437,7 @@ JNI_CreateJavaVM(Machine** m, Thread** t, void* args)
   if (classpath == 0) classpath = ".";
   
   System* s = makeSystem(crashDumpDirectory);
-  Heap* h = makeHeap(s, heapLimit);
+  Heap* h = makeHeap(s, heapLimit, youngLimit, pauseTarget);
   Classpath* c = makeClasspath(s, h, javaHome, embedPrefix);
 
   if (bootClasspath == 0) {
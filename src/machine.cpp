@@ -22,16 +22,7 @@ namespace {
 
 const unsigned NoByte = 0xFFFF;
 
-#ifdef USE_ATOMIC_OPERATIONS
-void
-atomicIncrement(uint32_t* p, int v)
-{
-  for (uint32_t old = *p;
-       not atomicCompareAndSwap32(p, old, old + v);
-       old = *p)
-  { }
-}
-#endif
+const unsigned MaxSimpleConstructorLength = 64;
 
 bool
 find(Thread* t, Thread* o)
@@ -377,6 +368,7 @@ finalizerTargetUnreachable(Thread* t, Heap::Visitor* v, object* p)
     set(t, finalizer, FinalizerQueueTarget, finalizerTarget(t, finalizer));
     set(t, finalizer, FinalizerQueueNext, root(t, Machine::ObjectsToFinalize));
     setRoot(t, Machine::ObjectsToFinalize, finalizer);
+    ++ t->m->finalizeQueueLength;
   }
 }
 
@@ -397,6 +389,7 @@ referenceTargetUnreachable(Thread* t, Heap::Visitor* v, object* p)
 
     set(t, reference, CleanerQueueNext, root(t, Machine::ObjectsToClean));
     setRoot(t, Machine::ObjectsToClean, reference);
+    ++ t->m->finalizeQueueLength;
   } else {
     if (jreferenceQueue(t, *p)
         and t->m->heap->status(jreferenceQueue(t, *p)) != Heap::Unreachable)
@@ -580,6 +573,58 @@ postVisit(Thread* t, Heap::Visitor* v)
   }
 }
 
+void
+sweepStringMap(Thread* t)
+{
+  // remove the entries whose strings were found to be unreachable,
+  // rather than using a finalizer for each string
+  object map = root(t, Machine::StringMap);
+  for (unsigned i = 0; i < arrayLength(t, map); ++i) {
+    hashMapSweep(t, arrayBody(t, map, i));
+  }
+}
+
+void
+recordCollection(Thread* t, int64_t start)
+{
+  Machine* m = t->m;
+
+  Machine::CollectionRecord* r = m->recentCollections
+    + ((m->collectionCount[Heap::MinorCollection]
+        + m->collectionCount[Heap::MajorCollection])
+       % RecentCollectionCount);
+
+  r->start = start;
+  r->duration = m->system->nanoTime() - start;
+  r->type = m->heap->collectionType();
+  m->heap->statistics(&(r->statistics));
+
+  ++ m->collectionCount[r->type];
+  m->collectionTime[r->type] += r->duration;
+  m->promotedBytes += r->statistics.promotedBytes;
+
+  unsigned bucket = 0;
+  for (int64_t micros = r->duration / 1000;
+       micros > 1 and bucket < PauseHistogramSize - 1;
+       micros >>= 1)
+  {
+    ++ bucket;
+  }
+  ++ m->pauseHistogram[bucket];
+
+  if (m->metricsLog) {
+    fprintf(m->metricsLog, "%s collection %" LLD ": %" LLD " us, "
+            "%u bytes promoted, %u bytes survived, %u bytes tenured\n",
+            r->type == Heap::MinorCollection ? "minor" : "major",
+            static_cast<int64_t>(m->collectionCount[r->type]),
+            r->duration / 1000,
+            r->statistics.promotedBytes,
+            r->statistics.survivorBytes,
+            r->statistics.tenuredBytes);
+    fflush(m->metricsLog);
+  }
+}
+
 void
 postCollect(Thread* t)
 {
@@ -597,12 +642,14 @@ postCollect(Thread* t)
     t->heap = t->defaultHeap;
   }
 
+  t->allocatedBytes += (t->heapOffset + t->heapIndex) * BytesPerWord;
   t->heapOffset = 0;
 
   if (t->m->heap->limitExceeded()) {
     // if we're out of memory, pretend the thread-local heap is
     // already full so we don't make things worse:
     t->heapIndex = ThreadHeapSizeInWords;
+    t->allocatedBytes -= ThreadHeapSizeInBytes;
   } else {
     t->heapIndex = 0;
   }
@@ -1297,17 +1344,15 @@ parseCode(Thread* t, Stream& s, object pool)
   s.read(&codeBody(t, code, 0), length);
   PROTECT(t, code);
 
+  // the exception handler and line number tables are copied in class
+  // file form and only parsed when first needed (see
+  // exceptionHandlerTable and lineNumberTable), since many methods are
+  // never run and most never appear in a stack trace
   unsigned ehtLength = s.read2();
   if (ehtLength) {
-    object eht = makeExceptionHandlerTable(t, ehtLength);
-    for (unsigned i = 0; i < ehtLength; ++i) {
-      unsigned start = s.read2();
-      unsigned end = s.read2();
-      unsigned ip = s.read2();
-      unsigned catchType = s.read2();
-      exceptionHandlerTableBody(t, eht, i) = exceptionHandler
-        (start, end, ip, catchType);
-    }
+    object eht = makeByteArray(t, ehtLength * 8);
+    s.read(reinterpret_cast<uint8_t*>(&byteArrayBody(t, eht, 0)),
+           ehtLength * 8);
 
     set(t, code, CodeExceptionHandlerTable, eht);
   }
@@ -1321,12 +1366,9 @@ parseCode(Thread* t, Stream& s, object pool)
                    &byteArrayBody(t, name, 0)) == 0)
     {
       unsigned lntLength = s.read2();
-      object lnt = makeLineNumberTable(t, lntLength);
-      for (unsigned i = 0; i < lntLength; ++i) {
-        unsigned ip = s.read2();
-        unsigned line = s.read2();
-        lineNumberTableBody(t, lnt, i) = lineNumber(ip, line);
-      }
+      object lnt = makeByteArray(t, lntLength * 4);
+      s.read(reinterpret_cast<uint8_t*>(&byteArrayBody(t, lnt, 0)),
+             lntLength * 4);
 
       set(t, code, CodeLineNumberTable, lnt);
     } else {
@@ -1400,6 +1442,18 @@ addInterfaceMethods(Thread* t, object class_, object virtualMap,
   return 0;
 }
 
+bool
+simpleConstructor(Thread* t, object code)
+{
+  unsigned length = codeLength(t, code);
+  return length and length <= MaxSimpleConstructorLength
+    and codeBody(t, code, length - 1) == return_
+    and (length == 1
+         or (length >= 5
+             and codeBody(t, code, 0) == aload_0
+             and codeBody(t, code, 1) == invokespecial));
+}
+
 void
 parseMethodTable(Thread* t, Stream& s, object class_, object pool)
 {
@@ -1466,7 +1520,7 @@ parseMethodTable(Thread* t, Stream& s, object class_, object pool)
                               &byteArrayBody(t, attributeName, 0)) == 0)
         {
           if (addendum == 0) {
-            addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0);
+            addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0, 0);
           }
           unsigned exceptionCount = s.read2();
           object body = makeShortArray(t, exceptionCount);
@@ -1479,7 +1533,7 @@ parseMethodTable(Thread* t, Stream& s, object class_, object pool)
                               &byteArrayBody(t, attributeName, 0)) == 0)
         {
           if (addendum == 0) {
-            addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0);
+            addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0, 0);
           }
 
           object body = makeByteArray(t, length);
@@ -1491,7 +1545,7 @@ parseMethodTable(Thread* t, Stream& s, object class_, object pool)
                               &byteArrayBody(t, attributeName, 0)) == 0)
         {
           if (addendum == 0) {
-            addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0);
+            addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0, 0);
           }
       
           set(t, addendum, AddendumSignature,
@@ -1501,7 +1555,7 @@ parseMethodTable(Thread* t, Stream& s, object class_, object pool)
                               &byteArrayBody(t, attributeName, 0)) == 0)
         {
           if (addendum == 0) {
-            addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0);
+            addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0, 0);
           }
 
           object body = makeByteArray(t, length);
@@ -1579,6 +1633,19 @@ parseMethodTable(Thread* t, Stream& s, object class_, object pool)
                     &byteArrayBody(t, methodName(t, method), 0)) == 0)
         {
           methodVmFlags(t, method) |= ConstructorFlag;
+
+          // the JIT replaces a method's bytecode with machine code once
+          // it has compiled it, but it may still need to analyze
+          // simple constructors afterward (see analyzeConstructor in
+          // compile.cpp), so we keep their bytecode here
+          if (code and simpleConstructor(t, code)) {
+            if (addendum == 0) {
+              addendum = makeMethodAddendum(t, pool, 0, 0, 0, 0, 0);
+              set(t, method, MethodAddendum, addendum);
+            }
+
+            set(t, addendum, MethodAddendumBytecode, code);
+          }
         }
       }
 
@@ -2019,12 +2086,6 @@ removeMonitor(Thread* t, object o)
   }
 }
 
-void
-removeString(Thread* t, object o)
-{
-  hashMapRemove(t, root(t, Machine::StringMap), o, stringHash, objectEqual);
-}
-
 void
 bootClass(Thread* t, Machine::Type type, int superType, uint32_t objectMask,
           unsigned fixedSize, unsigned arrayElementSize, unsigned vtableLength)
@@ -2209,7 +2270,7 @@ boot(Thread* t)
 
   setRoot(t, Machine::BootstrapClassMap, makeHashMap(t, 0, 0));
 
-  setRoot(t, Machine::StringMap, makeWeakHashMap(t, 0, 0));
+  setRoot(t, Machine::StringMap, makeStringMap(t));
 
   m->processor->boot(t, 0, 0);
 
@@ -2327,12 +2388,20 @@ doCollect(Thread* t, Heap::CollectionType type)
 
   Machine* m = t->m;
 
+  int64_t start = m->system->nanoTime();
+
   m->unsafe = true;
   m->heap->collect(type, footprint(m->rootThread));
   m->unsafe = false;
 
   postCollect(m->rootThread);
 
+  recordCollection(t, start);
+
+  if (m->heap->collectionType() == Heap::MajorCollection) {
+    sweepStringMap(t);
+  }
+
   killZombies(t, m->rootThread);
 
   for (unsigned i = 0; i < m->heapPoolIndex; ++i) {
@@ -2360,21 +2429,60 @@ doCollect(Thread* t, Heap::CollectionType type)
     function(t, finalizerTarget(t, finalizeQueue));
   }
 
+  if (m->finalizeQueueLength and m->finalizeQueueTime == 0) {
+    m->finalizeQueueTime = m->system->now();
+  }
+
   if ((root(t, Machine::ObjectsToFinalize) or root(t, Machine::ObjectsToClean))
-      and m->finalizeThread == 0)
+      and m->finalizeThreadCount == 0 and m->finalizeThreadLimit)
   {
-    m->finalizeThread = m->processor->makeThread
-      (m, root(t, Machine::FinalizerThread), m->rootThread);
+    object threads = root(t, Machine::FinalizerThreads);
+    for (unsigned i = 0; i < m->finalizeThreadLimit
+           and i < objectArrayLength(t, threads); ++i)
+    {
+      Thread* ft = m->processor->makeThread
+        (m, objectArrayBody(t, threads, i), m->rootThread);
     
-    addThread(t, m->finalizeThread);
+      addThread(t, ft);
+
+      m->finalizeThreads[m->finalizeThreadCount++] = ft;
 
-    if (not startThread(t, m->finalizeThread)) {
-      removeThread(t, m->finalizeThread);
-      m->finalizeThread = 0;
+      if (not startThread(t, ft)) {
+        removeThread(t, ft);
+        m->finalizeThreads[--m->finalizeThreadCount] = 0;
+        break;
+      }
     }
   }
 }
 
+// Removes up to batchSize elements from the front of the list stored
+// in the specified root, returning the removed elements as a list.
+object
+takeFinalizeBatch(Thread* t, Machine::Root list, unsigned nextOffset,
+                  unsigned* batchSize)
+{
+  object head = root(t, list);
+  if (head == 0 or *batchSize == 0) {
+    return 0;
+  }
+
+  object tail = head;
+  unsigned count = 1;
+  while (count < *batchSize and cast<object>(tail, nextOffset)) {
+    tail = cast<object>(tail, nextOffset);
+    ++ count;
+  }
+
+  setRoot(t, list, cast<object>(tail, nextOffset));
+  set(t, tail, nextOffset, 0);
+
+  *batchSize -= count;
+  t->m->finalizeQueueLength -= count;
+
+  return head;
+}
+
 uint64_t
 invokeLoadClass(Thread* t, uintptr_t* arguments)
 {
@@ -2397,6 +2505,159 @@ isInitializing(Thread* t, object c)
   return false;
 }
 
+uint32_t
+loadingHash(Thread* t, object key)
+{
+  return objectHash(t, pairFirst(t, key))
+    ^ byteArrayHash(t, pairSecond(t, key));
+}
+
+bool
+loadingEqual(Thread* t, object a, object b)
+{
+  return a == b or
+    (pairFirst(t, a) == pairFirst(t, b)
+     and byteArrayEqual(t, pairSecond(t, a), pairSecond(t, b)));
+}
+
+// key is a pair of the defining loader and the class name, since
+// different loaders may load classes of the same name concurrently
+object
+startLoading(Thread* t, object key, bool* loading)
+{
+  PROTECT(t, key);
+
+  ACQUIRE(t, t->m->classLock);
+
+  if (root(t, Machine::LoadingClassMap) == 0) {
+    setRoot(t, Machine::LoadingClassMap, makeHashMap(t, 0, 0));
+  }
+
+  while (true) {
+    object class_ = hashMapFind
+      (t, classLoaderMap(t, pairFirst(t, key)), pairSecond(t, key),
+       byteArrayHash, byteArrayEqual);
+    if (class_) {
+      *loading = false;
+      return class_;
+    }
+
+    object n = hashMapFindNode
+      (t, root(t, Machine::LoadingClassMap), key, loadingHash,
+       loadingEqual);
+
+    if (n == 0) {
+      break;
+    } else if (tripleSecond(t, n) == t->javaThread) {
+      *loading = false;
+      return 0;
+    }
+
+    // some other thread is loading this class - wait for it to
+    // finish.  Note that waiting releases the class lock, so the
+    // other thread can make progress even if we were holding it
+    // already.
+    ENTER(t, Thread::IdleState);
+    t->m->classLock->wait(t->systemThread, 0);
+  }
+
+  hashMapInsert
+    (t, root(t, Machine::LoadingClassMap), key, t->javaThread, loadingHash);
+
+  *loading = true;
+  return 0;
+}
+
+void
+finishLoading(Thread* t, object key)
+{
+  PROTECT(t, key);
+
+  ACQUIRE(t, t->m->classLock);
+
+  hashMapRemove
+    (t, root(t, Machine::LoadingClassMap), key, loadingHash, loadingEqual);
+
+  t->m->classLock->notifyAll(t->systemThread);
+}
+
+object
+loadSystemClass(Thread* t, object loader, object spec,
+                Machine::Type throwType)
+{
+  PROTECT(t, loader);
+  PROTECT(t, spec);
+
+  THREAD_RUNTIME_ARRAY(t, char, file, byteArrayLength(t, spec) + 6);
+  memcpy(RUNTIME_ARRAY_BODY(file),
+         &byteArrayBody(t, spec, 0),
+         byteArrayLength(t, spec) - 1);
+  memcpy(RUNTIME_ARRAY_BODY(file) + byteArrayLength(t, spec) - 1,
+         ".class",
+         7);
+
+  System::Region* region = static_cast<Finder*>
+    (systemClassLoaderFinder(t, loader))->find
+    (RUNTIME_ARRAY_BODY(file));
+
+  if (region == 0) {
+    return 0;
+  }
+
+  if (Verbose) {
+    fprintf(stderr, "parsing %s\n", &byteArrayBody(t, spec, 0));
+  }
+
+  object class_;
+  { THREAD_RESOURCE(t, System::Region*, region, region->dispose());
+
+    // parse class file without holding the class lock (unless our
+    // caller already holds it), so that unrelated classes may be
+    // loaded concurrently
+    class_ = parseClass
+      (t, loader, region->start(), region->length(), throwType);
+  }
+
+  if (Verbose) {
+    fprintf(stderr, "done parsing %s: %p\n",
+            &byteArrayBody(t, spec, 0),
+            class_);
+  }
+
+  PROTECT(t, class_);
+
+  { const char* source = static_cast<Finder*>
+      (systemClassLoaderFinder(t, loader))->sourceUrl
+      (RUNTIME_ARRAY_BODY(file));
+          
+    if (source) {
+      unsigned length = strlen(source);
+      object array = makeByteArray(t, length + 1);
+      memcpy(&byteArrayBody(t, array, 0), source, length);
+      array = internByteArray(t, array);
+            
+      set(t, class_, ClassSource, array);
+    }
+  }
+
+  ACQUIRE(t, t->m->classLock);
+
+  object bootstrapClass = hashMapFind
+    (t, root(t, Machine::BootstrapClassMap), spec, byteArrayHash,
+     byteArrayEqual);
+
+  if (bootstrapClass) {
+    PROTECT(t, bootstrapClass);
+          
+    updateBootstrapClass(t, bootstrapClass, class_);
+    class_ = bootstrapClass;
+  }
+
+  hashMapInsert(t, classLoaderMap(t, loader), spec, class_, byteArrayHash);
+
+  return class_;
+}
+
 } // namespace
 
 namespace vm {
@@ -2416,7 +2677,18 @@ Machine::Machine(System* system, Heap* heap, Finder* bootFinder,
   classpath(classpath),
   rootThread(0),
   exclusive(0),
-  finalizeThread(0),
+  finalizeThreadCount(0),
+  finalizeThreadLimit(1),
+  finalizeBatchSize(DefaultFinalizeBatchSize),
+  finalizeQueueLength(0),
+  finalizedCount(0),
+  finalizeQueueTime(0),
+  maxFinalizeLatency(0),
+  promotedBytes(0),
+  monitorCount(0),
+  compileCount(0),
+  compileTime(0),
+  metricsLog(0),
   jniReferences(0),
   properties(properties),
   propertyCount(propertyCount),
@@ -2450,6 +2722,34 @@ Machine::Machine(System* system, Heap* heap, Finder* bootFinder,
 {
   heap->setClient(heapClient);
 
+  memset(finalizeThreads, 0, sizeof(finalizeThreads));
+  memset(stringMapLocks, 0, sizeof(stringMapLocks));
+  memset(collectionCount, 0, sizeof(collectionCount));
+  memset(collectionTime, 0, sizeof(collectionTime));
+  memset(pauseHistogram, 0, sizeof(pauseHistogram));
+  memset(recentCollections, 0, sizeof(recentCollections));
+
+  const char* metricsLogProperty = findProperty(this, "avian.metrics.log");
+  if (metricsLogProperty) {
+    metricsLog = vm::fopen(metricsLogProperty, "wb");
+  }
+
+  const char* finalizeThreadProperty = findProperty
+    (this, "avian.finalizer.threads");
+  if (finalizeThreadProperty) {
+    int count = atoi(finalizeThreadProperty);
+    finalizeThreadLimit = count < 1 ? 1
+      : count > static_cast<int>(MaxFinalizeThreads) ? MaxFinalizeThreads
+      : count;
+  }
+
+  const char* finalizeBatchProperty = findProperty
+    (this, "avian.finalizer.batch");
+  if (finalizeBatchProperty) {
+    int size = atoi(finalizeBatchProperty);
+    finalizeBatchSize = size < 1 ? DefaultFinalizeBatchSize : size;
+  }
+
   populateJNITables(&javaVMVTable, &jniEnvVTable);
 
   if (not system->success(system->make(&localThread)) or
@@ -2463,6 +2763,12 @@ Machine::Machine(System* system, Heap* heap, Finder* bootFinder,
   {
     system->abort();
   }
+
+  for (unsigned i = 0; i < StringMapSegmentCount; ++i) {
+    if (not system->success(system->make(stringMapLocks + i))) {
+      system->abort();
+    }
+  }
 }
 
 void
@@ -2475,6 +2781,10 @@ Machine::dispose()
   referenceLock->dispose();
   shutdownLock->dispose();
 
+  for (unsigned i = 0; i < StringMapSegmentCount; ++i) {
+    stringMapLocks[i]->dispose();
+  }
+
   if (libraries) {
     libraries->disposeAll();
   }
@@ -2493,6 +2803,10 @@ Machine::dispose()
 
   heap->free(properties, sizeof(const char*) * propertyCount);
 
+  if (metricsLog) {
+    fclose(metricsLog);
+  }
+
   static_cast<HeapClient*>(heapClient)->dispose();
 
   heap->free(this, sizeof(*this));
@@ -2513,6 +2827,7 @@ Thread::Thread(Machine* m, object javaThread, Thread* parent):
   exception(0),
   heapIndex(0),
   heapOffset(0),
+  allocatedBytes(0),
   protector(0),
   classInitStack(0),
   runnable(this),
@@ -2606,23 +2921,29 @@ Thread::exit()
     } else {
       threadPeer(this, javaThread) = 0;
 
-      System::Monitor* myLock = lock;
+      // we acquire and release the state lock by hand rather than via
+      // ACQUIRE_RAW, since once we release it a collection or the
+      // last live thread may dispose of this Thread, along with its
+      // lock and system thread, so we must not touch them afterward
+      System::Monitor* stateLock = m->stateLock;
       System::Thread* mySystemThread = systemThread;
 
-      { ACQUIRE_RAW(this, m->stateLock);
+      stateLock->acquire(mySystemThread);
 
-        while (flags & SystemFlag) {
-          m->stateLock->wait(systemThread, 0);
-        }
+      if (flags >= SystemReference) {
+        // wait as an idle thread, since a thread using our lock may
+        // need to become active again before it can release us
+        ENTER(this, Thread::IdleState);
 
-        atomicOr(&flags, Thread::DisposeFlag);
-      
-        enter(this, Thread::ZombieState);
+        while (flags >= SystemReference) {
+          // we're exiting, so nobody will miss an interrupt we clear
+          stateLock->waitAndClearInterrupted(mySystemThread, 0);
+        }
       }
 
-      myLock->dispose();
+      enter(this, Thread::ZombieState);
 
-      mySystemThread->dispose();
+      stateLock->release(mySystemThread);
     }
   }
 }
@@ -2630,14 +2951,12 @@ Thread::exit()
 void
 Thread::dispose()
 {
-  if ((flags & Thread::DisposeFlag) == 0) {
-    if (lock) {
-      lock->dispose();
-    }
+  if (lock) {
+    lock->dispose();
+  }
 
-    if (systemThread) {
-      systemThread->dispose();
-    }
+  if (systemThread) {
+    systemThread->dispose();
   }
 
   m->heap->free(defaultHeap, ThreadHeapSizeInBytes);
@@ -2682,13 +3001,13 @@ shutDown(Thread* t)
     }
   }
 
-  // tell finalize thread to exit and wait for it to do so
+  // tell finalize threads to exit and wait for them to do so
   { ACQUIRE(t, t->m->stateLock);
-    Thread* finalizeThread = t->m->finalizeThread;
-    if (finalizeThread) {
-      t->m->finalizeThread = 0;
-      t->m->stateLock->notifyAll(t->systemThread);
+    t->m->finalizeThreadLimit = 0;
+    t->m->stateLock->notifyAll(t->systemThread);
 
+    for (unsigned i = 0; i < t->m->finalizeThreadCount; ++i) {
+      Thread* finalizeThread = t->m->finalizeThreads[i];
       while (finalizeThread->state != Thread::ZombieState
              and finalizeThread->state != Thread::JoinedState)
       {
@@ -2696,6 +3015,9 @@ shutDown(Thread* t)
         t->m->stateLock->wait(t->systemThread, 0);      
       }
     }
+
+    memset(t->m->finalizeThreads, 0, sizeof(t->m->finalizeThreads));
+    t->m->finalizeThreadCount = 0;
   }
 
   // interrupt daemon threads and tell them to die
@@ -2723,7 +3045,7 @@ enter(Thread* t, Thread::State s)
   }
 
 #ifdef USE_ATOMIC_OPERATIONS
-#  define INCREMENT atomicIncrement
+#  define INCREMENT atomicAdd
 #  define ACQUIRE_LOCK ACQUIRE_RAW(t, t->m->stateLock)
 #  define STORE_LOAD_MEMORY_BARRIER storeLoadMemoryBarrier()
 #else
@@ -2736,12 +3058,14 @@ enter(Thread* t, Thread::State s)
 
   switch (s) {
   case Thread::ExclusiveState: {
+    UninterruptibleWait waiter(t);
+
     ACQUIRE_LOCK;
 
     while (t->m->exclusive) {
       // another thread got here first.
       ENTER(t, Thread::IdleState);
-      t->m->stateLock->wait(t->systemThread, 0);
+      waiter.wait(t->m->stateLock);
     }
 
     switch (t->state) {
@@ -2760,7 +3084,7 @@ enter(Thread* t, Thread::State s)
     STORE_LOAD_MEMORY_BARRIER;
 
     while (t->m->activeCount > 1) {
-      t->m->stateLock->wait(t->systemThread, 0);
+      waiter.wait(t->m->stateLock);
     }
   } break;
 
@@ -2830,7 +3154,9 @@ enter(Thread* t, Thread::State s)
       }
     }
 
-    { ACQUIRE_LOCK;
+    { UninterruptibleWait waiter(t);
+
+      ACQUIRE_LOCK;
 
       switch (t->state) {
       case Thread::ExclusiveState: {
@@ -2845,7 +3171,7 @@ enter(Thread* t, Thread::State s)
       case Thread::NoState:
       case Thread::IdleState: {
         while (t->m->exclusive) {
-          t->m->stateLock->wait(t->systemThread, 0);
+          waiter.wait(t->m->stateLock);
         }
 
         INCREMENT(&(t->m->activeCount), 1);
@@ -2917,6 +3243,8 @@ allocate3(Thread* t, Allocator* allocator, Machine::AllocationType type,
     return allocateSmall(t, sizeInBytes);
   }
 
+  UninterruptibleWait waiter(t);
+
   ACQUIRE_RAW(t, t->m->stateLock);
 
   while (t->m->exclusive and t->m->exclusive != t) {
@@ -2925,7 +3253,7 @@ allocate3(Thread* t, Allocator* allocator, Machine::AllocationType type,
     ENTER(t, Thread::IdleState);
 
     while (t->m->exclusive) {
-      t->m->stateLock->wait(t->systemThread, 0);
+      waiter.wait(t->m->stateLock);
     }
   }
   
@@ -2937,7 +3265,8 @@ allocate3(Thread* t, Allocator* allocator, Machine::AllocationType type,
       {
         t->heap = 0;
         if ((not t->m->heap->limitExceeded())
-            and t->m->heapPoolIndex < ThreadHeapPoolSize)
+            and t->m->heapPoolIndex < t->m->heap->youngGenerationLimit()
+            / ThreadHeapSizeInBytes)
         {
           t->heap = static_cast<uintptr_t*>
             (t->m->heap->tryAllocate(ThreadHeapSizeInBytes));
@@ -2993,6 +3322,7 @@ allocate3(Thread* t, Allocator* allocator, Machine::AllocationType type,
     alias(o, 0) = FixedMark;
 
     t->m->fixedFootprint += total;
+    t->allocatedBytes += total;
 
     return o;
   }
@@ -3007,6 +3337,8 @@ allocate3(Thread* t, Allocator* allocator, Machine::AllocationType type,
 
     alias(o, 0) = FixedMark;
 
+    t->allocatedBytes += total;
+
     return o;
   }
 
@@ -3025,10 +3357,7 @@ makeNewGeneral(Thread* t, object class_)
   PROTECT(t, instance);
 
   if (classVmFlags(t, class_) & WeakReferenceFlag) {
-    ACQUIRE(t, t->m->referenceLock);
-    
-    jreferenceVmNext(t, instance) = t->m->weakReferences;
-    t->m->weakReferences = instance;
+    addWeakReference(t, instance);
   }
 
   if (classVmFlags(t, class_) & HasFinalizerFlag) {
@@ -3253,6 +3582,66 @@ instanceOf(Thread* t, object class_, object o)
   }
 }
 
+bool
+compatibleArrayTypes(Thread* t, object a, object b)
+{
+  return classArrayElementSize(t, a)
+    and classArrayElementSize(t, b)
+    and (a == b
+         // only arrays of references have object masks
+         or (classObjectMask(t, a) and classObjectMask(t, b)));
+}
+
+void
+arrayCopy(Thread* t, object src, int32_t srcOffset, object dst,
+          int32_t dstOffset, int32_t length)
+{
+  if (LIKELY(src and dst)) {
+    if (LIKELY(compatibleArrayTypes
+               (t, objectClass(t, src), objectClass(t, dst))))
+    {
+      unsigned elementSize = classArrayElementSize(t, objectClass(t, src));
+
+      if (LIKELY(elementSize)) {
+        intptr_t sl = cast<uintptr_t>(src, BytesPerWord);
+        intptr_t dl = cast<uintptr_t>(dst, BytesPerWord);
+        if (LIKELY(length > 0)) {
+          if (LIKELY(srcOffset >= 0 and srcOffset + length <= sl and
+                     dstOffset >= 0 and dstOffset + length <= dl))
+          {
+            uint8_t* sbody = &cast<uint8_t>(src, ArrayBody);
+            uint8_t* dbody = &cast<uint8_t>(dst, ArrayBody);
+            if (src == dst) {
+              memmove(dbody + (dstOffset * elementSize),
+                      sbody + (srcOffset * elementSize),
+                      length * elementSize);
+            } else {
+              memcpy(dbody + (dstOffset * elementSize),
+                     sbody + (srcOffset * elementSize),
+                     length * elementSize);
+            }
+
+            if (classObjectMask(t, objectClass(t, dst))) {
+              mark(t, dst, ArrayBody + (dstOffset * BytesPerWord), length);
+            }
+
+            return;
+          } else {
+            throwNew(t, Machine::IndexOutOfBoundsExceptionType);
+          }
+        } else {
+          return;
+        }
+      }
+    }
+  } else {
+    throwNew(t, Machine::NullPointerExceptionType);
+    return;
+  }
+
+  throwNew(t, Machine::ArrayStoreExceptionType);
+}
+
 object
 classInitializer(Thread* t, object class_)
 {
@@ -3474,87 +3863,58 @@ resolveSystemClass(Thread* t, object loader, object spec, bool throw_,
   PROTECT(t, loader);
   PROTECT(t, spec);
 
-  ACQUIRE(t, t->m->classLock);
-
-  object class_ = hashMapFind
-    (t, classLoaderMap(t, loader), spec, byteArrayHash, byteArrayEqual);
+  object class_ = findLoadedClass(t, loader, spec);
+  if (class_) {
+    return class_;
+  }
 
-  if (class_ == 0) {
-    PROTECT(t, class_);
+  PROTECT(t, class_);
 
-    if (classLoaderParent(t, loader)) {
-      class_ = resolveSystemClass
-        (t, classLoaderParent(t, loader), spec, false);
-      if (class_) {
-        return class_;
-      }
+  if (classLoaderParent(t, loader)) {
+    class_ = resolveSystemClass
+      (t, classLoaderParent(t, loader), spec, false);
+    if (class_) {
+      return class_;
     }
+  }
 
-    if (byteArrayBody(t, spec, 0) == '[') {
-      class_ = resolveArrayClass(t, loader, spec, throw_, throwType);
-    } else {
-      THREAD_RUNTIME_ARRAY(t, char, file, byteArrayLength(t, spec) + 6);
-      memcpy(RUNTIME_ARRAY_BODY(file),
-             &byteArrayBody(t, spec, 0),
-             byteArrayLength(t, spec) - 1);
-      memcpy(RUNTIME_ARRAY_BODY(file) + byteArrayLength(t, spec) - 1,
-             ".class",
-             7);
-
-      System::Region* region = static_cast<Finder*>
-        (systemClassLoaderFinder(t, loader))->find
-        (RUNTIME_ARRAY_BODY(file));
-
-      if (region) {
-        if (Verbose) {
-          fprintf(stderr, "parsing %s\n", &byteArrayBody(t, spec, 0));
-        }
-
-        { THREAD_RESOURCE(t, System::Region*, region, region->dispose());
-
-          // parse class file
-          class_ = parseClass
-            (t, loader, region->start(), region->length(), throwType);
-        }
-
-        if (Verbose) {
-          fprintf(stderr, "done parsing %s: %p\n",
-                  &byteArrayBody(t, spec, 0),
-                  class_);
-        }
-
-        { const char* source = static_cast<Finder*>
-            (systemClassLoaderFinder(t, loader))->sourceUrl
-            (RUNTIME_ARRAY_BODY(file));
-          
-          if (source) {
-            unsigned length = strlen(source);
-            object array = makeByteArray(t, length + 1);
-            memcpy(&byteArrayBody(t, array, 0), source, length);
-            array = internByteArray(t, array);
-            
-            set(t, class_, ClassSource, array);
-          }
-        }
+  if (byteArrayBody(t, spec, 0) == '[') {
+    class_ = resolveArrayClass(t, loader, spec, throw_, throwType);
 
-        object bootstrapClass = hashMapFind
-          (t, root(t, Machine::BootstrapClassMap), spec, byteArrayHash,
-           byteArrayEqual);
+    if (class_) {
+      ACQUIRE(t, t->m->classLock);
 
-        if (bootstrapClass) {
-          PROTECT(t, bootstrapClass);
-          
-          updateBootstrapClass(t, bootstrapClass, class_);
-          class_ = bootstrapClass;
-        }
+      if (hashMapFind(t, classLoaderMap(t, loader), spec, byteArrayHash,
+                      byteArrayEqual) == 0)
+      {
+        hashMapInsert
+          (t, classLoaderMap(t, loader), spec, class_, byteArrayHash);
       }
     }
+  } else {
+    object key = makePair(t, loader, spec);
+    PROTECT(t, key);
 
+    bool loading;
+    class_ = startLoading(t, key, &loading);
     if (class_) {
-      hashMapInsert(t, classLoaderMap(t, loader), spec, class_, byteArrayHash);
-    } else if (throw_) {
-      throwNew(t, throwType, "%s", &byteArrayBody(t, spec, 0));
+      return class_;
+    }
+
+    // if we're responsible for loading this class, make sure other
+    // threads waiting for it are woken when we're done, whether or not
+    // we succeed.  Otherwise, this thread is already loading it further
+    // up the stack, so there's no one to wait for.
+    if (not loading) {
+      key = 0;
     }
+    OBJECT_RESOURCE(t, key, if (key) finishLoading(t, key));
+
+    class_ = loadSystemClass(t, loader, spec, throwType);
+  }
+
+  if (class_ == 0 and throw_) {
+    throwNew(t, throwType, "%s", &byteArrayBody(t, spec, 0));
   }
 
   return class_;
@@ -4004,6 +4364,8 @@ objectMonitor(Thread* t, object o, bool createNew)
       hashMapInsert(t, root(t, Machine::MonitorMap), o, m, objectHash);
 
       addFinalizer(t, o, removeMonitor);
+
+      ++ t->m->monitorCount;
     }
 
     return m;
@@ -4012,21 +4374,96 @@ objectMonitor(Thread* t, object o, bool createNew)
   }
 }
 
+object
+parseExceptionHandlerTable(Thread* t, object code)
+{
+  PROTECT(t, code);
+
+  object raw = codeExceptionHandlerTable(t, code);
+  PROTECT(t, raw);
+
+  unsigned length = byteArrayLength(t, raw) / 8;
+  object eht = makeExceptionHandlerTable(t, length);
+
+  Stream s(0, reinterpret_cast<uint8_t*>(&byteArrayBody(t, raw, 0)),
+           byteArrayLength(t, raw));
+  for (unsigned i = 0; i < length; ++i) {
+    unsigned start = s.read2();
+    unsigned end = s.read2();
+    unsigned ip = s.read2();
+    unsigned catchType = s.read2();
+    exceptionHandlerTableBody(t, eht, i) = exceptionHandler
+      (start, end, ip, catchType);
+  }
+
+  // another thread may be doing the same thing, but it will arrive at
+  // an identical table, so it doesn't matter which one wins
+  set(t, code, CodeExceptionHandlerTable, eht);
+
+  return eht;
+}
+
+object
+parseLineNumberTable(Thread* t, object code)
+{
+  PROTECT(t, code);
+
+  object raw = codeLineNumberTable(t, code);
+  PROTECT(t, raw);
+
+  unsigned length = byteArrayLength(t, raw) / 4;
+  object lnt = makeLineNumberTable(t, length);
+
+  Stream s(0, reinterpret_cast<uint8_t*>(&byteArrayBody(t, raw, 0)),
+           byteArrayLength(t, raw));
+  for (unsigned i = 0; i < length; ++i) {
+    unsigned ip = s.read2();
+    unsigned line = s.read2();
+    lineNumberTableBody(t, lnt, i) = lineNumber(ip, line);
+  }
+
+  set(t, code, CodeLineNumberTable, lnt);
+
+  return lnt;
+}
+
+object
+makeStringMap(Thread* t)
+{
+  object map = makeArray(t, StringMapSegmentCount);
+  PROTECT(t, map);
+
+  for (unsigned i = 0; i < StringMapSegmentCount; ++i) {
+    object segment = makeWeakHashMap(t, 0, 0);
+    set(t, map, ArrayBody + (i * BytesPerWord), segment);
+  }
+
+  return map;
+}
+
 object
 intern(Thread* t, object s)
 {
   PROTECT(t, s);
 
-  ACQUIRE(t, t->m->referenceLock);
+  // the low bits of the hash select a bucket within a segment, so we
+  // use the high bits of a scrambled version to select the segment
+  unsigned segment = (stringHash(t, s) * 0x9E3779B9U)
+    >> (32 - StringMapSegmentBits);
 
-  object n = hashMapFindNode
-    (t, root(t, Machine::StringMap), s, stringHash, stringEqual);
+  ACQUIRE(t, t->m->stringMapLocks[segment]);
+
+  object map = arrayBody(t, root(t, Machine::StringMap), segment);
+
+  object n = hashMapFindNode(t, map, s, stringHash, stringEqual);
 
   if (n) {
     return jreferenceTarget(t, tripleFirst(t, n));
   } else {
-    hashMapInsert(t, root(t, Machine::StringMap), s, 0, stringHash);
-    addFinalizer(t, s, removeString);
+    // entries for strings which have been collected are swept by
+    // sweepStringMap after major collections and dropped whenever a
+    // segment is resized
+    hashMapInsert(t, map, s, 0, stringHash);
     return s;
   }
 }
@@ -4143,7 +4580,11 @@ printTrace(Thread* t, object exception)
     exception = makeThrowable(t, Machine::NullPointerExceptionType);
   }
 
+  PROTECT(t, exception);
+
   for (object e = exception; e; e = throwableCause(t, e)) {
+    PROTECT(t, e);
+
     if (e != exception) {
       fprintf(errorLog(t), "caused by: ");
     }
@@ -4162,14 +4603,33 @@ printTrace(Thread* t, object exception)
 
     object trace = throwableTrace(t, e);
     if (trace) {
-      for (unsigned i = 0; i < objectArrayLength(t, trace); ++i) {
-        object e = objectArrayBody(t, trace, i);
+      PROTECT(t, trace);
+
+      bool raw = objectClass(t, trace) == type(t, Machine::RawTraceType);
+      unsigned length = raw
+        ? rawTraceLength(t, trace) : objectArrayLength(t, trace);
+
+      for (unsigned i = 0; i < length; ++i) {
+        object m;
+        int ip;
+        if (raw) {
+          m = objectArrayBody(t, rawTraceMethods(t, trace), i);
+          ip = intArrayBody(t, rawTraceIps(t, trace), i);
+        } else {
+          object e = objectArrayBody(t, trace, i);
+          m = traceElementMethod(t, e);
+          ip = traceElementIp(t, e);
+        }
+
+        PROTECT(t, m);
+
+        // look up the line first, so that the raw pointers below can't
+        // be invalidated by anything it does
+        int line = t->m->processor->lineNumber(t, m, ip);
+
         const int8_t* class_ = &byteArrayBody
-          (t, className(t, methodClass(t, traceElementMethod(t, e))), 0);
-        const int8_t* method = &byteArrayBody
-          (t, methodName(t, traceElementMethod(t, e)), 0);
-        int line = t->m->processor->lineNumber
-          (t, traceElementMethod(t, e), traceElementIp(t, e));
+          (t, className(t, methodClass(t, m)), 0);
+        const int8_t* method = &byteArrayBody(t, methodName(t, m), 0);
 
         fprintf(errorLog(t), "  at %s.%s ", class_, method);
 
@@ -4225,6 +4685,66 @@ makeTrace(Thread* t, Processor::StackWalker* walker)
   return v.trace ? v.trace : makeObjectArray(t, 0);
 }
 
+object
+makeRawTrace(Thread* t, Processor::StackWalker* walker)
+{
+  // unlike makeTrace, this visits each frame only once and allocates
+  // nothing per frame, growing its arrays as needed instead of
+  // counting the frames first, and trimming them to size at the end
+  class Visitor: public Processor::StackVisitor {
+   public:
+    Visitor(Thread* t):
+      t(t), methods(0), ips(0), index(0), methodsProtector(t, &methods),
+      ipsProtector(t, &ips)
+    { }
+
+    virtual bool visit(Processor::StackWalker* walker) {
+      if (methods == 0 or index == objectArrayLength(t, methods)) {
+        resize(methods ? index * 2 : 32);
+      }
+
+      set(t, methods, ArrayBody + (index * BytesPerWord), walker->method());
+      intArrayBody(t, ips, index) = walker->ip();
+      ++ index;
+      return true;
+    }
+
+    void resize(unsigned capacity) {
+      object newMethods = makeObjectArray(t, capacity);
+      PROTECT(t, newMethods);
+
+      object newIps = makeIntArray(t, capacity);
+
+      if (methods) {
+        for (unsigned i = 0; i < index; ++i) {
+          set(t, newMethods, ArrayBody + (i * BytesPerWord),
+              objectArrayBody(t, methods, i));
+        }
+        memcpy(&intArrayBody(t, newIps, 0),
+               &intArrayBody(t, ips, 0), index * 4);
+      }
+
+      methods = newMethods;
+      ips = newIps;
+    }
+
+    Thread* t;
+    object methods;
+    object ips;
+    unsigned index;
+    Thread::SingleProtector methodsProtector;
+    Thread::SingleProtector ipsProtector;
+  } v(t);
+
+  walker->walk(&v);
+
+  if (v.methods and v.index < objectArrayLength(t, v.methods)) {
+    v.resize(v.index);
+  }
+
+  return makeRawTrace(t, v.index, v.methods, v.ips);
+}
+
 object
 makeTrace(Thread* t, Thread* target)
 {
@@ -4256,9 +4776,10 @@ runFinalizeThread(Thread* t)
   PROTECT(t, cleanList);
 
   while (true) {
+    unsigned count;
     { ACQUIRE(t, t->m->stateLock);
 
-      while (t->m->finalizeThread
+      while (t->m->finalizeThreadLimit
              and root(t, Machine::ObjectsToFinalize) == 0
              and root(t, Machine::ObjectsToClean) == 0)
       {
@@ -4266,14 +4787,37 @@ runFinalizeThread(Thread* t)
         t->m->stateLock->wait(t->systemThread, 0);
       }
 
-      if (t->m->finalizeThread == 0) {
+      if (t->m->finalizeThreadLimit == 0) {
         return;
       } else {
-        finalizeList = root(t, Machine::ObjectsToFinalize);
-        setRoot(t, Machine::ObjectsToFinalize, 0);
+        // take at most finalizeBatchSize elements so that other
+        // finalize threads may share the remaining work
+        unsigned batchSize = t->m->finalizeBatchSize;
+
+        finalizeList = takeFinalizeBatch
+          (t, Machine::ObjectsToFinalize, FinalizerQueueNext, &batchSize);
+
+        cleanList = takeFinalizeBatch
+          (t, Machine::ObjectsToClean, CleanerQueueNext, &batchSize);
+
+        count = t->m->finalizeBatchSize - batchSize;
+
+        if (t->m->finalizeQueueTime) {
+          int64_t latency = t->m->system->now() - t->m->finalizeQueueTime;
+          if (latency > t->m->maxFinalizeLatency) {
+            t->m->maxFinalizeLatency = latency;
+          }
+        }
 
-        cleanList = root(t, Machine::ObjectsToClean);
-        setRoot(t, Machine::ObjectsToClean, 0);
+        if (t->m->finalizeQueueLength == 0) {
+          t->m->finalizeQueueTime = 0;
+        }
+
+        if (root(t, Machine::ObjectsToFinalize)
+            or root(t, Machine::ObjectsToClean))
+        {
+          t->m->stateLock->notify(t->systemThread);
+        }
       }
     }
 
@@ -4284,6 +4828,11 @@ runFinalizeThread(Thread* t)
     for (; cleanList; cleanList = cleanerQueueNext(t, cleanList)) {
       finalizeObject(t, cleanList, "clean");
     }
+
+    { ACQUIRE(t, t->m->stateLock);
+
+      t->m->finalizedCount += count;
+    }
   }
 }
 
@@ -4453,7 +5002,7 @@ vmAddressFromLine(Thread* t, object m, unsigned line)
 {
   object code = methodCode(t, m);
   printf("code: %p\n", code);
-  object lnt = codeLineNumberTable(t, code);
+  object lnt = lineNumberTable(t, code);
   printf("lnt: %p\n", lnt);
 	
   if (lnt) {
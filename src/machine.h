@@ -115,10 +115,28 @@ const unsigned ThreadBackupHeapSizeInWords
 const unsigned StackSizeInBytes = 128 * 1024;
 const unsigned StackSizeInWords = StackSizeInBytes / BytesPerWord;
 
-const unsigned ThreadHeapPoolSize = 64;
+// the heap decides how many thread-local heaps may be allocated
+// between minor collections, up to this many:
+const unsigned ThreadHeapPoolSize
+= MaximumYoungGenerationInBytes / ThreadHeapSizeInBytes;
 
-const unsigned FixedFootprintThresholdInBytes
-= ThreadHeapPoolSize * ThreadHeapSizeInBytes;
+const unsigned MaxFinalizeThreads = 16;
+const unsigned DefaultFinalizeBatchSize = 64;
+
+const unsigned FixedFootprintThresholdInBytes = 4 * 1024 * 1024;
+
+// collection pauses are counted in buckets by the base 2 logarithm
+// of their duration in microseconds, with the last bucket also
+// counting anything longer
+const unsigned PauseHistogramSize = 24;
+
+// the number of collections for which avian.Metrics keeps details
+const unsigned RecentCollectionCount = 32;
+
+// the table of interned strings is split into this many separately
+// locked segments
+const unsigned StringMapSegmentBits = 4;
+const unsigned StringMapSegmentCount = 1 << StringMapSegmentBits;
 
 enum FieldCode {
   VoidField,
@@ -1199,6 +1217,15 @@ atomicAnd(uint32_t* p, int v)
   { }
 }
 
+inline void
+atomicAdd(uint32_t* p, int v)
+{
+  for (uint32_t old = *p;
+       not atomicCompareAndSwap32(p, old, old + v);
+       old = *p)
+  { }
+}
+
 inline int
 strcmp(const int8_t* a, const int8_t* b)
 {
@@ -1258,7 +1285,7 @@ class Machine {
     JNIMethodTable,
     JNIFieldTable,
     ShutdownHooks,
-    FinalizerThread,
+    FinalizerThreads,
     ObjectsToFinalize,
     ObjectsToClean,
     NullPointerException,
@@ -1267,10 +1294,11 @@ class Machine {
     OutOfMemoryError,
     Shutdown,
     VirtualFileFinders,
-    VirtualFiles
+    VirtualFiles,
+    LoadingClassMap
   };
 
-  static const unsigned RootCount = VirtualFiles + 1;
+  static const unsigned RootCount = LoadingClassMap + 1;
 
   Machine(System* system, Heap* heap, Finder* bootFinder, Finder* appFinder,
           Processor* processor, Classpath* classpath, const char** properties,
@@ -1283,6 +1311,14 @@ class Machine {
 
   void dispose();
 
+  class CollectionRecord {
+   public:
+    int64_t start;
+    int64_t duration;
+    Heap::CollectionType type;
+    Heap::Statistics statistics;
+  };
+
   JavaVMVTable* vtable;
   System* system;
   Heap::Client* heapClient;
@@ -1293,7 +1329,23 @@ class Machine {
   Classpath* classpath;
   Thread* rootThread;
   Thread* exclusive;
-  Thread* finalizeThread;
+  Thread* finalizeThreads[MaxFinalizeThreads];
+  unsigned finalizeThreadCount;
+  unsigned finalizeThreadLimit;
+  unsigned finalizeBatchSize;
+  unsigned finalizeQueueLength;
+  uint64_t finalizedCount;
+  int64_t finalizeQueueTime;
+  int64_t maxFinalizeLatency;
+  uint64_t collectionCount[2];
+  int64_t collectionTime[2];
+  uint64_t promotedBytes;
+  uint64_t pauseHistogram[PauseHistogramSize];
+  CollectionRecord recentCollections[RecentCollectionCount];
+  uint64_t monitorCount;
+  uint64_t compileCount;
+  int64_t compileTime;
+  FILE* metricsLog;
   Reference* jniReferences;
   const char** properties;
   unsigned propertyCount;
@@ -1309,6 +1361,7 @@ class Machine {
   System::Monitor* classLock;
   System::Monitor* referenceLock;
   System::Monitor* shutdownLock;
+  System::Monitor* stringMapLocks[StringMapSegmentCount];
   System::Library* libraries;
   FILE* errorLog;
   object types;
@@ -1386,8 +1439,10 @@ class Thread {
   static const unsigned DaemonFlag = 1 << 3;
   static const unsigned StressFlag = 1 << 4;
   static const unsigned ActiveFlag = 1 << 5;
-  static const unsigned SystemFlag = 1 << 6;
-  static const unsigned DisposeFlag = 1 << 7;
+
+  // the bits above the flags count the threads which have called
+  // acquireSystem on this thread and not yet released it
+  static const unsigned SystemReference = 1 << 8;
 
   class Protector {
    public:
@@ -1549,6 +1604,7 @@ class Thread {
   object exception;
   unsigned heapIndex;
   unsigned heapOffset;
+  uint64_t allocatedBytes;
   Protector* protector;
   ClassInitStack* classInitStack;
   Resource* resource;
@@ -1626,6 +1682,11 @@ makeClasspath(System* system, Allocator* allocator, const char* javaHome,
 
 typedef uint64_t (JNICALL *FastNativeFunction)(Thread*, object, uintptr_t*);
 
+// JNI methods taking at most this many words of arguments, including
+// the JNIEnv and the class or instance, may be called directly rather
+// than via System::call if none of them are floating point values
+const unsigned MaxDirectNativeArguments = 8;
+
 inline object
 objectClass(Thread*, object o)
 {
@@ -1659,6 +1720,35 @@ class StateResource: public Thread::Resource {
   Thread::State oldState;
 };
 
+// Waits on VM-internal monitors without being cut short by
+// Thread.interrupt, which would otherwise make the loops around such
+// waits spin for as long as the interrupt is pending.  The interrupt
+// is reasserted when this goes out of scope, so it must outlive any
+// IdleState scope it is used in.
+class UninterruptibleWait: public Thread::Resource {
+ public:
+  UninterruptibleWait(Thread* t): Resource(t), interrupted(false) { }
+
+  ~UninterruptibleWait() {
+    if (interrupted) {
+      t->systemThread->interrupt();
+    }
+  }
+
+  void wait(System::Monitor* m) {
+    if (m->waitAndClearInterrupted(t->systemThread, 0)) {
+      interrupted = true;
+    }
+  }
+
+  virtual void release() {
+    this->UninterruptibleWait::~UninterruptibleWait();
+  }
+
+ private:
+  bool interrupted;
+};
+
 inline void
 dispose(Thread* t, Reference* r)
 {
@@ -1964,6 +2054,17 @@ runJavaThread(Thread* t)
 void
 runFinalizeThread(Thread* t);
 
+inline bool
+isFinalizeThread(Thread* t)
+{
+  for (unsigned i = 0; i < t->m->finalizeThreadCount; ++i) {
+    if (t->m->finalizeThreads[i] == t) {
+      return true;
+    }
+  }
+  return false;
+}
+
 inline uint64_t
 runThread(Thread* t, uintptr_t*)
 {
@@ -1971,7 +2072,7 @@ runThread(Thread* t, uintptr_t*)
 
   checkDaemon(t);
 
-  if (t == t->m->finalizeThread) {
+  if (isFinalizeThread(t)) {
     runFinalizeThread(t);
   } else if (t->javaThread) {
     runJavaThread(t);
@@ -2155,6 +2256,9 @@ makeTrace(Thread* t, Processor::StackWalker* walker);
 object
 makeTrace(Thread* t, Thread* target);
 
+object
+makeRawTrace(Thread* t, Processor::StackWalker* walker);
+
 inline object
 makeTrace(Thread* t)
 {
@@ -2241,6 +2345,10 @@ stringUTFChars(Thread* t, object string, char* chars, unsigned charsLength)
 bool
 isAssignableFrom(Thread* t, object a, object b);
 
+void
+arrayCopy(Thread* t, object src, int32_t srcOffset, object dst,
+          int32_t dstOffset, int32_t length);
+
 object
 classInitializer(Thread* t, object class_);
 
@@ -2483,6 +2591,34 @@ emptyMethod(Thread* t, object method)
     and (codeBody(t, methodCode(t, method), 0) == return_);
 }
 
+object
+parseExceptionHandlerTable(Thread* t, object code);
+
+inline object
+exceptionHandlerTable(Thread* t, object code)
+{
+  object table = codeExceptionHandlerTable(t, code);
+  if (table and objectClass(t, table) == type(t, Machine::ByteArrayType)) {
+    return parseExceptionHandlerTable(t, code);
+  } else {
+    return table;
+  }
+}
+
+object
+parseLineNumberTable(Thread* t, object code);
+
+inline object
+lineNumberTable(Thread* t, object code)
+{
+  object table = codeLineNumberTable(t, code);
+  if (table and objectClass(t, table) == type(t, Machine::ByteArrayType)) {
+    return parseLineNumberTable(t, code);
+  } else {
+    return table;
+  }
+}
+
 object
 parseUtf8(Thread* t, const char* data, unsigned length);
 
@@ -2764,6 +2900,22 @@ parameterFootprint(Thread* t, const char* s, bool static_);
 void
 addFinalizer(Thread* t, object target, void (*finalize)(Thread*, object));
 
+inline void
+addWeakReference(Thread* t, object r)
+{
+  // this may race with other threads adding references, but never
+  // with the collector, which only runs when all other threads are
+  // idle
+  object head;
+  do {
+    head = t->m->weakReferences;
+    jreferenceVmNext(t, r) = head;
+  } while (not atomicCompareAndSwap
+           (reinterpret_cast<uintptr_t*>(&(t->m->weakReferences)),
+            reinterpret_cast<uintptr_t>(head),
+            reinterpret_cast<uintptr_t>(r)));
+}
+
 inline bool
 zombified(Thread* t)
 {
@@ -2777,7 +2929,10 @@ acquireSystem(Thread* t, Thread* target)
   ACQUIRE_RAW(t, t->m->stateLock);
 
   if (not zombified(target)) {
-    atomicOr(&(target->flags), Thread::SystemFlag);
+    // several threads may hold the same target at once (e.g. one
+    // interrupting it while another notifies it), so this is a count
+    // rather than a single flag
+    atomicAdd(&(target->flags), Thread::SystemReference);
     return true;
   } else {
     return false;
@@ -2790,8 +2945,14 @@ releaseSystem(Thread* t, Thread* target)
   ACQUIRE_RAW(t, t->m->stateLock);
 
   assert(t, not zombified(target));
+  assert(t, target->flags >= Thread::SystemReference);
+
+  atomicAdd(&(target->flags), -static_cast<int>(Thread::SystemReference));
 
-  atomicAnd(&(target->flags), ~Thread::SystemFlag);
+  if (target->flags < Thread::SystemReference) {
+    // the target may be waiting in Thread::exit for us to finish
+    t->m->stateLock->notifyAll(t->systemThread);
+  }
 }
 
 inline bool
@@ -2906,6 +3067,8 @@ monitorAcquire(Thread* t, object monitor, object node = 0)
     PROTECT(t, monitor);
     PROTECT(t, node);
 
+    UninterruptibleWait waiter(t);
+
     ACQUIRE(t, t->lock);
 
     monitorAtomicAppendAcquire(t, monitor, node);
@@ -2921,7 +3084,7 @@ monitorAcquire(Thread* t, object monitor, object node = 0)
     {
       ENTER(t, Thread::IdleState);
       
-      t->lock->wait(t->systemThread, 0);
+      waiter.wait(t->lock);
     }
 
     expect(t, t == monitorAtomicPollAcquire(t, monitor, true));
@@ -3272,6 +3435,9 @@ exceptionMatch(Thread* t, object type, object exception)
         and instanceOf(t, type, t->exception));
 }
 
+object
+makeStringMap(Thread* t);
+
 object
 intern(Thread* t, object s);
 
@@ -3741,6 +3907,64 @@ primitiveClass(Thread* t, char name)
   }
 }
   
+inline object
+makeJniNative(Thread* t, object method, void* function)
+{
+  // decide once, when the method is bound, whether it may be called
+  // directly, and if so which parameters are references and which
+  // occupy two stack slots, so that the per-call work is limited to
+  // copying stack slots into an argument array
+  unsigned argumentCount = methodParameterCount(t, method) + 2;
+  bool direct = argumentCount <= MaxDirectNativeArguments;
+
+  switch (methodReturnCode(t, method)) {
+  case FloatField:
+  case DoubleField:
+    direct = false;
+    break;
+
+  case LongField:
+    direct = direct and BytesPerWord == 8;
+    break;
+
+  default: break;
+  }
+
+  unsigned references = 0;
+  unsigned longs = 0;
+  if (direct) {
+    MethodSpecIterator it
+      (t, reinterpret_cast<const char*>
+       (&byteArrayBody(t, methodSpec(t, method), 0)));
+
+    for (unsigned i = 0; it.hasNext(); ++i) {
+      switch (fieldCode(t, *it.next())) {
+      case ObjectField:
+        references |= 1 << i;
+        break;
+
+      case LongField:
+        if (BytesPerWord == 8) {
+          longs |= 1 << i;
+        } else {
+          direct = false;
+        }
+        break;
+
+      case FloatField:
+      case DoubleField:
+        direct = false;
+        break;
+
+      default: break;
+      }
+    }
+  }
+
+  return makeNative
+    (t, function, false, direct, direct ? references : 0, direct ? longs : 0);
+}
+
 inline void
 registerNative(Thread* t, object method, void* function)
 {
@@ -3748,7 +3972,7 @@ registerNative(Thread* t, object method, void* function)
 
   expect(t, methodFlags(t, method) & ACC_NATIVE);
 
-  object native = makeNative(t, function, false);
+  object native = makeJniNative(t, method, function);
   PROTECT(t, native);
 
   object runtimeData = getMethodRuntimeData(t, method);
@@ -341,14 +341,23 @@ class MySystem: public System {
               t->r->setInterrupted(false);
             }
           }
+        }
+
+        pthread_mutex_lock(&mutex);
+
+        // a notifier removes us from the wait list and marks us
+        // notified while holding the monitor's mutex, so we can't tell
+        // whether that happened until we hold it too.  Otherwise, a
+        // notifyAll racing with an interrupt could leave a stale
+        // Notified flag which would keep us in the list after a later
+        // wait, long after we've returned (and perhaps been disposed).
+        { ACQUIRE(t->mutex);
 
           notified = ((t->flags & Notified) != 0);
-        
+
           t->flags = 0;
         }
 
-        pthread_mutex_lock(&mutex);
-
         if (not notified) {
           remove(t);
         }
@@ -870,6 +879,20 @@ class MySystem: public System {
       (static_cast<int64_t>(tv.tv_usec) / 1000);
   }
 
+  virtual int64_t nanoTime() {
+#ifdef CLOCK_MONOTONIC
+    timespec ts = { 0, 0 };
+    if (clock_gettime(CLOCK_MONOTONIC, &ts) == 0) {
+      return (static_cast<int64_t>(ts.tv_sec) * 1000 * 1000 * 1000)
+        + ts.tv_nsec;
+    }
+#endif
+    timeval tv = { 0, 0 };
+    gettimeofday(&tv, 0);
+    return (static_cast<int64_t>(tv.tv_sec) * 1000 * 1000 * 1000) +
+      (static_cast<int64_t>(tv.tv_usec) * 1000);
+  }
+
   virtual void yield() {
     sched_yield();
   }
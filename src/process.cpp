@@ -14,6 +14,20 @@ using namespace vm;
 
 namespace {
 
+uint64_t
+lineNumberEntry(Thread* t, object table, bool raw, unsigned index)
+{
+  if (raw) {
+    // the table is still in its class file form: a big-endian start
+    // IP and line number for each entry
+    uint8_t* p = reinterpret_cast<uint8_t*>
+      (&byteArrayBody(t, table, index * 4));
+    return lineNumber((p[0] << 8) | p[1], (p[2] << 8) | p[3]);
+  } else {
+    return lineNumberTableBody(t, table, index);
+  }
+}
+
 unsigned
 mangledSize(int8_t c)
 {
@@ -208,12 +222,12 @@ resolveNativeMethod(Thread* t, object method)
 {
   void* p = resolveNativeMethod(t, method, "Avian_", 6, 3);
   if (p) {
-    return makeNative(t, p, true);
+    return makeNative(t, p, true, false, 0, 0);
   }
 
   p = resolveNativeMethod(t, method, "Java_", 5, -1);
   if (p) {
-    return makeNative(t, p, false);
+    return makeJniNative(t, method, p);
   }
 
   return 0;
@@ -230,6 +244,15 @@ resolveNative(Thread* t, object method)
 
   assert(t, methodFlags(t, method) & ACC_NATIVE);
 
+  if (LIKELY(methodRuntimeDataNative(t, getMethodRuntimeData(t, method))
+             and (classVmFlags(t, methodClass(t, method)) & NeedInitFlag)
+             == 0))
+  {
+    // we're called on every invocation of a native method, so return
+    // early once it's bound and its class has been initialized
+    return;
+  }
+
   initClass(t, methodClass(t, method));
 
   if (methodRuntimeDataNative(t, getMethodRuntimeData(t, method)) == 0) {
@@ -264,18 +287,25 @@ findLineNumber(Thread* t, object method, unsigned ip)
   // about, so we back up first:
   -- ip;
 
-  object code = methodCode(t, method);
-  object lnt = codeLineNumberTable(t, code);
+  // we search the table in whatever form it's in rather than calling
+  // lineNumberTable, since that may allocate and our callers (e.g. when
+  // printing a stack trace) hold raw pointers into the heap
+  object lnt = codeLineNumberTable(t, methodCode(t, method));
   if (lnt) {
+    bool raw = objectClass(t, lnt) == type(t, Machine::ByteArrayType);
+    unsigned length = raw
+      ? byteArrayLength(t, lnt) / 4 : lineNumberTableLength(t, lnt);
+
     unsigned bottom = 0;
-    unsigned top = lineNumberTableLength(t, lnt);
+    unsigned top = length;
     for (unsigned span = top - bottom; span; span = top - bottom) {
       unsigned middle = bottom + (span / 2);
-      uint64_t ln = lineNumberTableBody(t, lnt, middle);
+      uint64_t ln = lineNumberEntry(t, lnt, raw, middle);
 
       if (ip >= lineNumberIp(ln)
-          and (middle + 1 == lineNumberTableLength(t, lnt)
-               or ip < lineNumberIp(lineNumberTableBody(t, lnt, middle + 1))))
+          and (middle + 1 == length
+               or ip < lineNumberIp
+               (lineNumberEntry(t, lnt, raw, middle + 1))))
       {
         return lineNumberLine(ln);
       } else if (ip < lineNumberIp(ln)) {
@@ -285,8 +315,8 @@ findLineNumber(Thread* t, object method, unsigned ip)
       }
     }
 
-    if (top < lineNumberTableLength(t, lnt)) {
-      return lineNumberLine(lineNumberTableBody(t, lnt, top));
+    if (top < length) {
+      return lineNumberLine(lineNumberEntry(t, lnt, raw, top));
     } else {
       return UnknownLine;
     }
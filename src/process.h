@@ -1,4 +1,4 @@
-/* Copyright (c) 2008-2010, Avian Contributors
+/* Copyright (c) 2008-2011, Avian Contributors
 
    Permission to use, copy, modify, and/or distribute this software
    for any purpose with or without fee is hereby granted, provided
@@ -59,6 +59,33 @@ isSpecialMethod(Thread* t, object method, object class_)
 void
 resolveNative(Thread* t, object method);
 
+inline uint64_t
+invokeDirectNative(Thread* t, void* function, uintptr_t* a, unsigned count)
+{
+  // the C compiler places each word in the register or stack slot the
+  // native ABI expects, which is all System::call would have done for
+  // a method without floating point arguments
+  typedef uintptr_t W;
+
+  switch (count) {
+  case 2: return reinterpret_cast<W (JNICALL *)(W, W)>
+      (function)(a[0], a[1]);
+  case 3: return reinterpret_cast<W (JNICALL *)(W, W, W)>
+      (function)(a[0], a[1], a[2]);
+  case 4: return reinterpret_cast<W (JNICALL *)(W, W, W, W)>
+      (function)(a[0], a[1], a[2], a[3]);
+  case 5: return reinterpret_cast<W (JNICALL *)(W, W, W, W, W)>
+      (function)(a[0], a[1], a[2], a[3], a[4]);
+  case 6: return reinterpret_cast<W (JNICALL *)(W, W, W, W, W, W)>
+      (function)(a[0], a[1], a[2], a[3], a[4], a[5]);
+  case 7: return reinterpret_cast<W (JNICALL *)(W, W, W, W, W, W, W)>
+      (function)(a[0], a[1], a[2], a[3], a[4], a[5], a[6]);
+  case 8: return reinterpret_cast<W (JNICALL *)(W, W, W, W, W, W, W, W)>
+      (function)(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7]);
+  default: abort(t);
+  }
+}
+
 int
 findLineNumber(Thread* t, object method, unsigned ip);
 
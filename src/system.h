@@ -146,6 +146,9 @@ class System {
   virtual const char* toAbsolutePath(Allocator* allocator,
                                      const char* name) = 0;
   virtual int64_t now() = 0;
+  // returns a monotonic time in nanoseconds, suitable only for
+  // measuring intervals
+  virtual int64_t nanoTime() = 0;
   virtual void yield() = 0;
   virtual void exit(int code) = 0;
   virtual void abort() = 0;
@@ -43,6 +43,7 @@ THUNK(longToFloat)
 THUNK(makeBlankObjectArray)
 THUNK(makeBlankObjectArrayFromReference)
 THUNK(makeBlankArray)
+THUNK(arrayCopy)
 THUNK(lookUpAddress)
 THUNK(setMaybeNull)
 THUNK(acquireMonitorForObject)
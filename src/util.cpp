@@ -384,6 +384,7 @@ hashMapResize(Thread* t, object map, uint32_t (*hash)(Thread*, object),
           if (weak) {
             k = jreferenceTarget(t, k);
             if (k == 0) {
+              -- hashMapSize(t, map);
               continue;
             }
           }
@@ -418,6 +419,12 @@ hashMapInsert(Thread* t, object map, object key, object value,
 
   ++ hashMapSize(t, map);
 
+  if (weak and array and hashMapSize(t, map) >= arrayLength(t, array) * 2) {
+    // reclaim the nodes of collected keys before deciding whether we
+    // really need to grow
+    hashMapSweep(t, map);
+  }
+
   if (array == 0 or hashMapSize(t, map) >= arrayLength(t, array) * 2) { 
     PROTECT(t, key);
     PROTECT(t, value);
@@ -435,8 +442,7 @@ hashMapInsert(Thread* t, object map, object key, object value,
 
     object r = makeWeakReference(t, 0, 0, 0, 0);
     jreferenceTarget(t, r) = key;
-    jreferenceVmNext(t, r) = t->m->weakReferences;
-    t->m->weakReferences = r;
+    addWeakReference(t, r);
     k = r;
 
     array = hashMapArray(t, map);
@@ -505,6 +511,25 @@ hashMapRemove(Thread* t, object map, object key,
   return o;
 }
 
+void
+hashMapSweep(Thread* t, object map)
+{
+  object array = hashMapArray(t, map);
+  if (array) {
+    for (unsigned i = 0; i < arrayLength(t, array); ++i) {
+      object p = 0;
+      for (object n = arrayBody(t, array, i); n;) {
+        if (jreferenceTarget(t, tripleFirst(t, n)) == 0) {
+          n = tripleThird(t, hashMapRemoveNode(t, map, i, p, n));
+        } else {
+          p = n;
+          n = tripleThird(t, n);
+        }
+      }
+    }
+  }
+}
+
 void
 listAppend(Thread* t, object list, object value)
 {
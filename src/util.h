@@ -72,6 +72,9 @@ hashMapRemove(Thread* t, object map, object key,
               uint32_t (*hash)(Thread*, object),
               bool (*equal)(Thread*, object, object));
 
+void
+hashMapSweep(Thread* t, object map);
+
 object
 hashMapIterator(Thread* t, object map);
 
@@ -304,15 +304,22 @@ class MySystem: public System {
               t->r->setInterrupted(false);
             }
           }
-
-          notified = ((t->flags & Notified) != 0);
-        
-          t->flags = 0;
         }
 
         r = WaitForSingleObject(mutex, INFINITE);
         assert(s, r == WAIT_OBJECT_0);
 
+        // a notifier removes us from the wait list and marks us
+        // notified while holding the monitor's mutex, so we must not
+        // decide whether that happened (or clear the flag) until we
+        // hold it too
+        { ACQUIRE(s, t->mutex);
+
+          notified = ((t->flags & Notified) != 0);
+
+          t->flags = 0;
+        }
+
         if (not notified) {
           remove(t);
         }
@@ -842,6 +849,21 @@ class MySystem: public System {
              | time.dwLowDateTime) / 10000) - 11644473600000LL;
   }
 
+  virtual int64_t nanoTime() {
+    LARGE_INTEGER frequency;
+    LARGE_INTEGER counter;
+    if (QueryPerformanceFrequency(&frequency)
+        and QueryPerformanceCounter(&counter))
+    {
+      return static_cast<int64_t>
+        ((counter.QuadPart / frequency.QuadPart) * 1000000000LL
+         + ((counter.QuadPart % frequency.QuadPart) * 1000000000LL)
+         / frequency.QuadPart);
+    } else {
+      return now() * 1000 * 1000;
+    }
+  }
+
   virtual void yield() {
     SwitchToThread();
   }
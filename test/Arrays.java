@@ -77,5 +77,93 @@ public class Arrays {
       array[0] = Integer.valueOf(42);
       expect(array[0].intValue() == 42);
     }
+
+    { byte[] array = new byte[100];
+      java.util.Arrays.fill(array, 10, 90, (byte) 7);
+      expect(array[9] == 0);
+      expect(array[10] == 7);
+      expect(array[89] == 7);
+      expect(array[90] == 0);
+
+      byte[] copy = java.util.Arrays.copyOf(array, 120);
+      expect(copy.length == 120);
+      expect(copy[50] == 7);
+      expect(copy[110] == 0);
+      expect(! java.util.Arrays.equals(array, copy));
+      expect(java.util.Arrays.equals
+             (array, java.util.Arrays.copyOf(copy, 100)));
+      expect(java.util.Arrays.hashCode(array)
+             == java.util.Arrays.hashCode(array.clone()));
+    }
+
+    { int[] array = new int[] { 1, 2, 3, 4, 5 };
+      int[] range = java.util.Arrays.copyOfRange(array, 3, 7);
+      expect(range.length == 4);
+      expect(range[0] == 4);
+      expect(range[1] == 5);
+      expect(range[2] == 0);
+
+      expect(java.util.Arrays.binarySearch(array, 4) == 3);
+      expect(java.util.Arrays.binarySearch(array, 0) == -1);
+      expect(java.util.Arrays.binarySearch(array, 6) == -6);
+      expect(java.util.Arrays.binarySearch(array, 1, 3, 5) == -4);
+
+      Exception exception = null;
+      try {
+        java.util.Arrays.fill(array, 3, 6, 0);
+      } catch (ArrayIndexOutOfBoundsException e) {
+        exception = e;
+      }
+      expect(exception != null);
+    }
+
+    { double[] array = new double[] { -0.0, 0.0, 1.5, Double.NaN };
+      expect(java.util.Arrays.binarySearch(array, 0.0) == 1);
+      expect(java.util.Arrays.binarySearch(array, Double.NaN) == 3);
+      expect(java.util.Arrays.equals(array, array.clone()));
+    }
+
+    { String[] array = new String[] { "a", "b", "c" };
+      Object[] copy = java.util.Arrays.copyOf(array, 4, Object[].class);
+      expect(copy.getClass() == Object[].class);
+      expect(copy[2] == "c");
+      expect(copy[3] == null);
+      expect(java.util.Arrays.binarySearch(array, "b") == 1);
+      expect(java.util.Arrays.hashCode(array)
+             == java.util.Arrays.hashCode(java.util.Arrays.copyOf(copy, 3)));
+      expect(java.util.Arrays.equals
+             (java.util.Arrays.copyOf(array, 2), new String[] { "a", "b" }));
+    }
+
+    { long[] array = new long[1000];
+      java.util.Arrays.fill(array, 1L << 40);
+      for (int i = 0; i < array.length; ++i) {
+        expect(array[i] == 1L << 40);
+      }
+
+      Exception exception = null;
+      try {
+        System.arraycopy(array, 0, new int[1000], 0, 1);
+      } catch (ArrayStoreException e) {
+        exception = e;
+      }
+      expect(exception != null);
+
+      exception = null;
+      try {
+        System.arraycopy(array, 990, array, 0, 20);
+      } catch (IndexOutOfBoundsException e) {
+        exception = e;
+      }
+      expect(exception != null);
+
+      exception = null;
+      try {
+        System.arraycopy(null, 0, array, 0, 1);
+      } catch (NullPointerException e) {
+        exception = e;
+      }
+      expect(exception != null);
+    }
   }
 }
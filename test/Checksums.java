@@ -0,0 +1,90 @@
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+public class Checksums {
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static long crc32(byte[] array, int offset, int length) {
+    int crc = 0xFFFFFFFF;
+    for (int i = offset; i < offset + length; ++i) {
+      crc ^= array[i] & 0xFF;
+      for (int bit = 0; bit < 8; ++bit) {
+        crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xEDB88320 : crc >>> 1;
+      }
+    }
+    return (~crc) & 0xFFFFFFFFL;
+  }
+
+  private static long adler32(byte[] array, int offset, int length) {
+    long a = 1;
+    long b = 0;
+    for (int i = offset; i < offset + length; ++i) {
+      a = (a + (array[i] & 0xFF)) % 65521;
+      b = (b + a) % 65521;
+    }
+    return (b << 16) | a;
+  }
+
+  private static void check(Checksum checksum, boolean crc, byte[] array) {
+    int[] lengths = { 0, 1, 7, 8, 9, 255, 256, 257, 1000, 4000,
+                      array.length - 3 };
+    for (int length: lengths) {
+      long expected = crc ? crc32(array, 3, length)
+        : adler32(array, 3, length);
+
+      checksum.reset();
+      checksum.update(array, 3, length);
+      expect(checksum.getValue() == expected);
+
+      // feed the same bytes in uneven pieces, mixing the single-byte,
+      // table, and builtin paths
+      checksum.reset();
+      int offset = 3;
+      int end = 3 + length;
+      for (int piece = 1; offset < end; piece = (piece * 7) % 601 + 1) {
+        int n = Math.min(piece, end - offset);
+        if (n == 1) {
+          checksum.update(array[offset]);
+        } else {
+          checksum.update(array, offset, n);
+        }
+        offset += n;
+      }
+      expect(checksum.getValue() == expected);
+    }
+  }
+
+  public static void main(String[] args) {
+    byte[] check = "123456789".getBytes();
+
+    CRC32 crc = new CRC32();
+    crc.update(check, 0, check.length);
+    expect(crc.getValue() == 0xCBF43926L);
+
+    Adler32 adler = new Adler32();
+    adler.update(check, 0, check.length);
+    expect(adler.getValue() == 0x091E01DEL);
+
+    byte[] array = new byte[20000];
+    for (int i = 0; i < array.length; ++i) {
+      array[i] = (byte) (i * 31 + (i >> 7));
+    }
+
+    check(crc, true, array);
+    check(adler, false, array);
+
+    // long runs of 0xFF push the deferred Adler-32 sums to their limit
+    for (int i = 0; i < array.length; ++i) {
+      array[i] = (byte) 0xFF;
+    }
+    check(adler, false, array);
+
+    try {
+      crc.update(array, array.length - 1, 2);
+      expect(false);
+    } catch (ArrayIndexOutOfBoundsException e) { }
+  }
+}
@@ -0,0 +1,128 @@
+public class ClassLoading {
+  private static final String[] Names = {
+    "java.util.TreeMap",
+    "java.util.TreeSet",
+    "java.util.WeakHashMap",
+    "java.util.IdentityHashMap",
+    "java.util.Stack",
+    "java.util.PriorityQueue",
+    "java.util.BitSet",
+    "java.util.Random",
+    "java.util.StringTokenizer",
+    "java.util.regex.Pattern",
+    "java.io.StringReader",
+    "java.io.StringWriter",
+    "java.io.PrintWriter",
+    "java.io.BufferedReader",
+    "java.io.ByteArrayOutputStream",
+    "java.util.zip.CRC32",
+    "java.util.zip.Adler32",
+    "java.util.concurrent.LinkedBlockingQueue",
+    "java.util.concurrent.ConcurrentLinkedQueue",
+    "java.util.UUID"
+  };
+
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static Class[] loadAll(final ClassLoader loader,
+                                 final boolean initialize)
+    throws Exception
+  {
+    final int threadCount = 8;
+    final Class[][] results = new Class[threadCount][Names.length];
+    final Throwable[] errors = new Throwable[threadCount];
+    Thread[] threads = new Thread[threadCount];
+
+    for (int i = 0; i < threadCount; ++i) {
+      final int index = i;
+      threads[i] = new Thread() {
+          public void run() {
+            try {
+              // each thread starts at a different point in the list
+              // so that they collide as often as possible
+              for (int j = 0; j < Names.length; ++j) {
+                int k = (index + j) % Names.length;
+                results[index][k] = Class.forName
+                  (Names[k], initialize, loader);
+              }
+            } catch (Throwable e) {
+              errors[index] = e;
+            }
+          }
+        };
+    }
+
+    for (Thread t: threads) {
+      t.start();
+    }
+
+    for (Thread t: threads) {
+      t.join();
+    }
+
+    for (int i = 0; i < threadCount; ++i) {
+      if (errors[i] != null) {
+        throw new RuntimeException(errors[i]);
+      }
+
+      for (int j = 0; j < Names.length; ++j) {
+        expect(results[i][j] != null);
+        expect(results[i][j] == results[0][j]);
+        expect(results[i][j].getName().equals(Names[j]));
+      }
+    }
+
+    return results[0];
+  }
+
+  private static class ParallelLoader extends ClassLoader {
+    static {
+      registerAsParallelCapable();
+    }
+
+    public ParallelLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    public Object lockFor(String name) {
+      return getClassLoadingLock(name);
+    }
+  }
+
+  private static class SerialLoader extends ClassLoader {
+    public SerialLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    public Object lockFor(String name) {
+      return getClassLoadingLock(name);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    ClassLoader system = ClassLoading.class.getClassLoader();
+
+    Class[] classes = loadAll(system, true);
+
+    for (int i = 0; i < Names.length; ++i) {
+      expect(classes[i] == Class.forName(Names[i]));
+    }
+
+    ParallelLoader parallel = new ParallelLoader(system);
+    Class[] delegated = loadAll(parallel, false);
+
+    for (int i = 0; i < Names.length; ++i) {
+      expect(delegated[i] == classes[i]);
+    }
+
+    expect(parallel.lockFor("a") == parallel.lockFor("a"));
+    expect(parallel.lockFor("a") != parallel.lockFor("b"));
+    expect(parallel.lockFor("a") != parallel);
+
+    SerialLoader serial = new SerialLoader(system);
+    expect(serial.lockFor("a") == serial);
+    expect(serial.lockFor("b") == serial);
+  }
+}
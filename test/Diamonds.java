@@ -0,0 +1,176 @@
+import avian.Stream;
+import avian.ConstantPool;
+import avian.Assembler;
+import avian.Assembler.MethodData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+public class Diamonds {
+  private static final int iconst_0 = 0x03;
+  private static final int iconst_1 = 0x04;
+  private static final int iconst_2 = 0x05;
+  private static final int sipush = 0x11;
+  private static final int iload_0 = 0x1a;
+  private static final int iload_1 = 0x1b;
+  private static final int iload_2 = 0x1c;
+  private static final int iload_3 = 0x1d;
+  private static final int istore = 0x36;
+  private static final int istore_3 = 0x3e;
+  private static final int iadd = 0x60;
+  private static final int imul = 0x68;
+  private static final int ixor = 0x82;
+  private static final int if_icmple = 0xa4;
+
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  // the method built by makeCode, written in Java
+  private static int diamonds(int count, int a, int b, int c) {
+    int x = 0;
+    int y = 1;
+    int z = 2;
+    for (int i = 0; i < count; ++i) {
+      if (a > i) {
+        x += b * i;
+        y ^= x;
+      } else {
+        z += c + y;
+      }
+    }
+    return x + y + z;
+  }
+
+  private static byte[] makeCode(int count) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Stream.write2(out, 3); // max stack
+    Stream.write2(out, 6); // max locals
+    Stream.write4(out, 0); // length (we'll set the real value later)
+
+    Stream.write1(out, iconst_0);
+    Stream.write1(out, istore_3);
+    Stream.write1(out, iconst_1);
+    Stream.write1(out, istore);
+    Stream.write1(out, 4);
+    Stream.write1(out, iconst_2);
+    Stream.write1(out, istore);
+    Stream.write1(out, 5);
+
+    // x, y and z each flow through every junction, but each diamond
+    // only reads one of them on each path
+    for (int i = 0; i < count; ++i) {
+      Stream.write1(out, iload_0);
+      Stream.write1(out, sipush);
+      Stream.write2(out, i);
+      Stream.write1(out, if_icmple);
+      Stream.write2(out, 20); // else
+
+      Stream.write1(out, iload_3);
+      Stream.write1(out, iload_1);
+      Stream.write1(out, sipush);
+      Stream.write2(out, i);
+      Stream.write1(out, imul);
+      Stream.write1(out, iadd);
+      Stream.write1(out, istore_3);
+      Stream.write1(out, Assembler.iload);
+      Stream.write1(out, 4);
+      Stream.write1(out, iload_3);
+      Stream.write1(out, ixor);
+      Stream.write1(out, istore);
+      Stream.write1(out, 4);
+      Stream.write1(out, Assembler.goto_);
+      Stream.write2(out, 12); // end
+
+      // else:
+      Stream.write1(out, Assembler.iload);
+      Stream.write1(out, 5);
+      Stream.write1(out, iload_2);
+      Stream.write1(out, Assembler.iload);
+      Stream.write1(out, 4);
+      Stream.write1(out, iadd);
+      Stream.write1(out, iadd);
+      Stream.write1(out, istore);
+      Stream.write1(out, 5);
+
+      // end:
+    }
+
+    Stream.write1(out, iload_3);
+    Stream.write1(out, Assembler.iload);
+    Stream.write1(out, 4);
+    Stream.write1(out, iadd);
+    Stream.write1(out, Assembler.iload);
+    Stream.write1(out, 5);
+    Stream.write1(out, iadd);
+    Stream.write1(out, Assembler.ireturn);
+
+    Stream.write2(out, 0); // exception handler table length
+    Stream.write2(out, 0); // attribute count
+
+    byte[] result = out.toByteArray();
+    Stream.set4(result, 4, result.length - 12);
+
+    return result;
+  }
+
+  private static Method makeMethod(int count) throws Exception {
+    List pool = new ArrayList();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    String name = "$Diamonds" + count + "$";
+
+    Assembler.writeClass
+      (out, pool, ConstantPool.addClass(pool, name),
+       ConstantPool.addClass(pool, "java/lang/Object"),
+       new int[0], new MethodData[]
+       { new MethodData(Assembler.ACC_STATIC | Assembler.ACC_PUBLIC,
+                        ConstantPool.addUtf8(pool, "test"),
+                        ConstantPool.addUtf8(pool, "(III)I"),
+                        makeCode(count)) });
+
+    Class c = new MyClassLoader(Diamonds.class.getClassLoader())
+      .defineClass(name, out.toByteArray());
+
+    return c.getMethod("test", int.class, int.class, int.class);
+  }
+
+  // returns the time taken to compile the method, if it was compiled
+  private static long run(int count) throws Exception {
+    Method m = makeMethod(count);
+
+    long start = avian.Metrics.compileTime();
+    for (int a = 0; a < count + 2; a += count / 4 + 1) {
+      expect(((Integer) m.invoke(null, a, 3, 5))
+             == diamonds(count, a, 3, 5));
+    }
+    return avian.Metrics.compileTime() - start;
+  }
+
+  public static void main(String[] args) throws Exception {
+    // compile the reflection and class loading paths first
+    run(4);
+
+    long small = run(400);
+    long large = run(1600);
+
+    if (avian.Metrics.compiledMethodCount() != 0) {
+      // compile time used to grow quadratically with the number of
+      // junctions a value flows through, so four times as many
+      // diamonds took about sixteen times as long
+      expect(large < small * 8);
+    }
+  }
+
+  private static class MyClassLoader extends ClassLoader {
+    public MyClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    public Class defineClass(String name, byte[] bytes) {
+      return super.defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+}
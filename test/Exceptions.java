@@ -1,4 +1,7 @@
 public class Exceptions {
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
 
   private static void evenMoreDangerous() {
     throw new RuntimeException("chaos! panic! overwhelming anxiety!");
@@ -12,12 +15,60 @@ public class Exceptions {
     moreDangerous();
   }
 
+  private static class Stackless extends RuntimeException {
+    public Stackless() {
+      super("stackless", null, false, false);
+    }
+  }
+
+  private static class Preallocated extends Exception {
+    public Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static void traces() {
+    try {
+      dangerous();
+      expect(false);
+    } catch (RuntimeException e) {
+      StackTraceElement[] trace = e.getStackTrace();
+      expect(trace.length >= 4);
+      expect(trace[0].getMethodName().equals("evenMoreDangerous"));
+      expect(trace[1].getMethodName().equals("moreDangerous"));
+      expect(trace[2].getMethodName().equals("dangerous"));
+      expect(trace[3].getMethodName().equals("traces"));
+
+      // resolving the trace again yields the same elements
+      expect(e.getStackTrace()[0] == trace[0]);
+
+      e.fillInStackTrace();
+      expect(e.getStackTrace()[0].getMethodName().equals("traces"));
+    }
+
+    Stackless stackless = new Stackless();
+    expect(stackless.getStackTrace().length == 0);
+    stackless.fillInStackTrace();
+    expect(stackless.getStackTrace().length == 0);
+    stackless.setStackTrace(new Exception().getStackTrace());
+    expect(stackless.getStackTrace().length == 0);
+
+    expect(new Preallocated().getStackTrace().length == 0);
+
+    Exception e = new Exception();
+    StackTraceElement[] trace = new Preallocated().getStackTrace();
+    e.setStackTrace(trace);
+    expect(e.getStackTrace() == trace);
+  }
+
   public static void main(String[] args) {
     try {
       dangerous();
     } catch (Exception e) {
       e.printStackTrace();
     }
+
+    traces();
   }
 
 }
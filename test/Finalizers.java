@@ -37,8 +37,48 @@ public class Finalizers {
     }
 
     expect(finalized);
+
+    long finalizedBefore = avian.Machine.finalizedCount();
+
+    for (int i = 0; i < Batch.Count; ++i) {
+      new Batch();
+    }
+
+    synchronized (Batch.lock) {
+      for (int i = 0; i < 10 && Batch.finalizedCount < Batch.Count; ++i) {
+        System.gc();
+        Batch.lock.wait(1000);
+      }
+    }
+
+    expect(Batch.finalizedCount == Batch.Count);
+
+    // the VM counts a batch once all of its finalizers have returned,
+    // which may be just after the last one notified us
+    for (int i = 0; i < 100 && avian.Machine.finalizedCount()
+           - finalizedBefore < Batch.Count; ++i)
+    {
+      Thread.sleep(10);
+    }
+
+    expect(avian.Machine.finalizedCount() - finalizedBefore >= Batch.Count);
+    expect(avian.Machine.maxFinalizerLatency() >= 0);
   }
 
   private static class Finalizers2 extends Finalizers { }
 
+  private static class Batch {
+    private static final int Count = 1000;
+    private static final Object lock = new Object();
+    private static int finalizedCount;
+
+    protected void finalize() {
+      synchronized (lock) {
+        if (++ finalizedCount == Count) {
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
 }
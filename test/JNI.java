@@ -0,0 +1,37 @@
+public class JNI {
+  static {
+    System.loadLibrary("test");
+  }
+
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static native boolean incrementShorts(short[] array);
+
+  private static void roundTrip(int length, boolean copy) {
+    short[] array = new short[length];
+    for (int i = 0; i < length; ++i) {
+      array[i] = (short) i;
+    }
+
+    expect(incrementShorts(array) == copy);
+
+    for (int i = 0; i < length; ++i) {
+      expect(array[i] == (short) (i + 1));
+    }
+  }
+
+  public static void main(String[] args) {
+    // small arrays live in the young generation and must be copied,
+    // while large ones are fixed and may be accessed directly
+    roundTrip(16, true);
+    roundTrip(64 * 1024, false);
+
+    // make sure releasing the large array left the heap intact
+    for (int i = 0; i < 8; ++i) {
+      roundTrip(64 * 1024, false);
+      System.gc();
+    }
+  }
+}
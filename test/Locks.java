@@ -0,0 +1,338 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class Locks {
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static void join(Thread[] threads) throws InterruptedException {
+    for (Thread t: threads) {
+      t.join();
+    }
+  }
+
+  private static void park() throws Exception {
+    // a permit granted before parking makes the next park return
+    LockSupport.unpark(Thread.currentThread());
+    LockSupport.park();
+
+    long start = System.currentTimeMillis();
+    LockSupport.parkNanos(50 * 1000 * 1000);
+    expect(System.currentTimeMillis() - start >= 40);
+
+    final Thread main = Thread.currentThread();
+    final boolean[] done = new boolean[1];
+    Thread t = new Thread() {
+        public void run() {
+          try {
+            sleep(50);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          synchronized (done) {
+            done[0] = true;
+          }
+          LockSupport.unpark(main);
+        }
+      };
+    t.start();
+
+    while (true) {
+      synchronized (done) {
+        if (done[0]) break;
+      }
+      LockSupport.park();
+    }
+    t.join();
+
+    // unparking a thread which has exited is harmless
+    LockSupport.unpark(t);
+  }
+
+  private static void mutualExclusion(boolean fair) throws Exception {
+    final ReentrantLock lock = new ReentrantLock(fair);
+    final int[] counter = new int[1];
+    final int iterations = 20000;
+
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; ++i) {
+      threads[i] = new Thread() {
+          public void run() {
+            for (int j = 0; j < iterations; ++j) {
+              lock.lock();
+              try {
+                ++ counter[0];
+              } finally {
+                lock.unlock();
+              }
+            }
+          }
+        };
+      threads[i].start();
+    }
+    join(threads);
+
+    expect(counter[0] == iterations * threads.length);
+    expect(! lock.isLocked());
+    expect(lock.isFair() == fair);
+  }
+
+  private static void reentrancy() throws Exception {
+    final ReentrantLock lock = new ReentrantLock();
+    lock.lock();
+    lock.lock();
+    expect(lock.getHoldCount() == 2);
+    expect(lock.isHeldByCurrentThread());
+
+    final boolean[] acquired = new boolean[1];
+    Thread t = new Thread() {
+        public void run() {
+          acquired[0] = lock.tryLock();
+        }
+      };
+    t.start();
+    t.join();
+    expect(! acquired[0]);
+
+    lock.unlock();
+    lock.unlock();
+    expect(! lock.isLocked());
+
+    try {
+      lock.unlock();
+      expect(false);
+    } catch (IllegalMonitorStateException e) { }
+
+    t = new Thread() {
+        public void run() {
+          try {
+            acquired[0] = lock.tryLock(1, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+    t.start();
+    t.join();
+    expect(acquired[0]);
+
+    // the other thread exited while holding the lock
+    expect(! lock.tryLock(10, TimeUnit.MILLISECONDS));
+  }
+
+  private static void conditions() throws Exception {
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition notEmpty = lock.newCondition();
+    final int[] items = new int[1];
+    final int count = 1000;
+
+    Thread[] consumers = new Thread[3];
+    final int[] consumed = new int[consumers.length];
+    for (int i = 0; i < consumers.length; ++i) {
+      final int index = i;
+      consumers[i] = new Thread() {
+          public void run() {
+            while (true) {
+              lock.lock();
+              try {
+                while (items[0] == 0) {
+                  notEmpty.await();
+                }
+                if (items[0] < 0) {
+                  return;
+                }
+                -- items[0];
+                ++ consumed[index];
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              } finally {
+                lock.unlock();
+              }
+            }
+          }
+        };
+      consumers[i].start();
+    }
+
+    for (int i = 0; i < count; ++i) {
+      lock.lock();
+      try {
+        ++ items[0];
+        notEmpty.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    while (true) {
+      lock.lock();
+      try {
+        if (items[0] == 0) {
+          items[0] = -1;
+          notEmpty.signalAll();
+          break;
+        }
+      } finally {
+        lock.unlock();
+      }
+      Thread.yield();
+    }
+    join(consumers);
+
+    int total = 0;
+    for (int c: consumed) total += c;
+    expect(total == count);
+
+    lock.lock();
+    try {
+      expect(! notEmpty.await(10, TimeUnit.MILLISECONDS));
+      expect(lock.getHoldCount() == 1);
+    } finally {
+      lock.unlock();
+    }
+
+    try {
+      notEmpty.signal();
+      expect(false);
+    } catch (IllegalMonitorStateException e) { }
+  }
+
+  private static void interruption() throws Exception {
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition condition = lock.newCondition();
+    final boolean[] interrupted = new boolean[2];
+
+    lock.lock();
+    Thread t = new Thread() {
+        public void run() {
+          try {
+            lock.lockInterruptibly();
+          } catch (InterruptedException e) {
+            interrupted[0] = true;
+          }
+        }
+      };
+    t.start();
+    while (! lock.hasQueuedThread(t)) {
+      Thread.yield();
+    }
+    t.interrupt();
+    t.join();
+    expect(interrupted[0]);
+    expect(lock.getQueueLength() == 0);
+    lock.unlock();
+
+    t = new Thread() {
+        public void run() {
+          lock.lock();
+          try {
+            condition.await();
+          } catch (InterruptedException e) {
+            interrupted[1] = lock.isHeldByCurrentThread();
+          } finally {
+            lock.unlock();
+          }
+        }
+      };
+    t.start();
+    while (true) {
+      lock.lock();
+      try {
+        if (lock.hasWaiters(condition)) break;
+      } finally {
+        lock.unlock();
+      }
+      Thread.yield();
+    }
+    t.interrupt();
+    t.join();
+    expect(interrupted[1]);
+  }
+
+  private static void readWrite() throws Exception {
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    lock.readLock().lock();
+    lock.readLock().lock();
+    expect(lock.getReadHoldCount() == 2);
+    expect(lock.getReadLockCount() == 2);
+
+    final boolean[] acquired = new boolean[2];
+    Thread t = new Thread() {
+        public void run() {
+          acquired[0] = lock.readLock().tryLock();
+          if (acquired[0]) {
+            lock.readLock().unlock();
+          }
+          acquired[1] = lock.writeLock().tryLock();
+        }
+      };
+    t.start();
+    t.join();
+    expect(acquired[0]);
+    expect(! acquired[1]);
+
+    lock.readLock().unlock();
+    lock.readLock().unlock();
+    expect(lock.getReadLockCount() == 0);
+
+    // downgrade from write to read
+    lock.writeLock().lock();
+    expect(lock.isWriteLockedByCurrentThread());
+    lock.readLock().lock();
+    lock.writeLock().unlock();
+    expect(! lock.isWriteLocked());
+    expect(lock.getReadHoldCount() == 1);
+    lock.readLock().unlock();
+
+    final int[] value = new int[1];
+    final int iterations = 5000;
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; ++i) {
+      final boolean writer = (i % 2) == 0;
+      threads[i] = new Thread() {
+          public void run() {
+            for (int j = 0; j < iterations; ++j) {
+              if (writer) {
+                lock.writeLock().lock();
+                try {
+                  int v = value[0];
+                  value[0] = v + 1;
+                } finally {
+                  lock.writeLock().unlock();
+                }
+              } else {
+                lock.readLock().lock();
+                try {
+                  int v = value[0];
+                  expect(v == value[0]);
+                } finally {
+                  lock.readLock().unlock();
+                }
+              }
+            }
+          }
+        };
+      threads[i].start();
+    }
+    join(threads);
+
+    expect(value[0] == iterations * (threads.length / 2));
+    expect(! lock.isWriteLocked());
+    expect(lock.getReadLockCount() == 0);
+  }
+
+  public static void main(String[] args) throws Exception {
+    park();
+    mutualExclusion(false);
+    mutualExclusion(true);
+    reentrancy();
+    conditions();
+    interruption();
+    readWrite();
+  }
+}
@@ -2,6 +2,9 @@ import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.List;
+import avian.logging.AsyncHandler;
 
 public class Logging {
   private static final Logger log = Logger.getLogger("Logging");
@@ -96,6 +99,75 @@ public class Logging {
     throw new Exception("Started here");
   }
 
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static class ListHandler extends Handler {
+    public final List<String> messages = new ArrayList<String>();
+    public int flushes;
+
+    public synchronized void publish(LogRecord r) {
+      messages.add(r.getMessage());
+    }
+
+    public synchronized void flush() {
+      ++ flushes;
+    }
+  }
+
+  private static void levels() {
+    Logger root = Logger.getLogger("");
+    Logger child = Logger.getLogger("Logging.levels");
+
+    expect(child.isLoggable(Level.INFO));
+    expect(! child.isLoggable(Level.FINE));
+
+    // the child caches its effective level; changing the root's level
+    // must invalidate that cache
+    root.setLevel(Level.FINE);
+    expect(child.isLoggable(Level.FINE));
+
+    child.setLevel(Level.WARNING);
+    expect(! child.isLoggable(Level.INFO));
+    expect(root.isLoggable(Level.INFO));
+
+    root.setLevel(Level.INFO);
+  }
+
+  private static void async() {
+    Logger root = Logger.getLogger("");
+    Handler[] old = root.getHandlers();
+    for (Handler h : old) root.removeHandler(h);
+
+    ListHandler list = new ListHandler();
+    AsyncHandler async = new AsyncHandler(list, 64);
+    root.addHandler(async);
+
+    Logger logger = Logger.getLogger("Logging.async");
+    for (int i = 0; i < 50; ++i) {
+      logger.info(String.valueOf(i));
+      logger.fine("filtered");
+    }
+
+    async.flush();
+    synchronized (list) {
+      expect(list.messages.size() + async.droppedCount() == 50);
+      for (int i = 1; i < list.messages.size(); ++i) {
+        expect(Integer.parseInt(list.messages.get(i))
+               > Integer.parseInt(list.messages.get(i - 1)));
+      }
+      expect(list.flushes > 0);
+    }
+
+    async.close();
+    logger.info("after close");
+    expect(async.droppedCount() > 0);
+
+    root.removeHandler(async);
+    for (Handler h : old) root.addHandler(h);
+  }
+
   private static final boolean useCustomHandler = true;
   public static void main(String args[]) {
     if (useCustomHandler) {
@@ -107,5 +179,8 @@ public class Logging {
 
     Logging me = new Logging();
     me.run();
+
+    levels();
+    async();
   }
 }
@@ -0,0 +1,71 @@
+public class Metrics {
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static long collections() {
+    return avian.Metrics.collectionCount(avian.Metrics.MinorCollection)
+      + avian.Metrics.collectionCount(avian.Metrics.MajorCollection);
+  }
+
+  private static long pauses() {
+    long total = 0;
+    for (long count: avian.Metrics.pauseHistogram()) {
+      total += count;
+    }
+    return total;
+  }
+
+  public static void main(String[] args) throws Exception {
+    long allocated = avian.Metrics.allocatedBytes();
+    Object[] array = new Object[1024];
+    for (int i = 0; i < 64 * 1024; ++i) {
+      array[i % array.length] = new byte[64];
+    }
+    expect(avian.Metrics.allocatedBytes() - allocated >= 64 * 1024 * 64);
+
+    // objects must survive several collections before they are
+    // promoted to the old generation
+    for (int i = 0; i < 5; ++i) {
+      System.gc();
+    }
+
+    expect(avian.Metrics.collectionCount(avian.Metrics.MajorCollection) >= 5);
+    expect(avian.Metrics.promotedBytes() > 0);
+    expect(pauses() == collections());
+
+    avian.Metrics.Collection[] recent = avian.Metrics.recentCollections();
+    expect(recent.length > 0);
+    expect(recent[recent.length - 1].type == avian.Metrics.MajorCollection);
+    expect(recent[recent.length - 1].tenuredBytes > 0);
+    for (int i = 1; i < recent.length; ++i) {
+      expect(recent[i].start >= recent[i - 1].start + recent[i - 1].duration);
+    }
+
+    expect(avian.Metrics.allocatedBytes(new Thread()) == -1);
+
+    final long[] result = new long[1];
+    Thread thread = new Thread() {
+        public void run() {
+          result[0] = avian.Metrics.allocatedBytes();
+          new byte[1024].toString();
+          result[0] = avian.Metrics.allocatedBytes() - result[0];
+        }
+      };
+    thread.start();
+    thread.join();
+    expect(result[0] >= 1024);
+
+    long monitors = avian.Metrics.monitorCount();
+    Object lock = new Object();
+    synchronized (lock) {
+      lock.notify();
+    }
+    expect(avian.Metrics.monitorCount() == monitors + 1);
+
+    try {
+      avian.Metrics.collectionCount(2);
+      expect(false);
+    } catch (IllegalArgumentException e) { }
+  }
+}
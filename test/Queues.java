@@ -0,0 +1,180 @@
+import avian.RingBuffer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class Queues {
+  private static final int Count = 100000;
+
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static void linkedQueue() {
+    ConcurrentLinkedQueue<Integer> q = new ConcurrentLinkedQueue<Integer>();
+    expect(q.isEmpty());
+    expect(q.size() == 0);
+    expect(q.poll() == null);
+
+    for (int i = 0; i < 10; ++i) {
+      expect(q.offer(i));
+    }
+    expect(q.size() == 10);
+    expect(q.peek() == 0);
+    expect(q.contains(5));
+
+    expect(q.remove(Integer.valueOf(5)));
+    expect(! q.contains(5));
+    expect(q.size() == 9);
+
+    for (Iterator<Integer> it = q.iterator(); it.hasNext();) {
+      if (it.next() % 2 == 0) {
+        it.remove();
+      }
+    }
+    expect(q.size() == 4);
+
+    int[] expected = { 1, 3, 7, 9 };
+    Object[] array = q.toArray();
+    expect(array.length == expected.length);
+    for (int i = 0; i < expected.length; ++i) {
+      expect(((Integer) array[i]) == expected[i]);
+      expect(q.poll() == expected[i]);
+    }
+    expect(q.isEmpty());
+  }
+
+  private static void linkedDeque() {
+    ConcurrentLinkedDeque<Integer> d = new ConcurrentLinkedDeque<Integer>();
+    expect(d.pollFirst() == null);
+    expect(d.pollLast() == null);
+
+    d.offerLast(2);
+    d.offerFirst(1);
+    d.offerLast(3);
+    d.push(0);
+    expect(d.size() == 4);
+    expect(d.peekFirst() == 0);
+    expect(d.peekLast() == 3);
+
+    int i = 0;
+    for (Integer n: d) {
+      expect(n == i++);
+    }
+
+    i = 3;
+    for (Iterator<Integer> it = d.descendingIterator(); it.hasNext();) {
+      expect(it.next() == i--);
+    }
+
+    expect(d.removeLastOccurrence(2));
+    expect(d.size() == 3);
+    expect(d.pollLast() == 3);
+    expect(d.pop() == 0);
+    expect(d.pollFirst() == 1);
+    expect(d.isEmpty());
+  }
+
+  private static void arrayQueue() throws Exception {
+    ArrayBlockingQueue<Integer> q = new ArrayBlockingQueue<Integer>(4);
+    for (int i = 0; i < 4; ++i) {
+      expect(q.offer(i));
+    }
+    expect(! q.offer(4));
+    expect(! q.offer(4, 10, TimeUnit.MILLISECONDS));
+    expect(q.remainingCapacity() == 0);
+
+    // remove from the middle of a wrapped-around array
+    expect(q.poll() == 0);
+    expect(q.offer(4));
+    expect(q.remove(Integer.valueOf(2)));
+    expect(q.size() == 3);
+
+    List<Integer> drained = new ArrayList<Integer>();
+    expect(q.drainTo(drained) == 3);
+    expect(drained.get(0) == 1);
+    expect(drained.get(1) == 3);
+    expect(drained.get(2) == 4);
+    expect(q.poll(10, TimeUnit.MILLISECONDS) == null);
+  }
+
+  private static void producerConsumer(final BlockingQueue<Integer> q)
+    throws Exception
+  {
+    Thread producer = new Thread() {
+        public void run() {
+          try {
+            for (int i = 0; i < Count; ++i) {
+              q.put(i);
+            }
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+    producer.start();
+
+    for (int i = 0; i < Count; ++i) {
+      expect(q.take() == i);
+    }
+    producer.join();
+    expect(q.isEmpty());
+  }
+
+  private static void ringBuffer() throws Exception {
+    final RingBuffer<Integer> r = new RingBuffer<Integer>(100);
+    expect(r.capacity() == 128);
+    expect(r.poll() == null);
+
+    for (int i = 0; i < 128; ++i) {
+      expect(r.offer(i));
+    }
+    expect(! r.offer(128));
+    expect(r.size() == 128);
+    expect(r.peek() == 0);
+
+    List<Integer> drained = new ArrayList<Integer>();
+    expect(r.drainTo(drained, 100) == 100);
+    expect(drained.get(99) == 99);
+    expect(r.size() == 28);
+    while (r.poll() != null) { }
+    expect(r.isEmpty());
+
+    Thread producer = new Thread() {
+        public void run() {
+          for (int i = 0; i < Count; ++i) {
+            while (! r.offer(i)) {
+              Thread.yield();
+            }
+          }
+        }
+      };
+    producer.start();
+
+    for (int i = 0; i < Count; ++i) {
+      Integer n;
+      while ((n = r.poll()) == null) {
+        Thread.yield();
+      }
+      expect(n == i);
+    }
+    producer.join();
+    expect(r.isEmpty());
+  }
+
+  public static void main(String[] args) throws Exception {
+    linkedQueue();
+    linkedDeque();
+    arrayQueue();
+    producerConsumer(new ArrayBlockingQueue<Integer>(16));
+    producerConsumer(new LinkedBlockingQueue<Integer>(16));
+    ringBuffer();
+  }
+}
@@ -0,0 +1,116 @@
+public class RedundantLoads {
+  private int x;
+  private long y;
+  private Object o;
+  private int[] array;
+  private volatile int v;
+
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private void set(int value) {
+    x = value;
+  }
+
+  private static int aliased(RedundantLoads a, RedundantLoads b) {
+    int first = a.x;
+    b.x = first + 1;
+    return a.x + first;
+  }
+
+  private static int call(RedundantLoads a) {
+    int first = a.x;
+    a.set(first + 1);
+    return a.x + first;
+  }
+
+  private static long wide(RedundantLoads a, RedundantLoads b) {
+    long first = a.y;
+    b.y = first * 2;
+    return a.y + first + a.y;
+  }
+
+  private static int reassigned(int[] a, int[] b) {
+    int first = a.length;
+    a = b;
+    return a.length + first;
+  }
+
+  private static int sum(RedundantLoads a) {
+    int sum = 0;
+    for (int i = 0; i < a.array.length; ++i) {
+      sum += a.array[i] * a.x;
+    }
+    return sum;
+  }
+
+  private static int branch(RedundantLoads a, boolean flag) {
+    int first = a.x;
+    if (flag) {
+      a.x = first + 10;
+    }
+    return a.x + first;
+  }
+
+  private static boolean same(RedundantLoads a) {
+    return a.o == a.o;
+  }
+
+  private static int caught(RedundantLoads a, int[] b) {
+    int first = a.x;
+    try {
+      a.x = first + 1;
+      b[first] = 0;
+    } catch (ArrayIndexOutOfBoundsException e) {
+      return a.x + first;
+    }
+    return -1;
+  }
+
+  private static int volatileRead(RedundantLoads a) {
+    int first = a.v;
+    a.v = first + 1;
+    return a.v + first;
+  }
+
+  public static void main(String[] args) {
+    RedundantLoads a = new RedundantLoads();
+    RedundantLoads b = new RedundantLoads();
+
+    for (int i = 0; i < 3; ++i) {
+      a.x = 1;
+      expect(aliased(a, a) == 3);
+
+      a.x = 1;
+      b.x = 1;
+      expect(aliased(a, b) == 2);
+
+      a.x = 5;
+      expect(call(a) == 11);
+
+      a.y = 3;
+      expect(wide(a, a) == 15);
+
+      expect(reassigned(new int[2], new int[5]) == 7);
+
+      a.x = 2;
+      a.array = new int[] { 1, 2, 3 };
+      expect(sum(a) == 12);
+
+      a.x = 1;
+      expect(branch(a, true) == 12);
+      a.x = 1;
+      expect(branch(a, false) == 2);
+
+      a.o = new Object();
+      expect(same(a));
+
+      a.x = 4;
+      expect(caught(a, new int[2]) == 9);
+
+      a.v = 7;
+      expect(volatileRead(a) == 15);
+    }
+  }
+}
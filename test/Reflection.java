@@ -1,5 +1,6 @@
 import java.lang.reflect.Method;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 
 public class Reflection {
   public static boolean booleanMethod() {
@@ -38,6 +39,111 @@ public class Reflection {
     if (! v) throw new RuntimeException();
   }
 
+  private interface Adder {
+    long add(int a, long b);
+  }
+
+  private static class Thing implements Adder {
+    private byte b = 1;
+    private char c = '2';
+    private short s = 3;
+    private int i = 4;
+    private long j = 5L << 40;
+    private float f = 6.0f;
+    private double d = 7.0;
+    private boolean z = true;
+    private String string = "eight";
+    private static int staticInt = 9;
+
+    public long add(int a, long b) {
+      return a + b;
+    }
+
+    private double mix(byte b, char c, short s, float f, double d,
+                       boolean z, String string, int[] array)
+    {
+      return b + c + s + f + d + (z ? 1 : 0) + string.length() + array[0];
+    }
+
+    private void fail(String message) {
+      throw new IllegalStateException(message);
+    }
+  }
+
+  private static void accessors() throws Exception {
+    Thing thing = new Thing();
+    Method add = Adder.class.getMethod("add", int.class, long.class);
+    Method mix = Thing.class.getDeclaredMethod
+      ("mix", byte.class, char.class, short.class, float.class,
+       double.class, boolean.class, String.class, int[].class);
+    Method fail = Thing.class.getDeclaredMethod("fail", String.class);
+    Field[] fields = new Field[] {
+      Thing.class.getDeclaredField("b"),
+      Thing.class.getDeclaredField("c"),
+      Thing.class.getDeclaredField("s"),
+      Thing.class.getDeclaredField("i"),
+      Thing.class.getDeclaredField("j"),
+      Thing.class.getDeclaredField("f"),
+      Thing.class.getDeclaredField("d"),
+      Thing.class.getDeclaredField("z"),
+      Thing.class.getDeclaredField("string"),
+      Thing.class.getDeclaredField("staticInt")
+    };
+
+    // enough iterations to exercise both the native paths and the
+    // generated accessors which replace them
+    for (int i = 0; i < 40; ++i) {
+      expect((Long) add.invoke(thing, 1, 2L << 40) == 1 + (2L << 40));
+
+      expect((Double) mix.invoke
+             (thing, (byte) 1, '2', (short) 3, 4.0f, 5.0, true, "six",
+              new int[] { 7 }) == 1 + '2' + 3 + 4 + 5 + 1 + 3 + 7);
+
+      try {
+        fail.invoke(thing, "nine");
+        expect(false);
+      } catch (InvocationTargetException e) {
+        expect(e.getTargetException() instanceof IllegalStateException);
+        expect(e.getTargetException().getMessage().equals("nine"));
+      }
+
+      // the native path does not check argument types, but the
+      // generated accessors do
+      if (i > 20) {
+        try {
+          add.invoke(thing, "one", 2L);
+          expect(false);
+        } catch (IllegalArgumentException e) { }
+      }
+
+      expect((Byte) fields[0].get(thing) == 1);
+      expect((Character) fields[1].get(thing) == '2');
+      expect((Short) fields[2].get(thing) == 3);
+      expect((Integer) fields[3].get(thing) == 4);
+      expect((Long) fields[4].get(thing) == 5L << 40);
+      expect((Float) fields[5].get(thing) == 6.0f);
+      expect((Double) fields[6].get(thing) == 7.0);
+      expect((Boolean) fields[7].get(thing));
+      expect(fields[8].get(thing).equals("eight"));
+      expect((Integer) fields[9].get(null) == 9);
+
+      fields[3].set(thing, 10);
+      expect(thing.i == 10);
+      fields[3].set(thing, 4);
+      fields[4].set(thing, 11L << 40);
+      expect(thing.j == 11L << 40);
+      fields[4].set(thing, 5L << 40);
+      fields[8].set(thing, "twelve");
+      expect(thing.string.equals("twelve"));
+      fields[8].set(thing, "eight");
+
+      try {
+        fields[8].set(thing, 13);
+        expect(false);
+      } catch (IllegalArgumentException e) { }
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     Class system = Class.forName("java.lang.System");
     Field out = system.getDeclaredField("out");
@@ -67,5 +173,7 @@ public class Reflection {
 
     expect(7.0 == (Double) Reflection.class.getMethod
            ("doubleMethod").invoke(null));
+
+    accessors();
   }
 }
@@ -0,0 +1,106 @@
+public class ScalarReplacement {
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static class Point {
+    public int x;
+    public int y;
+
+    public Point(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  private static class Mixed {
+    public byte b;
+    public char c;
+    public short s;
+    public boolean z;
+    public long j;
+    public float f;
+    public double d;
+    public Object o;
+    public int unassigned;
+    public Object unassignedObject;
+
+    public Mixed(long j, Object o, double d) {
+      this.j = j;
+      this.o = o;
+      this.d = d;
+      this.f = 1.5f;
+      this.z = true;
+      this.b = -3;
+    }
+  }
+
+  private static int sum(int n) {
+    int total = 0;
+    for (int i = 0; i < n; ++i) {
+      Point p = new Point(i, i + 1);
+      total += p.x * p.y;
+    }
+    return total;
+  }
+
+  private static int increment(int n) {
+    int total = 0;
+    for (int i = 0; i < n; ++i) {
+      Point p = new Point(i, 2);
+      p.x += p.y;
+      p.y++;
+      total += p.x + p.y;
+    }
+    return total;
+  }
+
+  private static Point escape(int x) {
+    Point p = new Point(x, x);
+    return p;
+  }
+
+  private static String mixed(long j, double d) {
+    Mixed m = new Mixed(j, new StringBuilder().append("foo"), d);
+    System.gc();
+    m.b += 200;
+    m.c = (char) -1;
+    m.s = (short) 70000;
+    m.unassigned += 7;
+    expect(m.unassignedObject == null);
+    expect(m.z);
+    expect(m.f == 1.5f);
+    return m.o.toString() + m.b + (int) m.c + m.s + m.j + m.d + m.unassigned;
+  }
+
+  private static int guarded(int[] array) {
+    Point p = new Point(array.length, 0);
+    try {
+      p.y = array[p.x];
+    } catch (ArrayIndexOutOfBoundsException e) {
+      p.y = -1;
+    }
+    return p.x + p.y;
+  }
+
+  public static void main(String[] args) {
+    // construct a point before calling sum, so that Point's constructor
+    // has already been compiled by the time sum is
+    expect(new Point(1, 2).y == 2);
+
+    for (int i = 0; i < 3; ++i) {
+      expect(sum(4) == 0 + 2 + 6 + 12);
+      expect(increment(3) == (2 + 3) + (3 + 3) + (4 + 3));
+      expect(escape(5).y == 5);
+      expect(mixed(42L, 2.5).equals("foo" + (byte) (-3 + 200) + 65535
+                                    + (short) 70000 + "42" + "2.5" + "7"));
+      expect(guarded(new int[1]) == 0);
+    }
+
+    if (avian.Metrics.compiledMethodCount() != 0) {
+      long allocated = avian.Metrics.allocatedBytes();
+      sum(64 * 1024);
+      expect(avian.Metrics.allocatedBytes() - allocated < 1024);
+    }
+  }
+}
@@ -77,5 +77,17 @@ public class Strings {
     expect(Character.forDigit(Character.digit('b', 16), 16) == 'b');
     expect(Character.forDigit(Character.digit('f', 16), 16) == 'f');
     expect(Character.forDigit(Character.digit('z', 36), 36) == 'z');
+
+    expect(new String("interned").intern() == "interned");
+
+    for (int i = 0; i < 10000; ++i) {
+      String s = ("transient" + i).intern();
+      expect(s == s.toString().intern());
+    }
+    System.gc();
+
+    String a = ("transient" + 42).intern();
+    expect(a == new String("transient42").intern());
+    expect("interned" == new String("interned").intern());
   }
 }
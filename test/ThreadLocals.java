@@ -0,0 +1,162 @@
+import java.lang.ref.WeakReference;
+import java.util.concurrent.SynchronousQueue;
+
+public class ThreadLocals {
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static final ThreadLocal<Integer> counter
+    = new ThreadLocal<Integer>() {
+        protected Integer initialValue() {
+          return 42;
+        }
+      };
+
+  private static final InheritableThreadLocal<String> inherited
+    = new InheritableThreadLocal<String>() {
+        protected String childValue(String parentValue) {
+          return parentValue + " (child)";
+        }
+      };
+
+  private static Thread helper;
+
+  private static final InheritableThreadLocal<String> blocking
+    = new InheritableThreadLocal<String>() {
+        protected String childValue(String parentValue) {
+          // the helper needs the lock inherit used to hold while
+          // calling us, so this would deadlock if it still did
+          helper.start();
+          try {
+            helper.join();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          return parentValue;
+        }
+      };
+
+  private static void inheritOutsideLock() throws Exception {
+    helper = new Thread() {
+        public void run() {
+          new ThreadLocal<Object>().set(this);
+        }
+      };
+
+    blocking.set("blocking");
+    Thread t = new Thread() {
+        public void run() {
+          expect(blocking.get().equals("blocking"));
+        }
+      };
+    blocking.remove();
+
+    t.start();
+    t.join();
+  }
+
+  private static WeakReference<Object> storeInDroppedLocal() {
+    ThreadLocal<Object> local = new ThreadLocal<Object>();
+    Object value = new Object();
+    local.set(value);
+    return new WeakReference<Object>(value);
+  }
+
+  private static void expunge() throws Exception {
+    // a value stored under a collected ThreadLocal must not stay
+    // reachable from any thread that is still running
+    final SynchronousQueue<Object> toMain = new SynchronousQueue<Object>();
+    final SynchronousQueue<Object> toWorker = new SynchronousQueue<Object>();
+    final Object[] stored = new Object[1];
+    Thread worker = new Thread() {
+        public void run() {
+          try {
+            stored[0] = storeInDroppedLocal();
+            toMain.put(this);
+            toWorker.take();
+
+            counter.get();
+
+            toMain.put(this);
+            toWorker.take();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+    worker.start();
+    toMain.take();
+
+    WeakReference<Object> mine = storeInDroppedLocal();
+    System.gc();
+
+    // accessing any ThreadLocal often enough releases collected ones
+    for (int i = 0; i < 64; ++i) {
+      counter.get();
+    }
+
+    toWorker.put(worker);
+    toMain.take();
+
+    System.gc();
+
+    expect(mine.get() == null);
+    expect(((WeakReference) stored[0]).get() == null);
+
+    toWorker.put(worker);
+    worker.join();
+  }
+
+  private static void reuse() {
+    // create and drop enough locals that their indexes get recycled;
+    // a recycled index must not expose the dead local's value
+    for (int round = 0; round < 5; ++round) {
+      for (int i = 0; i < 100; ++i) {
+        ThreadLocal<String> local = new ThreadLocal<String>();
+        expect(local.get() == null);
+        local.set("stale");
+        expect(local.get().equals("stale"));
+      }
+      System.gc();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    expect(counter.get() == 42);
+    counter.set(7);
+    expect(counter.get() == 7);
+    counter.set(null);
+    expect(counter.get() == null);
+    counter.remove();
+    expect(counter.get() == 42);
+
+    inherited.set("parent");
+
+    final boolean[] success = new boolean[1];
+    Thread t = new Thread() {
+        public void run() {
+          expect(counter.get() == 42);
+          counter.set(99);
+          expect(inherited.get().equals("parent (child)"));
+          inherited.set("changed");
+          success[0] = true;
+        }
+      };
+    t.start();
+    t.join();
+
+    expect(success[0]);
+    expect(counter.get() == 42);
+    expect(inherited.get().equals("parent"));
+
+    reuse();
+
+    expunge();
+
+    inheritOutsideLock();
+
+    expect(counter.get() == 42);
+    expect(inherited.get().equals("parent"));
+  }
+}
@@ -0,0 +1,279 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class ThreadPools {
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static void fixed() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    final int[] counter = new int[1];
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int i = 0; i < 1000; ++i) {
+      futures.add(executor.submit(new Runnable() {
+          public void run() {
+            synchronized (counter) {
+              ++ counter[0];
+            }
+          }
+        }));
+    }
+
+    for (Future<?> f: futures) {
+      f.get();
+      expect(f.isDone());
+    }
+
+    synchronized (counter) {
+      expect(counter[0] == 1000);
+    }
+
+    Future<Integer> f = executor.submit(new Callable<Integer>() {
+        public Integer call() {
+          throw new IllegalStateException();
+        }
+      });
+
+    try {
+      f.get();
+      expect(false);
+    } catch (ExecutionException e) {
+      expect(e.getCause() instanceof IllegalStateException);
+    }
+
+    executor.shutdown();
+    expect(executor.awaitTermination(10, TimeUnit.SECONDS));
+    expect(executor.isTerminated());
+
+    try {
+      executor.execute(new Runnable() { public void run() { } });
+      expect(false);
+    } catch (RejectedExecutionException e) { }
+  }
+
+  private static void cached() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (int i = 0; i < 16; ++i) {
+      final int n = i;
+      tasks.add(new Callable<Integer>() {
+          public Integer call() throws Exception {
+            Thread.sleep(10);
+            return n * n;
+          }
+        });
+    }
+
+    List<Future<Integer>> futures = executor.invokeAll(tasks);
+    for (int i = 0; i < futures.size(); ++i) {
+      expect(futures.get(i).get() == i * i);
+    }
+
+    int result = executor.invokeAny(tasks);
+    expect(result >= 0 && result < 16 * 16);
+
+    executor.shutdown();
+    expect(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  private static void bounded() throws Exception {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor
+      (1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(1));
+
+    final Object lock = new Object();
+    final boolean[] state = new boolean[2];
+    Runnable blocker = new Runnable() {
+        public void run() {
+          synchronized (lock) {
+            state[0] = true;
+            lock.notifyAll();
+            while (! state[1]) {
+              try {
+                lock.wait();
+              } catch (InterruptedException e) {
+                // ignore
+              }
+            }
+          }
+        }
+      };
+    Runnable nop = new Runnable() { public void run() { } };
+
+    executor.execute(blocker);
+    synchronized (lock) {
+      while (! state[0]) {
+        lock.wait();
+      }
+    }
+
+    // the worker is busy and the queue holds one task, so this is
+    // rejected
+    executor.execute(nop);
+    try {
+      executor.execute(nop);
+      expect(false);
+    } catch (RejectedExecutionException e) { }
+
+    synchronized (lock) {
+      state[1] = true;
+      lock.notifyAll();
+    }
+
+    List<Runnable> pending = executor.shutdownNow();
+    expect(executor.awaitTermination(10, TimeUnit.SECONDS));
+    expect(pending.size() + executor.getCompletedTaskCount() == 2);
+  }
+
+  private static void scheduled() throws Exception {
+    ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+
+    long start = System.currentTimeMillis();
+    ScheduledFuture<Integer> delayed = executor.schedule
+      (new Callable<Integer>() {
+        public Integer call() {
+          return 42;
+        }
+      }, 50, TimeUnit.MILLISECONDS);
+    expect(delayed.get() == 42);
+    expect(System.currentTimeMillis() - start >= 40);
+
+    final int[] count = new int[1];
+    ScheduledFuture<?> periodic = executor.scheduleAtFixedRate
+      (new Runnable() {
+        public void run() {
+          synchronized (count) {
+            ++ count[0];
+            count.notifyAll();
+          }
+        }
+      }, 0, 10, TimeUnit.MILLISECONDS);
+
+    synchronized (count) {
+      while (count[0] < 5) {
+        count.wait();
+      }
+    }
+
+    expect(periodic.cancel(false));
+    expect(periodic.isCancelled());
+    try {
+      periodic.get();
+      expect(false);
+    } catch (CancellationException e) { }
+
+    ScheduledFuture<?> never = executor.schedule
+      (new Runnable() {
+        public void run() {
+          expect(false);
+        }
+      }, 1, TimeUnit.HOURS);
+    expect(never.cancel(false));
+
+    executor.shutdown();
+    expect(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  private static class Fibonacci extends RecursiveTask<Integer> {
+    private final int n;
+
+    public Fibonacci(int n) {
+      this.n = n;
+    }
+
+    protected Integer compute() {
+      if (n < 2) {
+        return n;
+      }
+
+      Fibonacci a = new Fibonacci(n - 1);
+      a.fork();
+      return new Fibonacci(n - 2).compute() + a.join();
+    }
+  }
+
+  private static class Fill extends RecursiveAction {
+    private final int[] array;
+    private final int start;
+    private final int end;
+
+    public Fill(int[] array, int start, int end) {
+      this.array = array;
+      this.start = start;
+      this.end = end;
+    }
+
+    protected void compute() {
+      if (end - start <= 64) {
+        for (int i = start; i < end; ++i) {
+          array[i] = i;
+        }
+      } else {
+        int middle = (start + end) >>> 1;
+        invokeAll(new Fill(array, start, middle),
+                  new Fill(array, middle, end));
+      }
+    }
+  }
+
+  private static void forkJoin() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    expect(pool.invoke(new Fibonacci(20)) == 6765);
+
+    int[] array = new int[100000];
+    pool.invoke(new Fill(array, 0, array.length));
+    for (int i = 0; i < array.length; ++i) {
+      expect(array[i] == i);
+    }
+
+    Future<String> f = pool.submit(new Callable<String>() {
+        public String call() {
+          return "hello";
+        }
+      });
+    expect(f.get().equals("hello"));
+
+    Future<?> failed = pool.submit(new Runnable() {
+        public void run() {
+          throw new IllegalStateException();
+        }
+      });
+    try {
+      failed.get();
+      expect(false);
+    } catch (ExecutionException e) {
+      expect(e.getCause() instanceof IllegalStateException);
+    }
+
+    pool.shutdown();
+    expect(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+    // tasks forked outside any pool run in the common pool
+    Fibonacci fib = new Fibonacci(15);
+    fib.fork();
+    expect(fib.join() == 610);
+  }
+
+  public static void main(String[] args) throws Exception {
+    fixed();
+    cached();
+    bounded();
+    scheduled();
+    forkJoin();
+  }
+}
@@ -5,13 +5,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.Random;
 
 public class Tree {
   private static void expect(boolean v) {
     if (! v) throw new RuntimeException();
   }
 
-  private static String printList(TreeSet<?> list) {
+  private static String printList(Collection<?> list) {
     StringBuilder sb = new StringBuilder();
 
     for (Object o : list) {
@@ -48,6 +50,160 @@ public class Tree {
     }
   }
 
+  private static void checkMap(TreeMap<Integer,Integer> map,
+                               boolean[] present)
+  {
+    int count = 0;
+    int last = -1;
+    for (Map.Entry<Integer,Integer> e: map.entrySet()) {
+      int key = e.getKey();
+      expect(key > last);
+      expect(present[key]);
+      expect(e.getValue() == key * 2);
+      last = key;
+      ++ count;
+    }
+    expect(count == map.size());
+
+    for (int i = 0; i < present.length; ++i) {
+      expect(map.containsKey(i) == present[i]);
+      if (present[i]) {
+        expect(map.get(i) == i * 2);
+      } else {
+        expect(map.get(i) == null);
+      }
+
+      Integer ceiling = map.ceilingKey(i);
+      int expected = i;
+      while (expected < present.length && ! present[expected]) ++ expected;
+      expect(ceiling == null ? expected == present.length
+             : ceiling == expected);
+
+      Integer lower = map.lowerKey(i);
+      expected = i - 1;
+      while (expected >= 0 && ! present[expected]) -- expected;
+      expect(lower == null ? expected < 0 : lower == expected);
+    }
+  }
+
+  private static void randomized() {
+    TreeMap<Integer,Integer> map = new TreeMap<Integer,Integer>();
+    boolean[] present = new boolean[512];
+    Random random = new Random(42);
+
+    for (int i = 0; i < 4000; ++i) {
+      int key = random.nextInt(present.length);
+      if (random.nextInt(3) == 0) {
+        expect((map.remove(key) != null) == present[key]);
+        present[key] = false;
+      } else {
+        expect((map.put(key, key * 2) != null) == present[key]);
+        present[key] = true;
+      }
+
+      if (i % 500 == 0) {
+        checkMap(map, present);
+      }
+    }
+
+    checkMap(map, present);
+
+    for (Iterator<Integer> it = map.keySet().iterator(); it.hasNext();) {
+      int key = it.next();
+      if (key % 3 == 0) {
+        it.remove();
+        present[key] = false;
+      }
+    }
+
+    checkMap(map, present);
+  }
+
+  private static void navigation() {
+    TreeMap<Integer,String> map = new TreeMap<Integer,String>();
+    for (int i = 0; i < 10; ++i) {
+      map.put(i * 10, String.valueOf(i));
+    }
+
+    expect(map.firstKey() == 0);
+    expect(map.lastKey() == 90);
+    expect(map.floorKey(35) == 30);
+    expect(map.floorEntry(30).getValue().equals("3"));
+    expect(map.ceilingKey(35) == 40);
+    expect(map.higherKey(40) == 50);
+    expect(map.lowerKey(0) == null);
+    expect(map.ceilingKey(91) == null);
+
+    NavigableMap<Integer,String> head = map.headMap(30, false);
+    expect(head.size() == 3);
+    expect(head.lastKey() == 20);
+    expect(head.get(30) == null);
+
+    NavigableMap<Integer,String> tail = map.tailMap(75, true);
+    expect(tail.size() == 2);
+    expect(tail.firstKey() == 80);
+    expect(tail.floorKey(75) == null);
+
+    NavigableMap<Integer,String> sub = map.subMap(20, true, 60, false);
+    isEqual(printList(sub.keySet()), "20, 30, 40, 50");
+    expect(sub.ceilingKey(55) == null);
+    expect(sub.higherKey(0) == 20);
+
+    sub.put(25, "2.5");
+    expect(map.get(25).equals("2.5"));
+    try {
+      sub.put(60, "6");
+      expect(false);
+    } catch (IllegalArgumentException e) { }
+
+    sub.remove(30);
+    expect(! map.containsKey(30));
+    sub.clear();
+    isEqual(printList(map.keySet()), "0, 10, 60, 70, 80, 90");
+
+    expect(map.pollFirstEntry().getKey() == 0);
+    expect(map.pollLastEntry().getKey() == 90);
+    expect(map.size() == 4);
+
+    // entries from navigation methods are snapshots, unaffected by
+    // later changes to the map and not writable through
+    TreeMap<Integer,Integer> squares = new TreeMap<Integer,Integer>();
+    for (int i = 0; i < 100; ++i) {
+      squares.put(i, i * i);
+    }
+    for (int i = 0; i < 100; ++i) {
+      Map.Entry<Integer,Integer> entry = squares.floorEntry(i);
+      squares.remove(i);
+      expect(entry.getKey() == i);
+      expect(entry.getValue() == i * i);
+      squares.put(i, i * i);
+    }
+
+    Map.Entry<Integer,String> entry = map.firstEntry();
+    try {
+      entry.setValue("x");
+      expect(false);
+    } catch (UnsupportedOperationException e) { }
+    expect(map.get(entry.getKey()).equals(entry.getValue()));
+
+    entry = map.tailMap(60, true).ceilingEntry(61);
+    map.remove(70);
+    expect(entry.getKey() == 70);
+    expect(entry.getValue().equals("7"));
+
+    TreeSet<Integer> set = new TreeSet<Integer>();
+    for (int i = 0; i < 10; ++i) {
+      set.add(i);
+    }
+
+    isEqual(printList(set.headSet(3)), "0, 1, 2");
+    isEqual(printList(set.tailSet(7, false)), "8, 9");
+    isEqual(printList(set.subSet(4, 6)), "4, 5");
+    expect(set.floor(100) == 9);
+    expect(set.pollFirst() == 0);
+    expect(set.first() == 1);
+  }
+
   public static void main(String args[]) {
     TreeSet<Integer> t1 = new TreeSet<Integer>(new MyCompare());
     t1.add(5); t1.add(2); t1.add(1); t1.add(8); t1.add(3);
@@ -97,5 +253,8 @@ public class Tree {
     list.add(2);
 
     isEqual(printList(new TreeSet<Integer>(list)), "2, 7, 9");
+
+    navigation();
+    randomized();
   }
 }
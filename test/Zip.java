@@ -1,10 +1,133 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.File;
 import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class Zip {
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static byte[] makeData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; ++i) {
+      data[i] = (byte) ((i * 31) % 7 + (i / 1000));
+    }
+    return data;
+  }
+
+  private static byte[] readAll(InputStream in) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1000];
+    int c;
+    while ((c = in.read(buffer)) != -1) {
+      out.write(buffer, 0, c);
+    }
+    return out.toByteArray();
+  }
+
+  private static void gzip() throws Exception {
+    byte[] data = makeData(100000);
+
+    for (int round = 0; round < 3; ++round) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      GZIPOutputStream out = new GZIPOutputStream(bytes);
+      out.write(data, 0, 10);
+      out.write(data[10]);
+      out.write(data, 11, data.length - 11);
+      out.close();
+
+      byte[] compressed = bytes.toByteArray();
+      expect(compressed.length < data.length / 10);
+      expect((compressed[0] & 0xFF) == 0x1f);
+      expect((compressed[1] & 0xFF) == 0x8b);
+
+      GZIPInputStream in = new GZIPInputStream
+        (new ByteArrayInputStream(compressed));
+      expect(in.read() == (data[0] & 0xFF));
+      byte[] rest = readAll(in);
+      in.close();
+      expect(rest.length == data.length - 1);
+      for (int i = 0; i < rest.length; ++i) {
+        expect(rest[i] == data[i + 1]);
+      }
+
+      // a corrupted checksum should be noticed at the end of the stream
+      compressed[compressed.length - 8] ^= 1;
+      in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+      Exception exception = null;
+      try {
+        readAll(in);
+      } catch (java.io.IOException e) {
+        exception = e;
+      }
+      expect(exception != null);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new GZIPOutputStream(bytes).close();
+    expect(readAll(new GZIPInputStream
+                   (new ByteArrayInputStream(bytes.toByteArray()))).length
+           == 0);
+  }
+
+  private static void zipOutput() throws Exception {
+    byte[] data = makeData(50000);
+    File file = new File("zip-output.zip");
+    try {
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+      out.putNextEntry(new ZipEntry("deflated"));
+      out.write(data);
+      out.closeEntry();
+
+      ZipEntry stored = new ZipEntry("dir/stored");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(1000);
+      CRC32 crc = new CRC32();
+      crc.update(data, 0, 1000);
+      stored.setCrc(crc.getValue());
+      out.putNextEntry(stored);
+      out.write(data, 0, 1000);
+
+      out.putNextEntry(new ZipEntry("empty"));
+      out.close();
+
+      ZipFile zip = new ZipFile(file);
+      try {
+        expect(zip.size() == 3);
+
+        ZipEntry entry = zip.getEntry("deflated");
+        expect(entry.getSize() == data.length);
+        expect(entry.getCompressedSize() < data.length);
+        byte[] result = readAll(zip.getInputStream(entry));
+        expect(result.length == data.length);
+        for (int i = 0; i < data.length; ++i) {
+          expect(result[i] == data[i]);
+        }
+
+        entry = zip.getEntry("dir/stored");
+        expect(entry.getCompressedSize() == 1000);
+        result = readAll(zip.getInputStream(entry));
+        expect(result.length == 1000);
+        expect(result[999] == data[999]);
+
+        expect(readAll(zip.getInputStream(zip.getEntry("empty"))).length
+               == 0);
+      } finally {
+        zip.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
 
   private static String findJar(File directory) {
     for (File file: directory.listFiles()) {
@@ -26,6 +149,9 @@ public class Zip {
   }
   
   public static void main(String[] args) throws Exception {
+    gzip();
+    zipOutput();
+
     ZipFile file = new ZipFile
       (findJar(new File(System.getProperty("user.dir"))));
 
@@ -5,7 +5,6 @@ import java.io.InputStream;
 import java.io.FileInputStream;
 import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.EOFException;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Comparator;
@@ -28,26 +27,11 @@ public class DumpStats {
   private static final int Pop = 4;
 
   private static int readInt(InputStream in) throws IOException {
-    int b1 = in.read();
-    int b2 = in.read();
-    int b3 = in.read();
-    int b4 = in.read();
-    if (b4 == -1) throw new EOFException();
-    return (int) ((b1 << 24) | (b2 << 16) | (b3 << 8) | (b4));    
+    return HeapSnapshot.readInt(in);
   }
 
   private static String readString(InputStream in) throws IOException {
-    int count = readInt(in);
-    byte[] b = new byte[count];
-    int offset = 0;
-    int c;
-    while ((c = in.read(b, offset, b.length - offset)) != -1
-           && offset < b.length)
-    {
-      offset += c;
-    }
-    if (offset != b.length) throw new EOFException();
-    return new String(b);
+    return HeapSnapshot.readString(in);
   }
 
   private static Record record(Map<Integer, Record> map, int key) {
@@ -119,7 +103,8 @@ public class DumpStats {
     }
 
     Map<Integer, Record> map = read
-      (new BufferedInputStream(new FileInputStream(args[0])));
+      (HeapSnapshot.open
+       (new BufferedInputStream(new FileInputStream(args[0]))));
 
     Record[] array = map.values().toArray(new Record[map.size()]);
     Arrays.sort(array, new Comparator<Record>() {
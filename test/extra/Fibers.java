@@ -0,0 +1,235 @@
+package extra;
+
+import avian.Fiber;
+import avian.FiberScheduler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+public class Fibers {
+  private static final int Port = 9837;
+
+  private static void expect(boolean v) {
+    if (! v) throw new RuntimeException();
+  }
+
+  private static void yielding(FiberScheduler scheduler) throws Exception {
+    final int[] counter = new int[1];
+    Fiber[] fibers = new Fiber[1000];
+    for (int i = 0; i < fibers.length; ++i) {
+      fibers[i] = scheduler.spawn(new Runnable() {
+          public void run() {
+            for (int j = 0; j < 3; ++j) {
+              synchronized (counter) {
+                ++ counter[0];
+              }
+              Fiber.yield();
+            }
+          }
+        });
+    }
+
+    for (Fiber f: fibers) {
+      f.join();
+      expect(! f.isAlive());
+    }
+
+    synchronized (counter) {
+      expect(counter[0] == fibers.length * 3);
+    }
+  }
+
+  private static void pingPong(FiberScheduler scheduler) throws Exception {
+    final int[] state = new int[1];
+    final Fiber[] fibers = new Fiber[2];
+    final int rounds = 1000;
+
+    for (int i = 0; i < 2; ++i) {
+      final int me = i;
+      fibers[i] = scheduler.spawn(new Runnable() {
+          public void run() {
+            for (int j = 0; j < rounds; ++j) {
+              while (true) {
+                synchronized (state) {
+                  if (state[0] % 2 == me) {
+                    ++ state[0];
+                    break;
+                  }
+                }
+                Fiber.park();
+              }
+              Fiber other;
+              while ((other = fibers[1 - me]) == null) {
+                Fiber.yield();
+              }
+              other.unpark();
+            }
+          }
+        });
+    }
+
+    fibers[0].join();
+    fibers[1].join();
+    synchronized (state) {
+      expect(state[0] == rounds * 2);
+    }
+  }
+
+  private static void sleepAndJoin(FiberScheduler scheduler)
+    throws Exception
+  {
+    final long[] elapsed = new long[1];
+    final Fiber sleeper = scheduler.spawn(new Runnable() {
+        public void run() {
+          long start = System.currentTimeMillis();
+          Fiber.sleep(50);
+          elapsed[0] = System.currentTimeMillis() - start;
+        }
+      });
+
+    final boolean[] joined = new boolean[1];
+    Fiber joiner = scheduler.spawn(new Runnable() {
+        public void run() {
+          try {
+            sleeper.join();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          joined[0] = ! sleeper.isAlive();
+        }
+      });
+
+    joiner.join();
+    expect(joined[0]);
+    expect(elapsed[0] >= 40);
+  }
+
+  private static void sockets(FiberScheduler scheduler) throws Exception {
+    final int clientCount = 50;
+    final ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", Port));
+
+    // echoes one byte back to each client
+    Fiber acceptor = scheduler.spawn(new Runnable() {
+        public void run() {
+          try {
+            for (int i = 0; i < clientCount; ++i) {
+              final SocketChannel c = server.accept();
+              Fiber.current().getScheduler().spawn(new Runnable() {
+                  public void run() {
+                    try {
+                      ByteBuffer b = ByteBuffer.allocate(1);
+                      while (b.hasRemaining()) {
+                        expect(c.read(b) > 0);
+                      }
+                      b.flip();
+                      while (b.hasRemaining()) {
+                        c.write(b);
+                      }
+                      c.close();
+                    } catch (Exception e) {
+                      throw new RuntimeException(e);
+                    }
+                  }
+                });
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+
+    final int[] echoed = new int[1];
+    Fiber[] clients = new Fiber[clientCount];
+    for (int i = 0; i < clientCount; ++i) {
+      final byte value = (byte) i;
+      clients[i] = scheduler.spawn(new Runnable() {
+          public void run() {
+            try {
+              SocketChannel c = SocketChannel.open();
+              c.connect(new InetSocketAddress("127.0.0.1", Port));
+              ByteBuffer b = ByteBuffer.allocate(1);
+              b.put(value);
+              b.flip();
+              while (b.hasRemaining()) {
+                c.write(b);
+              }
+              b.clear();
+              while (b.hasRemaining()) {
+                expect(c.read(b) > 0);
+              }
+              c.close();
+              expect(b.get(0) == value);
+              synchronized (echoed) {
+                ++ echoed[0];
+              }
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+          }
+        });
+    }
+
+    acceptor.join();
+    for (Fiber f: clients) {
+      f.join();
+    }
+    server.close();
+
+    synchronized (echoed) {
+      expect(echoed[0] == clientCount);
+    }
+  }
+
+  private static void files(FiberScheduler scheduler) throws Exception {
+    final File file = new File("fibers.txt");
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      out.write("hello, world!".getBytes());
+      out.close();
+
+      final String[] result = new String[1];
+      scheduler.spawn(new Runnable() {
+          public void run() {
+            try {
+              FileInputStream in = new FileInputStream(file);
+              byte[] buffer = new byte[64];
+              int length = in.read(buffer, 0, buffer.length);
+              in.close();
+              result[0] = new String(buffer, 0, length);
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+          }
+        }).join();
+
+      expect("hello, world!".equals(result[0]));
+    } finally {
+      file.delete();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    FiberScheduler scheduler = new FiberScheduler(2);
+
+    yielding(scheduler);
+    pingPong(scheduler);
+    sleepAndJoin(scheduler);
+    sockets(scheduler);
+    files(scheduler);
+
+    scheduler.shutdown();
+    expect(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+
+    try {
+      scheduler.spawn(new Runnable() { public void run() { } });
+      expect(false);
+    } catch (IllegalStateException e) { }
+  }
+}
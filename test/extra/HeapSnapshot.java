@@ -0,0 +1,398 @@
+package extra;
+
+import java.io.InputStream;
+import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.EOFException;
+import java.util.zip.InflaterInputStream;
+import java.util.Comparator;
+import java.util.Arrays;
+
+/**
+ * This is a reader for heap snapshots generated by Avian's
+ * heapdump.cpp.  A snapshot starts with a short header (magic,
+ * version, flags, and word size) and is followed by a stream of
+ * records, optionally zlib-compressed.  Object numbers, sizes, and
+ * string lengths are written as unsigned LEB128 varints.
+ *
+ * When run as a program, this class reads the whole snapshot into
+ * memory, computes the dominator tree of the object graph, and
+ * prints the objects retaining the most memory.
+ */
+public class HeapSnapshot {
+  public static final int Root = 0;
+  public static final int Size = 1;
+  public static final int ClassName = 2;
+  public static final int Push = 3;
+  public static final int Pop = 4;
+
+  private static final int Version = 2;
+  private static final int Compressed = 1 << 0;
+
+  private static final int Unvisited = -1;
+
+  public int wordSize;
+  public int count;
+  public int[] sizes = new int[1024];
+  public int[] classes = new int[1024];
+  public String[] names = new String[1024];
+  public int[] roots = new int[256];
+  public int rootCount;
+
+  private int[] edgeFrom = new int[4096];
+  private int[] edgeTo = new int[4096];
+  private int edgeCount;
+
+  private int[] successorIndex;
+  private int[] successors;
+  private int[] predecessorIndex;
+  private int[] predecessors;
+
+  public int[] dominators;
+  public long[] retained;
+
+  /**
+   * Reads and validates the snapshot header, returning a stream
+   * positioned at the first record.
+   */
+  public static InputStream open(InputStream in, int[] wordSize)
+    throws IOException
+  {
+    if (in.read() != 'A' || in.read() != 'V' || in.read() != 'H'
+        || in.read() != 'D')
+    {
+      throw new IOException("not an Avian heap snapshot");
+    }
+
+    int version = in.read();
+    if (version != Version) {
+      throw new IOException("unsupported snapshot version: " + version);
+    }
+
+    int flags = in.read();
+    int size = in.read();
+    if (size == -1) throw new EOFException();
+
+    if (wordSize != null) {
+      wordSize[0] = size;
+    }
+
+    if ((flags & Compressed) != 0) {
+      return new BufferedInputStream(new InflaterInputStream(in));
+    } else {
+      return in;
+    }
+  }
+
+  public static InputStream open(InputStream in) throws IOException {
+    return open(in, null);
+  }
+
+  public static int readInt(InputStream in) throws IOException {
+    int result = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = in.read();
+      if (b == -1) throw new EOFException();
+      result |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return result;
+  }
+
+  public static String readString(InputStream in) throws IOException {
+    int count = readInt(in);
+    byte[] b = new byte[count];
+    int offset = 0;
+    int c;
+    while (offset < b.length
+           && (c = in.read(b, offset, b.length - offset)) != -1)
+    {
+      offset += c;
+    }
+    if (offset != b.length) throw new EOFException();
+    return new String(b);
+  }
+
+  private static int[] grow(int[] array, int minimum) {
+    if (array.length > minimum) {
+      return array;
+    } else {
+      int[] a = new int[Math.max(array.length * 2, minimum + 1)];
+      System.arraycopy(array, 0, a, 0, array.length);
+      return a;
+    }
+  }
+
+  private void node(int number) {
+    if (number > count) {
+      count = number;
+      sizes = grow(sizes, number);
+      classes = grow(classes, number);
+      if (names.length <= number) {
+        String[] a = new String[sizes.length];
+        System.arraycopy(names, 0, a, 0, names.length);
+        names = a;
+      }
+    }
+  }
+
+  private void edge(int from, int to) {
+    if (to != 0) {
+      if (edgeCount == edgeFrom.length) {
+        edgeFrom = grow(edgeFrom, edgeCount);
+        edgeTo = grow(edgeTo, edgeCount);
+      }
+      edgeFrom[edgeCount] = from;
+      edgeTo[edgeCount] = to;
+      ++ edgeCount;
+    }
+  }
+
+  public static HeapSnapshot read(InputStream in) throws IOException {
+    HeapSnapshot s = new HeapSnapshot();
+    int[] wordSize = new int[1];
+    in = open(in, wordSize);
+    s.wordSize = wordSize[0];
+
+    int[] stack = new int[256];
+    int depth = 0;
+    int current = 0;
+    boolean first = false;
+
+    while (true) {
+      int flag = in.read();
+      switch (flag) {
+      case Root: {
+        current = readInt(in);
+        s.node(current);
+        s.roots = grow(s.roots, s.rootCount);
+        s.roots[s.rootCount++] = current;
+        first = true;
+      } break;
+
+      case Size: {
+        s.sizes[current] = readInt(in);
+      } break;
+
+      case ClassName: {
+        s.names[current] = readString(in);
+      } break;
+
+      case Push: {
+        int child = readInt(in);
+        s.node(child);
+        s.edge(current, child);
+        if (first) {
+          // the first child of each object is its class
+          s.classes[current] = child;
+        }
+        stack = grow(stack, depth);
+        stack[depth++] = current;
+        current = child;
+        first = true;
+      } break;
+
+      case Pop: {
+        current = stack[--depth];
+        first = false;
+      } break;
+
+      case -1:
+        return s;
+
+      default:
+        throw new RuntimeException("bad flag: " + flag);
+      }
+    }
+  }
+
+  private static int[] index(int count, int[] keys, int edgeCount) {
+    int[] index = new int[count + 2];
+    for (int i = 0; i < edgeCount; ++i) {
+      ++ index[keys[i] + 1];
+    }
+    for (int i = 1; i < index.length; ++i) {
+      index[i] += index[i - 1];
+    }
+    return index;
+  }
+
+  private static int[] fill(int[] index, int[] keys, int[] values,
+                            int edgeCount)
+  {
+    int[] result = new int[edgeCount];
+    int[] next = new int[index.length];
+    System.arraycopy(index, 0, next, 0, index.length);
+    for (int i = 0; i < edgeCount; ++i) {
+      result[next[keys[i]]++] = values[i];
+    }
+    return result;
+  }
+
+  private void buildGraph() {
+    // node zero stands for the set of roots
+    for (int i = 0; i < rootCount; ++i) {
+      edge(0, roots[i]);
+    }
+
+    successorIndex = index(count, edgeFrom, edgeCount);
+    successors = fill(successorIndex, edgeFrom, edgeTo, edgeCount);
+    predecessorIndex = index(count, edgeTo, edgeCount);
+    predecessors = fill(predecessorIndex, edgeTo, edgeFrom, edgeCount);
+
+    edgeFrom = edgeTo = null;
+  }
+
+  private int[] postorder(int[] order) {
+    int[] stack = new int[count + 1];
+    int[] next = new int[count + 1];
+    int[] numbers = new int[count + 1];
+    Arrays.fill(numbers, Unvisited);
+
+    int depth = 0;
+    int n = 0;
+    stack[depth++] = 0;
+    next[0] = successorIndex[0];
+    numbers[0] = 0;
+
+    while (depth > 0) {
+      int node = stack[depth - 1];
+      if (next[node] < successorIndex[node + 1]) {
+        int child = successors[next[node]++];
+        if (numbers[child] == Unvisited) {
+          numbers[child] = 0;
+          next[child] = successorIndex[child];
+          stack[depth++] = child;
+        }
+      } else {
+        -- depth;
+        numbers[node] = n;
+        order[n++] = node;
+      }
+    }
+
+    for (int i = n; i < order.length; ++i) {
+      order[i] = Unvisited;
+    }
+
+    return numbers;
+  }
+
+  private static int intersect(int[] dominators, int[] numbers, int a,
+                               int b)
+  {
+    while (a != b) {
+      while (numbers[a] < numbers[b]) a = dominators[a];
+      while (numbers[b] < numbers[a]) b = dominators[b];
+    }
+    return a;
+  }
+
+  /**
+   * Computes immediate dominators using the iterative algorithm of
+   * Cooper, Harvey, and Kennedy, followed by the retained size of
+   * every object.
+   */
+  public void computeDominators() {
+    buildGraph();
+
+    int[] order = new int[count + 1];
+    int[] numbers = postorder(order);
+
+    dominators = new int[count + 1];
+    Arrays.fill(dominators, Unvisited);
+    dominators[0] = 0;
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = count; i >= 0; --i) {
+        int node = order[i];
+        if (node <= 0) continue;
+
+        int dominator = Unvisited;
+        for (int j = predecessorIndex[node];
+             j < predecessorIndex[node + 1]; ++j)
+        {
+          int p = predecessors[j];
+          if (dominators[p] != Unvisited) {
+            dominator = dominator == Unvisited
+              ? p : intersect(dominators, numbers, p, dominator);
+          }
+        }
+
+        if (dominators[node] != dominator) {
+          dominators[node] = dominator;
+          changed = true;
+        }
+      }
+    }
+
+    retained = new long[count + 1];
+    for (int i = 0; i <= count; ++i) {
+      int node = order[i];
+      if (node == Unvisited) break;
+
+      retained[node] += sizes[node];
+      if (node != 0) {
+        retained[dominators[node]] += retained[node];
+      }
+    }
+  }
+
+  public String className(int number) {
+    int c = classes[number];
+    if (c == 0) {
+      return "<unknown>";
+    } else if (names[c] == null) {
+      return String.valueOf(c);
+    } else {
+      return names[c];
+    }
+  }
+
+  private static void usageAndExit() {
+    System.err.println("usage: java HeapSnapshot <heap dump> [<count>]");
+    System.exit(-1);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1 || args.length > 2) {
+      usageAndExit();
+    }
+
+    int limit = args.length == 2 ? Integer.parseInt(args[1]) : 20;
+
+    final HeapSnapshot s = read
+      (new BufferedInputStream(new FileInputStream(args[0])));
+    s.computeDominators();
+
+    Integer[] objects = new Integer[s.count];
+    for (int i = 0; i < s.count; ++i) {
+      objects[i] = i + 1;
+    }
+
+    Arrays.sort(objects, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          long d = s.retained[b] - s.retained[a];
+          return d < 0 ? -1 : (d > 0 ? 1 : 0);
+        }
+      });
+
+    System.out.println("objects by retained size:");
+    for (int i = 0; i < limit && i < objects.length; ++i) {
+      int n = objects[i];
+      System.out.println
+        ("  " + n + " " + s.className(n) + ": "
+         + (s.retained[n] * s.wordSize) + " (shallow "
+         + (s.sizes[n] * s.wordSize) + ")");
+    }
+
+    System.out.println();
+    System.out.println("total: " + (s.retained[0] * s.wordSize)
+                       + " bytes in " + s.count + " objects");
+  }
+}
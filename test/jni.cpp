@@ -0,0 +1,25 @@
+/* Copyright (c) 2011, Avian Contributors
+
+   Permission to use, copy, modify, and/or distribute this software
+   for any purpose with or without fee is hereby granted, provided
+   that the above copyright notice and this permission notice appear
+   in all copies.
+
+   There is NO WARRANTY for this software.  See license.txt for
+   details. */
+
+#include "jni.h"
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_JNI_incrementShorts(JNIEnv* e, jclass, jshortArray array)
+{
+  jboolean isCopy;
+  jshort* p = e->GetShortArrayElements(array, &isCopy);
+  jsize length = e->GetArrayLength(array);
+  for (jsize i = 0; i < length; ++i) {
+    ++ p[i];
+  }
+  e->ReleaseShortArrayElements(array, p, 0);
+
+  return isCopy;
+}